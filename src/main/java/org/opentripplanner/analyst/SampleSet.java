@@ -2,8 +2,17 @@ package org.opentripplanner.analyst;
 
 import org.opentripplanner.analyst.core.Sample;
 import org.opentripplanner.analyst.request.SampleFactory;
+import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
 /**
  * We never use samples in isolation, so let's store them as a column store.
  */
@@ -19,24 +28,83 @@ public class SampleSet {
     public float[] d0s;
     public float[] d1s;
 
-    public SampleSet (PointSet pset, SampleFactory sfac) {
+    /** Identifies the binary format written by write(), bump when it changes. */
+    private static final int FORMAT_VERSION = 2;
+
+    private SampleSet (PointSet pset) {
         this.pset = pset;
         v0s = new Vertex[pset.capacity];
         v1s = new Vertex[pset.capacity];
         d0s = new float[pset.capacity];
         d1s = new float[pset.capacity];
-        for (int i = 0; i < pset.capacity; i++) {
+    }
+
+    /**
+     * Link every point in the given PointSet to the street network. Each point is linked independently and writes
+     * only its own slot in the column arrays, so the points are linked in parallel.
+     */
+    public SampleSet (PointSet pset, SampleFactory sfac) {
+        this(pset);
+        IntStream.range(0, pset.capacity).parallel().forEach(i -> {
             Sample sample = sfac.getSample(pset.lons[i], pset.lats[i]);
             if (sample == null) {
                 d0s[i] = Float.NaN;
                 d1s[i] = Float.NaN;
-                continue;
+                return;
             }
             v0s[i] = sample.v0;
             v1s[i] = sample.v1;
             d0s[i] = sample.d0;
             d1s[i] = sample.d1;
+        });
+    }
+
+    /**
+     * Save this SampleSet as vertex positions and distances. The vertices are saved as their positions in
+     * Graph.getVerticesByLabel(), which unlike vertex indices do not change when the graph is loaded again, and the
+     * result can only be read back for a graph with the same fingerprint (see Graph.getFingerprint()).
+     */
+    public void write (OutputStream out, Graph graph) throws IOException {
+        int[] ordinals = graph.getVertexOrdinals();
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(FORMAT_VERSION);
+        dos.writeUTF(graph.getFingerprint());
+        dos.writeInt(pset.capacity);
+        for (int i = 0; i < pset.capacity; i++) {
+            dos.writeInt(ordinal(ordinals, v0s[i]));
+            dos.writeInt(ordinal(ordinals, v1s[i]));
+            dos.writeFloat(d0s[i]);
+            dos.writeFloat(d1s[i]);
         }
+        dos.flush();
+    }
+
+    /** @return The position of the vertex in Graph.getVerticesByLabel(), or -1 for no vertex or a temporary one. */
+    private static int ordinal (int[] ordinals, Vertex v) {
+        return v == null || v.getIndex() >= ordinals.length ? -1 : ordinals[v.getIndex()];
+    }
+
+    /**
+     * Load a SampleSet saved with write(), resolving vertex positions against the given graph.
+     * @return the SampleSet, or null if it was saved for another graph or another number of points.
+     */
+    public static SampleSet read (InputStream in, PointSet pset, Graph graph) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        if (dis.readInt() != FORMAT_VERSION || !graph.getFingerprint().equals(dis.readUTF())
+                || dis.readInt() != pset.capacity) {
+            return null;
+        }
+        Vertex[] vertices = graph.getVerticesByLabel();
+        SampleSet ret = new SampleSet(pset);
+        for (int i = 0; i < pset.capacity; i++) {
+            int i0 = dis.readInt();
+            int i1 = dis.readInt();
+            ret.v0s[i] = i0 < 0 ? null : vertices[i0];
+            ret.v1s[i] = i1 < 0 ? null : vertices[i1];
+            ret.d0s[i] = dis.readFloat();
+            ret.d1s[i] = dis.readFloat();
+        }
+        return ret;
     }
 
     public int[] eval (TimeSurface surf) {
@@ -64,19 +132,27 @@ public class SampleSet {
     
     /** Evaluate an array of times where indices are keyed to vertex indices, with Integer.MAX_VALUE indicating unreachability both in the inputs and the outputs */
     public int[] eval(int[] times) {
+        return eval(vertex -> times[vertex]);
+    }
+
+    /**
+     * Evaluate times given by a function of the vertex index, with Integer.MAX_VALUE indicating unreachability both
+     * in the inputs and the outputs. This avoids copying times held elsewhere into a vertex-indexed array.
+     */
+    public int[] eval(IntUnaryOperator timeForVertex) {
         final float WALK_SPEED = 1.3f;
         int[] ret = new int[pset.capacity];
         for (int i = 0; i < pset.capacity; i++) {
             int m0 = Integer.MAX_VALUE;
             int m1 = Integer.MAX_VALUE;
             if (v0s[i] != null) {
-                int s0 = times[v0s[i].getIndex()];
+                int s0 = timeForVertex.applyAsInt(v0s[i].getIndex());
                 if (s0 != Integer.MAX_VALUE) {
                     m0 = (int) (s0 + d0s[i] / WALK_SPEED);
                 }
             }
             if (v1s[i] != null) {
-                int s1 = times[v1s[i].getIndex()];
+                int s1 = timeForVertex.applyAsInt(v1s[i].getIndex());
                 if (s1 != Integer.MAX_VALUE) {
                     m1 = (int) (s1 + d1s[i] / WALK_SPEED);
                 }
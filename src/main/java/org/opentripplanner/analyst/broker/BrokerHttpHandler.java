@@ -187,9 +187,14 @@ class BrokerHttpHandler extends HttpHandler {
             } else if (request.getMethod() == Method.DELETE) {
                 /* Acknowledge completion of a task and remove it from queues, avoiding re-delivery. */
                 if ("tasks".equalsIgnoreCase(pathComponents[1])) {
-                    int taskId = Integer.parseInt(pathComponents[2]);
-                    // This must not have been a priority task. Try to delete it as a normal job task.
-                    if (broker.markTaskCompleted(taskId)) {
+                    // Workers may acknowledge several tasks at once, as a comma-separated list of task IDs.
+                    // The request succeeds if any of them was found; the others were probably already re-delivered.
+                    boolean found = false;
+                    for (String taskId : pathComponents[2].split(",")) {
+                        // This must not have been a priority task. Try to delete it as a normal job task.
+                        found |= broker.markTaskCompleted(Integer.parseInt(taskId));
+                    }
+                    if (found) {
                         response.setStatus(HttpStatus.OK_200);
                     } else {
                         response.setStatus(HttpStatus.NOT_FOUND_404);
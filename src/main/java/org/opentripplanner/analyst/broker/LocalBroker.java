@@ -0,0 +1,148 @@
+package org.opentripplanner.analyst.broker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.glassfish.grizzly.http.Method;
+import org.glassfish.grizzly.http.server.HttpHandler;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.glassfish.grizzly.http.server.Request;
+import org.glassfish.grizzly.http.server.Response;
+import org.glassfish.grizzly.http.util.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in for the broker, used to measure the throughput of a single AnalystWorker.
+ *
+ * It serves copies of a single template task from the same endpoints as the real broker, and counts the tasks the
+ * worker acknowledges. There is no re-delivery and no job management. Run the worker against it with the broker-address
+ * and broker-port set to those of this broker, and dry-run-failure-rate set to 0 to measure the overhead of the worker
+ * itself rather than routing.
+ *
+ * Usage: LocalBroker template.json [nTasks] [port]
+ * The template is the JSON of an AnalystClusterRequest, as it would be enqueued on the real broker.
+ */
+public class LocalBroker extends HttpHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocalBroker.class);
+
+    private static final int DEFAULT_PORT = 9001;
+
+    /** The same number of tasks as the real broker delivers at a time. */
+    private static final int TASKS_PER_DELIVERY = 8;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final ObjectNode template;
+
+    private final int nTasks;
+
+    private final AtomicInteger nDelivered = new AtomicInteger();
+
+    /** The IDs of the tasks acknowledged by the worker, in the order they were acknowledged. */
+    private final List<Integer> completedTaskIds = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile long startTime = 0;
+
+    public LocalBroker (ObjectNode template, int nTasks) {
+        this.template = template;
+        this.nTasks = nTasks;
+    }
+
+    public static void main (String[] args) throws Exception {
+        if (args.length < 1) {
+            LOG.error("Usage: LocalBroker template.json [nTasks] [port]");
+            return;
+        }
+
+        ObjectNode template = (ObjectNode) new ObjectMapper().readTree(new File(args[0]));
+        int nTasks = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+
+        HttpServer httpServer = new HttpServer();
+        httpServer.addListener(new NetworkListener("local-broker", "0.0.0.0", port));
+        LocalBroker broker = new LocalBroker(template, nTasks);
+        httpServer.getServerConfiguration().addHttpHandler(broker, "/*");
+        httpServer.start();
+        LOG.info("Local broker serving {} tasks on port {}", nTasks, port);
+
+        while (broker.completedTaskIds.size() < nTasks) {
+            Thread.sleep(10 * 1000);
+            broker.logThroughput();
+        }
+        broker.logThroughput();
+        httpServer.shutdownNow();
+    }
+
+    @Override
+    public void service (Request request, Response response) throws Exception {
+        response.setContentType("application/json");
+        String[] pathComponents = request.getPathInfo().split("/");
+        if (pathComponents.length < 3) {
+            response.setStatus(HttpStatus.BAD_REQUEST_400);
+            return;
+        }
+
+        if (request.getMethod() == Method.POST && "dequeue".equals(pathComponents[1])) {
+            ArrayNode tasks = mapper.createArrayNode();
+            for (int i = 0; i < TASKS_PER_DELIVERY; i++) {
+                int taskId = nDelivered.getAndIncrement();
+                if (taskId >= nTasks) break;
+                ObjectNode task = template.deepCopy();
+                task.put("taskId", taskId);
+                task.put("id", Integer.toString(taskId));
+                tasks.add(task);
+            }
+
+            if (tasks.size() == 0) {
+                // out of work, make the worker wait a little like a long poll would
+                Thread.sleep(1000);
+                response.setStatus(HttpStatus.NO_CONTENT_204);
+                return;
+            }
+
+            if (startTime == 0) startTime = System.currentTimeMillis();
+            response.setStatus(HttpStatus.OK_200);
+            OutputStream os = response.getOutputStream();
+            mapper.writeValue(os, tasks);
+            os.close();
+        } else if (request.getMethod() == Method.DELETE && "tasks".equals(pathComponents[1])) {
+            synchronized (completedTaskIds) {
+                for (String taskId : pathComponents[2].split(",")) {
+                    completedTaskIds.add(Integer.parseInt(taskId));
+                }
+            }
+            response.setStatus(HttpStatus.OK_200);
+        } else {
+            // single point side channels and everything else are not supported
+            response.setStatus(HttpStatus.NOT_FOUND_404);
+        }
+    }
+
+    /** @return a copy of the IDs of the tasks acknowledged so far, in the order they were acknowledged. */
+    public List<Integer> getCompletedTaskIds () {
+        synchronized (completedTaskIds) {
+            return new ArrayList<>(completedTaskIds);
+        }
+    }
+
+    private void logThroughput () {
+        if (startTime == 0) {
+            LOG.info("Waiting for a worker");
+            return;
+        }
+        double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        int completed = completedTaskIds.size();
+        LOG.info("{} of {} tasks completed in {} s, {} tasks per second", completed, nTasks, seconds,
+                String.format("%.2f", completed / seconds));
+    }
+}
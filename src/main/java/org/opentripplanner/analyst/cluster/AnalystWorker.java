@@ -4,6 +4,7 @@ import com.amazonaws.regions.Region;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.conveyal.geojson.GeoJsonModule;
 import com.conveyal.r5.R5Main;
 import com.fasterxml.jackson.core.JsonParser;
@@ -34,6 +35,7 @@ import org.opentripplanner.api.model.JodaLocalDateSerializer;
 import org.opentripplanner.api.model.QualifiedModeSetSerializer;
 import org.opentripplanner.api.model.TraverseModeSetSerializer;
 import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.profile.ProfileRequest;
 import org.opentripplanner.profile.RaptorWorkerData;
 import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
 import org.opentripplanner.routing.graph.Graph;
@@ -41,30 +43,44 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.zip.GZIPOutputStream;
 
 /**
+ * A worker that fetches tasks from the broker, computes them and saves the results.
  *
+ * Batch tasks flow through a three stage pipeline so that processors do not sit idle while the worker talks to the
+ * broker or to S3: tasks are prefetched from the broker into a local buffer, computed by a pool with one thread per
+ * processor, then handed to an upload pool that saves the results. Completed tasks are acknowledged to the broker in
+ * batches. The prefetch buffer is sized from the measured time to compute a task and to receive work, so that it
+ * holds enough tasks to keep all processors busy while the next batch of work is on its way.
  */
 public class AnalystWorker implements Runnable {
 
@@ -87,6 +103,15 @@ public class AnalystWorker implements Runnable {
 
     public static final int POLL_TIMEOUT = 10 * 1000;
 
+    /** Never buffer more than this many batch tasks per processor, however slow the broker is to respond. */
+    public static final int MAX_BUFFERED_TASKS_PER_PROCESSOR = 16;
+
+    /** How often completed batch tasks are acknowledged to the broker, in milliseconds. */
+    public static final int ACK_INTERVAL = 500;
+
+    /** The most task IDs acknowledged to the broker in a single request, to keep URLs a reasonable length. */
+    public static final int MAX_TASKS_PER_ACK = 100;
+
     /**
      * If this value is non-negative, the worker will not actually do any work. It will just report all tasks
      * as completed immediately, but will fail to do so on the given percentage of tasks. This is used in testing task
@@ -94,6 +119,9 @@ public class AnalystWorker implements Runnable {
      */
     public int dryRunFailureRate = -1;
 
+    /** Number of threads computing batch tasks, one per processor unless set with the batch-threads property. */
+    public int batchThreads = Runtime.getRuntime().availableProcessors();
+
     /** How long (minimum, in milliseconds) should this worker stay alive after receiving a single point request? */
     public static final int SINGLE_POINT_KEEPALIVE = 15 * 60 * 1000;
 
@@ -107,6 +135,9 @@ public class AnalystWorker implements Runnable {
     /** is there currently a channel open to the broker to receive single point jobs? */
     private volatile boolean sideChannelOpen = false;
 
+    /** Set by stop() to make the main loop and the side channel exit. */
+    private volatile boolean stopped = false;
+
     ObjectMapper objectMapper;
 
     String BROKER_BASE_URL = "http://localhost:9001";
@@ -118,6 +149,14 @@ public class AnalystWorker implements Runnable {
             .maximumSize(200)
             .build();
 
+    /**
+     * Cache scenario-free RAPTOR data, on top of which the data for each job's scenario is built as an overlay.
+     * Keyed on everything that affects the baseline data, see baselineKey().
+     */
+    private Cache<String, RaptorWorkerData> baselineDataCache = CacheBuilder.newBuilder()
+            .maximumSize(10)
+            .build();
+
     static {
         PoolingHttpClientConnectionManager mgr = new PoolingHttpClientConnectionManager();
         mgr.setDefaultMaxPerRoute(20);
@@ -139,6 +178,9 @@ public class AnalystWorker implements Runnable {
     // Of course this will eventually need to be shared between multiple AnalystWorker threads.
     PointSetDatastore pointSetDatastore;
 
+    /** Results of linking point sets to the graph, persisted on local disk across worker restarts. */
+    SampleSetDatastore sampleSetDatastore;
+
     // Clients for communicating with Amazon web services
     AmazonS3 s3;
 
@@ -157,7 +199,22 @@ public class AnalystWorker implements Runnable {
      * Queue for high-priority tasks. Should be plenty long enough to hold all that have come in -
      * we don't need to block on polling the manager.
      */
-    private ThreadPoolExecutor highPriorityExecutor, batchExecutor;
+    private ThreadPoolExecutor highPriorityExecutor, batchExecutor, uploadExecutor;
+
+    /** Periodically acknowledges the completed batch tasks to the broker. */
+    private ScheduledExecutorService ackExecutor;
+
+    /**
+     * Moving averages of the time to compute one batch task and of the time to receive work from the broker, in
+     * milliseconds. These are updated without synchronization; a lost sample now and then does no harm.
+     */
+    private volatile double meanTaskMillis = 1000, meanPollMillis = 1000;
+
+    /** Batch tasks whose results have been saved, but which have not yet been acknowledged to the broker. */
+    private final Queue<Integer> completedTaskIds = new ConcurrentLinkedQueue<>();
+
+    /** Notified whenever a buffered batch task starts, so the polling loop can fetch more work. */
+    private final Object bufferLock = new Object();
 
     public AnalystWorker(Properties config) {
         // print out date on startup so that CloudWatch logs has a unique fingerprint
@@ -189,8 +246,17 @@ public class AnalystWorker implements Runnable {
         this.graphId = config.getProperty("initial-graph-id");
 
         this.pointSetDatastore = new PointSetDatastore(10, null, false, config.getProperty("pointsets-bucket"));
+        this.sampleSetDatastore = new SampleSetDatastore(10);
         this.clusterGraphBuilder = new ClusterGraphBuilder(config.getProperty("graphs-bucket"));
 
+        String dryRunFailureRate = config.getProperty("dry-run-failure-rate");
+        if (dryRunFailureRate != null)
+            this.dryRunFailureRate = Integer.parseInt(dryRunFailureRate);
+
+        String batchThreads = config.getProperty("batch-threads");
+        if (batchThreads != null)
+            this.batchThreads = Integer.parseInt(batchThreads);
+
         Boolean autoShutdown = Boolean.parseBoolean(config.getProperty("auto-shutdown"));
         this.autoShutdown = autoShutdown == null ? false : autoShutdown;
 
@@ -230,7 +296,7 @@ public class AnalystWorker implements Runnable {
 
     /**
      * This is the main worker event loop which fetches tasks from a broker and schedules them for execution.
-     * It maintains a small local queue on the worker so that it doesn't idle while fetching new tasks.
+     * It maintains a local buffer of tasks on the worker so that it doesn't idle while fetching new tasks.
      */
     @Override
     public void run() {
@@ -238,8 +304,17 @@ public class AnalystWorker implements Runnable {
         int nP = Runtime.getRuntime().availableProcessors();
         highPriorityExecutor = new ThreadPoolExecutor(1, nP, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(255));
         highPriorityExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
-        batchExecutor = new ThreadPoolExecutor(1, nP, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(nP * 2));
-        batchExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        // The queue of the batch executor is the prefetch buffer. Its length is limited by the polling loop, see
+        // waitForBufferSpace(), so it is never full.
+        batchExecutor = new ThreadPoolExecutor(batchThreads, batchThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        // If uploads fall behind, compute threads upload their own results rather than piling up more of them.
+        uploadExecutor = new ThreadPoolExecutor(nP, nP, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(nP * 4));
+        uploadExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+
+        ackExecutor = Executors.newSingleThreadScheduledExecutor();
+        ackExecutor.scheduleWithFixedDelay(this::acknowledgeCompletedTasks, ACK_INTERVAL, ACK_INTERVAL,
+                TimeUnit.MILLISECONDS);
 
         // Build a graph on startup, iff a graph ID was provided.
         if (graphId != null) {
@@ -252,7 +327,7 @@ public class AnalystWorker implements Runnable {
 
         // Start filling the work queues.
         boolean idle = false;
-        while (true) {
+        while (!stopped) {
             long now = System.currentTimeMillis();
             // Consider shutting down if enough time has passed
             if (now > nextShutdownCheckTime && autoShutdown) {
@@ -270,14 +345,20 @@ public class AnalystWorker implements Runnable {
                 }
                 nextShutdownCheckTime += 60 * 60 * 1000;
             }
+            // Don't fetch more work than needed to keep the processors busy until the next poll returns.
+            waitForBufferSpace();
+            if (stopped) break;
+
             LOG.info("Long-polling for work ({} second timeout).", POLL_TIMEOUT / 1000.0);
             // Long-poll (wait a few seconds for messages to become available)
+            long pollStartTime = System.currentTimeMillis();
             List<AnalystClusterRequest> tasks = getSomeWork(WorkType.BATCH);
             if (tasks == null) {
                 LOG.info("Didn't get any work. Retrying.");
                 idle = true;
                 continue;
             }
+            meanPollMillis += 0.1 * (System.currentTimeMillis() - pollStartTime - meanPollMillis);
 
             // run through high-priority tasks first to ensure they are enqueued even if the batch
             // queue blocks.
@@ -290,27 +371,72 @@ public class AnalystWorker implements Runnable {
 
             logQueueStatus();
 
-            // enqueue low-priority tasks; note that this may block anywhere in the process
+            // enqueue low-priority tasks in the prefetch buffer
             tasks.stream().filter(t -> t.outputLocation != null)
-                .forEach(t -> {
-                    // attempt to enqueue, waiting if the queue is full
-                    while (true) {
-                        try {
-                            batchExecutor.execute(() -> this.handleOneRequest(t));
-                            break;
-                        } catch (RejectedExecutionException e) {
-                            // queue is full, wait 200ms and try again
-                            try {
-                                Thread.sleep(200);
-                            } catch (InterruptedException e1) { /* nothing */}
-                        }
+                .forEach(t -> batchExecutor.execute(() -> {
+                    // this task has left the buffer, there may be room to fetch more
+                    synchronized (bufferLock) {
+                        bufferLock.notify();
                     }
-                });
+                    this.handleOneRequest(t);
+                }));
 
             logQueueStatus();
 
             idle = false;
         }
+
+        shutdownExecutors();
+    }
+
+    /**
+     * Stop fetching work. The main loop returns once the current poll is over and the tasks already received have
+     * been computed, saved and acknowledged, and the threads of the worker have terminated.
+     */
+    public void stop () {
+        stopped = true;
+        synchronized (bufferLock) {
+            bufferLock.notify();
+        }
+    }
+
+    /** Let the tasks already received finish in pipeline order, then acknowledge the last of them. */
+    private void shutdownExecutors () {
+        try {
+            for (ExecutorService executor : new ExecutorService[] { highPriorityExecutor, batchExecutor,
+                    uploadExecutor, ackExecutor }) {
+                executor.shutdown();
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while waiting for tasks to complete, some may not be acknowledged.");
+            Thread.currentThread().interrupt();
+        }
+        acknowledgeCompletedTasks();
+        LOG.info("Analyst worker stopped.");
+    }
+
+    /**
+     * The number of batch tasks to keep buffered on this worker. While a poll is waiting for the broker, each processor
+     * completes about meanPollMillis / meanTaskMillis tasks, plus one buffered task per processor for good measure.
+     */
+    private int targetBufferLength () {
+        int nP = batchExecutor.getMaximumPoolSize();
+        double tasksPerPoll = meanPollMillis / Math.max(meanTaskMillis, 1);
+        int target = (int) Math.ceil(nP * (1 + tasksPerPoll));
+        return Math.max(nP, Math.min(target, nP * MAX_BUFFERED_TASKS_PER_PROCESSOR));
+    }
+
+    /** Block until the number of buffered batch tasks falls below the target buffer length. */
+    private void waitForBufferSpace () {
+        synchronized (bufferLock) {
+            while (!stopped && batchExecutor.getQueue().size() >= targetBufferLength()) {
+                try {
+                    // time out in case the notification came between checking the queue and waiting
+                    bufferLock.wait(1000);
+                } catch (InterruptedException e) { /* nothing */ }
+            }
+        }
     }
 
     /**
@@ -325,7 +451,7 @@ public class AnalystWorker implements Runnable {
             // but will fail a certain percentage of the time.
             if (random.nextInt(100) >= dryRunFailureRate) {
                 // Pretend to succeed.
-                deleteRequest(clusterRequest);
+                completedTaskIds.add(clusterRequest.taskId);
             } else {
                 LOG.info("Intentionally failing on task {}", clusterRequest.taskId);
             }
@@ -381,7 +507,7 @@ public class AnalystWorker implements Runnable {
             } else {
                 // This is not an isochrone request. There is necessarily a destination point set supplied.
                 PointSet pointSet = pointSetDatastore.get(clusterRequest.destinationPointsetId);
-                sampleSet = pointSet.getOrCreateSampleSet(graph); // TODO this breaks if graph has been rebuilt
+                sampleSet = sampleSetDatastore.get(clusterRequest.destinationPointsetId, pointSet, graph);
             }
 
             // Note that all parameters to create the Raptor worker data are passed in the constructor except ts.
@@ -399,8 +525,15 @@ public class AnalystWorker implements Runnable {
             // But then we'd need to pass in both the cache and the key, which is weird.
             if (transit && !singlePoint) {
                 long dataStart = System.currentTimeMillis();
-                router.raptorWorkerData = workerDataCache.get(clusterRequest.jobId, () -> RepeatedRaptorProfileRouter
-                        .getRaptorWorkerData(clusterRequest.profileRequest, graph, sampleSet, ts));
+                router.raptorWorkerData = workerDataCache.get(clusterRequest.jobId, () -> {
+                    ProfileRequest req = clusterRequest.profileRequest;
+                    RaptorWorkerData baseline = null;
+                    if (req.scenario != null && RaptorWorkerData.canOverlay(req.scenario)) {
+                        baseline = baselineDataCache.get(baselineKey(clusterRequest), () -> RepeatedRaptorProfileRouter
+                                .getBaselineRaptorWorkerData(req, graph, sampleSet));
+                    }
+                    return RepeatedRaptorProfileRouter.getRaptorWorkerData(req, graph, sampleSet, baseline, ts);
+                });
                 ts.raptorData = (int) (System.currentTimeMillis() - dataStart);
             } else {
                 // The worker will generate a one-time throw-away table.
@@ -429,30 +562,19 @@ public class AnalystWorker implements Runnable {
             envelope.jobId = clusterRequest.jobId;
             envelope.destinationPointsetId = clusterRequest.destinationPointsetId;
             if (clusterRequest.outputLocation != null) {
-                // Convert the result envelope and its contents to JSON and gzip it in this thread.
-                // Transfer the results to Amazon S3 in another thread, piping between the two.
-                String s3key = String.join("/", clusterRequest.jobId, clusterRequest.id + ".json.gz");
-                PipedInputStream inPipe = new PipedInputStream();
-                PipedOutputStream outPipe = new PipedOutputStream(inPipe);
-                new Thread(() -> {
-                    s3.putObject(clusterRequest.outputLocation, s3key, inPipe, null);
-                }).start();
-                OutputStream gzipOutputStream = new GZIPOutputStream(outPipe);
-                // We could do the writeValue() in a thread instead, in which case both the DELETE and S3 options
-                // could consume it in the same way.
-                objectMapper.writeValue(gzipOutputStream, envelope);
-                gzipOutputStream.close();
-                // Tell the broker the task has been handled and should not be re-delivered to another worker.
-                deleteRequest(clusterRequest);
+                meanTaskMillis += 0.1 * (System.currentTimeMillis() - startTime - meanTaskMillis);
+                // Save the result on S3 in the upload stage, freeing this thread to compute the next task.
+                final ResultEnvelope result = envelope;
+                uploadExecutor.execute(() -> saveResult(clusterRequest, result, ts, startTime));
             } else {
                 // No output location was provided. Instead of saving the result on S3,
                 // return the result immediately via a connection held open by the broker and mark the task completed.
                 finishPriorityTask(clusterRequest, envelope);
-            }
 
-            // Record information about the current task so we can analyze usage and efficiency over time.
-            ts.total = (int) (System.currentTimeMillis() - startTime);
-            statsStore.store(ts);
+                // Record information about the current task so we can analyze usage and efficiency over time.
+                ts.total = (int) (System.currentTimeMillis() - startTime);
+                statsStore.store(ts);
+            }
 
         } catch (Exception ex) {
             LOG.error("An error occurred while routing", ex);
@@ -460,6 +582,69 @@ public class AnalystWorker implements Runnable {
 
     }
 
+    /**
+     * Save the result of a batch task on S3, then queue the task to be acknowledged to the broker. This is the
+     * completion stage of the pipeline, and runs on the upload executor.
+     */
+    private void saveResult (AnalystClusterRequest clusterRequest, ResultEnvelope envelope, TaskStatistics ts,
+                             long startTime) {
+        try {
+            // Convert the result envelope and its contents to gzipped JSON, and transfer it to Amazon S3.
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            OutputStream gzipOutputStream = new GZIPOutputStream(buffer);
+            objectMapper.writeValue(gzipOutputStream, envelope);
+            gzipOutputStream.close();
+            byte[] bytes = buffer.toByteArray();
+
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(bytes.length);
+            String s3key = String.join("/", clusterRequest.jobId, clusterRequest.id + ".json.gz");
+            s3.putObject(clusterRequest.outputLocation, s3key, new ByteArrayInputStream(bytes), metadata);
+
+            // The task has been handled and should not be re-delivered to another worker. Acknowledge it with the
+            // next batch.
+            completedTaskIds.add(clusterRequest.taskId);
+        } catch (Exception ex) {
+            LOG.error("Failed to save result of task {}, it will be re-delivered.", clusterRequest.taskId, ex);
+        }
+
+        // Record information about the current task so we can analyze usage and efficiency over time.
+        ts.total = (int) (System.currentTimeMillis() - startTime);
+        statsStore.store(ts);
+    }
+
+    /** Tell the broker about all batch tasks completed since the last call, in as few requests as possible. */
+    private void acknowledgeCompletedTasks () {
+        try {
+            List<Integer> taskIds = new ArrayList<>();
+            Integer taskId;
+            while ((taskId = completedTaskIds.poll()) != null) {
+                taskIds.add(taskId);
+                if (taskIds.size() == MAX_TASKS_PER_ACK) {
+                    deleteRequests(taskIds);
+                    taskIds.clear();
+                }
+            }
+            if (!taskIds.isEmpty()) {
+                deleteRequests(taskIds);
+            }
+        } catch (Exception e) {
+            // don't let an exception cancel the scheduled acknowledgements
+            LOG.error("Unexpected exception acknowledging tasks", e);
+        }
+    }
+
+    /**
+     * Jobs comparing scenarios share baseline RAPTOR data if they use the same graph, destinations, day, time window
+     * and walk parameters.
+     */
+    private static String baselineKey (AnalystClusterRequest clusterRequest) {
+        ProfileRequest req = clusterRequest.profileRequest;
+        return String.join(":", clusterRequest.graphId, String.valueOf(clusterRequest.destinationPointsetId),
+                String.valueOf(req.date), String.valueOf(req.fromTime), String.valueOf(req.toTime),
+                String.valueOf(req.walkSpeed), String.valueOf(req.maxWalkTime));
+    }
+
     /** Open a single point channel to the broker to receive high-priority requests immediately */
     private synchronized void openSideChannel () {
         if (sideChannelOpen) {
@@ -469,7 +654,7 @@ public class AnalystWorker implements Runnable {
         new Thread(() -> {
             sideChannelOpen = true;
             // don't keep single point connections alive forever
-            while (System.currentTimeMillis() < lastHighPriorityRequestProcessed + SINGLE_POINT_KEEPALIVE) {
+            while (!stopped && System.currentTimeMillis() < lastHighPriorityRequestProcessed + SINGLE_POINT_KEEPALIVE) {
                 LOG.info("Awaiting high-priority work");
                 try {
                     List<AnalystClusterRequest> tasks = getSomeWork(WorkType.HIGH_PRIORITY);
@@ -560,19 +745,27 @@ public class AnalystWorker implements Runnable {
      * Tell the broker that the given message has been successfully processed by a worker (HTTP DELETE).
      */
     public void deleteRequest(AnalystClusterRequest clusterRequest) {
-        String url = BROKER_BASE_URL + String.format("/tasks/%s", clusterRequest.taskId);
+        deleteRequests(Collections.singletonList(clusterRequest.taskId));
+    }
+
+    /**
+     * Tell the broker that the given messages have been successfully processed by a worker, in a single request.
+     */
+    public void deleteRequests(List<Integer> taskIds) {
+        String ids = taskIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+        String url = BROKER_BASE_URL + String.format("/tasks/%s", ids);
         HttpDelete httpDelete = new HttpDelete(url);
         try {
             HttpResponse response = httpClient.execute(httpDelete);
             // Signal the http client library that we're done with this response object, allowing connection reuse.
             EntityUtils.consumeQuietly(response.getEntity());
             if (response.getStatusLine().getStatusCode() == 200) {
-                LOG.info("Successfully deleted task {}.", clusterRequest.taskId);
+                LOG.info("Successfully deleted tasks {}.", ids);
             } else {
-                LOG.info("Failed to delete task {} ({}).", clusterRequest.taskId, response.getStatusLine());
+                LOG.info("Failed to delete tasks {} ({}).", ids, response.getStatusLine());
             }
         } catch (Exception e) {
-            LOG.warn("Failed to delete task {}", clusterRequest.taskId, e);
+            LOG.warn("Failed to delete tasks {}", ids, e);
         }
     }
 
@@ -605,7 +798,9 @@ public class AnalystWorker implements Runnable {
 
     /** log queue status */
     private void logQueueStatus() {
-        LOG.info("Waiting tasks: high priority: {}, batch: {}", highPriorityExecutor.getQueue().size(), batchExecutor.getQueue().size());
+        LOG.info("Waiting tasks: high priority: {}, batch: {} (target {}), upload: {}",
+                highPriorityExecutor.getQueue().size(), batchExecutor.getQueue().size(), targetBufferLength(),
+                uploadExecutor.getQueue().size());
     }
 
     /**
@@ -619,6 +814,8 @@ public class AnalystWorker implements Runnable {
      * auto-shutdown                Should this worker shut down its machine if it is idle (e.g. on throwaway cloud instances)
      * statistics-queue             SQS queue to which to send statistics (optional)
      * initial-graph-id             The graph ID for this worker to start on
+     * dry-run-failure-rate         If set, don't compute anything and fail this percentage of tasks (for testing)
+     * batch-threads                Number of threads computing batch tasks, default one per processor
      */
     public static void main(String[] args) {
         LOG.info("Starting analyst worker");
@@ -0,0 +1,129 @@
+package org.opentripplanner.analyst.cluster;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.io.FileUtils;
+import org.opentripplanner.analyst.PointSet;
+import org.opentripplanner.analyst.SampleSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Links PointSets to graphs, keeping the resulting SampleSets in memory and on local disk.
+ *
+ * Linking a large PointSet is slow, so the results are saved under the fingerprint of the graph they were linked
+ * against (see Graph.getFingerprint()) and the point set ID. A worker that loads the same graph again, possibly after a
+ * restart, will reuse them instead of linking again. Because the key contains the build time and a hash of the content
+ * of the graph, a rebuilt graph never gets a stale SampleSet. A worker sticks to one graph, so when a graph is used for
+ * the first time the SampleSets saved for the graphs not used since this datastore was created are deleted.
+ */
+public class SampleSetDatastore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SampleSetDatastore.class);
+
+    private static final File SAMPLE_DIR = new File("cache", "samplesets");
+
+    private final File directory;
+
+    private final Cache<String, SampleSet> sampleSets;
+
+    /** The fingerprints of the graphs used since this datastore was created, whose SampleSets are kept on disk. */
+    private final Set<String> graphFingerprints = new HashSet<>();
+
+    public SampleSetDatastore (int maxCacheSize) {
+        this(maxCacheSize, SAMPLE_DIR);
+    }
+
+    public SampleSetDatastore (int maxCacheSize, File directory) {
+        this.directory = directory;
+        this.sampleSets = CacheBuilder.newBuilder()
+                .maximumSize(maxCacheSize)
+                .build();
+    }
+
+    /**
+     * Get the SampleSet for the given PointSet and graph, loading it from disk or linking it as needed.
+     * Concurrent calls for the same key will only link once.
+     */
+    public SampleSet get (String pointSetId, PointSet pointSet, Graph graph) {
+        String key = String.join("_", graph.getFingerprint(), pointSetId);
+        deleteOtherGraphs(graph.getFingerprint());
+        try {
+            return sampleSets.get(key, () -> loadOrLink(key, pointSet, graph));
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to link point set " + pointSetId, e.getCause());
+        }
+    }
+
+    private SampleSet loadOrLink (String key, PointSet pointSet, Graph graph) {
+        File cachedFile = new File(directory, key + ".samples");
+
+        if (cachedFile.exists()) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(cachedFile))) {
+                SampleSet sampleSet = SampleSet.read(in, pointSet, graph);
+                if (sampleSet != null) {
+                    LOG.info("Loaded linked point set from {}", cachedFile);
+                    return sampleSet;
+                }
+                LOG.warn("Linked point set {} does not match graph or point set, relinking.", cachedFile);
+            } catch (Exception e) {
+                LOG.warn("Could not read linked point set {}, relinking.", cachedFile, e);
+            }
+        }
+
+        long startTime = System.currentTimeMillis();
+        SampleSet sampleSet = new SampleSet(pointSet, graph.getSampleFactory());
+        LOG.info("Linked {} points in {} ms", pointSet.capacity, System.currentTimeMillis() - startTime);
+
+        // Write to a temporary file and rename, so a partially written file is never picked up by another worker.
+        directory.mkdirs();
+        File tempFile = new File(directory, key + ".samples.tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+            sampleSet.write(out, graph);
+        } catch (Exception e) {
+            LOG.warn("Could not save linked point set to {}", tempFile, e);
+            tempFile.delete();
+            return sampleSet;
+        }
+        if (!tempFile.renameTo(cachedFile)) {
+            LOG.warn("Could not move linked point set to {}", cachedFile);
+            tempFile.delete();
+        }
+        return sampleSet;
+    }
+
+    /**
+     * When a graph is used for the first time, delete the saved SampleSets of the graphs which have not been used
+     * since this datastore was created, including files left over by interrupted writes.
+     */
+    private synchronized void deleteOtherGraphs (String fingerprint) {
+        if (!graphFingerprints.add(fingerprint)) {
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            int separator = name.indexOf('_');
+            if (separator < 0 || !graphFingerprints.contains(name.substring(0, separator))) {
+                LOG.info("Deleting linked point set {} of another graph", file);
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+}
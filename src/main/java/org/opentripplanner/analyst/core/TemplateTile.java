@@ -24,45 +24,73 @@ import org.opentripplanner.routing.graph.Graph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.stream.IntStream;
+
 public class TemplateTile extends Tile {
 
     private static final Logger LOG = LoggerFactory.getLogger(TemplateTile.class);
     Sample[] samples;
+
+    /** False if some of the pixels could not be sampled, in which case the tile must not be cached. */
+    private volatile boolean complete = true;
     
+    /**
+     * Sample the graph at the center of each pixel of the tile. The rows of pixels are sampled in parallel bands.
+     */
     public TemplateTile(TileRequest req, Graph graph) {
         super(req);
         this.samples = new Sample[width * height];
         CoordinateReferenceSystem crs = gg.getCoordinateReferenceSystem2D(); 
-        int i = 0;
+        int nBands = (height + ROWS_PER_BAND - 1) / ROWS_PER_BAND;
+        SampleSource sampleSource = graph.getSampleFactory();
         try {
             MathTransform tr = CRS.findMathTransform(crs, DefaultGeographicCRS.WGS84);
-            // grid coordinate object to be reused for examining each cell 
-            GridCoordinates2D coord = new GridCoordinates2D();
-            for (int gy = 0; gy < height; gy++) {
-                if (gy % 100 == 0)
-                    LOG.trace("raster line {} / {}", gy, height);
-                for (int gx = 0; gx < width; gx++) {
-                    coord.x = gx;
-                    coord.y = gy;
-                    // find coordinates for current raster cell in tile CRS
-                    DirectPosition sourcePos = gg.gridToWorld(coord);
-                    // convert coordinates in tile CRS to WGS84
-                    //LOG.debug("world : {}", sourcePos);
-                    tr.transform(sourcePos, sourcePos);
-                    //LOG.debug("wgs84 : {}", sourcePos);
-                    // axis order can vary
-                    double lon = sourcePos.getOrdinate(0);
-                    double lat = sourcePos.getOrdinate(1);
-                    // TODO: axes are reversed in the default mathtransform
-                    Sample s = graph.getSampleFactory().getSample(lon, lat);
-                    samples[i++] = s;
+            IntStream.range(0, nBands).parallel().forEach(band -> {
+                // grid coordinate object to be reused for examining each cell of the band
+                GridCoordinates2D coord = new GridCoordinates2D();
+                int y1 = Math.min((band + 1) * ROWS_PER_BAND, height);
+                try {
+                    for (int gy = band * ROWS_PER_BAND; gy < y1; gy++) {
+                        int i = gy * width;
+                        for (int gx = 0; gx < width; gx++) {
+                            coord.x = gx;
+                            coord.y = gy;
+                            // find coordinates for current raster cell in tile CRS
+                            DirectPosition sourcePos = gg.gridToWorld(coord);
+                            // convert coordinates in tile CRS to WGS84
+                            tr.transform(sourcePos, sourcePos);
+                            // axis order can vary
+                            double lon = sourcePos.getOrdinate(0);
+                            double lat = sourcePos.getOrdinate(1);
+                            // TODO: axes are reversed in the default mathtransform
+                            Sample s = sampleSource.getSample(lon, lat);
+                            samples[i++] = s;
+                        }
+                    }
+                } catch (Exception e) {
+                    complete = false;
+                    LOG.error("Could not sample rows {} to {} of template tile", band * ROWS_PER_BAND, y1, e);
                 }
-            }
+            });
         } catch (Exception e) {
+            complete = false;
             LOG.error("Could not create template tile", e);
         }
     }
+
+    /** Create a tile from samples computed earlier, eg. loaded from disk. */
+    public TemplateTile(TileRequest req, Sample[] samples) {
+        super(req);
+        if (samples.length != width * height)
+            throw new IllegalArgumentException("Expected " + width * height + " samples, got " + samples.length);
+        this.samples = samples;
+    }
     
+    /** @return True if every pixel of the tile was sampled, even if some of them are not near the street network. */
+    public boolean isComplete() {
+        return complete;
+    }
+
     public Sample[] getSamples() {
         return this.samples;
     }
@@ -22,6 +22,7 @@ import java.awt.image.WritableRaster;
 import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridCoverageFactory;
@@ -268,12 +269,33 @@ public abstract class Tile {
     
     final byte UNREACHABLE = Byte.MIN_VALUE;
 
+    /** The number of rows of pixels evaluated by a single task when filling in an image. */
+    static final int ROWS_PER_BAND = 16;
+
+    /** Computes the value of a pixel from its sample, which may be null. */
+    private interface PixelFunction {
+        byte pixel(Sample s);
+    }
+
+    /**
+     * Fill in the pixels of an image from the samples of this tile, in bands of rows evaluated in parallel.
+     */
+    private void fillPixels(byte[] imagePixelData, PixelFunction function) {
+        Sample[] samples = getSamples();
+        int nBands = (height + ROWS_PER_BAND - 1) / ROWS_PER_BAND;
+        IntStream.range(0, nBands).parallel().forEach(band -> {
+            int end = Math.min((band + 1) * ROWS_PER_BAND, height) * width;
+            for (int i = band * ROWS_PER_BAND * width; i < end; i++) {
+                imagePixelData[i] = function.pixel(samples[i]);
+            }
+        });
+    }
+
     public BufferedImage generateImage(TimeSurface surf, RenderRequest renderRequest) {
         long t0 = System.currentTimeMillis();
         BufferedImage image = getEmptyImage(renderRequest.style);
         byte[] imagePixelData = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
-        int i = 0;
-        for (Sample s : getSamples()) {
+        fillPixels(imagePixelData, s -> {
             byte pixel;
             if (s != null) {
                 if (renderRequest.style == Style.BOARDINGS) {
@@ -294,9 +316,8 @@ public abstract class Tile {
             } else {
                 pixel = UNREACHABLE;
             }
-            imagePixelData[i] = pixel;
-            i++;
-        }
+            return pixel;
+        });
         long t1 = System.currentTimeMillis();
         LOG.debug("filled in tile image from SPT in {}msec", t1 - t0);
         return image;
@@ -309,8 +330,7 @@ public abstract class Tile {
         long t0 = System.currentTimeMillis();
         BufferedImage image = getEmptyImage(renderRequest.style);
         byte[] imagePixelData = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
-        int i = 0;
-        for (Sample s : getSamples()) {
+        fillPixels(imagePixelData, s -> {
             byte pixel = UNREACHABLE;
             if (s != null) {
                 long t1 = s.eval(surfA);
@@ -324,9 +344,8 @@ public abstract class Tile {
                     pixel = (byte) t;
                 }
             }
-            imagePixelData[i] = pixel;
-            i++;
-        }
+            return pixel;
+        });
         long t1 = System.currentTimeMillis();
         LOG.debug("filled in tile image from SPT in {}msec", t1 - t0);
         return image;
@@ -0,0 +1,355 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.analyst.request;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
+import org.opentripplanner.analyst.request.SampleGridRenderer.WTWDAccumulativeMetric;
+import org.opentripplanner.common.geometry.DelaunayTriangulation;
+import org.opentripplanner.common.geometry.SparseMatrixZSampleGrid;
+import org.opentripplanner.common.geometry.ZSampleGrid;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+/**
+ * A ZSampleGrid of WTWD values stored in primitive arrays covering a rectangle of cells, which
+ * grows as needed. Samples are accumulated without allocating a WTWD per cell, which makes it a
+ * good fit for sampling a compact area, eg one tile of a SPT, before merging the result into a
+ * sparse grid with mergeInto().
+ *
+ * The ZSampleGrid view allocates a point and a WTWD for each access, so it is not meant to be
+ * used intensively. It uses the same indexing as SparseMatrixZSampleGrid.
+ */
+public class DenseWTWDGrid implements ZSampleGrid<WTWD> {
+
+    private static final int INITIAL_SIZE = 64;
+
+    private final double dX, dY;
+
+    private final Coordinate center;
+
+    /* The rectangle of cells covered by the arrays. */
+    private int x0, y0, width = 0, height = 0;
+
+    private double[] w = new double[0], wTime = w, wBoardings = w, wWalkDist = w, d = w;
+
+    private BitSet present = new BitSet();
+
+    private int xMin = Integer.MAX_VALUE, xMax = Integer.MIN_VALUE, yMin = Integer.MAX_VALUE,
+            yMax = Integer.MIN_VALUE;
+
+    private int size = 0;
+
+    /**
+     * @param dX X grid size, same units as center coordinates.
+     * @param dY Y grid size, same units as center coordinates.
+     * @param center Center position of the grid.
+     */
+    public DenseWTWDGrid(double dX, double dY, Coordinate center) {
+        this.dX = dX;
+        this.dY = dY;
+        this.center = center;
+    }
+
+    /**
+     * Add a sample to the four corners of the cell enclosing C0, weighted the same way as
+     * WTWDAccumulativeMetric.cumulateSample does.
+     *
+     * @param t The time at C0, in seconds.
+     * @param b The number of boardings at C0.
+     * @param wd The walk distance at C0, in meters.
+     */
+    public void addSamplingPoint(Coordinate C0, double t, double b, double wd,
+            double offRoadSpeed, WTWDAccumulativeMetric metric) {
+        int[] xy = getLowerLeftIndex(C0);
+        for (int dx = 0; dx <= 1; dx++) {
+            for (int dy = 0; dy <= 1; dy++) {
+                int x = xy[0] + dx, y = xy[1] + dy;
+                int i = create(x, y);
+                double dist = metric.distance(C0, getCoordinates(x, y));
+                double weight = metric.weight(dist);
+                w[i] += weight;
+                wTime[i] += weight * (t + dist / offRoadSpeed);
+                wBoardings[i] += weight * b;
+                wWalkDist[i] += weight * (wd + dist);
+                if (dist < d[i])
+                    d[i] = dist;
+            }
+        }
+    }
+
+    /**
+     * Add the samples of this grid to another grid with the same cell size and center, combining
+     * them with any samples it already has.
+     */
+    public void mergeInto(ZSampleGrid<WTWD> target) {
+        for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1)) {
+            if (w[i] == 0 && d[i] == Double.MAX_VALUE)
+                continue; // Created but never set
+            ZSamplePoint<WTWD> point = target.getOrCreate(x0 + i % width, y0 + i / width);
+            WTWD z = point.getZ();
+            if (z == null) {
+                z = new WTWD();
+                z.d = Double.MAX_VALUE;
+                point.setZ(z);
+            }
+            z.w += w[i];
+            z.wTime += wTime[i];
+            z.wBoardings += wBoardings[i];
+            z.wWalkDist += wWalkDist[i];
+            if (d[i] < z.d)
+                z.d = d[i];
+        }
+    }
+
+    /** @return The index of the cell (x,y) in the arrays, creating it if needed. */
+    private int create(int x, int y) {
+        if (x < x0 || x >= x0 + width || y < y0 || y >= y0 + height)
+            grow(x, y);
+        int i = index(x, y);
+        if (!present.get(i)) {
+            present.set(i);
+            size++;
+            xMin = Math.min(xMin, x);
+            xMax = Math.max(xMax, x);
+            yMin = Math.min(yMin, y);
+            yMax = Math.max(yMax, y);
+        }
+        return i;
+    }
+
+    private int index(int x, int y) {
+        return (y - y0) * width + (x - x0);
+    }
+
+    private boolean isPresent(int x, int y) {
+        return x >= x0 && x < x0 + width && y >= y0 && y < y0 + height && present.get(index(x, y));
+    }
+
+    /** Reallocate the arrays to cover (x,y), at least doubling the size in the direction of growth. */
+    private void grow(int x, int y) {
+        int newX0, newY0, newWidth, newHeight;
+        if (width == 0) {
+            newX0 = x - INITIAL_SIZE / 2;
+            newY0 = y - INITIAL_SIZE / 2;
+            newWidth = newHeight = INITIAL_SIZE;
+        } else {
+            newX0 = Math.min(x0, x < x0 ? x0 - width : x0);
+            newY0 = Math.min(y0, y < y0 ? y0 - height : y0);
+            int newX1 = Math.max(x0 + width, x >= x0 + width ? x0 + 2 * width : x0 + width);
+            int newY1 = Math.max(y0 + height, y >= y0 + height ? y0 + 2 * height : y0 + height);
+            // Make sure a far away point is covered
+            newX0 = Math.min(newX0, x);
+            newY0 = Math.min(newY0, y);
+            newX1 = Math.max(newX1, x + 1);
+            newY1 = Math.max(newY1, y + 1);
+            newWidth = newX1 - newX0;
+            newHeight = newY1 - newY0;
+        }
+        int n = newWidth * newHeight;
+        double[] newW = new double[n], newWTime = new double[n], newWBoardings = new double[n],
+                newWWalkDist = new double[n], newD = new double[n];
+        Arrays.fill(newD, Double.MAX_VALUE);
+        BitSet newPresent = new BitSet(n);
+        for (int j = 0; j < height; j++) {
+            int from = j * width;
+            int to = (y0 + j - newY0) * newWidth + (x0 - newX0);
+            System.arraycopy(w, from, newW, to, width);
+            System.arraycopy(wTime, from, newWTime, to, width);
+            System.arraycopy(wBoardings, from, newWBoardings, to, width);
+            System.arraycopy(wWalkDist, from, newWWalkDist, to, width);
+            System.arraycopy(d, from, newD, to, width);
+            for (int i = present.nextSetBit(from); i >= 0 && i < from + width; i = present
+                    .nextSetBit(i + 1)) {
+                newPresent.set(to + i - from);
+            }
+        }
+        w = newW;
+        wTime = newWTime;
+        wBoardings = newWBoardings;
+        wWalkDist = newWWalkDist;
+        d = newD;
+        present = newPresent;
+        x0 = newX0;
+        y0 = newY0;
+        width = newWidth;
+        height = newHeight;
+    }
+
+    private Coordinate getCoordinates(int x, int y) {
+        return new Coordinate(x * dX + center.x, y * dY + center.y);
+    }
+
+    /** A view of one cell of the grid. */
+    private class DenseSamplePoint implements ZSamplePoint<WTWD> {
+
+        private final int x, y;
+
+        private DenseSamplePoint(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public int getX() {
+            return x;
+        }
+
+        @Override
+        public int getY() {
+            return y;
+        }
+
+        /** @return A copy of the value of this cell, null if it has never been set. */
+        @Override
+        public WTWD getZ() {
+            int i = index(x, y);
+            if (w[i] == 0 && d[i] == Double.MAX_VALUE)
+                return null;
+            WTWD z = new WTWD();
+            z.w = w[i];
+            z.wTime = wTime[i];
+            z.wBoardings = wBoardings[i];
+            z.wWalkDist = wWalkDist[i];
+            z.d = d[i];
+            return z;
+        }
+
+        @Override
+        public void setZ(WTWD z) {
+            int i = index(x, y);
+            w[i] = z == null ? 0 : z.w;
+            wTime[i] = z == null ? 0 : z.wTime;
+            wBoardings[i] = z == null ? 0 : z.wBoardings;
+            wWalkDist[i] = z == null ? 0 : z.wWalkDist;
+            d[i] = z == null ? Double.MAX_VALUE : z.d;
+        }
+
+        @Override
+        public ZSamplePoint<WTWD> up() {
+            return isPresent(x, y + 1) ? new DenseSamplePoint(x, y + 1) : null;
+        }
+
+        @Override
+        public ZSamplePoint<WTWD> down() {
+            return isPresent(x, y - 1) ? new DenseSamplePoint(x, y - 1) : null;
+        }
+
+        @Override
+        public ZSamplePoint<WTWD> right() {
+            return isPresent(x + 1, y) ? new DenseSamplePoint(x + 1, y) : null;
+        }
+
+        @Override
+        public ZSamplePoint<WTWD> left() {
+            return isPresent(x - 1, y) ? new DenseSamplePoint(x - 1, y) : null;
+        }
+    }
+
+    @Override
+    public ZSamplePoint<WTWD> getOrCreate(int x, int y) {
+        create(x, y);
+        return new DenseSamplePoint(x, y);
+    }
+
+    @Override
+    public Iterator<ZSamplePoint<WTWD>> iterator() {
+        return new Iterator<ZSamplePoint<WTWD>>() {
+
+            private int next = present.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public ZSamplePoint<WTWD> next() {
+                if (next < 0)
+                    throw new NoSuchElementException();
+                ZSamplePoint<WTWD> point = new DenseSamplePoint(x0 + next % width, y0 + next
+                        / width);
+                next = present.nextSetBit(next + 1);
+                return point;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public Coordinate getCoordinates(ZSamplePoint<WTWD> point) {
+        return getCoordinates(point.getX(), point.getY());
+    }
+
+    @Override
+    public int[] getLowerLeftIndex(Coordinate C) {
+        return new int[] { (int) Math.round((C.x - center.x - dX / 2) / dX),
+                (int) Math.round((C.y - center.y - dY / 2) / dY) };
+    }
+
+    @Override
+    public Coordinate getCenter() {
+        return center;
+    }
+
+    @Override
+    public Coordinate getCellSize() {
+        return new Coordinate(dX, dY);
+    }
+
+    @Override
+    public int getXMin() {
+        return xMin;
+    }
+
+    @Override
+    public int getXMax() {
+        return xMax;
+    }
+
+    @Override
+    public int getYMin() {
+        return yMin;
+    }
+
+    @Override
+    public int getYMax() {
+        return yMax;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The triangulation is built on a sparse copy of this grid, as the triangulation edges are
+     * objects anyway.
+     */
+    @Override
+    public DelaunayTriangulation<WTWD> delaunayTriangulate() {
+        SparseMatrixZSampleGrid<WTWD> sparse = new SparseMatrixZSampleGrid<WTWD>(16, size, dX,
+                dY, center);
+        mergeInto(sparse);
+        return sparse.delaunayTriangulate();
+    }
+}
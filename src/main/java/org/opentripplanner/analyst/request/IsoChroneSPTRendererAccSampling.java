@@ -25,6 +25,8 @@ import org.opentripplanner.routing.core.RoutingRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.vividsolutions.jts.geom.Geometry;
+
 /**
  * Compute isochrones out of a shortest path tree request (AccSampling isoline algorithm).
  * 
@@ -97,16 +99,22 @@ public class IsoChroneSPTRendererAccSampling implements IsoChroneSPTRenderer {
                 sampleGrid.delaunayTriangulate(), zMetric);
         isolineBuilder.setDebug(isoChroneRequest.includeDebugGeometry);
 
-        List<IsochroneData> isochrones = new ArrayList<IsochroneData>();
+        List<WTWD> z0s = new ArrayList<WTWD>(isoChroneRequest.cutoffSecList.size());
         for (Integer cutoffSec : isoChroneRequest.cutoffSecList) {
             WTWD z0 = new WTWD();
             z0.w = 1.0;
             z0.wTime = cutoffSec;
             z0.d = offRoadDistanceMeters;
-            IsochroneData isochrone = new IsochroneData(cutoffSec,
-                    isolineBuilder.computeIsoline(z0));
+            z0s.add(z0);
+        }
+        List<Geometry> isolines = isolineBuilder.computeIsolines(z0s);
+
+        List<IsochroneData> isochrones = new ArrayList<IsochroneData>();
+        for (int i = 0; i < isolines.size(); i++) {
+            IsochroneData isochrone = new IsochroneData(isoChroneRequest.cutoffSecList.get(i),
+                    isolines.get(i));
             if (isoChroneRequest.includeDebugGeometry)
-                isochrone.debugGeometry = isolineBuilder.getDebugGeometry();
+                isochrone.debugGeometry = isolineBuilder.getDebugGeometries().get(i);
             isochrones.add(isochrone);
         }
 
@@ -33,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
 
 /**
  * Compute isochrones out of a shortest path tree request (RecursiveGrid isoline algorithm).
@@ -101,10 +102,16 @@ public class IsoChroneSPTRendererRecursiveGrid implements IsoChroneSPTRenderer {
                 center, timeFunc, initialPoints);
         isolineBuilder.setDebugCrossingEdges(isoChroneRequest.includeDebugGeometry);
         isolineBuilder.setDebugSeedGrid(isoChroneRequest.includeDebugGeometry);
+        long[] cutoffs = new long[isoChroneRequest.cutoffSecList.size()];
+        for (int i = 0; i < cutoffs.length; i++) {
+            cutoffs[i] = isoChroneRequest.cutoffSecList.get(i);
+        }
+        List<Geometry> isolines = isolineBuilder.computeIsolines(cutoffs);
+
         List<IsochroneData> isochrones = new ArrayList<IsochroneData>();
-        for (Integer cutoffSec : isoChroneRequest.cutoffSecList) {
-            IsochroneData isochrone = new IsochroneData(cutoffSec,
-                    isolineBuilder.computeIsoline(cutoffSec));
+        for (int i = 0; i < isolines.size(); i++) {
+            IsochroneData isochrone = new IsochroneData(isoChroneRequest.cutoffSecList.get(i),
+                    isolines.get(i));
             if (isoChroneRequest.includeDebugGeometry)
                 isochrone.debugGeometry = isolineBuilder.getDebugGeometry();
             isochrones.add(isochrone);
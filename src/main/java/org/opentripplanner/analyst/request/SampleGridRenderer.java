@@ -20,7 +20,6 @@ import java.util.List;
 
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.common.geometry.AccumulativeGridSampler;
-import org.opentripplanner.common.geometry.AccumulativeGridSampler.AccumulativeMetric;
 import org.opentripplanner.common.geometry.ZSampleGrid.ZSamplePoint;
 import org.opentripplanner.common.geometry.IsolineBuilder;
 import org.opentripplanner.common.geometry.SparseMatrixZSampleGrid;
@@ -105,55 +104,85 @@ public class SampleGridRenderer {
         return sampleGrid;
     }
 
+    /** Side of the tiles in which the SPT is split for sampling, in grid cells. */
+    private static final int TILE_SIZE_CELLS = 64;
+
     /**
      * Sample a SPT using a SPTWalker and an AccumulativeGridSampler.
+     * 
+     * The SPT is split in tiles which are sampled in parallel, each one into its own DenseWTWDGrid.
+     * The tile grids are then merged into the sample grid, in an order which does not depend on
+     * the scheduling of the threads, before closing it.
      */
     public static void sampleSPT(final ShortestPathTree spt, ZSampleGrid<WTWD> sampleGrid,
             final double gridSizeMeters, final double offRoadDistanceMeters, final double offRoadWalkSpeedMps,
             final double maxWalkDistance, final int maxTimeSec, final double cosLat) {
 
-        AccumulativeMetric<WTWD> accMetric = new WTWDAccumulativeMetric(cosLat, offRoadDistanceMeters, offRoadWalkSpeedMps, gridSizeMeters);
+        WTWDAccumulativeMetric accMetric = new WTWDAccumulativeMetric(cosLat, offRoadDistanceMeters, offRoadWalkSpeedMps, gridSizeMeters);
         final AccumulativeGridSampler<WTWD> gridSampler = new AccumulativeGridSampler<WTWD>(sampleGrid, accMetric);
 
         // At which distance we split edges along the geometry during sampling.
         // For best results, this should be slighly lower than the grid size.
         double walkerSplitDistanceMeters = gridSizeMeters * 0.5;
 
+        Coordinate cellSize = sampleGrid.getCellSize();
+        Coordinate tileSize = new Coordinate(cellSize.x * TILE_SIZE_CELLS, cellSize.y * TILE_SIZE_CELLS);
         SPTWalker johnny = new SPTWalker(spt);
-        johnny.walk(new SPTVisitor() {
-            @Override
-            public final boolean accept(Edge e) {
-                return e instanceof StreetEdge;
-            }
+        List<TileSampler> tiles = johnny.walkTiles(
+                () -> new TileSampler(new DenseWTWDGrid(cellSize.x, cellSize.y, sampleGrid.getCenter()),
+                        accMetric, offRoadWalkSpeedMps, maxWalkDistance, maxTimeSec),
+                walkerSplitDistanceMeters, tileSize);
+        for (TileSampler tile : tiles) {
+            tile.grid.mergeInto(sampleGrid);
+        }
+        gridSampler.close();
+    }
 
-            @Override
-            public final void visit(Edge e, Coordinate c, State s0, State s1, double d0, double d1, double speedAlongEdge) {
-                double wd0 = s0.getWalkDistance() + d0;
-                double wd1 = s0.getWalkDistance() + d1;
-                double t0 = wd0 > maxWalkDistance ? Double.POSITIVE_INFINITY : s0.getActiveTime()
-                        + d0 / speedAlongEdge;
-                double t1 = wd1 > maxWalkDistance ? Double.POSITIVE_INFINITY : s1.getActiveTime()
-                        + d1 / speedAlongEdge;
-                if (t0 < maxTimeSec || t1 < maxTimeSec) {
-                    if (!Double.isInfinite(t0) || !Double.isInfinite(t1)) {
-                        WTWD z = new WTWD();
-                        z.w = 1.0;
-                        z.d = 0.0;
-                        if (t0 < t1) {
-                            z.wTime = t0;
-                            z.wBoardings = s0.getNumBoardings();
-                            z.wWalkDist = s0.getWalkDistance() + d0;
-                        } else {
-                            z.wTime = t1;
-                            z.wBoardings = s1.getNumBoardings();
-                            z.wWalkDist = s1.getWalkDistance() + d1;
-                        }
-                        gridSampler.addSamplingPoint(c, z, offRoadWalkSpeedMps);
+    /** Samples the points of the SPT in one tile into a grid of its own. */
+    private static class TileSampler implements SPTVisitor {
+
+        private final DenseWTWDGrid grid;
+
+        private final WTWDAccumulativeMetric metric;
+
+        private final double offRoadWalkSpeedMps, maxWalkDistance;
+
+        private final int maxTimeSec;
+
+        private TileSampler(DenseWTWDGrid grid, WTWDAccumulativeMetric metric,
+                double offRoadWalkSpeedMps, double maxWalkDistance, int maxTimeSec) {
+            this.grid = grid;
+            this.metric = metric;
+            this.offRoadWalkSpeedMps = offRoadWalkSpeedMps;
+            this.maxWalkDistance = maxWalkDistance;
+            this.maxTimeSec = maxTimeSec;
+        }
+
+        @Override
+        public final boolean accept(Edge e) {
+            return e instanceof StreetEdge;
+        }
+
+        @Override
+        public final void visit(Edge e, Coordinate c, State s0, State s1, double d0, double d1, double speedAlongEdge) {
+            double wd0 = s0.getWalkDistance() + d0;
+            double wd1 = s0.getWalkDistance() + d1;
+            double t0 = wd0 > maxWalkDistance ? Double.POSITIVE_INFINITY : s0.getActiveTime()
+                    + d0 / speedAlongEdge;
+            double t1 = wd1 > maxWalkDistance ? Double.POSITIVE_INFINITY : s1.getActiveTime()
+                    + d1 / speedAlongEdge;
+            if (t0 < maxTimeSec || t1 < maxTimeSec) {
+                if (!Double.isInfinite(t0) || !Double.isInfinite(t1)) {
+                    if (t0 < t1) {
+                        grid.addSamplingPoint(c, t0, s0.getNumBoardings(), s0.getWalkDistance() + d0,
+                                offRoadWalkSpeedMps, metric);
+                    } else {
+                        grid.addSamplingPoint(c, t1, s1.getNumBoardings(), s1.getWalkDistance() + d1,
+                                offRoadWalkSpeedMps, metric);
                     }
                 }
             }
-        }, walkerSplitDistanceMeters);
-        gridSampler.close();
+        }
     }
 
     /**
@@ -238,20 +267,29 @@ public class SampleGridRenderer {
             this.gridSizeMeters = gridSizeMeters;
         }
 
+        /** @return The distance in meters between a sample and a grid point. */
+        public double distance(Coordinate C0, Coordinate Cs) {
+            return SphericalDistanceLibrary.fastDistance(C0, Cs, cosLat);
+        }
+
+        /**
+         * Compute weight for time. The weight function to distance here is somehow arbitrary.
+         * It only purpose is to weight the samples when there is various samples within the
+         * same "cell", giving more weight to the closests samples to the cell center.
+         */
+        public double weight(double d) {
+            return 1 / ((d + gridSizeMeters) * (d + gridSizeMeters));
+        }
+
         @Override
         public WTWD cumulateSample(Coordinate C0, Coordinate Cs, WTWD z, WTWD zS, double offRoadSpeed) {
             double t = z.wTime / z.w;
             double b = z.wBoardings / z.w;
             double wd = z.wWalkDist / z.w;
-            double d = SphericalDistanceLibrary.fastDistance(C0, Cs, cosLat);
+            double d = distance(C0, Cs);
             // additionnal time
             double dt = d / offRoadSpeed;
-            /*
-             * Compute weight for time. The weight function to distance here is somehow arbitrary.
-             * It only purpose is to weight the samples when there is various samples within the
-             * same "cell", giving more weight to the closests samples to the cell center.
-             */
-            double w = 1 / ((d + gridSizeMeters) * (d + gridSizeMeters));
+            double w = weight(d);
             if (zS == null) {
                 zS = new WTWD();
                 zS.d = Double.MAX_VALUE;
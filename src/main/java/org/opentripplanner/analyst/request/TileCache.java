@@ -13,41 +13,140 @@
 
 package org.opentripplanner.analyst.request;
 
+import org.apache.commons.io.FileUtils;
+import org.geotools.referencing.CRS;
+import org.opentripplanner.analyst.core.Sample;
 import org.opentripplanner.analyst.core.TemplateTile;
 import org.opentripplanner.analyst.core.Tile;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Charsets;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A cache of analyst tiles, ie. of the samples of the graph at each pixel of a tile, bounded in memory by the
+ * approximate size of the tiles in bytes and optionally backed by a directory on disk.
+ *
+ * The samples only depend on the graph, not on the surfaces rendered with them, so they can be saved and reused across
+ * restarts. As for the inspector tiles, the tiles on disk are stored under a directory named after the fingerprint of
+ * the graph (see Graph.getFingerprint()) and the tiles of any other graph are deleted when the cache is created. The
+ * fingerprint changes when the geometries or attributes of the graph change, but not when its vertex indices do.
+ *
+ * A tile some pixels of which could not be sampled is neither saved nor kept in memory, so that it is sampled again
+ * when it is next requested.
+ */
+public class TileCache extends CacheLoader<TileRequest, Tile>
+    implements  Weigher<TileRequest, Tile> {
 
-public class TileCache extends CacheLoader<TileRequest, Tile> 
-    implements  Weigher<TileRequest, Tile> { 
-    
     private static final Logger LOG = LoggerFactory.getLogger(TileCache.class);
 
+    /** The version of the format of the tiles on disk, to be increased when the format changes. */
+    private static final int FILE_VERSION = 2;
+
+    /** The default size of the tiles kept in memory. */
+    public static final long DEFAULT_MAX_BYTES = 256 * 1024 * 1024;
+
+    /** Approximate sizes of a reference in the samples array, and of a sample itself. */
+    private static final int REFERENCE_BYTES = 8, SAMPLE_BYTES = 40;
+
     private Graph graph;
 
+    /** Where to save the samples, or null to keep them in memory only. */
+    private final File directory;
+
     public TileCache(Graph graph) {
+        this(graph, null, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param rootDirectory the directory in which to save the tiles of all graphs, or null to keep tiles in memory
+     *        only.
+     * @param maxBytes the approximate number of bytes of tiles to keep in memory.
+     */
+    public TileCache(Graph graph, File rootDirectory, long maxBytes) {
         this.graph = graph;
         this.tileCache = CacheBuilder.newBuilder()
                 .concurrencyLevel(concurrency)
-                .maximumSize(size)
+                .maximumWeight(maxBytes)
+                .weigher(this)
                 .build(this);
+
+        if (rootDirectory == null) {
+            this.directory = null;
+            return;
+        }
+        this.directory = new File(rootDirectory, graph.getFingerprint());
+        File[] others = rootDirectory.listFiles();
+        if (others != null) {
+            for (File other : others) {
+                if (other.isDirectory() && !other.equals(directory)) {
+                    LOG.info("Deleting analyst tiles of another graph in {}", other);
+                    FileUtils.deleteQuietly(other);
+                }
+            }
+        }
     }
 
     private LoadingCache<TileRequest, Tile> tileCache;
-    public int size = 200;
     public int concurrency = 16;
 
     @Override
     /** completes the abstract CacheLoader superclass */
     public Tile load(TileRequest req) throws Exception {
         LOG.debug("tile cache miss; cache size is {}", this.tileCache.size());
-        return new TemplateTile(req, graph);
+        if (directory == null)
+            return new TemplateTile(req, graph);
+
+        String key = fileKey(req);
+        File file = new File(directory, Hashing.sha1().hashString(key, Charsets.UTF_8).toString() + ".samples");
+        if (file.exists()) {
+            try {
+                Sample[] samples = readSamples(file, key, req.width * req.height);
+                if (samples != null)
+                    return new TemplateTile(req, samples);
+            } catch (IOException e) {
+                LOG.warn("Could not read cached tile {}, sampling it again.", file, e);
+            }
+        }
+
+        TemplateTile tile = new TemplateTile(req, graph);
+        if (!tile.isComplete()) {
+            LOG.warn("Not saving tile {}, some of its pixels could not be sampled.", file);
+            return tile;
+        }
+
+        // Write to a temporary file and rename, so a partially written tile is never read.
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        try {
+            directory.mkdirs();
+            writeSamples(tempFile, key, tile.getSamples(), graph.getVertexOrdinals());
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not save tile {}", file, e);
+            tempFile.delete();
+        }
+        return tile;
         //return new TemplateTile(req, hashSampler);
         //return new DynamicTile(req, hashSampler);
         //return new DynamicTile(req, sampleFactory);
@@ -55,12 +154,87 @@ public class TileCache extends CacheLoader<TileRequest, Tile>
 
     /** delegate to the tile LoadingCache */
     public Tile get(TileRequest req) throws Exception {
-        return tileCache.get(req);
+        Tile tile = tileCache.get(req);
+        if (tile instanceof TemplateTile && !((TemplateTile) tile).isComplete()) {
+            tileCache.invalidate(req);
+        }
+        return tile;
     }
-    
+
+    /** @return An estimate of the memory used by a tile, in bytes. */
     @Override
     public int weigh(TileRequest req, Tile tile) {
-        return tile.getSamples().length;
+        Sample[] samples = tile.getSamples();
+        if (samples == null)
+            return 0;
+        long bytes = (long) samples.length * REFERENCE_BYTES;
+        for (Sample s : samples) {
+            if (s != null)
+                bytes += SAMPLE_BYTES;
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    /** @return A text identifying a tile request completely, stored in the tile file to detect hash collisions. */
+    private static String fileKey(TileRequest req) {
+        return String.format(Locale.ROOT, "%s %.9f %.9f %.9f %.9f %d %d",
+                CRS.toSRS(req.bbox.getCoordinateReferenceSystem()), req.bbox.getMinX(), req.bbox.getMinY(),
+                req.bbox.getMaxX(), req.bbox.getMaxY(), req.width, req.height);
+    }
+
+    /**
+     * Samples are saved with the positions of their vertices in Graph.getVerticesByLabel(), which unlike vertex indices
+     * are the same for all the graphs with the same fingerprint.
+     */
+    private static void writeSamples(File file, String key, Sample[] samples, int[] ordinals) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(key);
+            out.writeInt(samples.length);
+            for (Sample s : samples) {
+                out.writeBoolean(s != null);
+                if (s == null)
+                    continue;
+                out.writeInt(ordinal(ordinals, s.v0));
+                out.writeInt(s.d0);
+                out.writeInt(ordinal(ordinals, s.v1));
+                out.writeInt(s.d1);
+            }
+        }
     }
-    
+
+    /** @return The position of the vertex in Graph.getVerticesByLabel(), or -1 for no vertex or a temporary one. */
+    private static int ordinal(int[] ordinals, Vertex v) {
+        return v == null || v.getIndex() >= ordinals.length ? -1 : ordinals[v.getIndex()];
+    }
+
+    /**
+     * @return The samples saved in the file, or null if the file is for another tile, an older format or refers to
+     *         vertices that are not in the graph.
+     */
+    private Sample[] readSamples(File file, String key, int nSamples) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != FILE_VERSION || !in.readUTF().equals(key) || in.readInt() != nSamples)
+                return null;
+            Vertex[] vertices = graph.getVerticesByLabel();
+            Sample[] samples = new Sample[nSamples];
+            for (int i = 0; i < nSamples; i++) {
+                if (!in.readBoolean())
+                    continue;
+                int i0 = in.readInt();
+                int d0 = in.readInt();
+                int i1 = in.readInt();
+                int d1 = in.readInt();
+                if (i0 >= vertices.length || i1 >= vertices.length)
+                    return null;
+                Vertex v0 = i0 < 0 ? null : vertices[i0];
+                Vertex v1 = i1 < 0 ? null : vertices[i1];
+                samples[i] = new Sample(v0, d0, v1, d1);
+            }
+            return samples;
+        }
+    }
+
 }
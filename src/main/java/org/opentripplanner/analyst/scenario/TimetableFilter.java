@@ -27,7 +27,7 @@ public abstract class TimetableFilter extends Modification {
     public int[] routeType;
 
     /** Could any trip on this trip pattern possibly match this filter? */
-    protected boolean couldMatch (TripPattern pattern) {
+    public boolean couldMatch (TripPattern pattern) {
         if (!pattern.route.getAgency().getId().equals(agencyId))
             return false;
 
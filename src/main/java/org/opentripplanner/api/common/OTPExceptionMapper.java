@@ -1,5 +1,6 @@
 package org.opentripplanner.api.common;
 
+import org.opentripplanner.routing.error.RequestRejectedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,6 +13,14 @@ public class OTPExceptionMapper implements ExceptionMapper<Exception> {
     private static final Logger LOG = LoggerFactory.getLogger(OTPExceptionMapper.class);
 
     public Response toResponse(Exception ex) {
+        if (ex instanceof RequestRejectedException) {
+            // Load shedding is expected under bursts, do not fill the log with stack traces
+            LOG.debug("Request rejected: {}", ex.getMessage());
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .header("Retry-After", 1)
+                    .entity(ex.getMessage())
+                    .type("text/plain").build();
+        }
         // Show the exception in the server log
         LOG.error("Unhandled exception", ex);
         // Return the short form message to the client
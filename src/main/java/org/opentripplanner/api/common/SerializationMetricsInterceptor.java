@@ -0,0 +1,46 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.api.common;
+
+import org.opentripplanner.api.resource.Response;
+import org.opentripplanner.routing.impl.RoutingMetrics;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+
+/**
+ * Record the time spent serializing trip planning responses in the routing metrics, which happens in Jersey after the
+ * resource method has returned.
+ */
+public class SerializationMetricsInterceptor implements WriterInterceptor {
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException, WebApplicationException {
+        Object entity = context.getEntity();
+        if (!(entity instanceof Response) || ((Response) entity).routerId == null) {
+            context.proceed();
+            return;
+        }
+        Response response = (Response) entity;
+        long start = System.nanoTime();
+        try {
+            context.proceed();
+        } finally {
+            RoutingMetrics.recordPhase(RoutingMetrics.Phase.SERIALIZATION, response.routerId, response.modes,
+                    System.nanoTime() - start);
+        }
+    }
+}
@@ -13,10 +13,6 @@
 
 package org.opentripplanner.api.resource;
 
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-
-import javax.imageio.ImageIO;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -26,15 +22,13 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
-import org.geotools.geometry.Envelope2D;
-import org.opentripplanner.analyst.core.SlippyTile;
-import org.opentripplanner.analyst.request.TileRequest;
 import org.opentripplanner.api.common.RoutingResource;
 import org.opentripplanner.api.parameter.MIMEImageFormat;
 
 import static org.opentripplanner.api.resource.ServerInfo.Q;
 
 import org.opentripplanner.inspector.TileRenderer;
+import org.opentripplanner.inspector.TileRendererManager;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 
@@ -52,6 +46,9 @@ import org.opentripplanner.standalone.Router;
  *   L.control.layers(null, { "Bike safety": bikesafety }).addTo(map);
  * </pre>
  * 
+ * Tiles with the extension .pbf are Mapbox Vector Tiles containing the edges and vertices of the layer, with their
+ * color and label as attributes, so that they can be styled by the client.
+ * 
  * Tile rendering goes through TileRendererManager which select the appropriate renderer for the
  * given layer.
  * 
@@ -86,23 +83,25 @@ public class GraphInspectorTileResource extends RoutingResource {
     String ext;
 
     @GET @Path("/tile/{layer}/{z}/{x}/{y}.{ext}")
-    @Produces("image/*")
+    @Produces({ "image/*", "application/x-protobuf" })
     public Response tileGet() throws Exception {
 
-        // Re-use analyst
-        Envelope2D env = SlippyTile.tile2Envelope(x, y, z);
-        TileRequest tileRequest = new TileRequest(env, 256, 256);
-
         Router router = otpServer.getRouter(routerId);
-        BufferedImage image = router.tileRendererManager.renderTile(tileRequest, layer);
+        String type;
+        byte[] tile;
+        if (TileRendererManager.VECTOR_FORMAT.equals(ext)) {
+            type = "application/x-protobuf";
+            tile = router.tileRendererManager.getTile(x, y, z, layer, TileRendererManager.VECTOR_FORMAT);
+        } else {
+            MIMEImageFormat format = new MIMEImageFormat("image/" + ext);
+            type = format.toString();
+            tile = router.tileRendererManager.getTile(x, y, z, layer, format.type);
+        }
 
-        MIMEImageFormat format = new MIMEImageFormat("image/" + ext);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
-        ImageIO.write(image, format.type, baos);
         CacheControl cc = new CacheControl();
         cc.setMaxAge(3600);
         cc.setNoCache(false);
-        return Response.ok(baos.toByteArray()).type(format.toString()).cacheControl(cc).build();
+        return Response.ok(tile).type(type).cacheControl(cc).build();
     }
 
     /**
@@ -18,13 +18,13 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
 import org.onebusaway.gtfs.model.*;
 import org.opentripplanner.api.model.*;
+import org.opentripplanner.common.geometry.CoordinateConsumer;
 import org.opentripplanner.common.geometry.DirectionUtils;
-import org.opentripplanner.common.geometry.GeometryUtils;
-import org.opentripplanner.common.geometry.PackedCoordinateSequence;
 import org.opentripplanner.common.model.P2;
 import org.opentripplanner.profile.BikeRentalStationInfo;
 import org.opentripplanner.routing.alertpatch.Alert;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.alertpatch.AlertPatchSnapshot;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.core.*;
 import org.opentripplanner.routing.edgetype.*;
@@ -37,7 +37,8 @@ import org.opentripplanner.routing.services.FareService;
 import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.*;
-import org.opentripplanner.util.PolylineEncoder;
+import org.opentripplanner.util.StreamingPolylineEncoder;
+import org.opentripplanner.util.model.EncodedPolylineBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -184,27 +185,36 @@ public abstract class GraphPathToTripPlanConverter {
     }
 
     /**
-     * Generate a {@link CoordinateArrayListSequence} based on an {@link Edge} array.
+     * Generate an encoded polyline of the points on an {@link Edge} array. Street geometries are encoded without
+     * being uncompacted into JTS objects.
      *
      * @param edges The array of input edges
-     * @return The coordinates of the points on the edges
+     * @return The encoded coordinates of the points on the edges
      */
-    private static CoordinateArrayListSequence makeCoordinates(Edge[] edges) {
-        CoordinateArrayListSequence coordinates = new CoordinateArrayListSequence();
+    private static EncodedPolylineBean encodeGeometry(Edge[] edges) {
+        StreamingPolylineEncoder encoder = new StreamingPolylineEncoder();
 
         for (Edge edge : edges) {
-            LineString geometry = edge.getGeometry();
+            // Each geometry after the first starts where the previous one ended, avoid duplications
+            boolean skipFirst = encoder.getPointCount() > 0;
 
-            if (geometry != null) {
-                if (coordinates.size() == 0) {
-                    coordinates.extend(geometry.getCoordinates());
-                } else {
-                    coordinates.extend(geometry.getCoordinates(), 1); // Avoid duplications
+            if (edge instanceof StreetEdge) {
+                // Street geometries are encoded straight from their compacted form
+                if (skipFirst) encoder.skipNextPoint();
+                ((StreetEdge) edge).forEachGeometryCoordinate(encoder);
+            } else {
+                LineString geometry = edge.getGeometry();
+
+                if (geometry != null) {
+                    Coordinate[] coordinates = geometry.getCoordinates();
+                    for (int i = skipFirst ? 1 : 0; i < coordinates.length; i++) {
+                        encoder.accept(coordinates[i].x, coordinates[i].y);
+                    }
                 }
             }
         }
 
-        return coordinates;
+        return encoder.getEncodedPolyline();
     }
 
     /**
@@ -309,10 +319,7 @@ public abstract class GraphPathToTripPlanConverter {
 
         addPlaces(leg, states, edges, showIntermediateStops, requestedLocale);
 
-        CoordinateArrayListSequence coordinates = makeCoordinates(edges);
-        Geometry geometry = GeometryUtils.getGeometryFactory().createLineString(coordinates);
-
-        leg.legGeometry = PolylineEncoder.createEncodings(geometry);
+        leg.legGeometry = encodeGeometry(edges);
 
         leg.interlineWithPreviousLeg = states[0].getBackEdge() instanceof PatternInterlineDwell;
 
@@ -492,15 +499,28 @@ public abstract class GraphPathToTripPlanConverter {
         for (Edge edge : edges) {
             if (!(edge instanceof StreetEdge)) continue;
 
-            StreetEdge edgeWithElevation = (StreetEdge) edge;
-            PackedCoordinateSequence coordinates = edgeWithElevation.getElevationProfile();
+            ElevationChange elevationChange = new ElevationChange(itinerary);
+            ((StreetEdge) edge).forEachElevationPoint(elevationChange);
+        }
+    }
+
+    /**
+     * Accumulates the elevation gained and lost along one elevation profile into an {@link Itinerary}.
+     */
+    private static class ElevationChange implements CoordinateConsumer {
+
+        private final Itinerary itinerary;
+
+        private double lastElevation = Double.NaN;
 
-            if (coordinates == null) continue;
-            // TODO Check the test below, AFAIU current elevation profile has 3 dimensions.
-            if (coordinates.getDimension() != 2) continue;
+        ElevationChange(Itinerary itinerary) {
+            this.itinerary = itinerary;
+        }
 
-            for (int i = 0; i < coordinates.size() - 1; i++) {
-                double change = coordinates.getOrdinate(i + 1, 1) - coordinates.getOrdinate(i, 1);
+        @Override
+        public void accept(double distance, double elevation) {
+            if (!Double.isNaN(lastElevation)) {
+                double change = elevation - lastElevation;
 
                 if (change > 0) {
                     itinerary.elevationGained += change;
@@ -508,6 +528,7 @@ public abstract class GraphPathToTripPlanConverter {
                     itinerary.elevationLost -= change;
                 }
             }
+            lastElevation = elevation;
         }
     }
 
@@ -518,6 +539,8 @@ public abstract class GraphPathToTripPlanConverter {
      * @param states The states that go with the leg
      */
     private static void addModeAndAlerts(Graph graph, Leg leg, State[] states, Locale requestedLocale) {
+        // A single snapshot is read for the whole leg, without locking, even if alerts are updated meanwhile
+        AlertPatchSnapshot alertPatches = graph.getAlertPatchSnapshot();
         for (State state : states) {
             TraverseMode mode = state.getBackMode();
             Set<Alert> alerts = graph.streetNotesService.getNotes(state);
@@ -533,7 +556,7 @@ public abstract class GraphPathToTripPlanConverter {
                 }
             }
 
-            for (AlertPatch alertPatch : graph.getAlertPatches(edge)) {
+            for (AlertPatch alertPatch : alertPatches.getAlertPatches(edge)) {
                 if (alertPatch.displayDuring(state)) {
                     if (alertPatch.hasTrip()) {
                         // If the alert patch contains a trip and that trip match this leg only add the alert for
@@ -1046,15 +1069,9 @@ public abstract class GraphPathToTripPlanConverter {
         if (!(edge instanceof StreetEdge)) {
             return new ArrayList<P2<Double>>();
         }
-        StreetEdge elevEdge = (StreetEdge) edge;
-        if (elevEdge.getElevationProfile() == null) {
-            return new ArrayList<P2<Double>>();
-        }
         ArrayList<P2<Double>> out = new ArrayList<P2<Double>>();
-        Coordinate[] coordArr = elevEdge.getElevationProfile().toCoordinateArray();
-        for (int i = 0; i < coordArr.length; i++) {
-            out.add(new P2<Double>(coordArr[i].x + offset, coordArr[i].y));
-        }
+        ((StreetEdge) edge).forEachElevationPoint(
+                (distance, elevation) -> out.add(new P2<Double>(distance + offset, elevation)));
         return out;
     }
 
@@ -48,6 +48,7 @@ import org.opentripplanner.analyst.request.IsoChroneRequest;
 import org.opentripplanner.api.common.RoutingResource;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.standalone.AdmissionControl;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -169,6 +170,7 @@ public class LIsochrone extends RoutingResource {
      * @throws Exception
      */
     public List<IsochroneData> computeIsochrone() throws Exception {
+        long arrivalTime = System.currentTimeMillis();
 
         if (debug == null)
             debug = false;
@@ -193,7 +195,9 @@ public class LIsochrone extends RoutingResource {
         }
 
         Router router = otpServer.getRouter(routerId);
-        return router.isoChroneSPTRenderer.getIsochrones(isoChroneRequest, sptRequest);
+        try (AdmissionControl.Permit permit = router.admissionControl.admit(arrivalTime, router)) {
+            return router.isoChroneSPTRenderer.getIsochrones(isoChroneRequest, sptRequest);
+        }
     }
 
     static SimpleFeatureType makeContourSchema() {
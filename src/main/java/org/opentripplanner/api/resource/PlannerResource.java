@@ -19,8 +19,11 @@ import org.opentripplanner.api.model.Itinerary;
 import org.opentripplanner.api.model.TripPlan;
 import org.opentripplanner.api.model.error.PlannerError;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.error.RequestRejectedException;
 import org.opentripplanner.routing.impl.GraphPathFinder;
+import org.opentripplanner.routing.impl.RoutingMetrics;
 import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.standalone.AdmissionControl;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
@@ -63,6 +66,8 @@ public class PlannerResource extends RoutingResource {
     @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML + Q, MediaType.TEXT_XML + Q })
     public Response plan(@Context UriInfo uriInfo, @Context Request grizzlyRequest) {
 
+        long arrivalTime = System.currentTimeMillis();
+
         /*
          * TODO: add Lang / Locale parameter, and thus get localized content (Messages & more...)
          * TODO: from/to inputs should be converted / geocoded / etc... here, and maybe send coords 
@@ -76,26 +81,42 @@ public class PlannerResource extends RoutingResource {
         RoutingRequest request = null;
         Router router = null;
         List<GraphPath> paths = null;
+        AdmissionControl.Permit permit = null;
         try {
 
             /* Fill in request fields from query parameters via shared superclass method, catching any errors. */
             request = super.buildRequest();
             router = otpServer.getRouter(request.routerId);
+            response.routerId = router.id;
+            response.modes = request.modes;
+
+            /* Wait for our turn if the router is busy. A rejected request is reported as 503, not as a planning error. */
+            permit = router.admissionControl.admit(arrivalTime, router);
+            // Only requests that were admitted are replayed to warm up a reloaded graph.
+            router.recentRequests.add(request);
 
             /* Find some good GraphPaths through the OTP Graph. */
-            GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
+            GraphPathFinder gpFinder = new GraphPathFinder(router, permit.arrivalTime); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
             paths = gpFinder.graphPathFinderEntryPoint(request);
 
             /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
+            long conversionStart = System.nanoTime();
             TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
+            RoutingMetrics.recordPhase(RoutingMetrics.Phase.PATH_CONVERSION, router.id, request.modes,
+                    System.nanoTime() - conversionStart);
             response.setPlan(plan);
 
+        } catch (RequestRejectedException e) {
+            throw e;
         } catch (Exception e) {
             PlannerError error = new PlannerError(e);
             if(!PlannerError.isPlanningError(e.getClass()))
                 LOG.warn("Error while planning path: ", e);
             response.setError(error);
         } finally {
+            if (permit != null) {
+                permit.close();
+            }
             if (request != null) {
                 if (request.rctx != null) {
                     response.debugOutput = request.rctx.debugOutput;
@@ -15,6 +15,7 @@ import org.opentripplanner.profile.ProfileRouter;
 import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
 import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.standalone.AdmissionControl;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
@@ -42,11 +43,15 @@ public class ProfileResource {
     private static final Logger LOG = LoggerFactory.getLogger(ProfileResource.class);
     private Graph graph;
     private SurfaceCache surfaceCache;
+    private Router otpRouter;
+    private long arrivalTime;
 
     public ProfileResource (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
+        arrivalTime = System.currentTimeMillis();
         Router router = otpServer.getRouter(routerId);
         graph = router.graph;
         surfaceCache = otpServer.surfaceCache;
+        otpRouter = router;
     }
 
     @GET
@@ -127,32 +132,35 @@ public class ProfileResource {
         req.bikeTime     = bikeTime;
         req.suboptimalMinutes = suboptimalMinutes;
 
-        if (req.analyst) {
-            if (surfaceCache == null) {
-                LOG.error ("You must run OTP with the --analyst option to enable spatial analysis features.");
-            }
-            TimeSurface.RangeSet result;
+        /* Wait for our turn if the router is busy, a rejected request is reported as 503. */
+        try (AdmissionControl.Permit permit = otpRouter.admissionControl.admit(arrivalTime, otpRouter)) {
+            if (req.analyst) {
+                if (surfaceCache == null) {
+                    LOG.error ("You must run OTP with the --analyst option to enable spatial analysis features.");
+                }
+                TimeSurface.RangeSet result;
 
-            /* There are rarely frequency-only graphs. Use the Raptor profile router for both freqs and schedules. */
-            RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(graph, req);
-            router.banAgency = banAgency;
-            router.route();
-            result = router.timeSurfaceRangeSet;
-            Map<String, Integer> idForSurface = Maps.newHashMap();
-            idForSurface.put("min", surfaceCache.add(result.min)); // requires analyst mode turned on
-            idForSurface.put("avg", surfaceCache.add(result.avg));
-            idForSurface.put("max", surfaceCache.add(result.max));
-            return Response.status(Status.OK).entity(idForSurface).build();
-        } else {
-            ProfileRouter router = new ProfileRouter(graph, req);
-            try {
-                ProfileResponse response = router.route();
-                return Response.status(Status.OK).entity(response).build();
-            } catch (Throwable throwable) {
-                LOG.error("Exception caught in profile routing", throwable);
-                return Response.status(Status.INTERNAL_SERVER_ERROR).entity(throwable.toString()).build();
-            } finally {
-                router.cleanup(); // destroy routing contexts even when an exception happens
+                /* There are rarely frequency-only graphs. Use the Raptor profile router for both freqs and schedules. */
+                RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(graph, req);
+                router.banAgency = banAgency;
+                router.route();
+                result = router.timeSurfaceRangeSet;
+                Map<String, Integer> idForSurface = Maps.newHashMap();
+                idForSurface.put("min", surfaceCache.add(result.min)); // requires analyst mode turned on
+                idForSurface.put("avg", surfaceCache.add(result.avg));
+                idForSurface.put("max", surfaceCache.add(result.max));
+                return Response.status(Status.OK).entity(idForSurface).build();
+            } else {
+                ProfileRouter router = new ProfileRouter(graph, req);
+                try {
+                    ProfileResponse response = router.route();
+                    return Response.status(Status.OK).entity(response).build();
+                } catch (Throwable throwable) {
+                    LOG.error("Exception caught in profile routing", throwable);
+                    return Response.status(Status.INTERNAL_SERVER_ERROR).entity(throwable.toString()).build();
+                } finally {
+                    router.cleanup(); // destroy routing contexts even when an exception happens
+                }
             }
         }
     }
@@ -20,9 +20,12 @@ import java.util.Map.Entry;
 import javax.ws.rs.core.UriInfo;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.opentripplanner.api.model.TripPlan;
 import org.opentripplanner.api.model.error.PlannerError;
+import org.opentripplanner.routing.core.TraverseModeSet;
 
 /** Represents a trip planner response, will be serialized into XML or JSON by Jersey */
 @XmlRootElement
@@ -37,6 +40,15 @@ public class Response {
     /** Debugging and profiling information */
     public DebugOutput debugOutput = null;
 
+    /** The router and modes of the request, labelling the serialization time in the routing metrics. */
+    @JsonIgnore
+    @XmlTransient
+    public String routerId;
+
+    @JsonIgnore
+    @XmlTransient
+    public TraverseModeSet modes;
+
     /** This no-arg constructor exists to make JAX-RS happy. */ 
     @SuppressWarnings("unused")
     private Response() {};
@@ -49,6 +49,8 @@ import org.opentripplanner.routing.graph.Graph.LoadLevel;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 import org.opentripplanner.routing.impl.MemoryGraphSource;
 import org.opentripplanner.routing.services.GraphService;
+import org.opentripplanner.routing.services.GraphSource;
+import org.opentripplanner.standalone.AdmissionControl;
 import org.opentripplanner.standalone.CommandLineParameters;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
@@ -88,6 +90,10 @@ import com.google.common.io.Files;
  * PUT http://localhost/otp-rest-servlet/ws/routers/paris
  * will load a Graph from a sub-directory called 'paris' and associate it with the routerId 'paris'.
  * 
+ * GET http://localhost/otp-rest-servlet/ws/routers/paris/readiness
+ * will return status code 200 if the 'paris' router can serve requests, including while a new graph is
+ * being loaded and warmed up in the background, or 503 while it cannot.
+ * 
  * DELETE http://localhost/otp-rest-servlet/ws/routers/paris
  * will release the Paris Graph and de-register the 'paris' routerId.
  * 
@@ -140,6 +146,39 @@ public class Routers {
         return routerInfo;
     }
     
+    /**
+     * Returns the readiness of a specific routerId (LOADING, RELOADING, WARMING_UP, READY or UNAVAILABLE), for use by
+     * load balancers and health checks.
+     * @returns status code 200 if the router can serve requests, 503 if it cannot, or 404 if it is not registered.
+     */
+    @GET @Path("{routerId}/readiness")
+    @Produces({ MediaType.TEXT_PLAIN })
+    public Response getReadiness(@PathParam("routerId") String routerId) {
+        GraphSource.Readiness readiness = otpServer.getGraphService().getReadiness(routerId);
+        if (readiness == null)
+            return Response.status(Status.NOT_FOUND)
+                    .entity("Graph id '" + routerId + "' not registered.\n").build();
+        Status status = readiness.serving() ? Status.OK : Status.SERVICE_UNAVAILABLE;
+        return Response.status(status).entity(readiness.name() + "\n").build();
+    }
+
+    /**
+     * Returns the admission control state of a specific routerId: the number of requests computed and waiting, how
+     * long they waited, and how many were rejected because the router was overloaded.
+     * @returns status code 200 if the routerId is registered, otherwise a 404.
+     */
+    @GET @Path("{routerId}/admission")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public AdmissionControl.Stats getAdmissionStats(@PathParam("routerId") String routerId) {
+        try {
+            return otpServer.getRouter(routerId).admissionControl.getStats();
+        } catch (GraphNotFoundException e) {
+            throw new WebApplicationException(Response.status(Status.NOT_FOUND)
+                    .entity("Graph id '" + routerId + "' not registered.\n").type("text/plain")
+                    .build());
+        }
+    }
+
     private RouterInfo getRouterInfo(String routerId) {
         try {
             Router router = otpServer.getRouter(routerId);
@@ -14,18 +14,29 @@
 package org.opentripplanner.api.resource;
 
 import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.routing.error.GraphNotFoundException;
+import org.opentripplanner.routing.impl.RoutingMetrics;
+import org.opentripplanner.standalone.AdmissionControl;
+import org.opentripplanner.standalone.OTPServer;
+import org.opentripplanner.util.monitoring.MetricsRegistry;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
 
 @Path("/")
 @XmlRootElement 
@@ -41,6 +52,62 @@ public class ServerInfo {
     public static ServerInfo getServerInfo() {
         return SERVER_INFO;
     }    
+
+    @Context
+    private OTPServer otpServer;
+
+    /**
+     * The routing metrics (latency of each phase of trip planning, work done by the searches) and the admission control
+     * state of each router, in the Prometheus text format.
+     */
+    @GET
+    @Path("metrics")
+    @Produces("text/plain; version=0.0.4")
+    public String getMetrics() throws IOException {
+        StringWriter writer = new StringWriter();
+        RoutingMetrics.REGISTRY.writePrometheus(writer);
+        if (otpServer != null) {
+            writeAdmissionMetrics(writer);
+        }
+        return writer.toString();
+    }
+
+    private void writeAdmissionMetrics(Writer writer) throws IOException {
+        StringWriter running = new StringWriter(), queued = new StringWriter(), admitted = new StringWriter(),
+                rejected = new StringWriter(), waited = new StringWriter();
+        for (String routerId : otpServer.getRouterIds()) {
+            AdmissionControl.Stats stats;
+            try {
+                stats = otpServer.getRouter(routerId).admissionControl.getStats();
+            } catch (GraphNotFoundException e) {
+                continue; // evicted in the meantime
+            }
+            List<String> labels = Arrays.asList("router", routerId);
+            MetricsRegistry.writeSample(running, "otp_admission_running", labels, null, null, stats.running);
+            MetricsRegistry.writeSample(queued, "otp_admission_queued", labels, null, null, stats.queued);
+            MetricsRegistry.writeSample(admitted, "otp_admission_admitted_total", labels, null, null, stats.admitted);
+            MetricsRegistry.writeSample(rejected, "otp_admission_rejected_total", labels, "reason", "queue_full",
+                    stats.rejectedQueueFull);
+            MetricsRegistry.writeSample(rejected, "otp_admission_rejected_total", labels, "reason", "deadline",
+                    stats.rejectedDeadline);
+            MetricsRegistry.writeSample(waited, "otp_admission_wait_seconds_total", labels, null, null,
+                    stats.totalWaitMillis / 1000.0);
+        }
+        writeFamily(writer, "otp_admission_running", "gauge", "Requests being computed.", running);
+        writeFamily(writer, "otp_admission_queued", "gauge", "Requests waiting to be computed.", queued);
+        writeFamily(writer, "otp_admission_admitted_total", "counter", "Requests admitted.", admitted);
+        writeFamily(writer, "otp_admission_rejected_total", "counter", "Requests rejected by the admission control.",
+                rejected);
+        writeFamily(writer, "otp_admission_wait_seconds_total", "counter",
+                "Time spent by the admitted requests waiting to be computed.", waited);
+    }
+
+    private static void writeFamily(Writer writer, String name, String type, String help, StringWriter samples)
+            throws IOException {
+        writer.write("# HELP " + name + " " + help + "\n");
+        writer.write("# TYPE " + name + " " + type + "\n");
+        writer.write(samples.toString());
+    }
     
     // Fields must be public or have a public getter to be auto-serialized to JSON;
     // they are annotated with @XmlElement to be serialized to XML elements (as opposed to attributes).
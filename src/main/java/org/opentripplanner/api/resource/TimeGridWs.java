@@ -29,6 +29,7 @@ import org.opentripplanner.common.geometry.ZSampleGrid;
 import org.opentripplanner.common.geometry.ZSampleGrid.ZSamplePoint;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.standalone.AdmissionControl;
 import org.opentripplanner.standalone.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -91,6 +92,8 @@ public class TimeGridWs extends RoutingResource {
     @Produces({ "image/png" })
     public Response getTimeGridPng(@QueryParam("base64") @DefaultValue("false") boolean base64) throws Exception {
 
+        long arrivalTime = System.currentTimeMillis();
+
         /* Fetch the Router for this request using server and routerId fields from superclass. */
         Router router = otpServer.getRouter(routerId);
 
@@ -108,8 +111,11 @@ public class TimeGridWs extends RoutingResource {
         if (coordinateOrigin != null)
             tgRequest.coordinateOrigin = new GenericLocation(null, coordinateOrigin).getCoordinate();
 
-        // Get a sample grid
-		ZSampleGrid<WTWD> sampleGrid = router.sampleGridRenderer.getSampleGrid(tgRequest, sptRequest);
+        // Get a sample grid, waiting for our turn if the router is busy
+        ZSampleGrid<WTWD> sampleGrid;
+        try (AdmissionControl.Permit permit = router.admissionControl.admit(arrivalTime, router)) {
+            sampleGrid = router.sampleGridRenderer.getSampleGrid(tgRequest, sptRequest);
+        }
 
         int cols = sampleGrid.getXMax() - sampleGrid.getXMin() + 1;
         int rows = sampleGrid.getYMax() - sampleGrid.getYMin() + 1;
@@ -0,0 +1,73 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.common;
+
+import java.util.Arrays;
+
+/**
+ * Union-find over the integers 0..n-1, with union by size and path compression. This is the same structure as
+ * {@link DisjointSet} without the boxing and hashing, for labeling components of large graphs by vertex index.
+ */
+public class IntDisjointSet {
+
+    /** For a root, minus the size of its set. For any other element, its parent. */
+    private final int[] sets;
+
+    public IntDisjointSet(int n) {
+        sets = new int[n];
+        Arrays.fill(sets, -1);
+    }
+
+    /** Merge the sets containing the two elements. @return the root of the merged set. */
+    public int union(int element1, int element2) {
+        int p1 = find(element1);
+        int p2 = find(element2);
+
+        if (p1 == p2) {
+            return p1;
+        }
+
+        int totalSize = sets[p1] + sets[p2];
+
+        if (-sets[p1] > -sets[p2]) {
+            sets[p2] = p1;
+            sets[p1] = totalSize;
+            return p1;
+        } else {
+            sets[p1] = p2;
+            sets[p2] = totalSize;
+            return p2;
+        }
+    }
+
+    /** @return the root of the set containing the element. */
+    public int find(int element) {
+        int root = element;
+        while (sets[root] >= 0) {
+            root = sets[root];
+        }
+        // Compress iteratively, paths in a large graph may be too long for recursion.
+        while (element != root) {
+            int parent = sets[element];
+            sets[element] = root;
+            element = parent;
+        }
+        return root;
+    }
+
+    /** @return the size of the set containing the element. */
+    public int size(int element) {
+        return -sets[find(element)];
+    }
+}
@@ -1,7 +1,10 @@
 package org.opentripplanner.common;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import org.apache.commons.io.FileUtils;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
@@ -25,10 +28,12 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.util.Version;
 import org.onebusaway.gtfs.model.Stop;
 import org.opentripplanner.profile.StopCluster;
 import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.routing.vertextype.StreetVertex;
 import org.slf4j.Logger;
@@ -36,50 +41,117 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Lucene based index of streets, stops, etc.
  * For reference see:
  * https://svn.apache.org/repos/asf/lucene/dev/trunk/lucene/demo/src/java/org/apache/lucene/demo/IndexFiles.java
+ *
+ * The index of a graph is saved on disk in a directory named after the graph (see graphKey), which is normally built
+ * along with the graph by the graph builder and saved alongside it. An index that was saved before is memory-mapped
+ * rather than rebuilt. The results of autocomplete queries, which are repeated for the same prefixes as users type,
+ * are cached.
  */
 public class LuceneIndex {
 
     private static final Logger LOG = LoggerFactory.getLogger(LuceneIndex.class);
 
+    /** The name of the directory holding the saved indexes, alongside the graph or under the server base path. */
+    public static final String DIRECTORY_NAME = "lucene";
+
+    /** The number of autocomplete queries whose results are cached. */
+    private static final int AUTOCOMPLETE_CACHE_SIZE = 10000;
+
     private Analyzer analyzer = new StandardAnalyzer(Version.LUCENE_47);
     private QueryParser parser = new QueryParser(Version.LUCENE_47, "name", analyzer);
     private GraphIndex graphIndex;
-    private File basePath;
+    private File rootDirectory;
+    private File indexDirectory;
     private Directory directory; // the Lucene Directory, not to be confused with a filesystem directory
-    private IndexSearcher searcher; // Will be null until index is built.
+    private volatile IndexSearcher searcher; // Will be null until index is built.
+
+    private final Cache<String, List<LuceneResult>> autocompleteCache = CacheBuilder.newBuilder()
+            .maximumSize(AUTOCOMPLETE_CACHE_SIZE)
+            .build();
 
     /**
-     * @param basePath the filesystem location under which to save indexes
+     * @param rootDirectory the filesystem location under which to save the indexes of the graphs of a router. The index
+     *                      of this graph is opened if it was saved before, otherwise it is built and the indexes of
+     *                      any other graphs are deleted.
      * @param background if true, perform the initial indexing in a background thread, if false block to index
      */
-    public LuceneIndex(final GraphIndex graphIndex, File basePath, boolean background) {
+    public LuceneIndex(final GraphIndex graphIndex, File rootDirectory, boolean background) {
         this.graphIndex = graphIndex;
-        this.basePath = basePath;
-        if (background) {
+        this.rootDirectory = rootDirectory;
+        this.indexDirectory = new File(rootDirectory, graphKey(graphIndex.graph));
+        if (indexDirectory.isDirectory()) {
+            open();
+        } else if (background) {
             new BackgroundIndexer().start();
         } else {
             new BackgroundIndexer().run();
         }
     }
 
+    /** @return whether the index of the given graph was saved under the given directory. */
+    public static boolean exists(Graph graph, File rootDirectory) {
+        return new File(rootDirectory, graphKey(graph)).isDirectory();
+    }
+
+    /**
+     * @return the directory under which to save the indexes of a router: alongside its graph if it was loaded from a
+     *         writable directory, otherwise under the server base path.
+     */
+    public static File rootDirectory(Graph graph, String routerId, File basePath) {
+        if (graph.directory != null && graph.directory.canWrite()) {
+            return new File(graph.directory, DIRECTORY_NAME);
+        }
+        return new File(new File(basePath, DIRECTORY_NAME), routerId);
+    }
+
+    /**
+     * @return a string identifying the graph an index is built from. Graph.getFingerprint() cannot be used, as vertex
+     *         indices change when a graph is serialized and loaded again, while the build time of a graph is saved
+     *         with it: the indexed names and locations only change when the graph is rebuilt.
+     */
+    static String graphKey(Graph graph) {
+        return String.format("%016x", graph.buildTime.getTime());
+    }
+
+    /** Memory-map the saved index and make the IndexSearcher necessary for querying. */
+    private void open() {
+        try {
+            directory = new MMapDirectory(indexDirectory);
+            searcher = new IndexSearcher(DirectoryReader.open(directory));
+            LOG.info("Opened Lucene index in {}", indexDirectory);
+        } catch (Exception ex) {
+            throw new RuntimeException("Opening Lucene index failed.", ex);
+        }
+    }
+
     /**
      * Index stations, stops, intersections, streets, and addresses by name and location.
      */
     private void index() {
         try {
             long startTime = System.currentTimeMillis();
-            /* Create or re-open a disk-backed Lucene Directory under the OTP server base filesystem directory. */
-            directory = FSDirectory.open(new File(basePath, "lucene"));
-            // TODO reuse the index if it exists?
-            //directory = new RAMDirectory(); // only a little faster
+            /* Only the index of the current graph of the router is kept on disk. */
+            File[] others = rootDirectory.listFiles();
+            if (others != null) {
+                for (File other : others) {
+                    if (other.isDirectory()) {
+                        LOG.info("Deleting Lucene index of another graph in {}", other);
+                        FileUtils.deleteQuietly(other);
+                    }
+                }
+            }
+            /* Build in a temporary directory, so that an index is only found on disk once it is complete. */
+            File tempDirectory = new File(rootDirectory, indexDirectory.getName() + ".tmp");
+            Directory tempLuceneDirectory = FSDirectory.open(tempDirectory);
             IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_47, analyzer).setOpenMode(OpenMode.CREATE);
-            final IndexWriter writer = new IndexWriter(directory, config);
+            final IndexWriter writer = new IndexWriter(tempLuceneDirectory, config);
             for (Stop stop : graphIndex.stopForId.values()) {
                 addStop(writer, stop);
             }
@@ -91,10 +163,13 @@ public class LuceneIndex {
                 addCorner(writer, sv);
             }
             writer.close();
+            tempLuceneDirectory.close();
+            if (!tempDirectory.renameTo(indexDirectory)) {
+                throw new IOException("Could not move the Lucene index to " + indexDirectory);
+            }
             long elapsedTime = System.currentTimeMillis() - startTime;
             LOG.info("Built Lucene index in {} msec", elapsedTime);
-            // Make the IndexSearcher necessary for querying.
-            searcher = new IndexSearcher(DirectoryReader.open(directory));
+            open();
         } catch (Exception ex) {
             throw new RuntimeException("Lucene indexing failed.", ex);
         }
@@ -160,6 +235,24 @@ public class LuceneIndex {
      */
     public List<LuceneResult> query (String queryString, boolean autocomplete,
                                      boolean stops, boolean clusters, boolean corners) {
+        if (!autocomplete) {
+            return search(queryString, false, stops, clusters, corners);
+        }
+        String key = (stops ? "s" : "") + (clusters ? "c" : "") + (corners ? "x" : "") + ":" + queryString;
+        List<LuceneResult> result = autocompleteCache.getIfPresent(key);
+        if (result == null) {
+            boolean indexed = searcher != null;
+            result = Collections.unmodifiableList(search(queryString, true, stops, clusters, corners));
+            // Do not remember the empty results returned while the index is being built
+            if (indexed) {
+                autocompleteCache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    private List<LuceneResult> search (String queryString, boolean autocomplete,
+                                       boolean stops, boolean clusters, boolean corners) {
         /* Turn the query string into a Lucene query.*/
         BooleanQuery query = new BooleanQuery();
         BooleanQuery termQuery = new BooleanQuery();
@@ -14,6 +14,11 @@
 package org.opentripplanner.common;
 
 import com.vividsolutions.jts.geom.Geometry;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import com.vividsolutions.jts.geom.Polygon;
 import org.opentripplanner.common.geometry.Subgraph;
 import org.opentripplanner.graph_builder.annotation.GraphConnectivity;
@@ -26,12 +31,14 @@ import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TransitVertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.stream.IntStream;
 
 public class StreetUtils {
 
@@ -52,70 +59,59 @@ public class StreetUtils {
         if (islandLog != null) {
             islandLog.printf("%s\t%s\t%s\t%s\t%s\n","id","stopCount", "streetCount","wkt" ,"hadRemoved");
         }
-        Map<Vertex, Subgraph> subgraphs = new HashMap<Vertex, Subgraph>();
-        Map<Vertex, ArrayList<Vertex>> neighborsForVertex = new HashMap<Vertex, ArrayList<Vertex>>();
+        StreetComponents components = findStreetComponents(graph);
+        int nVertices = components.vertices.length;
 
-//        RoutingRequest options = new RoutingRequest(new TraverseModeSet(TraverseMode.WALK, TraverseMode.TRANSIT));
-        RoutingRequest options = new RoutingRequest(new TraverseModeSet(TraverseMode.WALK));
-
-        for (Vertex gv : graph.getVertices()) {
-            if (!(gv instanceof StreetVertex)) {
-                continue;
-            }
-            State s0 = new State(gv, options);
-            for (Edge e : gv.getOutgoing()) {
-                Vertex in = gv;
-                if (!(e instanceof StreetEdge || e instanceof StreetTransitLink || 
-                      e instanceof ElevatorEdge || e instanceof FreeEdge)) {
-                    continue;
-                }
-                State s1 = e.traverse(s0);
-                if (s1 == null) {
-                    continue;
-                }
-                Vertex out = s1.getVertex();
-
-                ArrayList<Vertex> vertexList = neighborsForVertex.get(in);
-                if (vertexList == null) {
-                    vertexList = new ArrayList<Vertex>();
-                    neighborsForVertex.put(in, vertexList);
-                }
-                vertexList.add(out);
-
-                vertexList = neighborsForVertex.get(out);
-                if (vertexList == null) {
-                    vertexList = new ArrayList<Vertex>();
-                    neighborsForVertex.put(out, vertexList);
-                }
-                vertexList.add(in);
+        // Count the street vertices and stops of each component, which is all that is needed to decide on pruning.
+        int[] streetCount = new int[nVertices];
+        int[] stopCount = new int[nVertices];
+        for (int i = components.connected.nextSetBit(0); i >= 0; i = components.connected.nextSetBit(i + 1)) {
+            int root = components.sets.find(i);
+            if (components.vertices[i] instanceof TransitVertex) {
+                stopCount[root]++;
+            } else {
+                streetCount[root]++;
             }
         }
 
-        ArrayList<Subgraph> islands = new ArrayList<Subgraph>();
-        /* associate each node with a subgraph */
+        // Order the islands by the first street vertex in the graph that belongs to them.
+        TIntList roots = new TIntArrayList();
+        BitSet seen = new BitSet(nVertices);
         for (Vertex gv : graph.getVertices()) {
-            if (!(gv instanceof StreetVertex)) {
+            if (!(gv instanceof StreetVertex) || !components.connected.get(gv.getIndex())) {
                 continue;
             }
-            Vertex vertex = gv;
-            if (subgraphs.containsKey(vertex)) {
-                continue;
+            int root = components.sets.find(gv.getIndex());
+            if (!seen.get(root)) {
+                seen.set(root);
+                roots.add(root);
             }
-            if (!neighborsForVertex.containsKey(vertex)) {
-                continue;
+        }
+        LOG.info(roots.size() + " sub graphs found");
+
+        // Only materialize the islands that will be pruned, or all of them when they are logged.
+        TIntObjectMap<Subgraph> subgraphs = new TIntObjectHashMap<Subgraph>();
+        for (TIntIterator it = roots.iterator(); it.hasNext();) {
+            int root = it.next();
+            boolean prune = stopCount[root] > 0 ? streetCount[root] < islandWithStopMaxSize
+                    : streetCount[root] < maxIslandSize;
+            if (prune || islandLog != null) {
+                subgraphs.put(root, new Subgraph());
             }
-            Subgraph subgraph = computeConnectedSubgraph(neighborsForVertex, vertex);
-            if (subgraph != null){
-                for (Iterator<Vertex> vIter = subgraph.streetIterator(); vIter.hasNext();) {
-                    Vertex subnode = vIter.next();
-                    subgraphs.put(subnode, subgraph);
-                }
-                islands.add(subgraph);
+        }
+        for (int i = components.connected.nextSetBit(0); i >= 0; i = components.connected.nextSetBit(i + 1)) {
+            Subgraph subgraph = subgraphs.get(components.sets.find(i));
+            if (subgraph != null) {
+                subgraph.addVertex(components.vertices[i]);
             }
         }
-        LOG.info(islands.size() + " sub graphs found");
+
         /* remove all tiny subgraphs and large subgraphs without stops */
-        for (Subgraph island : islands) {
+        for (TIntIterator it = roots.iterator(); it.hasNext();) {
+            Subgraph island = subgraphs.get(it.next());
+            if (island == null) {
+                continue;
+            }
             boolean hadRemoved = false;
             if(island.stopSize() > 0){
             //for islands with stops
@@ -139,6 +135,98 @@ public class StreetUtils {
         }
     }
 
+    /**
+     * The connected components of the walkable street network, labeled by vertex index. Stops linked to the streets
+     * are part of the components, and join the streets around them.
+     */
+    static class StreetComponents {
+
+        /** Graph vertices by index. */
+        final Vertex[] vertices;
+
+        /** Components as sets of vertex indices. */
+        final IntDisjointSet sets;
+
+        /** Vertices that are connected to at least one vertex. Other vertices are not part of any component. */
+        final BitSet connected;
+
+        StreetComponents(Vertex[] vertices, IntDisjointSet sets, BitSet connected) {
+            this.vertices = vertices;
+            this.sets = sets;
+            this.connected = connected;
+        }
+
+        int countComponents() {
+            int count = 0;
+            for (int i = connected.nextSetBit(0); i >= 0; i = connected.nextSetBit(i + 1)) {
+                if (sets.find(i) == i) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Label the connected components of the street network that can be walked, without regard for the direction of
+     * the edges. Edges are traversed in parallel, as that is the expensive part, then the components are merged
+     * using a union-find over vertex indices.
+     */
+    static StreetComponents findStreetComponents(Graph graph) {
+        int nVertices = 0;
+        for (Vertex gv : graph.getVertices()) {
+            nVertices = Math.max(nVertices, gv.getIndex() + 1);
+        }
+        Vertex[] vertices = new Vertex[nVertices];
+        List<Vertex> streetVertices = new ArrayList<Vertex>();
+        for (Vertex gv : graph.getVertices()) {
+            vertices[gv.getIndex()] = gv;
+            if (gv instanceof StreetVertex) {
+                streetVertices.add(gv);
+            }
+        }
+
+//        RoutingRequest options = new RoutingRequest(new TraverseModeSet(TraverseMode.WALK, TraverseMode.TRANSIT));
+        RoutingRequest options = new RoutingRequest(new TraverseModeSet(TraverseMode.WALK));
+
+        int[][] neighbors = new int[streetVertices.size()][];
+        IntStream.range(0, streetVertices.size()).parallel().forEach(i ->
+                neighbors[i] = walkableNeighbors(streetVertices.get(i), options, vertices));
+
+        IntDisjointSet sets = new IntDisjointSet(nVertices);
+        BitSet connected = new BitSet(nVertices);
+        for (int i = 0; i < neighbors.length; i++) {
+            int in = streetVertices.get(i).getIndex();
+            for (int out : neighbors[i]) {
+                sets.union(in, out);
+                connected.set(in);
+                connected.set(out);
+            }
+        }
+        return new StreetComponents(vertices, sets, connected);
+    }
+
+    /** @return the indices of the graph vertices that can be reached by walking a single edge from a street vertex. */
+    private static int[] walkableNeighbors(Vertex gv, RoutingRequest options, Vertex[] vertices) {
+        TIntList out = new TIntArrayList();
+        State s0 = new State(gv, options);
+        for (Edge e : gv.getOutgoing()) {
+            if (!(e instanceof StreetEdge || e instanceof StreetTransitLink || 
+                  e instanceof ElevatorEdge || e instanceof FreeEdge)) {
+                continue;
+            }
+            State s1 = e.traverse(s0);
+            if (s1 == null) {
+                continue;
+            }
+            int index = s1.getVertex().getIndex();
+            if (index < vertices.length && vertices[index] == s1.getVertex()) {
+                out.add(index);
+            }
+        }
+        return out.toArray();
+    }
+
     private static void depedestrianizeOrRemove(Graph graph, Subgraph island) {
         //iterate over the street vertex of the subgraph
         for (Iterator<Vertex> vIter = island.streetIterator(); vIter.hasNext();) {
@@ -179,25 +267,6 @@ public class StreetUtils {
         LOG.debug(graph.addBuilderAnnotation(new GraphConnectivity(island.getRepresentativeVertex(), island.streetSize())));
     }
 
-    private static Subgraph computeConnectedSubgraph(
-            Map<Vertex, ArrayList<Vertex>> neighborsForVertex, Vertex startVertex) {
-        Subgraph subgraph = new Subgraph();
-        Queue<Vertex> q = new LinkedList<Vertex>();
-        q.add(startVertex);
-        while (!q.isEmpty()) {
-            Vertex vertex = q.poll();
-            for (Vertex neighbor : neighborsForVertex.get(vertex)) {
-                if (!subgraph.contains(neighbor)) {
-                    subgraph.addVertex(neighbor);
-                    q.add(neighbor);
-                }
-            }
-        }
-        return subgraph;
-//        if(subgraph.size()>1) return subgraph;
-//        return null;
-    }
-
     private static void WriteNodesInSubGraph(Subgraph subgraph, PrintWriter islandLog, boolean hadRemoved){
         Geometry convexHullGeom = subgraph.getConvexHull();
         if (convexHullGeom != null && !(convexHullGeom instanceof Polygon)) {
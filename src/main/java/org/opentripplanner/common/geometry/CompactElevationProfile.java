@@ -96,4 +96,23 @@ public final class CompactElevationProfile implements Serializable {
         }
         return new PackedCoordinateSequence.Double(c, 2);
     }
+
+    /**
+     * Pass the points of a packed elevation profile to a consumer in order, as (arc length, elevation) pairs, without
+     * creating a coordinate sequence. Does nothing if the profile is null.
+     * 
+     * @param packedCoords Compacted coordinates
+     */
+    public static void forEachPoint(byte[] packedCoords, CoordinateConsumer consumer) {
+        if (packedCoords == null)
+            return;
+        DlugoszVarLenIntPacker.Unpacker unpacker = new DlugoszVarLenIntPacker.Unpacker(packedCoords);
+        int ix = 0;
+        int iy = 0;
+        while (unpacker.hasNext()) {
+            ix += unpacker.next();
+            iy += unpacker.next();
+            consumer.accept(ix / FIXED_FLOAT_MULT, iy / FIXED_FLOAT_MULT);
+        }
+    }
 }
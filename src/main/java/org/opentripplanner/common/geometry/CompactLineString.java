@@ -174,6 +174,46 @@ public final class CompactLineString implements Serializable {
         return out;
     }
 
+    /**
+     * Pass the coordinates of a compacted line string to a consumer in order, without creating a LineString. The
+     * coordinates are exactly those of the LineString returned by uncompactLineString with the same parameters.
+     * 
+     * @param coords Compact version of coordinates
+     * @param reverse True if A and B and the compacted geometry is reversed.
+     */
+    public static void forEachCoordinate(double xa, double ya, double xb, double yb,
+            int[] coords, boolean reverse, CoordinateConsumer consumer) {
+        int n = coords == null ? 0 : coords.length / 2;
+        double x0 = reverse ? xb : xa;
+        double y0 = reverse ? yb : ya;
+        double x1 = reverse ? xa : xb;
+        double y1 = reverse ? ya : yb;
+        int oix = (int) Math.round(x0 * FIXED_FLOAT_MULT);
+        int oiy = (int) Math.round(y0 * FIXED_FLOAT_MULT);
+        if (!reverse) {
+            consumer.accept(x0, y0);
+            for (int i = 0; i < n; i++) {
+                oix += coords[i * 2];
+                oiy += coords[i * 2 + 1];
+                consumer.accept(oix / FIXED_FLOAT_MULT, oiy / FIXED_FLOAT_MULT);
+            }
+            consumer.accept(x1, y1);
+        } else {
+            // Find the last intermediate point, then walk the deltas backwards.
+            for (int i = 0; i < n; i++) {
+                oix += coords[i * 2];
+                oiy += coords[i * 2 + 1];
+            }
+            consumer.accept(x1, y1);
+            for (int i = n - 1; i >= 0; i--) {
+                consumer.accept(oix / FIXED_FLOAT_MULT, oiy / FIXED_FLOAT_MULT);
+                oix -= coords[i * 2];
+                oiy -= coords[i * 2 + 1];
+            }
+            consumer.accept(x0, y0);
+        }
+    }
+
     /**
      * Same as the other version, but in a var-len int packed form (Dlugosz coding).
      * 
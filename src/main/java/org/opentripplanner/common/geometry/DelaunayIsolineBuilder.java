@@ -13,12 +13,14 @@
 
 package org.opentripplanner.common.geometry;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +39,8 @@ import com.vividsolutions.jts.geom.Polygon;
  * CW for normal polygons, CCW for "holes". The isoline computation can be called multiple times on
  * the same builder for different z0 value: this will reduce the number of Fz sampling as they are
  * cached in the builder, and reduce the number of time the Delaunay triangulation has to be built.
+ * Computing several isolines in a single call to computeIsolines is faster still, as the
+ * triangulation is then only walked once.
  * 
  * The algorithm is rather simple: for each edges of the triangulation check if the edge is
  * "cutting" (ie crossing the z0 plane). Then start for each unprocessed cutting edge using a walk
@@ -58,11 +62,12 @@ public class DelaunayIsolineBuilder<TZ> implements IsolineBuilder<TZ> {
 
     private GeometryFactory geometryFactory = new GeometryFactory();
 
-    private List<Geometry> debugGeom = new ArrayList<Geometry>();
+    /** The debug geometry of each isoline of the last call to computeIsolines. */
+    private List<Geometry> debugGeoms = Collections.emptyList();
 
     /**
      * Create an object to compute isolines. One may call several time computeIsoline on the same
-     * object, with different z0 values.
+     * object, with different z0 values. Isolines may be computed concurrently.
      * 
      * @param triangulation The triangulation to process. Must be closed (no edge at the border
      *        should intersect).
@@ -79,26 +84,56 @@ public class DelaunayIsolineBuilder<TZ> implements IsolineBuilder<TZ> {
 
     @Override
     public Geometry computeIsoline(TZ z0) {
-        Queue<DelaunayEdge<TZ>> processQ = new ArrayDeque<DelaunayEdge<TZ>>(
-                triangulation.edgesCount());
+        return computeIsolines(Collections.singletonList(z0)).get(0);
+    }
+
+    /**
+     * Compute the isolines of several z0 values at once. The triangulation is walked only once to
+     * find the edges cut by each isoline, then the polygons of each isoline are built in parallel,
+     * starting from and visiting only its own cutting edges. If debug is enabled, a debug geometry
+     * is generated for each z0 value, see getDebugGeometries().
+     */
+    @Override
+    public List<Geometry> computeIsolines(List<TZ> z0s) {
+        if (debug) {
+            debugGeoms = z0s.stream().map(this::generateDebugGeometry)
+                    .collect(Collectors.toList());
+        }
+
+        // 1. Sweep the triangulation once, sorting the cutting edges by isoline.
+        List<List<DelaunayEdge<TZ>>> cuttingEdges = new ArrayList<List<DelaunayEdge<TZ>>>(z0s.size());
+        for (int i = 0; i < z0s.size(); i++) {
+            cuttingEdges.add(new ArrayList<DelaunayEdge<TZ>>());
+        }
         for (DelaunayEdge<TZ> e : triangulation.edges()) {
-            e.setProcessed(false);
-            processQ.add(e);
+            TZ zA = e.getA().getZ();
+            TZ zB = e.getB().getZ();
+            for (int i = 0; i < z0s.size(); i++) {
+                if (zMetric.cut(zA, zB, z0s.get(i)) != 0)
+                    cuttingEdges.get(i).add(e);
+            }
         }
 
-        if (debug)
-            generateDebugGeometry(z0);
+        // 2. Build the polygons of each isoline, which only read the triangulation.
+        return IntStream.range(0, z0s.size()).parallel()
+                .mapToObj(i -> buildIsoline(z0s.get(i), cuttingEdges.get(i)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Walk the cutting edges of an isoline to build a set of closed polygons, keeping high z0
+     * always on the same side, then punch the holes.
+     */
+    private Geometry buildIsoline(TZ z0, List<DelaunayEdge<TZ>> cuttingEdges) {
+        // The edges of this isoline already added to a polygon.
+        Set<DelaunayEdge<TZ>> processed = Collections
+                .newSetFromMap(new IdentityHashMap<DelaunayEdge<TZ>, Boolean>(cuttingEdges.size()));
 
         List<LinearRing> rings = new ArrayList<LinearRing>();
-        while (!processQ.isEmpty()) {
-            DelaunayEdge<TZ> e = processQ.remove();
-            if (e.isProcessed())
+        for (DelaunayEdge<TZ> e : cuttingEdges) {
+            if (!processed.add(e))
                 continue;
-            e.setProcessed(true);
             int cut = zMetric.cut(e.getA().getZ(), e.getB().getZ(), z0);
-            if (cut == 0) {
-                continue; // While, next edge
-            }
             List<Coordinate> polyPoints = new ArrayList<Coordinate>();
             boolean ccw = cut > 0;
             while (true) {
@@ -109,13 +144,13 @@ public class DelaunayIsolineBuilder<TZ> implements IsolineBuilder<TZ> {
                 Coordinate cC = new Coordinate(cA.x * (1.0 - k) + cB.x * k, cA.y * (1.0 - k) + cB.y
                         * k);
                 polyPoints.add(cC);
-                e.setProcessed(true);
+                processed.add(e);
                 DelaunayEdge<TZ> E1 = e.getEdge1(ccw);
                 DelaunayEdge<TZ> E2 = e.getEdge2(ccw);
                 int cut1 = E1 == null ? 0 : zMetric.cut(E1.getA().getZ(), E1.getB().getZ(), z0);
                 int cut2 = E2 == null ? 0 : zMetric.cut(E2.getA().getZ(), E2.getB().getZ(), z0);
-                boolean ok1 = cut1 != 0 && !E1.isProcessed();
-                boolean ok2 = cut2 != 0 && !E2.isProcessed();
+                boolean ok1 = cut1 != 0 && !processed.contains(E1);
+                boolean ok2 = cut2 != 0 && !processed.contains(E2);
                 if (ok1) {
                     e = E1;
                     ccw = cut1 > 0;
@@ -142,8 +177,9 @@ public class DelaunayIsolineBuilder<TZ> implements IsolineBuilder<TZ> {
                 .createGeometryCollection(retval.toArray(new Geometry[retval.size()]));
     }
 
-    private final void generateDebugGeometry(TZ z0) {
-        debug = false;
+    /** @return the edges of the triangulation and the points where they cut the z0 plane. */
+    private final Geometry generateDebugGeometry(TZ z0) {
+        List<Geometry> debugGeom = new ArrayList<Geometry>();
         for (DelaunayEdge<TZ> e : triangulation.edges()) {
             Coordinate cA = e.getA().getCoordinates();
             Coordinate cB = e.getB().getCoordinates();
@@ -155,11 +191,25 @@ public class DelaunayIsolineBuilder<TZ> implements IsolineBuilder<TZ> {
                 debugGeom.add(geometryFactory.createPoint(cC));
             }
         }
+        return geometryFactory.createGeometryCollection(debugGeom.toArray(new Geometry[debugGeom
+                .size()]));
     }
 
+    /**
+     * @return the debug geometry of the first isoline of the last call to computeIsolines, or an
+     *         empty geometry if debug is not enabled.
+     */
     public final Geometry getDebugGeometry() {
-        return geometryFactory.createGeometryCollection(debugGeom.toArray(new Geometry[debugGeom
-                .size()]));
+        return debugGeoms.isEmpty() ? geometryFactory.createGeometryCollection(new Geometry[0])
+                : debugGeoms.get(0);
+    }
+
+    /**
+     * @return the debug geometry of each isoline of the last call to computeIsolines, in the order
+     *         of the z0 values, or an empty list if debug is not enabled.
+     */
+    public final List<Geometry> getDebugGeometries() {
+        return debugGeoms;
     }
 
     @SuppressWarnings("unchecked")
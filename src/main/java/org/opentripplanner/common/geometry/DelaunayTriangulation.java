@@ -65,20 +65,6 @@ interface DelaunayEdge<TZ> {
      * @return The edge starting at A, going right or left.
      */
     public DelaunayEdge<TZ> getEdge2(boolean ccw);
-
-    /**
-     * HACK. This should not be here really. But with Java, attaching some user value to an object
-     * rely on another level of indirection and costly maps/arrays. Exposing this flag directly here
-     * saves *lots* of processing time. TODO Is there a better way to do that?
-     * 
-     * @return The flag set by setProcessed.
-     */
-    public boolean isProcessed();
-
-    /**
-     * @param processed
-     */
-    public void setProcessed(boolean processed);
 }
 
 /**
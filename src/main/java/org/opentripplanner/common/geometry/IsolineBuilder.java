@@ -13,6 +13,9 @@
 
 package org.opentripplanner.common.geometry;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.vividsolutions.jts.geom.Geometry;
 
 /**
@@ -60,4 +63,18 @@ public interface IsolineBuilder<TZ> {
 
     public Geometry computeIsoline(TZ z0);
 
+    /**
+     * Compute the isolines of several z values. Implementations may do this faster than calling
+     * computeIsoline for each value.
+     * 
+     * @return one isoline per z0 value, in the same order.
+     */
+    public default List<Geometry> computeIsolines(List<TZ> z0s) {
+        List<Geometry> isolines = new ArrayList<Geometry>(z0s.size());
+        for (TZ z0 : z0s) {
+            isolines.add(computeIsoline(z0));
+        }
+        return isolines;
+    }
+
 }
@@ -23,6 +23,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.opentripplanner.analyst.request.SampleFactory;
 import org.slf4j.Logger;
@@ -320,15 +322,94 @@ public class RecursiveGridIsolineBuilder {
     }
 
     public Geometry computeIsoline(long z0) {
-        fzInterpolateCount = 0;
+        return computeIsolines(new long[] { z0 }).get(0);
+    }
+
+    /**
+     * Compute the isolines of several z0 values at once. The seed edges are sorted by isoline in a
+     * single pass, each isoline then only divides its own cutting seed edges. Sampling and tracing
+     * the rings share the sample cache so are done one isoline after the other, but the polygons
+     * of all isolines are assembled in parallel. The debug geometry covers all isolines.
+     * 
+     * @return one isoline per z0 value, in the same order.
+     */
+    public List<Geometry> computeIsolines(long[] z0s) {
         GeometryFactory geomFactory = new GeometryFactory();
 
+        /*
+         * Step 3a. BAND. An edge is cut by the isolines whose z0 lies in ]min(zA, zB), max(zA, zB)],
+         * which form a contiguous band of the sorted z0 values.
+         */
+        int[] order = IntStream.range(0, z0s.length).boxed()
+                .sorted((i, j) -> Long.compare(z0s[i], z0s[j])).mapToInt(i -> i).toArray();
+        long[] sortedZ0s = new long[z0s.length];
+        List<List<GridEdge>> seedEdges = new ArrayList<List<GridEdge>>(z0s.length);
+        for (int i = 0; i < z0s.length; i++) {
+            sortedZ0s[i] = z0s[order[i]];
+            seedEdges.add(new ArrayList<GridEdge>());
+        }
+        for (GridEdge e : initialEdges) {
+            long zMin = Math.min(e.A.z, e.B.z);
+            long zMax = Math.max(e.A.z, e.B.z);
+            for (int i = bandStart(sortedZ0s, zMin); i < sortedZ0s.length && sortedZ0s[i] <= zMax; i++) {
+                seedEdges.get(order[i]).add(e);
+            }
+        }
+
+        List<Geometry> debugGeom = new ArrayList<Geometry>();
+        if (debugSeedGrid) {
+            for (GridEdge e : initialEdges) {
+                Coordinate A = getCoordinate(e.A.index);
+                Coordinate B = getCoordinate(e.B.index);
+                debugGeom.add(geomFactory.createLineString(new Coordinate[] { A, B }));
+            }
+        }
+
+        List<List<LinearRing>> rings = new ArrayList<List<LinearRing>>(z0s.length);
+        for (int i = 0; i < z0s.length; i++) {
+            rings.add(computeRings(geomFactory, z0s[i], seedEdges.get(i), debugGeom));
+        }
+
+        /*
+         * Step 5b. ASSEMBLE. Punch the holes of each isoline into its shells.
+         */
+        List<Geometry> isolines = IntStream.range(0, z0s.length).parallel().mapToObj(i -> {
+            List<Polygon> polygons = punchHoles(geomFactory, rings.get(i));
+            return geomFactory.createGeometryCollection(polygons.toArray(new Geometry[polygons.size()]));
+        }).collect(Collectors.toList());
+
+        debugGeometry = geomFactory.createGeometryCollection(debugGeom
+                .toArray(new Geometry[debugGeom.size()]));
+        return isolines;
+    }
+
+    /** @return the index of the first of the sorted z0 values that is greater than z. */
+    private static int bandStart(long[] sortedZ0s, long z) {
+        int lo = 0, hi = sortedZ0s.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedZ0s[mid] <= z)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Find the cutting edges of the isoline for z0 starting from its cutting seed edges, and trace
+     * them into rings.
+     */
+    private List<LinearRing> computeRings(GeometryFactory geomFactory, long z0,
+            List<GridEdge> seedEdges, List<Geometry> debugGeom) {
+        fzInterpolateCount = 0;
+
         /*
          * Step 3. DIVIDE. While there are cutting edges from size > 1 to divide, divide them in
          * two. Note: edgesToExpand only contains cutting edges.
          */
         Queue<GridEdge> edgesToDivide = new ArrayDeque<GridEdge>();
-        edgesToDivide.addAll(initialEdges);
+        edgesToDivide.addAll(seedEdges);
         Queue<GridEdge> edgesToExpand = new ArrayDeque<GridEdge>();
         while (!edgesToDivide.isEmpty()) {
             GridEdge e = edgesToDivide.remove();
@@ -417,19 +498,8 @@ public class RecursiveGridIsolineBuilder {
         int finalNonCuttingEdgesSize = finalNonCuttingEdges.size();
 
         /*
-         * Step 5. BUILD. Build polygons from finalEdges set.
+         * Step 5. BUILD. Build rings from finalEdges set.
          */
-        List<Geometry> debugGeom = new ArrayList<Geometry>();
-        if (debugSeedGrid) {
-            for (GridEdge e : initialEdges) {
-                Coordinate A = getCoordinate(e.A.index);
-                Coordinate B = getCoordinate(e.B.index);
-                debugGeom.add(geomFactory.createLineString(new Coordinate[] { A, B }));
-            }
-            // for (Coordinate p0 : __p0List) {
-            // debugGeom.add(geomFactory.createPoint(p0));
-            // }
-        }
         if (debugCrossingEdges) {
             for (GridEdge e : finalEdges) {
                 Coordinate A = getCoordinate(e.A.index);
@@ -442,7 +512,6 @@ public class RecursiveGridIsolineBuilder {
             }
         }
 
-        List<Geometry> retval = new ArrayList<Geometry>();
         List<LinearRing> rings = new ArrayList<LinearRing>();
         while (!finalEdges.isEmpty()) {
             GridEdge e0 = finalEdges.iterator().next();
@@ -537,7 +606,6 @@ public class RecursiveGridIsolineBuilder {
                     .toArray(new Coordinate[polyPoints.size()]));
             rings.add(ring);
         }
-        retval.addAll(punchHoles(geomFactory, rings));
 
         LOG.info("Isochrones: {}+{} Fz samples, {} cutting edges, {} non-cutting edges",
                 allDots.size(), fzInterpolateCount, finalEdgesSize, finalNonCuttingEdgesSize);
@@ -548,9 +616,7 @@ public class RecursiveGridIsolineBuilder {
         for (GridDot A : allDots.values()) {
             A.up = A.down = A.right = A.left = null;
         }
-        debugGeometry = geomFactory.createGeometryCollection(debugGeom
-                .toArray(new Geometry[debugGeom.size()]));
-        return geomFactory.createGeometryCollection(retval.toArray(new Geometry[retval.size()]));
+        return rings;
     }
 
     public final Geometry getDebugGeometry() {
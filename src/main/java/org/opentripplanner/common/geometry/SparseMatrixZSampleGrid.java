@@ -95,8 +95,6 @@ public final class SparseMatrixZSampleGrid<TZ> implements ZSampleGrid<TZ>,
 
         private static final int TYPE_DIAGONAL = 2;
 
-        private boolean processed;
-
         private SparseMatrixSamplePoint A, B;
 
         private GridDelaunayEdge ccw1, ccw2, cw1, cw2;
@@ -140,16 +138,6 @@ public final class SparseMatrixZSampleGrid<TZ> implements ZSampleGrid<TZ>,
             return ccw ? ccw2 : cw2;
         }
 
-        @Override
-        public boolean isProcessed() {
-            return processed;
-        }
-
-        @Override
-        public void setProcessed(boolean processed) {
-            this.processed = processed;
-        }
-
         @Override
         public String toString() {
             return "<GridDelaunayEdge " + A.getCoordinates() + "->" + B.getCoordinates() + ">";
@@ -15,6 +15,7 @@ package org.opentripplanner.graph_builder;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.Lists;
+import org.opentripplanner.common.LuceneIndex;
 import org.opentripplanner.graph_builder.model.GtfsBundle;
 import org.opentripplanner.graph_builder.module.DirectTransferGenerator;
 import org.opentripplanner.graph_builder.module.EmbedConfig;
@@ -38,6 +39,7 @@ import org.opentripplanner.reflect.ReflectionLibrary;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Graph.LoadLevel;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 import org.opentripplanner.standalone.CommandLineParameters;
 import org.opentripplanner.standalone.GraphBuilderParameters;
 import org.opentripplanner.standalone.OTPMain;
@@ -79,6 +81,9 @@ public class GraphBuilder implements Runnable {
     /** Should the graph be serialized to disk after being created or not? */
     public boolean serializeGraph = true;
 
+    /** Should the geocoder index be built and saved alongside the serialized graph or not? */
+    public boolean buildGeocoderIndex = false;
+
     public void addModule(GraphBuilderModule loader) {
         _graphBuilderModules.add(loader);
     }
@@ -163,6 +168,11 @@ public class GraphBuilder implements Runnable {
             } catch (Exception ex) {
                 throw new IllegalStateException(ex);
             }
+            if (buildGeocoderIndex) {
+                // Servers loading the graph memory-map this index instead of building their own.
+                graph.index(new DefaultStreetVertexIndexFactory());
+                new LuceneIndex(graph.index, new File(graphFile.getParentFile(), LuceneIndex.DIRECTORY_NAME), false);
+            }
         } else {
             LOG.info("Not saving graph to disk, as requested.");
         }
@@ -312,6 +322,7 @@ public class GraphBuilder implements Runnable {
             graphBuilder.addModule(new AnnotationsToHTML(params.build, builderParams.maxHtmlAnnotationsPerFile));
         }
         graphBuilder.serializeGraph = ( ! params.inMemory ) || params.preFlight;
+        graphBuilder.buildGeocoderIndex = builderParams.geocoderIndex;
         return graphBuilder;
     }
 
@@ -318,6 +318,9 @@ public class SimpleStreetSplitter {
             SplitterVertex v0 = split(edge, ll, temporaryVertex != null, endVertex);
             makeLinkEdges(tstop, v0);
         }
+
+        if (!(tstop instanceof TemporaryVertex))
+            graph.edgesModified();
     }
 
 
@@ -20,15 +20,16 @@ import org.onebusaway.csv_entities.CsvInputSource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represent a feed id in a GTFS feed.
  */
 public class GtfsFeedId {
     /**
-     * A counter that will increase for each created feed id.
+     * A counter that will increase for each created feed id. Feed ids may be created on several threads.
      */
-    private static int FEED_ID_COUNTER = 1;
+    private static final AtomicInteger FEED_ID_COUNTER = new AtomicInteger(1);
 
     /**
      * The id for the feed
@@ -113,10 +114,10 @@ public class GtfsFeedId {
          */
         public GtfsFeedId build() {
             id = cleanId(id);
+            int counter = FEED_ID_COUNTER.getAndIncrement();
             if (id == null || id.trim().length() == 0) {
-                id = String.valueOf(FEED_ID_COUNTER);
+                id = String.valueOf(counter);
             }
-            FEED_ID_COUNTER++;
             return new GtfsFeedId(id);
         }
     }
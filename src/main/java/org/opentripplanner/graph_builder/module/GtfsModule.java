@@ -24,9 +24,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.onebusaway.csv_entities.EntityHandler;
 import org.onebusaway.gtfs.impl.GtfsRelationalDaoImpl;
+import org.onebusaway.gtfs.impl.calendar.CalendarServiceImpl;
 import org.onebusaway.gtfs.model.*;
 import org.onebusaway.gtfs.model.calendar.CalendarServiceData;
 import org.onebusaway.gtfs.serialization.GtfsReader;
@@ -46,14 +52,13 @@ import org.opentripplanner.routing.services.FareServiceFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Sets;
 
 public class GtfsModule implements GraphBuilderModule {
 
     private static final Logger LOG = LoggerFactory.getLogger(GtfsModule.class);
 
-    EntityHandler counter = new EntityCounter();
-
     private FareServiceFactory _fareServiceFactory;
 
     /** will be applied to all bundles which do not have the cacheDirectory property set */
@@ -95,28 +100,40 @@ public class GtfsModule implements GraphBuilderModule {
 
         MultiCalendarServiceImpl service = new MultiCalendarServiceImpl();
         GtfsStopContext stopContext = new GtfsStopContext();
-        
-        try {
-            for (GtfsBundle gtfsBundle : gtfsBundles) {
-                // apply global defaults to individual GTFSBundles (if globals have been set)
-                if (cacheDirectory != null && gtfsBundle.cacheDirectory == null)
-                    gtfsBundle.cacheDirectory = cacheDirectory;
-                if (useCached != null && gtfsBundle.useCached == null)
-                    gtfsBundle.useCached = useCached;
-                GtfsMutableRelationalDao dao = new GtfsRelationalDaoImpl();
-                GtfsContext context = GtfsLibrary.createContext(gtfsBundle.getFeedId(), dao, service);
-                GTFSPatternHopFactory hf = new GTFSPatternHopFactory(context);
-                hf.setStopContext(stopContext);
-                hf.setFareServiceFactory(_fareServiceFactory);
-                hf.setMaxStopToShapeSnapDistance(gtfsBundle.getMaxStopToShapeSnapDistance());
 
-                loadBundle(gtfsBundle, graph, dao);
+        for (GtfsBundle gtfsBundle : gtfsBundles) {
+            // apply global defaults to individual GTFSBundles (if globals have been set)
+            if (cacheDirectory != null && gtfsBundle.cacheDirectory == null)
+                gtfsBundle.cacheDirectory = cacheDirectory;
+            if (useCached != null && gtfsBundle.useCached == null)
+                gtfsBundle.useCached = useCached;
+            // Feeds without a feed_id are numbered as they are created, so create them in bundle order.
+            gtfsBundle.getFeedId();
+        }
+
+        /* Read the feeds and build their trip patterns concurrently, one task per bundle. Only the resolution of
+         * conflicting agency IDs depends on the other bundles, and it is done in bundle order. */
+        int nThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), gtfsBundles.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        List<Future<LoadedBundle>> futures = new ArrayList<Future<LoadedBundle>>();
+        CountDownLatch previousAgenciesRead = new CountDownLatch(0);
+        for (GtfsBundle gtfsBundle : gtfsBundles) {
+            CountDownLatch waitFor = previousAgenciesRead;
+            CountDownLatch agenciesRead = new CountDownLatch(1);
+            futures.add(executor.submit(() -> buildBundle(gtfsBundle, graph, waitFor, agenciesRead)));
+            previousAgenciesRead = agenciesRead;
+        }
 
-                CalendarServiceDataFactoryImpl csfactory = new CalendarServiceDataFactoryImpl();
-                csfactory.setGtfsDao(dao);
-                CalendarServiceData data = csfactory.createData();
-                service.addData(data, dao);
+        /* Add the bundles to the graph one by one, in the order they were given. */
+        try {
+            for (Future<LoadedBundle> future : futures) {
+                LoadedBundle loaded = future.get();
+                GtfsBundle gtfsBundle = loaded.bundle;
+                GTFSPatternHopFactory hf = loaded.hopFactory;
+                service.addData(loaded.calendarData, loaded.dao);
 
+                hf.setStopContext(stopContext);
+                hf.setFareServiceFactory(_fareServiceFactory);
                 hf.subwayAccessTime = gtfsBundle.subwayAccessTime;
                 hf.maxInterlineDistance = gtfsBundle.maxInterlineDistance;
                 hf.run(graph);
@@ -131,8 +148,13 @@ public class GtfsModule implements GraphBuilderModule {
                     hf.createParentStationTransfers();
                 }
             }
-        } catch (IOException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
 
         // We need to save the calendar service data so we can use it later
@@ -149,8 +171,45 @@ public class GtfsModule implements GraphBuilderModule {
      * Private Methods
      ****/
 
-    private void loadBundle(GtfsBundle gtfsBundle, Graph graph, GtfsMutableRelationalDao dao)
-            throws IOException {
+    /**
+     * Read a bundle and build its trip patterns, without modifying the graph.
+     * @param previousAgenciesRead counted down when the agencies of the previous bundle have been resolved.
+     * @param agenciesRead counted down when the agencies of this bundle have been resolved, even on failure.
+     */
+    private LoadedBundle buildBundle(GtfsBundle gtfsBundle, Graph graph, CountDownLatch previousAgenciesRead,
+            CountDownLatch agenciesRead) throws IOException, InterruptedException {
+        LoadedBundle loaded = new LoadedBundle();
+        loaded.bundle = gtfsBundle;
+        loaded.dao = new GtfsRelationalDaoImpl();
+        try {
+            loadBundle(gtfsBundle, loaded.dao, previousAgenciesRead, agenciesRead);
+        } finally {
+            agenciesRead.countDown();
+        }
+
+        CalendarServiceDataFactoryImpl csfactory = new CalendarServiceDataFactoryImpl();
+        csfactory.setGtfsDao(loaded.dao);
+        loaded.calendarData = csfactory.createData();
+
+        // Trips are checked against the service IDs of their own bundle.
+        GtfsContext context = GtfsLibrary.createContext(gtfsBundle.getFeedId(), loaded.dao,
+                new CalendarServiceImpl(loaded.calendarData));
+        loaded.hopFactory = new GTFSPatternHopFactory(context);
+        loaded.hopFactory.setMaxStopToShapeSnapDistance(gtfsBundle.getMaxStopToShapeSnapDistance());
+        loaded.hopFactory.buildPatterns(graph.deduplicator);
+        return loaded;
+    }
+
+    /** A bundle that has been read and whose trip patterns have been built, ready to be added to the graph. */
+    private static class LoadedBundle {
+        GtfsBundle bundle;
+        GtfsMutableRelationalDao dao;
+        CalendarServiceData calendarData;
+        GTFSPatternHopFactory hopFactory;
+    }
+
+    private void loadBundle(GtfsBundle gtfsBundle, GtfsMutableRelationalDao dao,
+            CountDownLatch previousAgenciesRead, CountDownLatch agenciesRead) throws IOException, InterruptedException {
 
         StoreImpl store = new StoreImpl(dao);
         store.open();
@@ -165,7 +224,7 @@ public class GtfsModule implements GraphBuilderModule {
         reader.setDefaultAgencyId(gtfsFeedId.getId());
 
         if (LOG.isDebugEnabled())
-            reader.addEntityHandler(counter);
+            reader.addEntityHandler(new EntityCounter());
 
         if (gtfsBundle.getDefaultBikesAllowed())
             reader.addEntityHandler(new EntityBikeability(true));
@@ -177,7 +236,9 @@ public class GtfsModule implements GraphBuilderModule {
             // NOTE that agencies are first in the list and read before all other entity types, so it is effective to
             // set the agencyId here. Each feed ("bundle") is loaded by a separate reader, so there is no risk of
             // agency mappings accumulating.
+            // Bundles are read concurrently, the agencies of each one are resolved after those of the previous bundle.
             if (entityClass == Agency.class) {
+                previousAgenciesRead.await();
                 for (Agency agency : reader.getAgencies()) {
                     String agencyId = agency.getId();
                     LOG.info("This Agency has the ID {}", agencyId);
@@ -197,6 +258,7 @@ public class GtfsModule implements GraphBuilderModule {
                     }
                     if (agencyId != null) agencyIdsSeen.add(gtfsFeedId.getId() + agencyId);
                 }
+                agenciesRead.countDown();
             }
         }
 
@@ -36,12 +36,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.media.jai.InterpolationBilinear;
+import javax.media.jai.JAI;
+import javax.media.jai.TileCache;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * {@link org.opentripplanner.graph_builder.services.GraphBuilderModule} plugin that applies elevation data to street data that has already
@@ -52,6 +60,10 @@ import java.util.List;
  * where each (x,y) pair represents one sample, with the x-coord representing the distance along
  * the edge measured from the start, and the y-coord representing the sampled elevation at that
  * point (both in meters).
+ *
+ * Edges are sampled in parallel. Each thread evaluates the DEM through its own interpolator, while the decoded raster
+ * tiles are shared between threads in the JAI tile cache. Filling in elevations that are missing from the DEM is a
+ * search across the street network and remains single-threaded.
  */
 public class ElevationModule implements GraphBuilderModule {
 
@@ -59,11 +71,26 @@ public class ElevationModule implements GraphBuilderModule {
 
     private ElevationGridCoverageFactory gridCoverageFactory;
 
-    private Coverage coverage;
+    /** Edges are claimed by sampling threads in blocks of this size, and progress is counted per block. */
+    private static final int EDGES_PER_BLOCK = 100;
+
+    private static final int EDGES_PER_PROGRESS_LOG = 50000;
+
+    /**
+     * The minimum size of the JAI cache holding decoded DEM tiles while sampling, which is shared by all sampling
+     * threads. The previous size is restored afterwards.
+     */
+    private static final long MIN_TILE_CACHE_BYTES = 256 * 1024 * 1024;
 
     // Keep track of the proportion of elevation fetch operations that fail so we can issue warnings.
-    private int nPointsEvaluated = 0;
-    private int nPointsOutsideDEM = 0;
+    // These are updated by all sampling threads, and LongAdders keep them from becoming a point of contention.
+    private final LongAdder nPointsEvaluated = new LongAdder();
+    private final LongAdder nPointsOutsideDEM = new LongAdder();
+
+    private final AtomicInteger nEdgesProcessed = new AtomicInteger();
+
+    /** The number of threads sampling the DEM. */
+    private int nThreads = Runtime.getRuntime().availableProcessors();
 
     /**
      * The distance between samples in meters. Defaults to 10m, the approximate resolution of 1/3
@@ -93,48 +120,125 @@ public class ElevationModule implements GraphBuilderModule {
         distanceBetweenSamplesM = distance;
     }
 
+    public void setNThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
     @Override
     public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
         gridCoverageFactory.setGraph(graph);
         Coverage gridCov = gridCoverageFactory.getGridCoverage();
 
-        // If gridCov is a GridCoverage2D, apply a bilinear interpolator. Otherwise, just use the
-        // coverage as is (note: UnifiedGridCoverages created by NEDGridCoverageFactoryImpl handle
-        // interpolation internally)
-        coverage = (gridCov instanceof GridCoverage2D) ? Interpolator2D.create(
-                (GridCoverage2D) gridCov, new InterpolationBilinear()) : gridCov;
         log.info("Setting street elevation profiles from digital elevation model...");
-        List<StreetEdge> edgesWithElevation = new ArrayList<StreetEdge>();
-        int nProcessed = 0;
-        int nTotal = graph.countEdges();
+        List<StreetWithElevationEdge> edges = new ArrayList<StreetWithElevationEdge>();
         for (Vertex gv : graph.getVertices()) {
             for (Edge ee : gv.getOutgoing()) {
                 if (ee instanceof StreetWithElevationEdge) {
-                    StreetWithElevationEdge edgeWithElevation = (StreetWithElevationEdge) ee;
-                    processEdge(graph, edgeWithElevation);
-                    if (edgeWithElevation.getElevationProfile() != null && !edgeWithElevation.isElevationFlattened()) {
-                        edgesWithElevation.add(edgeWithElevation);
-                    }
-                    nProcessed += 1;
-                    if (nProcessed % 50000 == 0) {
-                        log.info("set elevation on {}/{} edges", nProcessed, nTotal);
-                        double failurePercentage = nPointsOutsideDEM / nPointsEvaluated * 100;
-                        if (failurePercentage > 50) {
-                            log.warn("Fetching elevation failed at {}/{} points ({}%)",
-                                    nPointsOutsideDEM, nPointsEvaluated, failurePercentage);
-                            log.warn("Elevation is missing at a large number of points. DEM may be for the wrong region. " +
-                                    "If it is unprojected, perhaps the axes are not in (longitude, latitude) order.");
-                        }
-                    }
+                    edges.add((StreetWithElevationEdge) ee);
                 }
             }
         }
+        // The tile cache is shared by the whole process, so only enlarge it while sampling.
+        TileCache tileCache = JAI.getDefaultInstance().getTileCache();
+        long tileCacheCapacity = tileCache.getMemoryCapacity();
+        if (tileCacheCapacity < MIN_TILE_CACHE_BYTES) {
+            tileCache.setMemoryCapacity(MIN_TILE_CACHE_BYTES);
+        }
+        try {
+            sampleEdges(graph, gridCov, edges);
+        } finally {
+            tileCache.setMemoryCapacity(tileCacheCapacity);
+        }
+
+        // Collect edges in graph order rather than the order they were sampled, so the repair is deterministic.
+        List<StreetEdge> edgesWithElevation = new ArrayList<StreetEdge>();
+        for (StreetWithElevationEdge edge : edges) {
+            if (edge.getElevationProfile() != null && !edge.isElevationFlattened()) {
+                edgesWithElevation.add(edge);
+            }
+        }
 
         @SuppressWarnings("unchecked")
         HashMap<Vertex, Double> extraElevation = (HashMap<Vertex, Double>) extra.get(ElevationPoint.class);
         assignMissingElevations(graph, edgesWithElevation, extraElevation);
     }
 
+    /**
+     * Sample the DEM along all the given edges, splitting the work between threads. Threads claim blocks of edges
+     * from a shared counter, so they stay busy even when edge lengths (and thus the number of samples) vary a lot.
+     */
+    private void sampleEdges(Graph graph, Coverage gridCov, List<StreetWithElevationEdge> edges) {
+        // Coverages of unknown types cannot be copied, and may not be safe to share, so sample them on one thread.
+        boolean copyable = gridCov instanceof UnifiedGridCoverage || gridCov instanceof GridCoverage2D;
+        int nWorkers = copyable ? Math.max(1, nThreads) : 1;
+        log.info("Sampling elevation along {} edges with {} threads", edges.size(), nWorkers);
+
+        AtomicInteger nextEdge = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(nWorkers);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < nWorkers; i++) {
+                Coverage interpolator = createInterpolator(gridCov);
+                Coverage coverage = interpolator == null ? gridCov : interpolator;
+                workers.add(executor.submit(() -> {
+                    int first;
+                    while ((first = nextEdge.getAndAdd(EDGES_PER_BLOCK)) < edges.size()) {
+                        int last = Math.min(first + EDGES_PER_BLOCK, edges.size());
+                        for (int e = first; e < last; e++) {
+                            processEdge(graph, coverage, edges.get(e));
+                        }
+                        logProgress(last - first, edges.size());
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while sampling elevation", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error while sampling elevation", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("set elevation on {} edges, {}/{} points were outside the DEM", edges.size(),
+                nPointsOutsideDEM.sum(), nPointsEvaluated.sum());
+    }
+
+    /**
+     * @return a bilinear interpolator over the given coverage for use by a single thread, or null if none can be made.
+     * UnifiedGridCoverages created by NEDGridCoverageFactoryImpl handle interpolation internally and are copied
+     * with new interpolators.
+     */
+    private static Coverage createInterpolator(Coverage gridCov) {
+        if (gridCov instanceof UnifiedGridCoverage) {
+            return ((UnifiedGridCoverage) gridCov).withNewInterpolators();
+        }
+        if (gridCov instanceof GridCoverage2D) {
+            return Interpolator2D.create((GridCoverage2D) gridCov, new InterpolationBilinear());
+        }
+        return null;
+    }
+
+    /** Count the edges of a finished block, logging whenever the total crosses a multiple of the logging interval. */
+    private void logProgress(int nEdges, int nTotal) {
+        int nProcessed = nEdgesProcessed.addAndGet(nEdges);
+        if (nProcessed / EDGES_PER_PROGRESS_LOG == (nProcessed - nEdges) / EDGES_PER_PROGRESS_LOG) {
+            return;
+        }
+        log.info("set elevation on {}/{} edges", nProcessed, nTotal);
+        long nOutside = nPointsOutsideDEM.sum();
+        long nEvaluated = nPointsEvaluated.sum();
+        double failurePercentage = nEvaluated == 0 ? 0 : nOutside * 100.0 / nEvaluated;
+        if (failurePercentage > 50) {
+            log.warn("Fetching elevation failed at {}/{} points ({}%)",
+                    nOutside, nEvaluated, failurePercentage);
+            log.warn("Elevation is missing at a large number of points. DEM may be for the wrong region. " +
+                    "If it is unprojected, perhaps the axes are not in (longitude, latitude) order.");
+        }
+    }
+
     class ElevationRepairState {
         /* This uses an intuitionist approach to elevation inspection */
         public StreetEdge backEdge;
@@ -335,8 +439,9 @@ public class ElevationModule implements GraphBuilderModule {
      * 
      * @param ee the street edge
      * @param graph the graph (used only for error handling)
+     * @param coverage the coverage to sample, which must not be in use by other threads
      */
-    private void processEdge(Graph graph, StreetWithElevationEdge ee) {
+    private void processEdge(Graph graph, Coverage coverage, StreetWithElevationEdge ee) {
         if (ee.getElevationProfile() != null) {
             return; /* already set up */
         }
@@ -353,7 +458,7 @@ public class ElevationModule implements GraphBuilderModule {
         }
 
         // initial sample (x = 0)
-        coordList.add(new Coordinate(0, getElevation(coords[0])));
+        coordList.add(new Coordinate(0, getElevation(coverage, coords[0])));
 
         // loop for edge-internal samples
         for (double x = distanceBetweenSamplesM; x < edgeLenM; x += distanceBetweenSamplesM) {
@@ -363,11 +468,11 @@ public class ElevationModule implements GraphBuilderModule {
             }
 
             Coordinate internal = getPointAlongEdge(coords, edgeLenM, x / edgeLenM);
-            coordList.add(new Coordinate(x, getElevation(internal)));
+            coordList.add(new Coordinate(x, getElevation(coverage, internal)));
         }
 
         // final sample (x = edge length)
-        coordList.add(new Coordinate(edgeLenM, getElevation(coords[coords.length - 1])));
+        coordList.add(new Coordinate(edgeLenM, getElevation(coverage, coords[coords.length - 1])));
 
         // construct the PCS
         Coordinate coordArr[] = new Coordinate[coordList.size()];
@@ -375,7 +480,10 @@ public class ElevationModule implements GraphBuilderModule {
                 coordList.toArray(coordArr));
 
         if(ee.setElevationProfile(elevPCS, false)) {
-            log.trace(graph.addBuilderAnnotation(new ElevationFlattened(ee)));
+            // the list of annotations is shared by all sampling threads
+            synchronized (graph) {
+                log.trace(graph.addBuilderAnnotation(new ElevationFlattened(ee)));
+            }
         }
     }
 
@@ -427,21 +535,23 @@ public class ElevationModule implements GraphBuilderModule {
     /**
      * Method for retrieving the elevation at a given Coordinate.
      * 
+     * @param coverage the coverage to sample
      * @param c the coordinate (NAD83)
      * @return elevation in meters
      */
-    private double getElevation(Coordinate c) {
-        return getElevation(c.x, c.y);
+    private double getElevation(Coverage coverage, Coordinate c) {
+        return getElevation(coverage, c.x, c.y);
     }
 
     /**
      * Method for retrieving the elevation at a given (x, y) pair.
      * 
+     * @param coverage the coverage to sample
      * @param x the query longitude (NAD83)
      * @param y the query latitude (NAD83)
      * @return elevation in meters
      */
-    private double getElevation(double x, double y) {
+    private double getElevation(Coverage coverage, double x, double y) {
         double values[] = new double[1];
         try {
             // We specify a CRS here because otherwise the coordinates are assumed to be in the coverage's native CRS.
@@ -451,9 +561,9 @@ public class ElevationModule implements GraphBuilderModule {
             // rasters to also use (long, lat).
             coverage.evaluate(new DirectPosition2D(GeometryUtils.WGS84_XY, x, y), values);
         } catch (org.opengis.coverage.PointOutsideCoverageException e) {
-            nPointsOutsideDEM += 1;
+            nPointsOutsideDEM.increment();
         }
-        nPointsEvaluated += 1;
+        nPointsEvaluated.increment();
         return values[0];
     }
 
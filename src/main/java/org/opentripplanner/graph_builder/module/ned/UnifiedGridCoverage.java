@@ -15,6 +15,7 @@ package org.opentripplanner.graph_builder.module.ned;
 
 import org.geotools.coverage.AbstractCoverage;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.Interpolator2D;
 import org.geotools.geometry.GeneralEnvelope;
 import org.opengis.coverage.CannotEvaluateException;
 import org.opengis.coverage.Coverage;
@@ -24,6 +25,7 @@ import org.opengis.geometry.DirectPosition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.media.jai.InterpolationBilinear;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -111,4 +113,27 @@ public class UnifiedGridCoverage extends AbstractCoverage {
         regions.add(regionCoverage);
     }
 
+    /**
+     * Interpolator2D evaluates points one at a time under a lock, so threads sharing a unified coverage wait on one
+     * another. This makes a unified coverage over the same regions and datums with its own bilinear interpolators,
+     * for use by a single thread. The underlying images are shared, so tiles decoded by one copy are found by the
+     * others in the JAI tile cache.
+     */
+    public UnifiedGridCoverage withNewInterpolators() {
+        UnifiedGridCoverage copy = null;
+        for (Coverage region : regions) {
+            GridCoverage2D source = (GridCoverage2D) region;
+            if (source instanceof Interpolator2D) {
+                source = (GridCoverage2D) source.getSources().get(0);
+            }
+            GridCoverage2D interpolator = Interpolator2D.create(source, new InterpolationBilinear());
+            if (copy == null) {
+                copy = new UnifiedGridCoverage(getName(), interpolator, datums);
+            } else {
+                copy.add(interpolator);
+            }
+        }
+        return copy;
+    }
+
 }
@@ -0,0 +1,259 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.graph_builder.module.osm;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import org.opentripplanner.common.model.P2;
+import org.opentripplanner.openstreetmap.model.OSMWithTags;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A list of OSMSpecifiers compiled to be matched against a large number of OSM entities. The scores are the same as
+ * those of OSMSpecifier.matchScore and OSMSpecifier.matchScores.
+ *
+ * The tags of the specifiers are lowercased once, and the specifiers are indexed by the keys of their tags: only the
+ * specifiers sharing a key with an entity are scored, as the others cannot match it. Most entities share a small number
+ * of combinations of the tags used by the specifiers, so the results are also memoized by those tags (see tagsKey).
+ * The specifiers must not be modified once compiled.
+ */
+public class SpecifierIndex {
+
+    /** Results are no longer memoized past this number of distinct combinations of tags. */
+    private static final int MAX_MEMOIZED = 100000;
+
+    private final Specifier[] specifiers;
+
+    /** The indexes of the specifiers using each key, or its :left and :right variants, in increasing order. */
+    private final Map<String, int[]> specifiersForKey = new HashMap<>();
+
+    /** The indexes of the specifiers without any tag, which match all entities. */
+    private final int[] emptySpecifiers;
+
+    private final Map<List<String>, Integer> bestMatches = new ConcurrentHashMap<>();
+
+    private final Map<List<String>, int[]> allMatches = new ConcurrentHashMap<>();
+
+    public SpecifierIndex(List<OSMSpecifier> osmSpecifiers) {
+        specifiers = new Specifier[osmSpecifiers.size()];
+        Map<String, TIntList> indexes = new HashMap<>();
+        TIntList empty = new TIntArrayList();
+        for (int i = 0; i < specifiers.length; i++) {
+            Specifier specifier = new Specifier(osmSpecifiers.get(i));
+            specifiers[i] = specifier;
+            if (specifier.keys.length == 0) {
+                empty.add(i);
+            }
+            for (int t = 0; t < specifier.keys.length; t++) {
+                for (String key : new String[] { specifier.keys[t], specifier.leftKeys[t], specifier.rightKeys[t] }) {
+                    TIntList list = indexes.computeIfAbsent(key, k -> new TIntArrayList());
+                    if (list.isEmpty() || list.get(list.size() - 1) != i) {
+                        list.add(i);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, TIntList> entry : indexes.entrySet()) {
+            specifiersForKey.put(entry.getKey().intern(), entry.getValue().toArray());
+        }
+        emptySpecifiers = empty.toArray();
+    }
+
+    /**
+     * @return The tags of the entity that are used by the specifiers, as a sorted list of alternating keys and values.
+     *         Two entities with the same tagsKey get the same scores from every specifier.
+     */
+    public List<String> tagsKey(OSMWithTags entity) {
+        Map<String, String> tags = entity.getTags();
+        if (tags == null) {
+            return Collections.emptyList();
+        }
+        List<String> keys = new ArrayList<>();
+        for (String key : tags.keySet()) {
+            if (specifiersForKey.containsKey(key)) {
+                keys.add(key);
+            }
+        }
+        Collections.sort(keys);
+        List<String> tagsKey = new ArrayList<>(keys.size() * 2);
+        for (String key : keys) {
+            tagsKey.add(key);
+            tagsKey.add(tags.get(key));
+        }
+        return tagsKey;
+    }
+
+    /** @return The indexes of the specifiers that may match the entity, in increasing order. */
+    public int[] candidates(OSMWithTags entity) {
+        Map<String, String> tags = entity.getTags();
+        if (tags == null) {
+            return emptySpecifiers;
+        }
+        BitSet candidates = new BitSet(specifiers.length);
+        for (int i : emptySpecifiers) {
+            candidates.set(i);
+        }
+        for (String key : tags.keySet()) {
+            int[] indexes = specifiersForKey.get(key);
+            if (indexes != null) {
+                for (int i : indexes) {
+                    candidates.set(i);
+                }
+            }
+        }
+        return candidates.stream().toArray();
+    }
+
+    /** @return The same score as OSMSpecifier.matchScore for the i-th specifier. */
+    public int matchScore(int i, OSMWithTags entity) {
+        Specifier specifier = specifiers[i];
+        Map<String, String> tags = tagsOf(entity);
+        int score = 0;
+        int matches = 0;
+        for (int t = 0; t < specifier.keys.length; t++) {
+            int tagScore = specifier.tagScore(t, tags.get(specifier.keys[t]));
+            score += tagScore;
+            if (tagScore > 0) {
+                matches += 1;
+            }
+        }
+        return score + (matches == specifier.keys.length ? 10 : 0);
+    }
+
+    /** @return The same scores as OSMSpecifier.matchScores for the i-th specifier, as a left and right score. */
+    public P2<Integer> matchScores(int i, OSMWithTags entity) {
+        Specifier specifier = specifiers[i];
+        Map<String, String> tags = tagsOf(entity);
+        int leftScore = 0, rightScore = 0;
+        int leftMatches = 0, rightMatches = 0;
+        for (int t = 0; t < specifier.keys.length; t++) {
+            String matchValue = tags.get(specifier.keys[t]);
+            String leftMatchValue = tags.get(specifier.leftKeys[t]);
+            String rightMatchValue = tags.get(specifier.rightKeys[t]);
+            int leftTagScore = specifier.tagScore(t, leftMatchValue == null ? matchValue : leftMatchValue);
+            leftScore += leftTagScore;
+            if (leftTagScore > 0) {
+                leftMatches++;
+            }
+            int rightTagScore = specifier.tagScore(t, rightMatchValue == null ? matchValue : rightMatchValue);
+            rightScore += rightTagScore;
+            if (rightTagScore > 0) {
+                rightMatches++;
+            }
+        }
+        leftScore += leftMatches == specifier.keys.length ? 10 : 0;
+        rightScore += rightMatches == specifier.keys.length ? 10 : 0;
+        return new P2<Integer>(leftScore, rightScore);
+    }
+
+    /** @return The index of the specifier with the best matchScore, the first one in case of a tie, or -1 if none match. */
+    public int bestMatch(OSMWithTags entity) {
+        List<String> tagsKey = tagsKey(entity);
+        Integer best = bestMatches.get(tagsKey);
+        if (best == null) {
+            best = -1;
+            int bestScore = 0;
+            for (int i : candidates(entity)) {
+                int score = matchScore(i, entity);
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            memoize(bestMatches, tagsKey, best);
+        }
+        return best;
+    }
+
+    /** @return The indexes of all the specifiers with a positive matchScore, in increasing order. */
+    public int[] allMatches(OSMWithTags entity) {
+        List<String> tagsKey = tagsKey(entity);
+        int[] matches = allMatches.get(tagsKey);
+        if (matches == null) {
+            TIntList list = new TIntArrayList();
+            for (int i : candidates(entity)) {
+                if (matchScore(i, entity) > 0) {
+                    list.add(i);
+                }
+            }
+            matches = list.toArray();
+            memoize(allMatches, tagsKey, matches);
+        }
+        return matches;
+    }
+
+    /** Memoize a result computed for a combination of tags, unless too many combinations were seen already. */
+    public static <T> void memoize(Map<List<String>, T> memo, List<String> tagsKey, T result) {
+        if (memo.size() < MAX_MEMOIZED) {
+            memo.put(tagsKey, result);
+        }
+    }
+
+    private static Map<String, String> tagsOf(OSMWithTags entity) {
+        Map<String, String> tags = entity.getTags();
+        return tags == null ? Collections.<String, String>emptyMap() : tags;
+    }
+
+    /** An OSMSpecifier with its keys and values lowercased, and the derived keys and values precomputed. */
+    private static class Specifier {
+
+        final String[] keys, leftKeys, rightKeys, values;
+
+        /** The part of each value before a colon, or null if the value has no colon. */
+        final String[] valuePrefixes;
+
+        final boolean[] wildcards;
+
+        Specifier(OSMSpecifier specifier) {
+            int n = specifier.kvpairs.size();
+            keys = new String[n];
+            leftKeys = new String[n];
+            rightKeys = new String[n];
+            values = new String[n];
+            valuePrefixes = new String[n];
+            wildcards = new boolean[n];
+            for (int t = 0; t < n; t++) {
+                P2<String> pair = specifier.kvpairs.get(t);
+                keys[t] = pair.first.toLowerCase().intern();
+                leftKeys[t] = (keys[t] + ":left").intern();
+                rightKeys[t] = (keys[t] + ":right").intern();
+                values[t] = pair.second.toLowerCase().intern();
+                wildcards[t] = values[t].equals("*");
+                if (values[t].contains(":")) {
+                    valuePrefixes[t] = values[t].split(":", 2)[0].intern();
+                }
+            }
+        }
+
+        /** The same score as OSMSpecifier.getTagScore for the t-th tag of this specifier. */
+        int tagScore(int t, String matchValue) {
+            if (wildcards[t] && matchValue != null) {
+                return 1;
+            } else if (values[t].equals(matchValue)) {
+                return 100;
+            } else if (valuePrefixes[t] != null && valuePrefixes[t].equals(matchValue)) {
+                return 75;
+            } else {
+                return 0;
+            }
+        }
+    }
+}
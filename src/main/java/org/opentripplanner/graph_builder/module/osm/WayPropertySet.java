@@ -19,8 +19,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.opentripplanner.common.model.P2;
 import org.opentripplanner.common.model.T2;
@@ -65,6 +67,21 @@ public class WayPropertySet {
 
     public WayPropertySetSource base;
 
+    /* The specifiers of the pickers compiled for matching, built on first use and discarded when pickers are added. */
+
+    private SpecifierIndex wayPropertyIndex;
+
+    private SpecifierIndex creativeNamerIndex;
+
+    private SpecifierIndex slopeOverrideIndex;
+
+    private SpecifierIndex speedIndex;
+
+    private SpecifierIndex noteIndex;
+
+    /** The WayProperties computed for each combination of the tags used by the WayPropertyPickers. */
+    private Map<List<String>, WayProperties> dataForTags = new ConcurrentHashMap<>();
+
     public WayPropertySet() {
         /* sensible defaults */
         defaultProperties = new WayProperties();
@@ -89,6 +106,7 @@ public class WayPropertySet {
        notes = props.notes;
        slopeOverrides = props.slopeOverrides;
        wayProperties = props.wayProperties;
+       clearIndexes();
     }
 
     /**
@@ -96,16 +114,28 @@ public class WayPropertySet {
      * will have their safety values applied if they match at all.
      */
     public WayProperties getDataForWay(OSMWithTags way) {
+        SpecifierIndex index = getWayPropertyIndex();
+        List<String> tagsKey = index.tagsKey(way);
+        WayProperties result = dataForTags.get(tagsKey);
+        if (result == null) {
+            result = computeDataForWay(way, index);
+            SpecifierIndex.memoize(dataForTags, tagsKey, result);
+        }
+        return result.clone();
+    }
+
+    private WayProperties computeDataForWay(OSMWithTags way, SpecifierIndex index) {
         WayProperties leftResult = defaultProperties;
         WayProperties rightResult = defaultProperties;
         int bestLeftScore = 0;
         int bestRightScore = 0;
         List<WayProperties> leftMixins = new ArrayList<WayProperties>();
         List<WayProperties> rightMixins = new ArrayList<WayProperties>();
-        for (WayPropertyPicker picker : wayProperties) {
-            OSMSpecifier specifier = picker.getSpecifier();
+        // Pickers that are not candidates score zero on both sides, and would not change the result.
+        for (int i : index.candidates(way)) {
+            WayPropertyPicker picker = wayProperties.get(i);
             WayProperties wayProperties = picker.getProperties();
-            P2<Integer> score = specifier.matchScores(way);
+            P2<Integer> score = index.matchScores(i, way);
             int leftScore = score.first;
             int rightScore = score.second;
             if (picker.isSafetyMixin()) {
@@ -179,21 +209,11 @@ public class WayPropertySet {
     }
 
     public I18NString getCreativeNameForWay(OSMWithTags way) {
-        CreativeNamer bestNamer = null;
-        int bestScore = 0;
-        for (CreativeNamerPicker picker : creativeNamers) {
-            OSMSpecifier specifier = picker.specifier;
-            CreativeNamer namer = picker.namer;
-            int score = specifier.matchScore(way);
-            if (score > bestScore) {
-                bestNamer = namer;
-                bestScore = score;
-            }
-        }
-        if (bestNamer == null) {
+        int best = getCreativeNamerIndex().bestMatch(way);
+        if (best < 0) {
             return null;
         }
-        return bestNamer.generateCreativeName(way);
+        return creativeNamers.get(best).namer.generateCreativeName(way);
     }
     
     /**
@@ -238,35 +258,20 @@ public class WayPropertySet {
                     
         // otherwise, we use the speedPickers
         
-        int bestScore = 0;
-        Float bestSpeed = null;
-        int score;
-        
         // SpeedPickers are constructed in DefaultWayPropertySetSource with an OSM specifier
         // (e.g. highway=motorway) and a default speed for that segment.
-        for (SpeedPicker picker : speedPickers) {
-            OSMSpecifier specifier = picker.specifier;
-            score = specifier.matchScore(way);
-            if (score > bestScore) {
-                bestScore = score;
-                bestSpeed = picker.speed;
-            }
-        }
+        int best = getSpeedIndex().bestMatch(way);
         
-        if (bestSpeed != null)
-            return bestSpeed;
+        if (best >= 0)
+            return speedPickers.get(best).speed;
         else
             return this.defaultSpeed;
     }
 
     public Set<T2<Alert, NoteMatcher>> getNoteForWay(OSMWithTags way) {
         HashSet<T2<Alert, NoteMatcher>> out = new HashSet<>();
-        for (NotePicker picker : notes) {
-            OSMSpecifier specifier = picker.specifier;
-            NoteProperties noteProperties = picker.noteProperties;
-            if (specifier.matchScore(way) > 0) {
-                out.add(noteProperties.generateNote(way));
-            }
+        for (int i : getNoteIndex().allMatches(way)) {
+            out.add(notes.get(i).noteProperties.generateNote(way));
         }
         if (out.size() == 0) {
             return null;
@@ -275,37 +280,83 @@ public class WayPropertySet {
     }
 
     public boolean getSlopeOverride(OSMWithTags way) {
-        boolean result = false;
-        int bestScore = 0;
-        for (SlopeOverridePicker picker : slopeOverrides) {
-            OSMSpecifier specifier = picker.getSpecifier();
-            int score = specifier.matchScore(way);
-            if (score > bestScore) {
-                result = picker.getOverride();
-                bestScore = score;
-            }
+        int best = getSlopeOverrideIndex().bestMatch(way);
+        return best >= 0 && slopeOverrides.get(best).getOverride();
+    }
+
+    private synchronized SpecifierIndex getWayPropertyIndex() {
+        if (wayPropertyIndex == null) {
+            wayPropertyIndex = new SpecifierIndex(wayProperties.stream()
+                    .map(WayPropertyPicker::getSpecifier).collect(Collectors.toList()));
         }
-        return result;
+        return wayPropertyIndex;
+    }
+
+    private synchronized SpecifierIndex getCreativeNamerIndex() {
+        if (creativeNamerIndex == null) {
+            creativeNamerIndex = new SpecifierIndex(creativeNamers.stream()
+                    .map(picker -> picker.specifier).collect(Collectors.toList()));
+        }
+        return creativeNamerIndex;
+    }
+
+    private synchronized SpecifierIndex getSlopeOverrideIndex() {
+        if (slopeOverrideIndex == null) {
+            slopeOverrideIndex = new SpecifierIndex(slopeOverrides.stream()
+                    .map(SlopeOverridePicker::getSpecifier).collect(Collectors.toList()));
+        }
+        return slopeOverrideIndex;
+    }
+
+    private synchronized SpecifierIndex getSpeedIndex() {
+        if (speedIndex == null) {
+            speedIndex = new SpecifierIndex(speedPickers.stream()
+                    .map(picker -> picker.specifier).collect(Collectors.toList()));
+        }
+        return speedIndex;
+    }
+
+    private synchronized SpecifierIndex getNoteIndex() {
+        if (noteIndex == null) {
+            noteIndex = new SpecifierIndex(notes.stream()
+                    .map(picker -> picker.specifier).collect(Collectors.toList()));
+        }
+        return noteIndex;
+    }
+
+    /** Discard the compiled specifiers and memoized results, after pickers are added. */
+    private synchronized void clearIndexes() {
+        wayPropertyIndex = null;
+        creativeNamerIndex = null;
+        slopeOverrideIndex = null;
+        speedIndex = null;
+        noteIndex = null;
+        dataForTags = new ConcurrentHashMap<>();
     }
 
     public void addProperties(OSMSpecifier spec, WayProperties properties, boolean mixin) {
         wayProperties.add(new WayPropertyPicker(spec, properties, mixin));
+        clearIndexes();
     }
 
     public void addProperties(OSMSpecifier spec, WayProperties properties) {
         wayProperties.add(new WayPropertyPicker(spec, properties, false));
+        clearIndexes();
     }
 
     public void addCreativeNamer(OSMSpecifier spec, CreativeNamer namer) {
         creativeNamers.add(new CreativeNamerPicker(spec, namer));
+        clearIndexes();
     }
 
     public void addNote(OSMSpecifier osmSpecifier, NoteProperties properties) {
         notes.add(new NotePicker(osmSpecifier, properties));
+        clearIndexes();
     }
 
     public void setSlopeOverride(OSMSpecifier spec, boolean override) {
         slopeOverrides.add(new SlopeOverridePicker(spec, override));
+        clearIndexes();
     }
 
     public boolean equals(Object o) {
@@ -326,6 +377,7 @@ public class WayPropertySet {
 
     public void addSpeedPicker(SpeedPicker picker) {
         this.speedPickers.add(picker);
+        clearIndexes();
     }
     
     public Float getMetersSecondFromSpeed(String speed) {
@@ -0,0 +1,100 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Loads values by key in batches and memoizes them, in the spirit of the DataLoader used with GraphQL in javascript.
+ *
+ * The GraphQL executor calls the data fetchers of a list of sibling objects one at a time, so there is no point at
+ * which all the keys of the siblings are requested together. Instead, the fetcher returning the list primes the
+ * loader with all the keys it is about to return. The first load of a key then also loads the keys primed with it
+ * that have not been loaded yet, in a single call to the batch function, and later loads of these keys are served
+ * from memory. GraphQL requests the same fields for all the elements of a list, so the keys primed together are
+ * loaded anyway, while the keys of other lists, which the query may not load, are left out of the batch. A loader is
+ * meant to live for a single query, as its values are never invalidated.
+ *
+ * This class is thread safe, as the fetchers of a query may be run concurrently. A load blocks while a batch is
+ * being loaded, which is what we want as the batch probably contains the requested key.
+ */
+public class BatchLoader<K, V> {
+
+    private final Function<Collection<K>, Map<K, V>> batchFunction;
+
+    private final int maxBatchSize;
+
+    private final Map<K, V> values = new HashMap<>();
+
+    /** The keys primed and not loaded yet, each with the set of pending keys it was primed with, in priming order. */
+    private final Map<K, Set<K>> pending = new HashMap<>();
+
+    /**
+     * @param batchFunction Loads the values for a collection of keys, returning a map that contains a value (which
+     *        may be null) for each of them.
+     * @param maxBatchSize The maximum number of keys loaded in a single call to the batch function.
+     */
+    public BatchLoader(Function<Collection<K>, Map<K, V>> batchFunction, int maxBatchSize) {
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Announce keys that are likely to be loaded soon, so they can be loaded in the same batch. A key already pending
+     * stays with the keys it was first primed with.
+     */
+    public synchronized void prime(Collection<? extends K> keys) {
+        Set<K> group = new LinkedHashSet<>();
+        for (K key : keys) {
+            if (key != null && !values.containsKey(key) && !pending.containsKey(key)) {
+                group.add(key);
+                pending.put(key, group);
+            }
+        }
+    }
+
+    /** @return The value for a key, loading it along with the pending keys if it has not been loaded yet. */
+    public synchronized V load(K key) {
+        if (values.containsKey(key)) {
+            return values.get(key);
+        }
+        List<K> batch = new ArrayList<>();
+        batch.add(key);
+        Set<K> group = pending.remove(key);
+        if (group != null) {
+            group.remove(key);
+            Iterator<K> it = group.iterator();
+            while (it.hasNext() && batch.size() < maxBatchSize) {
+                K next = it.next();
+                it.remove();
+                pending.remove(next);
+                batch.add(next);
+            }
+        }
+        Map<K, V> loaded = batchFunction.apply(batch);
+        for (K k : batch) {
+            values.put(k, loaded.get(k));
+        }
+        return values.get(key);
+    }
+
+}
@@ -30,8 +30,9 @@ public class GeocoderResource {
         GraphIndex graphIndex = router.graph.index;
         synchronized (graphIndex) {
             if (graphIndex.luceneIndex == null) {
-                // Synchronously lazy-initialize the Lucene index
-                graphIndex.luceneIndex = new LuceneIndex(graphIndex, otpServer.basePath, false);
+                // Synchronously lazy-initialize the Lucene index, saving it so that it is reused after a restart
+                graphIndex.luceneIndex = new LuceneIndex(graphIndex,
+                        LuceneIndex.rootDirectory(router.graph, router.id, otpServer.basePath), false);
             }
             index = graphIndex.luceneIndex;
         }
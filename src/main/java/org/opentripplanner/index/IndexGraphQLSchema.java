@@ -5,6 +5,7 @@ import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.LineString;
 import graphql.Scalars;
+import graphql.relay.Connection;
 import graphql.relay.Relay;
 import graphql.relay.SimpleListConnection;
 import graphql.schema.DataFetchingEnvironment;
@@ -93,6 +94,8 @@ public class IndexGraphQLSchema {
     
     private final GtfsRealtimeFuzzyTripMatcher fuzzyTripMatcher;
 
+    private final GraphIndex index;
+
     public GraphQLOutputType agencyType = new GraphQLTypeReference("Agency");
 
     public GraphQLOutputType coordinateType = new GraphQLTypeReference("Coordinates");
@@ -143,8 +146,20 @@ public class IndexGraphQLSchema {
         }
     });
 
+    /**
+     * @return The context of the query being executed, or a new context for this call only when the query was
+     * executed without one.
+     */
+    private IndexQueryContext context(DataFetchingEnvironment environment) {
+        if (environment.getContext() instanceof IndexQueryContext) {
+            return (IndexQueryContext) environment.getContext();
+        }
+        return new IndexQueryContext(index);
+    }
+
     public IndexGraphQLSchema(GraphIndex index) {
 
+        this.index = index;
         fuzzyTripMatcher = new GtfsRealtimeFuzzyTripMatcher(index);
 
         stopAtDistanceType = GraphQLObjectType.newObject()
@@ -208,7 +223,8 @@ public class IndexGraphQLSchema {
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("stops")
                 .type(new GraphQLList(new GraphQLNonNull(stopType)))
-                .dataFetcher(environment -> ((StopCluster) environment.getSource()).children)
+                .dataFetcher(environment -> context(environment)
+                    .primeStops(((StopCluster) environment.getSource()).children))
                 .build())
             .build();
 
@@ -299,12 +315,8 @@ public class IndexGraphQLSchema {
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("routes")
                 .type(new GraphQLList(new GraphQLNonNull(routeType)))
-                .dataFetcher(environment -> index.patternsForStop
-                    .get((Stop) environment.getSource())
-                    .stream()
-                    .map(pattern -> pattern.route)
-                    .distinct()
-                    .collect(Collectors.toList()))
+                .dataFetcher(environment -> context(environment)
+                    .routesForStop((Stop) environment.getSource()))
                 .build())
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("patterns")
@@ -335,7 +347,7 @@ public class IndexGraphQLSchema {
                     .build())
                 .dataFetcher(environment -> {
                     try {  // TODO: Add our own scalar types for at least serviceDate and AgencyAndId
-                        return index.getStopTimesForStop(
+                        return context(environment).getStopTimesForStop(
                             (Stop) environment.getSource(),
                             ServiceDate.parseString(environment.getArgument("date")));
                     } catch (ParseException e) {
@@ -362,7 +374,7 @@ public class IndexGraphQLSchema {
                     .defaultValue(5)
                     .build())
                 .dataFetcher(environment ->
-                    index.stopTimesForStop((Stop) environment.getSource(),
+                    context(environment).stopTimesForStop((Stop) environment.getSource(),
                         Long.parseLong(environment.getArgument("startTime")),
                         (int) environment.getArgument("timeRange"),
                         (int) environment.getArgument("numberOfDepartures")))
@@ -386,7 +398,7 @@ public class IndexGraphQLSchema {
                     .defaultValue(5)
                     .build())
                 .dataFetcher(environment ->
-                    index.stopTimesForStop(
+                    context(environment).stopTimesForStop(
                         (Stop) environment.getSource(),
                         Long.parseLong(environment.getArgument("startTime")),
                         (int) environment.getArgument("timeRange"),
@@ -554,8 +566,8 @@ public class IndexGraphQLSchema {
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("stops")
                 .type(new GraphQLNonNull(new GraphQLList(new GraphQLNonNull(stopType))))
-                .dataFetcher(environment -> index.patternForTrip
-                    .get((Trip) environment.getSource()).getStops())
+                .dataFetcher(environment -> context(environment).primeStops(index.patternForTrip
+                    .get((Trip) environment.getSource()).getStops()))
                 .build())
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("semanticHash")
@@ -581,7 +593,7 @@ public class IndexGraphQLSchema {
                     try {
                         Trip trip = (Trip) environment.getSource();
                         return TripTimeShort.fromTripTimes(
-                            index.graph.timetableSnapshotSource.getTimetableSnapshot()
+                            context(environment)
                                 .resolve(index.patternForTrip.get(trip),
                                     ServiceDate.parseString(environment.getArgument("serviceDay")))
                                 , trip);
@@ -745,13 +757,13 @@ public class IndexGraphQLSchema {
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("stops")
                 .type(new GraphQLList(stopType))
-                .dataFetcher(environment -> index.patternsForRoute
+                .dataFetcher(environment -> context(environment).primeStops(index.patternsForRoute
                     .get((Route) environment.getSource())
                     .stream()
                     .map(TripPattern::getStops)
                     .flatMap(Collection::stream)
                     .distinct()
-                    .collect(Collectors.toList()))
+                    .collect(Collectors.toList())))
                 .build())
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("trips")
@@ -867,12 +879,12 @@ public class IndexGraphQLSchema {
                     .build())
                 .dataFetcher(environment -> {
                     if (!(environment.getArgument("ids") instanceof List)) {
-                        return new ArrayList<>(index.stopForId.values());
+                        return context(environment).primeStops(new ArrayList<>(index.stopForId.values()));
                     } else {
-                        return ((List<String>) environment.getArgument("ids"))
+                        return context(environment).primeStops(((List<String>) environment.getArgument("ids"))
                             .stream()
                             .map(id -> index.stopForId.get(GtfsLibrary.convertIdFromString(id)))
-                            .collect(Collectors.toList());
+                            .collect(Collectors.toList()));
                     }
                 })
                 .build())
@@ -900,7 +912,7 @@ public class IndexGraphQLSchema {
                     .name("agency")
                     .type(Scalars.GraphQLString)
                     .build())
-                .dataFetcher(environment -> index.graph.streetIndex
+                .dataFetcher(environment -> context(environment).primeStops(index.graph.streetIndex
                     .getTransitStopForEnvelope(new Envelope(
                         new Coordinate((double) (float) environment.getArgument("minLon"),
                             (double) (float) environment.getArgument("minLat")),
@@ -910,7 +922,7 @@ public class IndexGraphQLSchema {
                     .map(TransitVertex::getStop)
                     .filter(stop -> environment.getArgument("agency") == null || stop.getId()
                         .getAgencyId().equalsIgnoreCase(environment.getArgument("agency")))
-                    .collect(Collectors.toList()))
+                    .collect(Collectors.toList())))
                 .build())
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("stopsByRadius")
@@ -939,8 +951,8 @@ public class IndexGraphQLSchema {
                     .type(Scalars.GraphQLString)
                     .build())
                 .argument(relay.getConnectionFieldArguments())
-                .dataFetcher(environment ->
-                    new SimpleListConnection(index.findClosestStopsByWalking(
+                .dataFetcher(environment -> {
+                    List<GraphIndex.StopAndDistance> stops = index.findClosestStopsByWalking(
                         environment.getArgument("lat"), environment.getArgument("lon"),
                         environment.getArgument("radius")
                     )
@@ -949,8 +961,14 @@ public class IndexGraphQLSchema {
                             stopAndDistance.stop.getId().getAgencyId()
                                 .equalsIgnoreCase(environment.getArgument("agency")))
                         .sorted(Comparator.comparing(s -> (float) s.distance))
-                        .collect(Collectors.toList()))
-                        .get(environment))
+                        .collect(Collectors.toList());
+                    // Only the stops of the requested page are returned, and can have their stop times requested
+                    Connection connection = (Connection) new SimpleListConnection(stops).get(environment);
+                    context(environment).primeStops(connection.getEdges().stream()
+                        .map(edge -> ((GraphIndex.StopAndDistance) edge.getNode()).stop)
+                        .collect(Collectors.toList()));
+                    return connection;
+                })
                 .build())
             .field(GraphQLFieldDefinition.newFieldDefinition()
                 .name("stop")
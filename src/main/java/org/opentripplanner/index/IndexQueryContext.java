@@ -0,0 +1,128 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.index;
+
+import org.onebusaway.gtfs.model.Route;
+import org.onebusaway.gtfs.model.Stop;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.opentripplanner.index.model.StopTimesInPattern;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TimetableSnapshot;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.GraphIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The state shared by the data fetchers during the execution of a single GraphQL query on the index. All the
+ * fetchers see the same realtime snapshot and the same current time, and the stop times of the stops returned by a
+ * list field are loaded in batches (see BatchLoader) and memoized for the rest of the query.
+ *
+ * The fetchers returning lists of stops register them with primeStops, so that their stop times can be fetched
+ * together when the first of them is requested. Only the stops actually returned are primed, e.g. the requested page
+ * of a connection, and each list makes its own batches.
+ */
+public class IndexQueryContext {
+
+    /** The maximum number of stops whose stop times are fetched in a single batch. */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    public final GraphIndex index;
+
+    /** The realtime snapshot used for the whole query, null if there is no realtime data. */
+    public final TimetableSnapshot snapshot;
+
+    /** The current time for the whole query, in seconds since the epoch. */
+    public final long now;
+
+    /** The lists of stops primed so far, to prime the loaders created later. */
+    private final List<Collection<Stop>> stops = new ArrayList<>();
+
+    private final Map<List<Object>, BatchLoader<Stop, List<StopTimesInPattern>>> loaders = new ConcurrentHashMap<>();
+
+    private final Map<Stop, List<Route>> routesForStop = new ConcurrentHashMap<>();
+
+    private final Map<List<Object>, Timetable> timetables = new ConcurrentHashMap<>();
+
+    public IndexQueryContext(GraphIndex index) {
+        this.index = index;
+        this.snapshot = index.currentTimetableSnapshot();
+        this.now = System.currentTimeMillis() / 1000;
+    }
+
+    /** Register stops whose stop times are likely to be requested by the query. */
+    public <T extends Collection<Stop>> T primeStops(T newStops) {
+        synchronized (stops) {
+            stops.add(newStops);
+            for (BatchLoader<Stop, List<StopTimesInPattern>> loader : loaders.values()) {
+                loader.prime(newStops);
+            }
+        }
+        return newStops;
+    }
+
+    /** Batched and memoized version of GraphIndex.stopTimesForStop. */
+    public List<StopTimesInPattern> stopTimesForStop(Stop stop, long startTime, int timeRange,
+            int numberOfDepartures) {
+        long time = startTime == 0 ? now : startTime;
+        return loader(Arrays.asList("departures", time, timeRange, numberOfDepartures),
+                batch -> index.stopTimesForStops(batch, time, timeRange, numberOfDepartures, snapshot)).load(stop);
+    }
+
+    /** Batched and memoized version of GraphIndex.getStopTimesForStop. */
+    public List<StopTimesInPattern> getStopTimesForStop(Stop stop, ServiceDate serviceDate) {
+        return loader(Arrays.asList("serviceDate", serviceDate),
+                batch -> index.getStopTimesForStops(batch, serviceDate, snapshot)).load(stop);
+    }
+
+    /** @return The distinct routes of the patterns serving a stop. */
+    public List<Route> routesForStop(Stop stop) {
+        return routesForStop.computeIfAbsent(stop, s -> index.patternsForStop.get(s).stream()
+                .map(pattern -> pattern.route)
+                .distinct()
+                .collect(Collectors.toList()));
+    }
+
+    /** @return The timetable of a pattern for a service date, in the snapshot of this query. */
+    public Timetable resolve(TripPattern pattern, ServiceDate serviceDate) {
+        return timetables.computeIfAbsent(Arrays.asList(pattern, serviceDate),
+                k -> snapshot != null ? snapshot.resolve(pattern, serviceDate) : pattern.scheduledTimetable);
+    }
+
+    private BatchLoader<Stop, List<StopTimesInPattern>> loader(List<Object> key,
+            Function<Collection<Stop>, Map<Stop, List<StopTimesInPattern>>> batchFunction) {
+        BatchLoader<Stop, List<StopTimesInPattern>> loader = loaders.get(key);
+        if (loader == null) {
+            synchronized (stops) {
+                loader = loaders.get(key);
+                if (loader == null) {
+                    loader = new BatchLoader<>(batchFunction, MAX_BATCH_SIZE);
+                    for (Collection<Stop> primed : stops) {
+                        loader.prime(primed);
+                    }
+                    loaders.put(key, loader);
+                }
+            }
+        }
+        return loader;
+    }
+
+}
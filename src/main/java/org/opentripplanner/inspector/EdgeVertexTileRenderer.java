@@ -23,7 +23,9 @@ import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.image.BufferedImage;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.opentripplanner.common.geometry.GeometryUtils;
@@ -51,7 +53,7 @@ import com.vividsolutions.jts.operation.buffer.OffsetCurveBuilder;
  * 
  * @author laurent
  */
-public class EdgeVertexTileRenderer implements TileRenderer {
+public class EdgeVertexTileRenderer implements TileRenderer, VectorTileRenderer {
 
     public class EdgeVisualAttributes {
 
@@ -117,18 +119,7 @@ public class EdgeVertexTileRenderer implements TileRenderer {
 
         Collection<Vertex> vertices = context.graph.streetIndex
                 .getVerticesForEnvelope(bboxWithMargins);
-        Collection<Edge> edges = context.graph.streetIndex.getEdgesForEnvelope(bboxWithMargins);
-        Set<Edge> edgesSet = new HashSet<>(edges);
-
-        /*
-         * Some edges do not have geometry and thus do not get spatial-indexed. Add
-         * outgoing/incoming edges of all vertices. This is not perfect, as if the edge cross a tile
-         * it will not be rendered on it.
-         */
-        for (Vertex vertex : vertices) {
-            edgesSet.addAll(vertex.getIncoming());
-            edgesSet.addAll(vertex.getOutgoing());
-        }
+        Set<Edge> edgesSet = getEdges(context, bboxWithMargins, vertices);
 
         // Note: we do not use the transform inside the shapeWriter, but do it ourselves
         // since it's easier for the offset to work in pixel size.
@@ -167,13 +158,9 @@ public class EdgeVertexTileRenderer implements TileRenderer {
             evAttrs.color = null;
             evAttrs.label = null;
             Geometry edgeGeom = edge.getGeometry();
-            boolean hasGeom = true;
-            if (edgeGeom == null) {
-                Coordinate[] coordinates = new Coordinate[] { edge.getFromVertex().getCoordinate(),
-                        edge.getToVertex().getCoordinate() };
-                edgeGeom = GeometryUtils.getGeometryFactory().createLineString(coordinates);
-                hasGeom = false;
-            }
+            boolean hasGeom = edgeGeom != null;
+            if (!hasGeom)
+                edgeGeom = straightLine(edge);
 
             boolean render = evRenderer.renderEdge(edge, evAttrs);
             if (!render)
@@ -242,4 +229,82 @@ public class EdgeVertexTileRenderer implements TileRenderer {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void encodeTile(TileRenderContext context, VectorTileEncoder encoder) {
+
+        // Include a few pixels around the tile so that lines are not cut short at tile edges
+        Envelope bboxWithMargins = context.expandPixels(4.0, 4.0);
+        Collection<Vertex> vertices = context.graph.streetIndex
+                .getVerticesForEnvelope(bboxWithMargins);
+        Set<Edge> edgesSet = getEdges(context, bboxWithMargins, vertices);
+
+        EdgeVisualAttributes evAttrs = new EdgeVisualAttributes();
+        for (Edge edge : edgesSet) {
+            evAttrs.color = null;
+            evAttrs.label = null;
+            if (!evRenderer.renderEdge(edge, evAttrs))
+                continue;
+
+            Geometry edgeGeom = edge.getGeometry();
+            boolean hasGeom = edgeGeom != null;
+            if (!hasGeom)
+                edgeGeom = straightLine(edge);
+
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put("type", edge.getClass().getSimpleName());
+            attributes.put("name", edge.getName());
+            attributes.put("color", toHex(evAttrs.color));
+            attributes.put("label", evAttrs.label);
+            attributes.put("hasGeometry", hasGeom);
+            encoder.addLineString("edges", edgeGeom.getCoordinates(), attributes);
+        }
+
+        VertexVisualAttributes vvAttrs = new VertexVisualAttributes();
+        for (Vertex vertex : vertices) {
+            vvAttrs.color = null;
+            vvAttrs.label = null;
+            if (!evRenderer.renderVertex(vertex, vvAttrs))
+                continue;
+
+            Map<String, Object> attributes = new HashMap<>();
+            attributes.put("type", vertex.getClass().getSimpleName());
+            attributes.put("color", toHex(vvAttrs.color));
+            attributes.put("label", vvAttrs.label);
+            encoder.addPoint("vertices", vertex.getCoordinate(), attributes);
+        }
+    }
+
+    /**
+     * Get all edges in the envelope.
+     */
+    private Set<Edge> getEdges(TileRenderContext context, Envelope envelope,
+            Collection<Vertex> vertices) {
+        Collection<Edge> edges = context.graph.streetIndex.getEdgesForEnvelope(envelope);
+        Set<Edge> edgesSet = new HashSet<>(edges);
+
+        /*
+         * Some edges do not have geometry and thus do not get spatial-indexed. Add
+         * outgoing/incoming edges of all vertices. This is not perfect, as if the edge cross a tile
+         * it will not be rendered on it.
+         */
+        for (Vertex vertex : vertices) {
+            edgesSet.addAll(vertex.getIncoming());
+            edgesSet.addAll(vertex.getOutgoing());
+        }
+        return edgesSet;
+    }
+
+    private static Geometry straightLine(Edge edge) {
+        Coordinate[] coordinates = new Coordinate[] { edge.getFromVertex().getCoordinate(),
+                edge.getToVertex().getCoordinate() };
+        return GeometryUtils.getGeometryFactory().createLineString(coordinates);
+    }
+
+    /** @return the color as a CSS hex string, #rrggbb, or null if there is no color. */
+    private static String toHex(Color color) {
+        if (color == null)
+            return null;
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+}
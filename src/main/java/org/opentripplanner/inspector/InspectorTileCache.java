@@ -0,0 +1,120 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.inspector;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A cache of encoded inspector tiles, bounded in memory by their total size in bytes and optionally backed by a
+ * directory on disk.
+ *
+ * The cache belongs to a single graph. Tiles on disk are stored under a directory named after the fingerprint of the
+ * graph (see Graph.getFingerprint()), and the tiles of any other graph are deleted when the cache is created. The
+ * fingerprint covers the edge attributes the tiles show, such as permissions, bike safety and wheelchair accessibility,
+ * and does not depend on vertex indices: reloading the same graph keeps its tiles, while a rebuilt graph never gets
+ * stale ones.
+ */
+public class InspectorTileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InspectorTileCache.class);
+
+    private final Cache<String, byte[]> tiles;
+
+    /** Where to save tiles, or null to keep them in memory only. */
+    private final File directory;
+
+    /**
+     * @param maxBytes the most bytes of tiles to keep in memory.
+     * @param rootDirectory the directory in which to save the tiles of all graphs, or null to keep tiles in memory only.
+     * @param graphFingerprint the fingerprint of the graph whose tiles are cached.
+     */
+    public InspectorTileCache(long maxBytes, File rootDirectory, String graphFingerprint) {
+        this.tiles = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, byte[] tile) -> tile.length)
+                .build();
+
+        if (rootDirectory == null) {
+            this.directory = null;
+            return;
+        }
+
+        this.directory = new File(rootDirectory, graphFingerprint);
+        File[] others = rootDirectory.listFiles();
+        if (others != null) {
+            for (File other : others) {
+                if (other.isDirectory() && !other.equals(directory)) {
+                    LOG.info("Deleting inspector tiles of another graph in {}", other);
+                    FileUtils.deleteQuietly(other);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a tile from memory or disk, rendering it if it is not found in either. Concurrent requests for the same
+     * tile only render it once.
+     *
+     * @param key a relative path identifying the tile, e.g. layer/z/x/y.png
+     */
+    public byte[] get(String key, Callable<byte[]> renderer) {
+        try {
+            return tiles.get(key, () -> load(key, renderer));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private byte[] load(String key, Callable<byte[]> renderer) throws Exception {
+        if (directory == null)
+            return renderer.call();
+
+        File file = new File(directory, key);
+        if (file.exists()) {
+            try {
+                return Files.readAllBytes(file.toPath());
+            } catch (IOException e) {
+                LOG.warn("Could not read cached tile {}, rendering it again.", file, e);
+            }
+        }
+
+        byte[] tile = renderer.call();
+
+        // Write to a temporary file and rename, so a partially written tile is never read.
+        File tempFile = new File(directory, key + ".tmp");
+        try {
+            tempFile.getParentFile().mkdirs();
+            Files.write(tempFile.toPath(), tile);
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not save tile {}", file, e);
+            tempFile.delete();
+        }
+        return tile;
+    }
+}
@@ -14,10 +14,15 @@
 package org.opentripplanner.inspector;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.imageio.ImageIO;
+
 import org.geotools.geometry.Envelope2D;
+import org.opentripplanner.analyst.core.SlippyTile;
 import org.opentripplanner.analyst.request.TileRequest;
 import org.opentripplanner.api.resource.GraphInspectorTileResource;
 import org.opentripplanner.inspector.TileRenderer.TileRenderContext;
@@ -34,6 +39,10 @@ import com.vividsolutions.jts.geom.util.AffineTransformation;
  * tile rendering context (bounding box, image graphic context, affine transform, etc...) and call
  * the renderer to paint the tile.
  * 
+ * Encoded tiles are cached in memory, and optionally on disk, by getTile(). A new TileRendererManager is created
+ * whenever a router is (re)loaded, and tiles on disk are keyed on the fingerprint of the graph, so the tiles of a
+ * previous graph are never served.
+ * 
  * @see GraphInspectorTileResource
  * @see TileRenderer
  * 
@@ -46,10 +55,28 @@ public class TileRendererManager {
 
     private Map<String, TileRenderer> renderers = new HashMap<String, TileRenderer>();
 
+    /** Format for which getTile() produces a Mapbox Vector Tile rather than an image. */
+    public static final String VECTOR_FORMAT = "pbf";
+
+    /** The most bytes of encoded tiles kept in memory. */
+    private static final long MAX_CACHE_BYTES = 64 * 1024 * 1024;
+
     private Graph graph;
 
+    private InspectorTileCache tileCache;
+
     public TileRendererManager(Graph graph) {
+        this(graph, null);
+    }
+
+    /**
+     * @param cacheDirectory where to save encoded tiles so they survive restarts, or null to cache them in memory
+     *        only.
+     */
+    public TileRendererManager(Graph graph, File cacheDirectory) {
         this.graph = graph;
+        this.tileCache = new InspectorTileCache(MAX_CACHE_BYTES, cacheDirectory,
+                cacheDirectory == null ? null : graph.getFingerprint());
 
         // Register layers.
         renderers.put("bike-safety", new EdgeVertexTileRenderer(new BikeSafetyEdgeRenderer()));
@@ -62,40 +89,67 @@ public class TileRendererManager {
         renderers.put(layer, tileRenderer);
     }
 
-    public BufferedImage renderTile(final TileRequest tileRequest, String layer) {
+    /**
+     * Get an encoded slippy map tile, going through the tile cache.
+     * 
+     * @param format an image format name understood by ImageIO (e.g. png), or VECTOR_FORMAT.
+     */
+    public byte[] getTile(int x, int y, int z, String layer, String format) {
+        TileRenderer renderer = renderers.get(layer);
+        if (renderer == null)
+            throw new IllegalArgumentException("Unknown layer: " + layer);
+        boolean vector = VECTOR_FORMAT.equals(format);
+        if (vector && !(renderer instanceof VectorTileRenderer))
+            throw new IllegalArgumentException("Layer " + layer + " has no vector tiles");
+
+        String key = String.join("/", layer, Integer.toString(z), Integer.toString(x), y + "." + format);
+        return tileCache.get(key, () -> {
+            TileRequest tileRequest = new TileRequest(SlippyTile.tile2Envelope(x, y, z), 256, 256);
+            if (vector)
+                return encodeVectorTile(tileRequest, layer);
+
+            BufferedImage image = renderTile(tileRequest, layer);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(image.getWidth() * image.getHeight() / 4);
+            ImageIO.write(image, format, baos);
+            return baos.toByteArray();
+        });
+    }
 
-        TileRenderContext context = new TileRenderContext() {
-            @Override
-            public Envelope expandPixels(double marginXPixels, double marginYPixels) {
-                Envelope retval = new Envelope(bbox);
-                retval.expandBy(
-                        marginXPixels / tileRequest.width * (bbox.getMaxX() - bbox.getMinX()),
-                        marginYPixels / tileRequest.height * (bbox.getMaxY() - bbox.getMinY()));
-                return retval;
-            }
-        };
+    /**
+     * Encode a tile as a Mapbox Vector Tile, for layers whose renderer is a VectorTileRenderer.
+     */
+    public byte[] encodeVectorTile(final TileRequest tileRequest, String layer) {
+        TileRenderer renderer = renderers.get(layer);
+        if (!(renderer instanceof VectorTileRenderer))
+            throw new IllegalArgumentException("Layer " + layer + " has no vector tiles");
 
-        context.graph = graph;
+        TileRenderContext context = makeContext(tileRequest);
+        VectorTileEncoder encoder = new VectorTileEncoder(context.bbox);
+        long start = System.currentTimeMillis();
+        ((VectorTileRenderer) renderer).encodeTile(context, encoder);
+        byte[] tile = encoder.encode();
+        LOG.debug("Encoded vector tile at {},{} in {} ms", tileRequest.bbox.y, tileRequest.bbox.x,
+                System.currentTimeMillis() - start);
+        return tile;
+    }
+
+    public BufferedImage renderTile(final TileRequest tileRequest, String layer) {
 
         TileRenderer renderer = renderers.get(layer);
         if (renderer == null)
             throw new IllegalArgumentException("Unknown layer: " + layer);
 
-        // The best place for caching tiles may be here
+        TileRenderContext context = makeContext(tileRequest);
         BufferedImage image = new BufferedImage(tileRequest.width, tileRequest.height,
                 renderer.getColorModel());
         context.graphics = image.createGraphics();
         Envelope2D trbb = tileRequest.bbox;
-        context.bbox = new Envelope(trbb.x, trbb.x + trbb.width, trbb.y, trbb.y + trbb.height);
         context.transform = new AffineTransformation();
         double xScale = tileRequest.width / trbb.width;
         double yScale = tileRequest.height / trbb.height;
 
         context.transform.translate(-trbb.x, -trbb.y - trbb.height);
         context.transform.scale(xScale, -yScale);
-        context.metersPerPixel = Math.toRadians(trbb.height) * 6371000 / tileRequest.height;
-        context.tileWidth = tileRequest.width;
-        context.tileHeight = tileRequest.height;
 
         long start = System.currentTimeMillis();
         renderer.renderTile(context);
@@ -104,6 +158,30 @@ public class TileRendererManager {
         return image;
     }
 
+    /** Set up the parts of a tile rendering context that do not depend on the output format. */
+    private TileRenderContext makeContext(final TileRequest tileRequest) {
+
+        TileRenderContext context = new TileRenderContext() {
+            @Override
+            public Envelope expandPixels(double marginXPixels, double marginYPixels) {
+                Envelope retval = new Envelope(bbox);
+                retval.expandBy(
+                        marginXPixels / tileRequest.width * (bbox.getMaxX() - bbox.getMinX()),
+                        marginYPixels / tileRequest.height * (bbox.getMaxY() - bbox.getMinY()));
+                return retval;
+            }
+        };
+
+        context.graph = graph;
+
+        Envelope2D trbb = tileRequest.bbox;
+        context.bbox = new Envelope(trbb.x, trbb.x + trbb.width, trbb.y, trbb.y + trbb.height);
+        context.metersPerPixel = Math.toRadians(trbb.height) * 6371000 / tileRequest.height;
+        context.tileWidth = tileRequest.width;
+        context.tileHeight = tileRequest.height;
+        return context;
+    }
+
     /**
      * Gets all renderers
      * 
@@ -0,0 +1,238 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.inspector;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes points and lines into a Mapbox Vector Tile (version 2 of the specification, see
+ * https://github.com/mapbox/vector-tile-spec).
+ *
+ * The tile format is a small protocol buffer message, which is written directly here rather than through generated
+ * classes. Coordinates are WGS84 and are projected linearly onto the tile envelope, as for the inspector image tiles.
+ */
+public class VectorTileEncoder {
+
+    /** Number of integer coordinate units across a tile. */
+    public static final int EXTENT = 4096;
+
+    private static final int GEOM_POINT = 1, GEOM_LINESTRING = 2;
+
+    private static final int CMD_MOVE_TO = 1, CMD_LINE_TO = 2;
+
+    private final Envelope bbox;
+
+    private final Map<String, Layer> layers = new LinkedHashMap<>();
+
+    /** @param bbox the envelope of the tile, in WGS84. */
+    public VectorTileEncoder(Envelope bbox) {
+        this.bbox = bbox;
+    }
+
+    /** Add a point feature. Attribute values may be strings, numbers or booleans; null values are skipped. */
+    public void addPoint(String layer, Coordinate c, Map<String, Object> attributes) {
+        TIntList geometry = new TIntArrayList(3);
+        geometry.add(command(CMD_MOVE_TO, 1));
+        geometry.add(zigZag(x(c)));
+        geometry.add(zigZag(y(c)));
+        getLayer(layer).addFeature(GEOM_POINT, geometry, attributes);
+    }
+
+    /** Add a line feature. Lines that are shorter than one tile unit are skipped. */
+    public void addLineString(String layer, Coordinate[] coords, Map<String, Object> attributes) {
+        // Drop consecutive points that fall on the same tile unit, the specification forbids zero-length segments.
+        int[] xs = new int[coords.length], ys = new int[coords.length];
+        int n = 0;
+        for (Coordinate c : coords) {
+            int x = x(c), y = y(c);
+            if (n > 0 && x == xs[n - 1] && y == ys[n - 1])
+                continue;
+            xs[n] = x;
+            ys[n] = y;
+            n++;
+        }
+        if (n < 2)
+            return;
+
+        TIntList geometry = new TIntArrayList(2 * n + 2);
+        geometry.add(command(CMD_MOVE_TO, 1));
+        geometry.add(zigZag(xs[0]));
+        geometry.add(zigZag(ys[0]));
+        geometry.add(command(CMD_LINE_TO, n - 1));
+        for (int i = 1; i < n; i++) {
+            geometry.add(zigZag(xs[i] - xs[i - 1]));
+            geometry.add(zigZag(ys[i] - ys[i - 1]));
+        }
+        getLayer(layer).addFeature(GEOM_LINESTRING, geometry, attributes);
+    }
+
+    /** @return the encoded tile. */
+    public byte[] encode() {
+        ByteArrayOutputStream tile = new ByteArrayOutputStream();
+        for (Map.Entry<String, Layer> entry : layers.entrySet()) {
+            // Tile.layers = 3
+            writeBytes(tile, 3, entry.getValue().encode(entry.getKey()));
+        }
+        return tile.toByteArray();
+    }
+
+    private Layer getLayer(String name) {
+        Layer layer = layers.get(name);
+        if (layer == null) {
+            layer = new Layer();
+            layers.put(name, layer);
+        }
+        return layer;
+    }
+
+    private int x(Coordinate c) {
+        return (int) Math.round((c.x - bbox.getMinX()) / bbox.getWidth() * EXTENT);
+    }
+
+    /** Tile coordinates increase downwards. */
+    private int y(Coordinate c) {
+        return (int) Math.round((bbox.getMaxY() - c.y) / bbox.getHeight() * EXTENT);
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    /** A layer with its own dictionaries of attribute keys and values. */
+    private static class Layer {
+
+        private final Map<String, Integer> keys = new LinkedHashMap<>();
+
+        private final Map<Object, Integer> values = new HashMap<>();
+
+        private final List<Object> valueList = new ArrayList<>();
+
+        private final ByteArrayOutputStream features = new ByteArrayOutputStream();
+
+        private int nFeatures = 0;
+
+        void addFeature(int type, TIntList geometry, Map<String, Object> attributes) {
+            TIntList tags = new TIntArrayList(attributes.size() * 2);
+            for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+                if (attribute.getValue() == null)
+                    continue;
+
+                Integer key = keys.get(attribute.getKey());
+                if (key == null) {
+                    key = keys.size();
+                    keys.put(attribute.getKey(), key);
+                }
+
+                Integer value = values.get(attribute.getValue());
+                if (value == null) {
+                    value = valueList.size();
+                    values.put(attribute.getValue(), value);
+                    valueList.add(attribute.getValue());
+                }
+
+                tags.add(key);
+                tags.add(value);
+            }
+
+            ByteArrayOutputStream feature = new ByteArrayOutputStream();
+            writeVarintField(feature, 1, nFeatures++); // id
+            writePacked(feature, 2, tags); // tags
+            writeVarintField(feature, 3, type); // type
+            writePacked(feature, 4, geometry); // geometry
+            writeBytes(features, 2, feature.toByteArray());
+        }
+
+        byte[] encode(String name) {
+            ByteArrayOutputStream layer = new ByteArrayOutputStream();
+            writeVarintField(layer, 15, 2); // version
+            writeBytes(layer, 1, name.getBytes(StandardCharsets.UTF_8)); // name
+            byte[] featureBytes = features.toByteArray();
+            layer.write(featureBytes, 0, featureBytes.length); // features, already tagged
+            for (String key : keys.keySet()) {
+                writeBytes(layer, 3, key.getBytes(StandardCharsets.UTF_8)); // keys
+            }
+            for (Object value : valueList) {
+                writeBytes(layer, 4, encodeValue(value)); // values
+            }
+            writeVarintField(layer, 5, EXTENT); // extent
+            return layer.toByteArray();
+        }
+
+        private static byte[] encodeValue(Object value) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (value instanceof Boolean) {
+                writeVarintField(out, 7, (Boolean) value ? 1 : 0); // bool_value
+            } else if (value instanceof Integer || value instanceof Long) {
+                long n = ((Number) value).longValue();
+                writeVarintField(out, 6, (n << 1) ^ (n >> 63)); // sint_value
+            } else if (value instanceof Number) {
+                writeTag(out, 3, 1); // double_value, fixed 64 bit
+                long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+                for (int i = 0; i < 8; i++) {
+                    out.write((int) (bits >>> (8 * i)) & 0xff);
+                }
+            } else {
+                writeBytes(out, 1, value.toString().getBytes(StandardCharsets.UTF_8)); // string_value
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static void writeTag(ByteArrayOutputStream out, int field, int wireType) {
+        writeVarint(out, (field << 3) | wireType);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeVarintField(ByteArrayOutputStream out, int field, long value) {
+        writeTag(out, field, 0);
+        writeVarint(out, value);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int field, byte[] bytes) {
+        writeTag(out, field, 2);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /** Write a packed repeated field of unsigned 32 bit integers. */
+    private static void writePacked(ByteArrayOutputStream out, int field, TIntList values) {
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        for (int i = 0; i < values.size(); i++) {
+            writeVarint(packed, values.get(i) & 0xFFFFFFFFL);
+        }
+        writeBytes(out, field, packed.toByteArray());
+    }
+}
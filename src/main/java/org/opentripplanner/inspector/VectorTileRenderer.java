@@ -0,0 +1,28 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.inspector;
+
+import org.opentripplanner.inspector.TileRenderer.TileRenderContext;
+
+/**
+ * A tile renderer that can also produce vector tiles, leaving the styling of its features to the client.
+ */
+public interface VectorTileRenderer {
+
+    /**
+     * Add the features of a tile to a vector tile. The graphics and transform of the context are not set.
+     */
+    public abstract void encodeTile(TileRenderContext context, VectorTileEncoder encoder);
+
+}
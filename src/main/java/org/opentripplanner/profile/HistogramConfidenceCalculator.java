@@ -0,0 +1,210 @@
+package org.opentripplanner.profile;
+
+import org.opentripplanner.profile.PropagatedTimesStore.ConfidenceCalculationMethod;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Collapses the travel times found by many RAPTOR iterations into the best-case, average and worst-case travel time
+ * to each target, as stored in a PropagatedTimesStore.
+ *
+ * Travel times are bounded small integers, so rather than collecting the times for each target into a list and
+ * sorting it, the times of a target are counting-sorted into a histogram of one-minute bins. Percentiles are read off
+ * the cumulative histogram, and are still exact to the second because only the values in the single bin containing
+ * the requested rank need to be sorted. Bootstrap resamples draw directly from a primitive array with an inline
+ * random number generator.
+ *
+ * Targets are independent of each other, so the work is split across threads by target rather than by bootstrap draw.
+ * Each thread reuses its own scratch arrays, so nothing is allocated per target.
+ */
+public class HistogramConfidenceCalculator {
+
+    /** Width of the histogram bins, in seconds. */
+    private static final int BIN_SECONDS = 60;
+
+    private static final Random random = new Random();
+
+    private final int[][] times;
+
+    private final boolean[] includeInAverages;
+
+    private final int effectiveIterations;
+
+    private final float reachabilityThreshold;
+
+    private final int nBootstraps;
+
+    /** Random seed for this calculation. Each target derives its own random stream from this. */
+    private final long seed;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * @param times for each iteration (varying departure time), an array of travel times to each target.
+     * @param includeInAverages for each iteration, whether it should be included in average calculations.
+     */
+    public HistogramConfidenceCalculator(int[][] times, boolean[] includeInAverages, float reachabilityThreshold,
+            int nBootstraps) {
+        this.times = times;
+        this.includeInAverages = includeInAverages;
+        this.reachabilityThreshold = reachabilityThreshold;
+        this.nBootstraps = nBootstraps;
+        this.seed = random.nextLong();
+
+        int effectiveIterations = 0;
+        for (int i = 0; i < includeInAverages.length; i++) {
+            if (includeInAverages[i]) effectiveIterations++;
+        }
+        this.effectiveIterations = effectiveIterations;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(times.length, nBootstraps));
+    }
+
+    /**
+     * Compute the summary statistics for every target, writing them into the supplied arrays. Targets that are never
+     * reached (in an iteration included in averages) are left untouched.
+     */
+    public void calculate(ConfidenceCalculationMethod method, int[] mins, int[] avgs, int[] maxs) {
+        if (times.length == 0)
+            return;
+
+        // assume array is rectangular
+        int nTargets = times[0].length;
+        IntStream.range(0, nTargets).parallel().forEach(target -> calculate(target, method, mins, avgs, maxs));
+    }
+
+    private void calculate(int target, ConfidenceCalculationMethod method, int[] mins, int[] avgs, int[] maxs) {
+        Scratch s = scratch.get();
+
+        // Gather the reachable times of this target, and those to be included in averages.
+        int n = 0, count = 0, sum = 0;
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int i = 0; i < times.length; i++) {
+            int time = times[i][target];
+            if (time == RaptorWorker.UNREACHED)
+                continue;
+
+            if (includeInAverages[i]) {
+                s.averaged[count++] = time;
+                sum += time;
+            }
+
+            s.all[n++] = time;
+            if (time < min) min = time;
+            if (time > max) max = time;
+        }
+
+        // never reachable
+        if (count == 0)
+            return;
+
+        // See PropagatedTimesStore.setFromArrayReference for a discussion of this threshold.
+        if (count >= effectiveIterations * reachabilityThreshold)
+            avgs[target] = sum / count;
+
+        switch (method) {
+        case BOOTSTRAP:
+            // Bootstrap a 95% confidence interval on the mean.
+            long state = mix(seed + target);
+            for (int boot = 0; boot < nBootstraps; boot++) {
+                int bsum = 0;
+                // sample from the Monte Carlo distribution with replacement
+                for (int iter = 0; iter < count; iter++) {
+                    // xorshift64*, then scale the high 32 bits to [0, count)
+                    state ^= state >>> 12;
+                    state ^= state << 25;
+                    state ^= state >>> 27;
+                    long r = (state * 0x2545F4914F6CDD1DL) >>> 32;
+                    bsum += s.averaged[(int) ((r * count) >>> 32)];
+                }
+                s.bootMeans[boot] = bsum / count;
+            }
+            Arrays.sort(s.bootMeans, 0, nBootstraps);
+            // 2.5 and 97.5 percentiles of distribution of means
+            mins[target] = s.bootMeans[nBootstraps / 40];
+            maxs[target] = s.bootMeans[nBootstraps - nBootstraps / 40];
+            break;
+        case PERCENTILE:
+            s.fillHistogram(n, min, max);
+            mins[target] = s.select(n / 40, n, min);
+            maxs[target] = s.select(39 * n / 40, n, min);
+            break;
+        case NONE:
+            mins[target] = maxs[target] = avgs[target];
+            break;
+        case MIN_MAX:
+        default:
+            mins[target] = min;
+            // worst case: if it is sometimes unreachable, worst case is unreachable.
+            if (n == times.length)
+                maxs[target] = max;
+            break;
+        }
+    }
+
+    /** MurmurHash3 64-bit finalizer, used to derive a well-distributed nonzero random state for each target. */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /** Per-thread working storage, reused for every target handled by that thread. */
+    private static class Scratch {
+
+        /** All reachable times of the current target. */
+        final int[] all;
+
+        /** Reachable times of the current target in iterations included in averages. */
+        final int[] averaged;
+
+        final int[] bootMeans;
+
+        /** Values falling in a single histogram bin, sorted to find an exact percentile. */
+        final int[] binValues;
+
+        /** Number of times in each bin, grown as needed. */
+        int[] histogram = new int[240];
+
+        int nBins;
+
+        Scratch(int nIterations, int nBootstraps) {
+            all = new int[nIterations];
+            averaged = new int[nIterations];
+            binValues = new int[nIterations];
+            bootMeans = new int[nBootstraps];
+        }
+
+        /** Counting-sort the first n values in all[] into bins of BIN_SECONDS starting at min. */
+        void fillHistogram(int n, int min, int max) {
+            nBins = (max - min) / BIN_SECONDS + 1;
+            if (nBins > histogram.length)
+                histogram = new int[nBins];
+            else
+                Arrays.fill(histogram, 0, nBins, 0);
+
+            for (int i = 0; i < n; i++) {
+                histogram[(all[i] - min) / BIN_SECONDS]++;
+            }
+        }
+
+        /** @return the value at the given rank (zero-based) in sorted order of the first n values in all[]. */
+        int select(int rank, int n, int min) {
+            int bin = 0, below = 0;
+            while (below + histogram[bin] <= rank) {
+                below += histogram[bin++];
+            }
+
+            int m = 0;
+            for (int i = 0; i < n; i++) {
+                if ((all[i] - min) / BIN_SECONDS == bin) binValues[m++] = all[i];
+            }
+            Arrays.sort(binValues, 0, m);
+            return binValues[rank - below];
+        }
+    }
+}
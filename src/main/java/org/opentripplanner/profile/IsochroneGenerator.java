@@ -1,6 +1,7 @@
 package org.opentripplanner.profile;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.analyst.PointSet;
 import org.opentripplanner.analyst.core.IsochroneData;
@@ -86,19 +87,24 @@ public abstract class IsochroneGenerator {
         DelaunayIsolineBuilder<WTWD> isolineBuilder = new DelaunayIsolineBuilder<>(
                 grid.delaunayTriangulate(), new WTWD.IsolineMetric());
 
-        List<IsochroneData> isochrones = new ArrayList<>();
+        List<WTWD> z0s = new ArrayList<>();
         for (int minutes = spacingMinutes, n = 0; minutes <= cutoffMinutes && n < nMax; minutes += spacingMinutes, n++) {
             int seconds = minutes * 60;
             SampleGridRenderer.WTWD z0 = new SampleGridRenderer.WTWD();
             z0.w = 1.0;
             z0.wTime = seconds;
             z0.d = GRID_SIZE_METERS;
-            IsochroneData isochrone = new IsochroneData(seconds, isolineBuilder.computeIsoline(z0));
-            isochrones.add(isochrone);
+            z0s.add(z0);
             if (n + 1 >= nMax) {
                 break;
             }
         }
+        List<Geometry> isolines = isolineBuilder.computeIsolines(z0s);
+
+        List<IsochroneData> isochrones = new ArrayList<>();
+        for (int i = 0; i < isolines.size(); i++) {
+            isochrones.add(new IsochroneData((int) z0s.get(i).wTime, isolines.get(i)));
+        }
 
         return isochrones;
     }
@@ -1,6 +1,7 @@
 package org.opentripplanner.profile;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
 import org.apache.commons.math3.util.FastMath;
@@ -94,6 +95,16 @@ public class PropagatedTimesStore {
      *                          Iterations that are not included in averages are still used to determine extrema.
      */
     public void setFromArray(int[][] times, boolean[] includeInAverages, ConfidenceCalculationMethod confidenceCalculationMethod) {
+        new HistogramConfidenceCalculator(times, includeInAverages, req.reachabilityThreshold, N_BOOTSTRAPS)
+                .calculate(confidenceCalculationMethod, mins, avgs, maxs);
+    }
+
+    /**
+     * The original implementation of setFromArray, which handles one target at a time using lists of times.
+     * It produces the same results as setFromArray (except for the random draws of the bootstrap) and is retained as a
+     * reference for tests and benchmarks.
+     */
+    public void setFromArrayReference(int[][] times, boolean[] includeInAverages, ConfidenceCalculationMethod confidenceCalculationMethod) {
         if (times.length == 0)
             // nothing to do
             return;
@@ -286,15 +297,20 @@ public class PropagatedTimesStore {
         DelaunayIsolineBuilder<WTWD> isolineBuilder =
                 new DelaunayIsolineBuilder<>(grid.delaunayTriangulate(), new WTWD.IsolineMetric());
 
-        List<IsochroneData> isoData = new ArrayList<IsochroneData>();
+        List<WTWD> z0s = new ArrayList<WTWD>();
         for (int minutes = spacing, n = 0; minutes <= cutoffMinutes && n < nMax; minutes += spacing, n++) {
             int seconds = minutes * 60;
             WTWD z0 = new WTWD();
             z0.w = 1.0;
             z0.wTime = seconds;
             z0.d = offroadDistanceMeters;
-            IsochroneData isochrone = new IsochroneData(seconds, isolineBuilder.computeIsoline(z0));
-            isoData.add(isochrone);
+            z0s.add(z0);
+        }
+        List<Geometry> isolines = isolineBuilder.computeIsolines(z0s);
+
+        List<IsochroneData> isoData = new ArrayList<IsochroneData>();
+        for (int i = 0; i < isolines.size(); i++) {
+            isoData.add(new IsochroneData((int) z0s.get(i).wTime, isolines.get(i)));
         }
 
         long t1 = System.currentTimeMillis();
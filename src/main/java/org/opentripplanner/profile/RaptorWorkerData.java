@@ -22,6 +22,7 @@ import org.opentripplanner.analyst.cluster.TaskStatistics;
 import org.opentripplanner.analyst.scenario.AddTripPattern;
 import org.opentripplanner.analyst.scenario.ConvertToFrequency;
 import org.opentripplanner.analyst.scenario.Scenario;
+import org.opentripplanner.analyst.scenario.TimetableFilter;
 import org.opentripplanner.analyst.scenario.TransferRule;
 import org.opentripplanner.analyst.scenario.TripPatternFilter;
 import org.opentripplanner.common.model.GenericLocation;
@@ -101,10 +102,29 @@ public class RaptorWorkerData implements Serializable {
 
     /** The 0-based RAPTOR indices of each stop from their vertex IDs */
     public transient final TIntIntMap indexForStop;
+
+    /** The vertex ID of each stop by its RAPTOR index (the reverse of indexForStop). */
+    public transient final TIntList stopForIndex;
+
+    /**
+     * The graph TripPattern of each RAPTOR pattern. This is null for patterns added by the scenario, and for patterns
+     * produced by modifications (which are never reused, see the scenario overlay constructor).
+     */
+    public transient final List<TripPattern> patternForIndex = new ArrayList<>();
+
      /** Optional debug data: the name of each stop. */
     public transient final List<String> stopNames = new ArrayList<>();
     public transient final List<String> patternNames = new ArrayList<>();
 
+    /** The samples attached to each street vertex, retained so scenario overlays can link added stops to them. */
+    private transient TIntObjectMap<List<HalfSample>> sampleIndex;
+
+    /** The sample set this data propagates times to, or null if targets are street vertices. */
+    private transient SampleSet sampleSet;
+
+    /** The time window this data was built for, so that scenario overlays can check they are consistent. */
+    private transient TimeWindow window;
+
     /** Create RaptorWorkerData for the given window and graph */
     public RaptorWorkerData (Graph graph, TimeWindow window, ProfileRequest request, TaskStatistics ts) {
         this(graph, window, request, null, ts);
@@ -120,17 +140,23 @@ public class RaptorWorkerData implements Serializable {
 
     /** Create RaptorWorkerData to be used to build ResultSets directly without creating an intermediate SampleSet */
     public RaptorWorkerData (Graph graph, TimeWindow window, ProfileRequest req, SampleSet sampleSet, TaskStatistics ts) {
-        Scenario scenario = req.scenario;
+        this(graph, window, req, req.scenario, sampleSet, ts);
+    }
 
+    /**
+     * Create RaptorWorkerData for the given scenario, which may be null to create baseline data that can then be shared
+     * by several scenario overlays. Any scenario in the request itself is ignored.
+     */
+    public RaptorWorkerData (Graph graph, TimeWindow window, ProfileRequest req, Scenario scenario, SampleSet sampleSet, TaskStatistics ts) {
         int totalPatterns = graph.index.patternForId.size();
         int totalStops = graph.index.stopForId.size();
         timetablesForPattern = new ArrayList<RaptorWorkerTimetable>(totalPatterns);
-        List<TripPattern> patternForIndex = Lists.newArrayList(totalPatterns);
-        TObjectIntMap<TripPattern> indexForPattern = new TObjectIntHashMap<>(totalPatterns, 0.75f, -1);
         indexForStop = new TIntIntHashMap(totalStops, 0.75f, Integer.MIN_VALUE, -1);
-        TIntList stopForIndex = new TIntArrayList(totalStops, Integer.MIN_VALUE);
+        stopForIndex = new TIntArrayList(totalStops, Integer.MIN_VALUE);
 
         this.boardingAssumption = req.boardingAssumption;
+        this.sampleSet = sampleSet;
+        this.window = window;
 
         ts.patternCount = 0;
         ts.frequencyEntryCount = 0;
@@ -194,110 +220,307 @@ public class RaptorWorkerData implements Serializable {
 
         /* Make timetables for active trip patterns and record the stops each active pattern uses. */
         for (TripPattern originalPattern : graphPatterns) {
-            Collection<TripPattern> patterns = Arrays.asList(originalPattern);
+            addModifiedPatterns(graph, originalPattern, window, scenario, ts);
+        }
 
-            // apply filters. note that a filter can create multiple trip patterns from a single trip pattern
-            // so we need to make sure we handle all of them
-            if (scenario != null && scenario.modifications != null) {
-                for (TripPatternFilter filter : Iterables
-                        .filter(scenario.modifications, TripPatternFilter.class)) {
-                    Collection<TripPattern> modifiedPatterns = Lists.newArrayList();
+        // and do roughly the same thing for added patterns
+        addAddedPatterns(scenario, window, ts);
 
-                    for (TripPattern pattern : patterns) {
-                        Collection<TripPattern> result = filter.apply(pattern);
+        // for each of the added stops, compute transfers and a stop tree cache
+        // Indexed by vertex ID, not RAPTOR index
+        TIntObjectMap<int[]> temporaryStopTreeCache = new TIntObjectHashMap<>();
 
-                        if (result != null)
-                            modifiedPatterns.addAll(result);
-                    }
+        // Holds transfer both from _and_ to temporary stops
+        // Indexed by and contains vertex ID, not RAPTOR index
+        TIntObjectMap<TIntIntMap> temporaryTransfers = new TIntObjectHashMap<>();
 
-                    // this is the result of this filter for all trip patterns
-                    patterns = modifiedPatterns;
-                }
-            }
+        linkTemporaryStops(graph, temporaryStopTreeCache, temporaryTransfers);
 
-            for (TripPattern pattern : patterns) {
-                RaptorWorkerTimetable timetable = RaptorWorkerTimetable
-                        .forPattern(graph, pattern, window, scenario, ts);
-                if (timetable == null) {
-                    // Pattern is not running during the time window
+        makePatternsForStop();
+
+        /** Record transfers between all used stops. */
+        for (TIntIterator it = stopForIndex.iterator(); it.hasNext();) {
+            transfersForStop.add(makeTransfersForStop(graph, it.next(), temporaryTransfers));
+        }
+
+        long stcStart = System.currentTimeMillis();
+        StopTreeCache stc = graph.index.getStopTreeCache();
+        ts.stopTreeCaching = (int) (System.currentTimeMillis() - stcStart);
+
+        // Record times to nearby intersections for all used stops.
+        // We use times rather than distances to avoid a costly floating-point divide during propagation
+        if (sampleSet == null) {
+            // TODO memory leak when many graphs have been built
+            nTargets = Vertex.getMaxIndex();
+        }
+
+        // Record distances to each sample
+        // We need to propagate all the way to samples when doing repeated RAPTOR.
+        // Consider the situation where there are two parallel transit lines on
+        // 5th Street and 6th Street, and you live on A Street halfway between 5th and 6th.
+        // Both lines run at 30 minute headways, but they are exactly out of phase, and for the
+        // purposes of this conversation both go the same place with the same in-vehicle travel time.
+        // Thus, even though the lines run every 30 minutes, you never experience a wait of more than
+        // 15 minutes because you are clever when you choose which line to take. The worst case at each
+        // transit stop is much worse than the worst case at samples. While unlikely, it is possible that
+        // a sample would be able to reach these two stops within the walk limit, but that the two
+        // intersections it is connected to cannot reach both.
+        else {
+            sampleIndex = new TIntObjectHashMap<List<HalfSample>>();
+
+            for (int i = 0; i < sampleSet.pset.capacity; i++) {
+                if (sampleSet.v0s[i] == null)
                     continue;
+
+                // VERTEX 0
+                int v0 = sampleSet.v0s[i].getIndex();
+
+                List<HalfSample> list;
+                if (sampleIndex.containsKey(v0))
+                    list = sampleIndex.get(v0);
+                else {
+                    list = new ArrayList<HalfSample>();
+                    sampleIndex.put(v0, list);
                 }
 
-                timetable.dataIndex = timetablesForPattern.size();
-                timetable.raptorData = this;
-                timetablesForPattern.add(timetable);
-
-                if (timetable.hasFrequencyTrips())
-                    hasFrequencies = true;
-
-                if (timetable.hasScheduledTrips())
-                    hasSchedules = true;
-
-                // Temporary bidirectional mapping between 0-based indexes and patterns
-                indexForPattern.put(pattern, patternForIndex.size());
-                patternForIndex.add(pattern);
-                patternNames.add(pattern.code);
-                TIntList stopIndexesForPattern = new TIntArrayList();
-                for (Stop stop : pattern.getStops()) {
-                    int vidx = graph.index.stopVertexForStop.get(stop).getIndex();
-                    int stopIndex = indexForStop.get(vidx);
-                    if (stopIndex == -1) {
-                        stopIndex = indexForStop.size();
-                        indexForStop.put(vidx, stopIndex);
-                        stopForIndex.add(vidx);
-                        stopNames.add(stop.getName());
+                list.add(new HalfSample(i, sampleSet.d0s[i]));
+
+                // VERTEX 1
+                if (sampleSet.v1s[i] != null) {
+                    int v1 = sampleSet.v1s[i].getIndex();
+                    if (sampleIndex.containsKey(v1))
+                        list = sampleIndex.get(v1);
+                    else {
+                        list = new ArrayList<HalfSample>();
+                        sampleIndex.put(v1, list);
                     }
-                    stopIndexesForPattern.add(stopIndex);
+
+                    list.add(new HalfSample(i, sampleSet.d1s[i]));
+                }
+            }
+
+            nTargets = sampleSet.pset.capacity;
+        }
+
+        for (TIntIterator stopIt = stopForIndex.iterator(); stopIt.hasNext();) {
+            targetsForStop.add(makeTargetsForStop(graph, stopIt.next(), req, stc, temporaryStopTreeCache));
+        }
+
+        addTransferRules(graph, scenario);
+
+        ts.stopCount = nStops = stopForIndex.size();
+        ts.patternCount = nPatterns = timetablesForPattern.size();
+        ts.targetCount = nTargets;
+    }
+
+    /**
+     * Create RaptorWorkerData for the scenario in the given request as a lightweight overlay on baseline data, which
+     * must have been built without a scenario for the same graph, time window, walk parameters and sample set.
+     *
+     * Timetables, transfers and stop-to-target tables are shared with the baseline for everything the scenario does
+     * not touch. Only patterns that a modification could match are rebuilt, and only the stops added by the scenario
+     * (and the stops they transfer to) get new transfer and target tables, so building an overlay costs time
+     * proportional to what the scenario changes rather than to the size of the network. The baseline is not modified
+     * and can be shared by any number of overlays.
+     *
+     * Stops used only by patterns that the scenario removes keep their RAPTOR indices (with no patterns serving them),
+     * which does not change the results. Scenarios that convert trips to frequencies restructure the whole schedule
+     * and cannot be expressed as an overlay; see canOverlay().
+     */
+    public RaptorWorkerData (RaptorWorkerData baseline, Graph graph, TimeWindow window, ProfileRequest req, TaskStatistics ts) {
+        Scenario scenario = req.scenario;
+
+        if (!canOverlay(scenario))
+            throw new IllegalArgumentException("Scenario cannot be applied as an overlay on baseline data.");
+
+        if (baseline.window != null && (baseline.window.from != window.from || baseline.window.to != window.to
+                || !baseline.window.servicesRunning.equals(window.servicesRunning)))
+            throw new IllegalArgumentException("Baseline data was built for a different time window.");
+
+        indexForStop = new TIntIntHashMap(baseline.indexForStop);
+        stopForIndex = new TIntArrayList(baseline.stopForIndex);
+        stopNames.addAll(baseline.stopNames);
+        timetablesForPattern = new ArrayList<>(baseline.nPatterns);
+
+        this.boardingAssumption = req.boardingAssumption;
+        this.sampleSet = baseline.sampleSet;
+        this.sampleIndex = baseline.sampleIndex;
+        this.window = window;
+
+        ts.patternCount = 0;
+        ts.frequencyEntryCount = 0;
+        ts.frequencyTripCount = 0;
+        ts.scheduledTripCount = 0;
+
+        List<TimetableFilter> filters = new ArrayList<>();
+        if (scenario != null && scenario.modifications != null)
+            Iterables.addAll(filters, Iterables.filter(scenario.modifications, TimetableFilter.class));
+
+        // Reuse the timetables of patterns the scenario cannot affect, and rebuild the others from the graph.
+        // A modification can only remove or change trips that are running, so patterns that are not running in the
+        // baseline cannot be affected.
+        for (int p = 0; p < baseline.nPatterns; p++) {
+            RaptorWorkerTimetable baseTimetable = baseline.timetablesForPattern.get(p);
+            TripPattern pattern = baseline.patternForIndex.get(p);
+
+            if (pattern != null && filters.stream().anyMatch(f -> f.couldMatch(pattern))) {
+                addModifiedPatterns(graph, pattern, window, scenario, ts);
+            } else {
+                RaptorWorkerTimetable timetable = baseTimetable.copy();
+                ts.scheduledTripCount += timetable.nTrips;
+                ts.frequencyEntryCount += timetable.getFrequencyTripCount();
+                ts.frequencyTripCount += timetable.getFrequencyVehicleTripCount();
+                addTimetable(timetable, pattern, baseline.patternNames.get(p));
+            }
+        }
+
+        addAddedPatterns(scenario, window, ts);
+
+        TIntObjectMap<int[]> temporaryStopTreeCache = new TIntObjectHashMap<>();
+        TIntObjectMap<TIntIntMap> temporaryTransfers = new TIntObjectHashMap<>();
+        linkTemporaryStops(graph, temporaryStopTreeCache, temporaryTransfers);
+
+        makePatternsForStop();
+
+        // Baseline stops share their transfer and target tables unless they have transfers to added stops.
+        // Stops that are new in this scenario get new tables.
+        StopTreeCache stc = null;
+        for (int stopIndex = 0; stopIndex < stopForIndex.size(); stopIndex++) {
+            int stop = stopForIndex.get(stopIndex);
+            if (stopIndex < baseline.nStops) {
+                if (temporaryTransfers.containsKey(stop))
+                    transfersForStop.add(makeTransfersForStop(graph, stop, temporaryTransfers));
+                else
+                    transfersForStop.add(baseline.transfersForStop.get(stopIndex));
+
+                targetsForStop.add(baseline.targetsForStop.get(stopIndex));
+            } else {
+                if (stc == null) {
+                    long stcStart = System.currentTimeMillis();
+                    stc = graph.index.getStopTreeCache();
+                    ts.stopTreeCaching = (int) (System.currentTimeMillis() - stcStart);
                 }
 
-                timetable.stopIndices = stopIndexesForPattern.toArray();
+                transfersForStop.add(makeTransfersForStop(graph, stop, temporaryTransfers));
+                targetsForStop.add(makeTargetsForStop(graph, stop, req, stc, temporaryStopTreeCache));
             }
         }
 
-        // and do roughly the same thing for added patterns
-        if (scenario != null && scenario.modifications != null) {
-            for (AddTripPattern atp : Iterables.filter(scenario.modifications, AddTripPattern.class)) {
-                // note that added trip patterns are not affected by modifications
-                RaptorWorkerTimetable timetable = RaptorWorkerTimetable.forAddedPattern(atp, window, ts);
-                if (timetable == null)
-                    continue;
+        addTransferRules(graph, scenario);
 
-                timetable.dataIndex = timetablesForPattern.size();
-                timetablesForPattern.add(timetable);
-                timetable.raptorData = this;
+        nTargets = baseline.nTargets;
+        ts.stopCount = nStops = stopForIndex.size();
+        ts.patternCount = nPatterns = timetablesForPattern.size();
+        ts.targetCount = nTargets;
+    }
 
-                if (timetable.hasFrequencyTrips())
-                    this.hasFrequencies = true;
-                if (timetable.hasScheduledTrips())
-                    this.hasSchedules = true;
+    /** @return whether the given scenario can be applied as an overlay on baseline data (see the overlay constructor). */
+    public static boolean canOverlay (Scenario scenario) {
+        return scenario == null || scenario.modifications == null ||
+                scenario.modifications.stream().noneMatch(m -> m instanceof ConvertToFrequency);
+    }
 
-                // TODO: patternForIndex, indexForPattern
+    /** Apply the pattern filters of the scenario to a graph pattern, and add timetables for all resulting patterns. */
+    private void addModifiedPatterns (Graph graph, TripPattern originalPattern, TimeWindow window, Scenario scenario, TaskStatistics ts) {
+        Collection<TripPattern> patterns = Arrays.asList(originalPattern);
 
-                patternNames.add(atp.name);
+        // apply filters. note that a filter can create multiple trip patterns from a single trip pattern
+        // so we need to make sure we handle all of them
+        if (scenario != null && scenario.modifications != null) {
+            for (TripPatternFilter filter : Iterables
+                    .filter(scenario.modifications, TripPatternFilter.class)) {
+                Collection<TripPattern> modifiedPatterns = Lists.newArrayList();
+
+                for (TripPattern pattern : patterns) {
+                    Collection<TripPattern> result = filter.apply(pattern);
 
-                // create the stops for the pattern, and collect the temporary stops
-                for (AddTripPattern.TemporaryStop t : atp.temporaryStops) {
-                    // the index of this stop in the worker data
-                    int stopIndex = stopForIndex.size();
-                    addedStops.put(t, stopIndex);
-                    indexForStop.put(t.index, stopIndex);
-                    stopForIndex.add(t.index);
+                    if (result != null)
+                        modifiedPatterns.addAll(result);
                 }
 
-                timetable.stopIndices = Arrays.asList(atp.temporaryStops).stream()
-                        .mapToInt(t -> indexForStop.get(t.index))
-                        .toArray();
+                // this is the result of this filter for all trip patterns
+                patterns = modifiedPatterns;
             }
         }
 
-        // for each of the added stops, compute transfers and a stop tree cache
-        // Indexed by vertex ID, not RAPTOR index
-        TIntObjectMap<int[]> temporaryStopTreeCache = new TIntObjectHashMap<>();;
+        for (TripPattern pattern : patterns) {
+            RaptorWorkerTimetable timetable = RaptorWorkerTimetable
+                    .forPattern(graph, pattern, window, scenario, ts);
+            if (timetable == null) {
+                // Pattern is not running during the time window
+                continue;
+            }
 
-        // Holds transfer both from _and_ to temporary stops
-        // Indexed by and contains vertex ID, not RAPTOR index
-        TIntObjectMap<TIntIntMap> temporaryTransfers = new TIntObjectHashMap<>();
+            TIntList stopIndexesForPattern = new TIntArrayList();
+            for (Stop stop : pattern.getStops()) {
+                int vidx = graph.index.stopVertexForStop.get(stop).getIndex();
+                int stopIndex = indexForStop.get(vidx);
+                if (stopIndex == -1) {
+                    stopIndex = indexForStop.size();
+                    indexForStop.put(vidx, stopIndex);
+                    stopForIndex.add(vidx);
+                    stopNames.add(stop.getName());
+                }
+                stopIndexesForPattern.add(stopIndex);
+            }
+
+            timetable.stopIndices = stopIndexesForPattern.toArray();
+
+            // Only unmodified graph patterns can be matched up with baseline data.
+            addTimetable(timetable, pattern == originalPattern ? pattern : null, pattern.code);
+        }
+    }
+
+    /** Record a timetable in this data, assigning it the next pattern index. */
+    private void addTimetable (RaptorWorkerTimetable timetable, TripPattern pattern, String name) {
+        timetable.dataIndex = timetablesForPattern.size();
+        timetable.raptorData = this;
+        timetablesForPattern.add(timetable);
 
+        if (timetable.hasFrequencyTrips())
+            hasFrequencies = true;
+
+        if (timetable.hasScheduledTrips())
+            hasSchedules = true;
+
+        patternForIndex.add(pattern);
+        patternNames.add(name);
+    }
+
+    /** Add timetables for the patterns added by the scenario, and RAPTOR indices for their temporary stops. */
+    private void addAddedPatterns (Scenario scenario, TimeWindow window, TaskStatistics ts) {
+        if (scenario == null || scenario.modifications == null)
+            return;
+
+        for (AddTripPattern atp : Iterables.filter(scenario.modifications, AddTripPattern.class)) {
+            // note that added trip patterns are not affected by modifications
+            RaptorWorkerTimetable timetable = RaptorWorkerTimetable.forAddedPattern(atp, window, ts);
+            if (timetable == null)
+                continue;
+
+            addTimetable(timetable, null, atp.name);
+
+            // create the stops for the pattern, and collect the temporary stops
+            for (AddTripPattern.TemporaryStop t : atp.temporaryStops) {
+                // the index of this stop in the worker data
+                int stopIndex = stopForIndex.size();
+                addedStops.put(t, stopIndex);
+                indexForStop.put(t.index, stopIndex);
+                stopForIndex.add(t.index);
+            }
+
+            timetable.stopIndices = Arrays.asList(atp.temporaryStops).stream()
+                    .mapToInt(t -> indexForStop.get(t.index))
+                    .toArray();
+        }
+    }
+
+    /**
+     * Run street searches from and to each added stop, recording the distances to street vertices in
+     * temporaryStopTreeCache and the transfers from and to other stops in temporaryTransfers.
+     */
+    private void linkTemporaryStops (Graph graph, TIntObjectMap<int[]> temporaryStopTreeCache,
+            TIntObjectMap<TIntIntMap> temporaryTransfers) {
         AStar astar = new AStar();
         for (AddTripPattern.TemporaryStop t : addedStops.keySet()) {
             // forward search: stop tree cache and transfers out
@@ -394,8 +617,10 @@ public class RaptorWorkerData implements Serializable {
                 temporaryTransfers.get(graphIndex).put(t.index, it.value());
             }
         }
+    }
 
-        // create the mapping from stops to patterns
+    /** Create the mapping from stops to patterns. Stops not served by any pattern get an empty array. */
+    private void makePatternsForStop () {
         TIntObjectMap<TIntList> patternsForStopList = new TIntObjectHashMap<>();
         for (int pattern = 0; pattern < timetablesForPattern.size(); pattern++) {
             for (int stop : timetablesForPattern.get(pattern).stopIndices) {
@@ -406,217 +631,148 @@ public class RaptorWorkerData implements Serializable {
             }
         }
 
-        for (int stop = 0; patternsForStopList.containsKey(stop); stop++) {
-            patternsForStop.add(patternsForStopList.get(stop).toArray());
+        for (int stop = 0; stop < stopForIndex.size(); stop++) {
+            TIntList patterns = patternsForStopList.get(stop);
+            patternsForStop.add(patterns == null ? EMPTY_INT_ARRAY : patterns.toArray());
         }
+    }
 
-        /** Record transfers between all used stops. */
-        for (TIntIterator it = stopForIndex.iterator(); it.hasNext();) {
-            int stop = it.next();
-            TIntList transfers = new TIntArrayList();
-            TransitStop tstop = (TransitStop) graph.getVertexById(stop);
-
-            if (tstop != null) {
-                // not an added stop, look for transfers in the graph
-                for (SimpleTransfer simpleTransfer : Iterables
-                        .filter(tstop.getOutgoing(), SimpleTransfer.class)) {
-                    int targetStopIndex = indexForStop.get(simpleTransfer.getToVertex().getIndex());
-                    if (targetStopIndex != -1) {
-                        transfers.add(targetStopIndex);
-                        transfers.add((int) (simpleTransfer.getDistance()));
-                    }
+    /** @return flattened (RAPTOR stop index, distance) pairs for transfers out of the stop with the given vertex index. */
+    private int[] makeTransfersForStop (Graph graph, int stop, TIntObjectMap<TIntIntMap> temporaryTransfers) {
+        TIntList transfers = new TIntArrayList();
+        Vertex tstop = graph.getVertexById(stop);
+
+        if (tstop != null && TransitStop.class.isInstance(tstop)) {
+            // not an added stop, look for transfers in the graph
+            for (SimpleTransfer simpleTransfer : Iterables
+                    .filter(tstop.getOutgoing(), SimpleTransfer.class)) {
+                int targetStopIndex = indexForStop.get(simpleTransfer.getToVertex().getIndex());
+                if (targetStopIndex != -1) {
+                    transfers.add(targetStopIndex);
+                    transfers.add((int) (simpleTransfer.getDistance()));
                 }
             }
+        }
 
-            // check for any transfers to/from added stops
-            if (temporaryTransfers.containsKey(stop)) {
-                for (TIntIntIterator tranIt = temporaryTransfers.get(stop).iterator(); tranIt.hasNext();) {
-                    tranIt.advance();
-                    // stop index
-                    transfers.add(indexForStop.get(tranIt.key()));
-                    // distance
-                    transfers.add(tranIt.value());
-                }
+        // check for any transfers to/from added stops
+        if (temporaryTransfers.containsKey(stop)) {
+            for (TIntIntIterator tranIt = temporaryTransfers.get(stop).iterator(); tranIt.hasNext();) {
+                tranIt.advance();
+                // stop index
+                transfers.add(indexForStop.get(tranIt.key()));
+                // distance
+                transfers.add(tranIt.value());
             }
-
-            if (!transfers.isEmpty())
-                transfersForStop.add(transfers.toArray());
-            else
-                transfersForStop.add(EMPTY_INT_ARRAY);
         }
 
-        long stcStart = System.currentTimeMillis();
-        StopTreeCache stc = graph.index.getStopTreeCache();
-        ts.stopTreeCaching = (int) (System.currentTimeMillis() - stcStart);
+        return transfers.isEmpty() ? EMPTY_INT_ARRAY : transfers.toArray();
+    }
+
+    /**
+     * @return flattened (target, time) pairs for the targets reachable on foot from the stop with the given vertex
+     * index. Targets are street vertices, or samples if this data has a sample set.
+     */
+    private int[] makeTargetsForStop (Graph graph, int stop, ProfileRequest req, StopTreeCache stc,
+            TIntObjectMap<int[]> temporaryStopTreeCache) {
+        Vertex tstop = graph.getVertexById(stop);
+        boolean isPermanentStop = tstop != null && TransitStop.class.isInstance(tstop);
+        int[] distancesForStop = isPermanentStop ? stc.distancesForStop.get(tstop) : temporaryStopTreeCache.get(stop);
 
-        // Record times to nearby intersections for all used stops.
-        // We use times rather than distances to avoid a costly floating-point divide during propagation
         if (sampleSet == null) {
             int maxWalkDistance = (int) (req.maxWalkTime * 60 * req.walkSpeed);
-            for (TIntIterator stopIt = stopForIndex.iterator(); stopIt.hasNext();) {
-                int stop = stopIt.next();
-
-                // permanent stop
-                Vertex tstop = graph.getVertexById(stop);
-                boolean isPermanentStop = tstop != null && TransitStop.class.isInstance(tstop);
-                // convert distance to time
-                int[] distancesForStop = isPermanentStop ? stc.distancesForStop.get(tstop) : temporaryStopTreeCache.get(stop);
-                TIntList timesForStop = new TIntArrayList();
-
-                for (int i = 0; i < distancesForStop.length; i += 2) {
-                    int vidx = distancesForStop[i];
-                    int dist = distancesForStop[i + 1];
-
-                    // only add if it's less than the max walk distance
-                    if (dist <= maxWalkDistance) {
-                        timesForStop.add(vidx);
-                        // convert meters to seconds by dividing by meters / second
-                        timesForStop.add((int) (dist / req.walkSpeed));
-                    }
-                }
+            TIntList timesForStop = new TIntArrayList();
+
+            for (int i = 0; i < distancesForStop.length; i += 2) {
+                int vidx = distancesForStop[i];
+                int dist = distancesForStop[i + 1];
 
-                targetsForStop.add(timesForStop.toArray());
+                // only add if it's less than the max walk distance
+                if (dist <= maxWalkDistance) {
+                    timesForStop.add(vidx);
+                    // convert meters to seconds by dividing by meters / second
+                    timesForStop.add((int) (dist / req.walkSpeed));
+                }
             }
 
-            // TODO memory leak when many graphs have been built
-            nTargets = Vertex.getMaxIndex();
+            return timesForStop.toArray();
         }
 
-        // Record distances to each sample
-        // We need to propagate all the way to samples when doing repeated RAPTOR.
-        // Consider the situation where there are two parallel transit lines on
-        // 5th Street and 6th Street, and you live on A Street halfway between 5th and 6th.
-        // Both lines run at 30 minute headways, but they are exactly out of phase, and for the
-        // purposes of this conversation both go the same place with the same in-vehicle travel time.
-        // Thus, even though the lines run every 30 minutes, you never experience a wait of more than
-        // 15 minutes because you are clever when you choose which line to take. The worst case at each
-        // transit stop is much worse than the worst case at samples. While unlikely, it is possible that
-        // a sample would be able to reach these two stops within the walk limit, but that the two
-        // intersections it is connected to cannot reach both.
-        else {
-            TIntObjectMap<List<HalfSample>> sampleIndex = new TIntObjectHashMap<List<HalfSample>>();
+        // Save the least distance to each reachable sample from this transit stop.
+        // We first make a map of samples to times, so we can ensure we save only the shortest
+        // distance from a transit stop to a sample. Most transit stops can reach a given sample two
+        // ways because they can reach both of the vertices the sample is connected to.
+        TIntIntMap out = new TIntIntHashMap();
 
-            for (int i = 0; i < sampleSet.pset.capacity; i++) {
-                if (sampleSet.v0s[i] == null)
-                    continue;
-
-                // VERTEX 0
-                int v0 = sampleSet.v0s[i].getIndex();
-
-                List<HalfSample> list;
-                if (sampleIndex.containsKey(v0))
-                    list = sampleIndex.get(v0);
-                else {
-                    list = new ArrayList<HalfSample>();
-                    sampleIndex.put(v0, list);
-                }
+        STREET: for (int i = 0; i < distancesForStop.length; i++) {
+            int v = distancesForStop[i++];
+            int d = distancesForStop[i];
 
-                list.add(new HalfSample(i, sampleSet.d0s[i]));
+            if (!sampleIndex.containsKey(v))
+                continue STREET;
 
-                // VERTEX 1
-                if (sampleSet.v1s[i] != null) {
-                    int v1 = sampleSet.v1s[i].getIndex();
-                    if (sampleIndex.containsKey(v1))
-                        list = sampleIndex.get(v1);
-                    else {
-                        list = new ArrayList<HalfSample>();
-                        sampleIndex.put(v1, list);
-                    }
+            // Build the map
+            SAMPLE: for (HalfSample s : sampleIndex.get(v)) {
+                int distance = Math.round(d + s.distance);
+                if (distance > stc.maxWalkMeters)
+                    continue;
 
-                    list.add(new HalfSample(i, sampleSet.d1s[i]));
-                }
+                // only save it if there isn't another shorter walking path that we've already encountered.
+                int time = (int) (distance / req.walkSpeed);
+                if (!out.containsKey(s.index) || out.get(s.index) > time)
+                    out.put(s.index, time);
             }
+        }
 
-            // Iterate over all stops, saving the least distance to each reachable sample from
-            // from each transit stop.
-            // We first make a map stops to samples, so we can ensure we save only the shortest
-            // distance from a transit stop to a sample. Most transit stops can reach a given sample two
-            // ways because they can reach both of the vertices the sample is connected to.
-            TIntIntMap out = new TIntIntHashMap();
+        // Save a flat array of (target, distance) pairs keyed on this transit stops's index in the RAPTOR table.
+        int[] flat = new int[out.size() * 2];
 
-            for (TIntIterator stopIt = stopForIndex.iterator(); stopIt.hasNext();) {
-                out.clear();
+        int pos = 0;
+        for (TIntIntIterator it = out.iterator(); it.hasNext();) {
+            it.advance();
+            flat[pos++] = it.key();
+            flat[pos++] = it.value();
+        }
 
-                int stop = stopIt.next();
+        return flat;
+    }
 
-                int[] distancesForStop;
-                
-                Vertex tstop = graph.getVertexById(stop);
-                if (tstop != null && TransitStop.class.isInstance(tstop))
-                    // permanent stop
-                    distancesForStop = stc.distancesForStop.get(tstop);
-                else
-                    // temporary stop
-                    distancesForStop = temporaryStopTreeCache.get(stop);
-
-                STREET: for (int i = 0; i < distancesForStop.length; i++) {
-                    int v = distancesForStop[i++];
-                    int d = distancesForStop[i];
-
-                    if (!sampleIndex.containsKey(v))
-                        continue STREET;
-
-                    // Build the map
-                    SAMPLE: for (HalfSample s : sampleIndex.get(v)) {
-                        int distance = Math.round(d + s.distance);
-                        if (distance > stc.maxWalkMeters)
-                            continue;
-
-                        // only save it if there isn't another shorter walking path that we've already encountered.
-                        int time = (int) (distance / req.walkSpeed);
-                        if (!out.containsKey(s.index) || out.get(s.index) > time)
-                            out.put(s.index, time);
-                    }
-                }
-                // Save a flat array of (target, distance) pairs keyed on this transit stops's index in the RAPTOR table.
-                int[] flat = new int[out.size() * 2];
-
-                int pos = 0;
-                for (TIntIntIterator it = out.iterator(); it.hasNext();) {
-                    it.advance();
-                    flat[pos++] = it.key();
-                    flat[pos++] = it.value();
-                }
+    /** store transfer rules by stop */
+    private void addTransferRules (Graph graph, Scenario scenario) {
+        if (scenario == null || scenario.modifications == null)
+            return;
 
-                targetsForStop.add(flat);
+        for (TransferRule tr : Iterables.filter(scenario.modifications, TransferRule.class)) {
+            if (tr.stop == null) {
+                this.baseTransferRules.add(tr);
             }
+            else {
+                Vertex tstop = graph.getVertex(tr.stop);
 
-            nTargets = sampleSet.pset.capacity;
-        }
-
-        // store transfer rules by stop
-        if (scenario != null && scenario.modifications != null) {
-            for (TransferRule tr : Iterables.filter(scenario.modifications, TransferRule.class)) {
-                if (tr.stop == null) {
-                    this.baseTransferRules.add(tr);
+                if (tstop == null || !TransitStop.class.isInstance(tstop)) {
+                    LOG.warn("Transit stop not found for transfer rule with stop label {}", tr.stop);
+                    continue;
                 }
-                else {
-                    Vertex tstop = graph.getVertex(tr.stop);
-
-                    if (tstop == null || !TransitStop.class.isInstance(tstop))
-                        LOG.warn("Transit stop not found for transfer rule with stop label {}", tr.stop);
 
-                    if (!indexForStop.containsKey(tstop.getIndex()))
-                        // this stop is not used in this time window
-                        continue;
+                if (!indexForStop.containsKey(tstop.getIndex()))
+                    // this stop is not used in this time window
+                    continue;
 
-                    int index = indexForStop.get(tstop.getIndex());
+                int index = indexForStop.get(tstop.getIndex());
 
-                    if (!transferRules.containsKey(index))
-                        transferRules.put(index, new ArrayList<>());
+                if (!transferRules.containsKey(index))
+                    transferRules.put(index, new ArrayList<>());
 
-                    transferRules.get(index).add(tr);
-                }
+                transferRules.get(index).add(tr);
             }
         }
-
-        ts.stopCount = nStops = stopForIndex.size();
-        ts.patternCount = nPatterns = timetablesForPattern.size();
-        ts.targetCount = nTargets;
     }
 
-    /** find stops from a given SPT, including temporary stops. If useTimes is true, use times from the SPT, otherwise use distances */
-    public TIntIntMap findStopsNear (ShortestPathTree spt, Graph graph, boolean useTimes, float walkSpeed) {
+    /**
+     * find stops from a given SPT, including temporary stops. If useTimes is true, use times from the SPT, otherwise use
+     * distances. The speed (in m/s) of the access mode is used to convert distances to times, including the distance
+     * from the street to a temporary stop.
+     */
+    public TIntIntMap findStopsNear (ShortestPathTree spt, Graph graph, boolean useTimes, float speed) {
         TIntIntMap accessTimes = new TIntIntHashMap();
 
         for (TransitStop tstop : graph.index.stopVertexForStop.values()) {
@@ -630,7 +786,7 @@ public class RaptorWorkerData implements Serializable {
                     if (useTimes)
                         accessTimes.put(stopIndex, (int) s.getElapsedTimeSeconds());
                     else
-                        accessTimes.put(stopIndex, (int) (s.getWalkDistance() / walkSpeed));
+                        accessTimes.put(stopIndex, (int) (s.getWalkDistance() / speed));
                 }
             }
         }
@@ -644,13 +800,13 @@ public class RaptorWorkerData implements Serializable {
                 continue;
             }
 
-            double dist = Double.POSITIVE_INFINITY;
+            double time = Double.POSITIVE_INFINITY;
 
             if (tstop.sample.v0 != null) {
                 State s0 = spt.getState(tstop.sample.v0);
 
                 if (s0 != null) {
-                    dist = s0.getWalkDistance() + tstop.sample.d0;
+                    time = accessTime(s0, tstop.sample.d0, useTimes, speed);
                 }
             }
 
@@ -658,22 +814,78 @@ public class RaptorWorkerData implements Serializable {
                 State s1 = spt.getState(tstop.sample.v1);
 
                 if (s1 != null) {
-                    double d1 = s1.getWalkDistance() + tstop.sample.d1;
-                    dist = Double.isInfinite(dist) ? d1 : Math.min(d1, dist);
+                    time = Math.min(time, accessTime(s1, tstop.sample.d1, useTimes, speed));
                 }
             }
 
-            if (Double.isInfinite(dist))
+            if (Double.isInfinite(time))
+                continue;
+
+            // NB using the index in the worker data not the index in the graph!
+            accessTimes.put(it.value(), (int) time);
+        }
+
+        return accessTimes;
+    }
+
+    /** @return the time in seconds to reach a point at the given distance beyond the vertex of a state. */
+    private static double accessTime (State s, double distance, boolean useTimes, float speed) {
+        if (useTimes)
+            return s.getElapsedTimeSeconds() + distance / speed;
+        else
+            return (s.getWalkDistance() + distance) / speed;
+    }
+
+    /**
+     * Find stops reached by a StreetAccessSearch, including temporary stops. Times are taken from the search, and the
+     * distance from the street to a temporary stop is covered at the speed (in m/s) of the access mode.
+     */
+    public TIntIntMap findStopsNear (StreetAccessSearch search, float speed) {
+        TIntIntMap accessTimes = new TIntIntHashMap();
+
+        indexForStop.forEachEntry((vertexIndex, stopIndex) -> {
+            // temporary stops have negative vertex indices
+            if (vertexIndex >= 0) {
+                int time = search.getTime(vertexIndex);
+                if (time != StreetAccessSearch.UNREACHED) accessTimes.put(stopIndex, time);
+            }
+            return true;
+        });
+
+        // and handle the additional stops
+        for (TObjectIntIterator<AddTripPattern.TemporaryStop> it = addedStops.iterator(); it.hasNext();) {
+            it.advance();
+
+            AddTripPattern.TemporaryStop tstop = it.key();
+            if (tstop.sample == null) {
+                continue;
+            }
+
+            int time = Integer.MAX_VALUE;
+
+            if (tstop.sample.v0 != null) {
+                int t0 = search.getTime(tstop.sample.v0.getIndex());
+                if (t0 != StreetAccessSearch.UNREACHED)
+                    time = t0 + (int) (tstop.sample.d0 / speed);
+            }
+
+            if (tstop.sample.v1 != null) {
+                int t1 = search.getTime(tstop.sample.v1.getIndex());
+                if (t1 != StreetAccessSearch.UNREACHED)
+                    time = Math.min(time, t1 + (int) (tstop.sample.d1 / speed));
+            }
+
+            if (time == Integer.MAX_VALUE)
                 continue;
 
             // NB using the index in the worker data not the index in the graph!
-            accessTimes.put(it.value(), (int) (dist / walkSpeed));
+            accessTimes.put(it.value(), time);
         }
 
         return accessTimes;
     }
 
-    /** half a sample: the index in the sample set, and the distance to one of the vertices */
+    /** half a sample:the index in the sample set, and the distance to one of the vertices */
     private static class HalfSample {
         public HalfSample(int index, float distance) {
             this.index = index;
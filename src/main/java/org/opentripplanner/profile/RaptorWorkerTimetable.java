@@ -87,6 +87,25 @@ public class RaptorWorkerTimetable implements Serializable {
         timesPerTrip = new int[nTrips][];
     }
 
+    /**
+     * Make a copy of this timetable for use in another RaptorWorkerData. The trip times are never modified after the
+     * timetable is built, so they are shared rather than copied; only the fields tying the timetable to its parent data
+     * are independent.
+     */
+    public RaptorWorkerTimetable copy () {
+        RaptorWorkerTimetable copy = new RaptorWorkerTimetable(0, nStops);
+        copy.nTrips = nTrips;
+        copy.timesPerTrip = timesPerTrip;
+        copy.frequencyTrips = frequencyTrips;
+        copy.headwaySecs = headwaySecs;
+        copy.startTimes = startTimes;
+        copy.endTimes = endTimes;
+        copy.stopIndices = stopIndices;
+        copy.mode = mode;
+        copy.routeId = routeId;
+        return copy;
+    }
+
     /**
      * Return the trip index within the pattern of the soonest departure at the given stop number, requiring at least
      * MIN_BOARD_TIME_SECONDS seconds of slack. 
@@ -235,6 +254,15 @@ public class RaptorWorkerTimetable implements Serializable {
         return headwaySecs.length;
     }
 
+    /** Get the number of trips run by vehicles on the frequency trips of this pattern during their service periods. */
+    public int getFrequencyVehicleTripCount () {
+        int count = 0;
+        for (int i = 0; i < getFrequencyTripCount(); i++) {
+            count += (endTimes[i] - startTimes[i]) / headwaySecs[i];
+        }
+        return count;
+    }
+
     /** Does this timetable have any frequency trips? */
     public boolean hasFrequencyTrips () {
         return this.headwaySecs != null && this.headwaySecs.length > 0;
@@ -5,11 +5,13 @@ import com.google.common.collect.Iterables;
 import gnu.trove.map.TIntIntMap;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.TObjectLongMap;
+import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import gnu.trove.map.hash.TObjectLongHashMap;
 import org.joda.time.DateTimeZone;
 import org.opentripplanner.analyst.SampleSet;
 import org.opentripplanner.analyst.TimeSurface;
+import org.opentripplanner.analyst.core.Sample;
 import org.opentripplanner.analyst.cluster.ResultEnvelope;
 import org.opentripplanner.analyst.cluster.TaskStatistics;
 import org.opentripplanner.analyst.scenario.AddTripPattern;
@@ -70,7 +72,14 @@ public class RepeatedRaptorProfileRouter {
      */
     public RaptorWorkerData raptorWorkerData;
 
-    private ShortestPathTree preTransitSpt;
+    /**
+     * Travel time in seconds to each vertex without transit, Integer.MAX_VALUE where not reached. Not filled in when
+     * the times are read from accessSearch instead.
+     */
+    private int[] preTransitTimes;
+
+    /** The street search that found the times to reach the samples, if it was used. Reused by the next search. */
+    private StreetAccessSearch accessSearch;
 
     /** The sum of all earliest-arrival travel times to a given transit stop. Will be divided to create an average. */
     TObjectLongMap<TransitStop> accumulator = new TObjectLongHashMap<TransitStop>();
@@ -143,26 +152,13 @@ public class RepeatedRaptorProfileRouter {
             ts.raptorData = (int) (System.currentTimeMillis() - dataStart);
         }
 
-        // Find the transit stops that are accessible from the origin, leaving behind an SPT behind of access
+        // Find the transit stops that are accessible from the origin, leaving behind an array of access
         // times to all reachable vertices.
         long initialStopStartTime = System.currentTimeMillis();
-        // This will return null if we have no transit data, but will leave behind a pre-transit SPT.
+        // This will return null if we have no transit data, but will leave behind the pre-transit travel times.
         TIntIntMap transitStopAccessTimes = findInitialStops(false, raptorWorkerData);
-        // Create an array containing the best travel time in seconds to each vertex in the graph when not using transit.
-        int[] nonTransitTimes = new int[Vertex.getMaxIndex()];
-        Arrays.fill(nonTransitTimes, Integer.MAX_VALUE);
-        for (State state : preTransitSpt.getAllStates()) {
-            // Note that we are using the walk distance divided by speed here in order to be consistent with the
-            // least-walk optimization in the initial stop search (and the stop tree cache which is used at egress)
-            // TODO consider why this matters, I'm using reported travel time from the states
-            int time = (int) state.getElapsedTimeSeconds();
-            int vidx = state.getVertex().getIndex();
-            int otime = nonTransitTimes[vidx];
-            // There may be dominated states in the SPT. Make sure we don't include them here.
-            if (otime > time) {
-                nonTransitTimes[vidx] = time;
-            }
-        }
+        // An array containing the best travel time in seconds to each vertex in the graph when not using transit.
+        int[] nonTransitTimes = preTransitTimes;
         ts.initialStopSearch = (int) (System.currentTimeMillis() - initialStopStartTime);
 
         long walkSearchStart = System.currentTimeMillis(); // FIXME wasn't the walk search already performed above?
@@ -171,7 +167,9 @@ public class RepeatedRaptorProfileRouter {
         // In the event that a pointset was supplied, our real targets are the points in the pointset, not the vertices
         // in the graph. Therefore we must replace the vertex-indexed array with a new point-indexed array.
         if (sampleSet != null) {
-            nonTransitTimes = sampleSet.eval(nonTransitTimes);
+            // read the times straight from the street search if possible, rather than from a vertex-sized copy
+            nonTransitTimes = accessSearch != null ? sampleSet.eval(accessSearch::getTime)
+                    : sampleSet.eval(nonTransitTimes);
         }
         ts.walkSearch = (int) (System.currentTimeMillis() - walkSearchStart);
 
@@ -212,8 +210,8 @@ public class RepeatedRaptorProfileRouter {
     }
 
     /**
-     * Find all transit stops accessible by streets around the origin, leaving behind a shortest path tree of the
-     * reachable area in the field preTransitSpt.
+     * Find all transit stops accessible by streets around the origin, leaving behind the travel times to all vertices
+     * in the reachable area in the field preTransitTimes.
      *
      * @param data the raptor data table to use. If this is null (i.e. there is no transit) range is extended,
      *             and we don't care if we actually find any stops, we just want the tree of on-street distances.
@@ -221,6 +219,7 @@ public class RepeatedRaptorProfileRouter {
     @VisibleForTesting
     public TIntIntMap findInitialStops(boolean dest, RaptorWorkerData data) {
         LOG.info("Finding initial stops");
+        accessSearch = null;
         double lat = dest ? request.toLat : request.fromLat;
         double lon = dest ? request.toLon : request.fromLon;
         QualifiedModeSet modes = dest ? request.egressModes : request.accessModes;
@@ -230,7 +229,6 @@ public class RepeatedRaptorProfileRouter {
         rr.from = new GenericLocation(lat, lon);
         //rr.walkSpeed = request.walkSpeed;
         rr.to = rr.from;
-        rr.setRoutingContext(graph);
         rr.dateTime = request.date.toDateMidnight(DateTimeZone.forTimeZone(graph.getTimeZone())).getMillis() / 1000 +
                 request.fromTime;
         rr.walkSpeed = request.walkSpeed;
@@ -267,13 +265,65 @@ public class RepeatedRaptorProfileRouter {
         rr.numItineraries = 1;
         rr.longDistance = true;
 
+        boolean bicycle = rr.modes.contains(TraverseMode.BICYCLE);
+
+        if (StreetAccessSearch.supports(rr)) {
+            // Simple walk or bike access, use the reusable street search rather than a full AStar search.
+            Sample origin = graph.getSampleFactory().getSample(lon, lat);
+            StreetAccessSearch search = StreetAccessSearch.forCurrentThread();
+
+            if (origin == null) {
+                LOG.warn("Origin {}, {} is not near the street network", lat, lon);
+                preTransitTimes = new int[Vertex.getMaxIndex()];
+                Arrays.fill(preTransitTimes, Integer.MAX_VALUE);
+                return data != null ? new TIntIntHashMap() : null;
+            }
+
+            double maxSeconds = (rr.worstTime - rr.dateTime);
+            if (rr.worstTime == Long.MAX_VALUE)
+                maxSeconds = rr.maxWalkDistance / request.walkSpeed;
+
+            search.search(StreetAccessTables.forGraph(graph), origin, request.walkSpeed, request.bikeSpeed, bicycle,
+                    (int) Math.min(maxSeconds * 1000, Integer.MAX_VALUE));
+            // Vertex times are only needed for isochrones, sample times are read from the search itself.
+            if (sampleSet == null)
+                preTransitTimes = search.getTimes(Vertex.getMaxIndex());
+            else
+                accessSearch = search;
+
+            if (data != null) {
+                TIntIntMap accessTimes = data.findStopsNear(search, bicycle ? request.bikeSpeed : request.walkSpeed);
+                LOG.info("Found {} transit stops", accessTimes.size());
+                return accessTimes;
+            } else {
+                return null;
+            }
+        }
+
+        rr.setRoutingContext(graph);
         AStar aStar = new AStar();
-        preTransitSpt = aStar.getShortestPathTree(rr, 5);
+        ShortestPathTree preTransitSpt = aStar.getShortestPathTree(rr, 5);
+
+        preTransitTimes = new int[Vertex.getMaxIndex()];
+        Arrays.fill(preTransitTimes, Integer.MAX_VALUE);
+        for (State state : preTransitSpt.getAllStates()) {
+            // Note that we are using the walk distance divided by speed here in order to be consistent with the
+            // least-walk optimization in the initial stop search (and the stop tree cache which is used at egress)
+            // TODO consider why this matters, I'm using reported travel time from the states
+            int time = (int) state.getElapsedTimeSeconds();
+            int vidx = state.getVertex().getIndex();
+            int otime = preTransitTimes[vidx];
+            // There may be dominated states in the SPT. Make sure we don't include them here.
+            if (otime > time) {
+                preTransitTimes[vidx] = time;
+            }
+        }
 
         // Return nearest stops if we're using transit,
-        // otherwise return null and leave preTransitSpt around for later use.
+        // otherwise return null and leave preTransitTimes around for later use.
         if (data != null) {
-            TIntIntMap accessTimes = data.findStopsNear(preTransitSpt, graph, rr.modes.contains(TraverseMode.BICYCLE), request.walkSpeed);
+            TIntIntMap accessTimes = data.findStopsNear(preTransitSpt, graph, bicycle,
+                    bicycle ? request.bikeSpeed : request.walkSpeed);
             LOG.info("Found {} transit stops", accessTimes.size());
             return accessTimes;
         } else {
@@ -283,6 +333,17 @@ public class RepeatedRaptorProfileRouter {
 
     /** Create RAPTOR worker data from a graph, profile request and sample set (the last of which may be null */
     public static RaptorWorkerData getRaptorWorkerData (ProfileRequest request, Graph graph, SampleSet sampleSet, TaskStatistics ts) {
+        return getRaptorWorkerData(request, graph, sampleSet, null, ts);
+    }
+
+    /**
+     * Create RAPTOR worker data for the scenario in the given request. If baseline data is supplied (built by
+     * getBaselineRaptorWorkerData for the same graph, time window and sample set) and the scenario can be expressed as
+     * an overlay, the result shares everything the scenario does not touch with the baseline. Otherwise the data is
+     * built from scratch.
+     */
+    public static RaptorWorkerData getRaptorWorkerData (ProfileRequest request, Graph graph, SampleSet sampleSet,
+            RaptorWorkerData baseline, TaskStatistics ts) {
         LOG.info("Make data...");
         long startData = System.currentTimeMillis();
 
@@ -297,18 +358,13 @@ public class RepeatedRaptorProfileRouter {
             }
         }
 
-        // convert from joda to java - ISO day of week with monday == 1
-        DayOfWeek dayOfWeek = DayOfWeek.of(request.date.getDayOfWeek());
-
-        TimeWindow window = new TimeWindow(request.fromTime, request.toTime + RaptorWorker.MAX_DURATION,
-                graph.index.servicesRunning(request.date), dayOfWeek);
+        TimeWindow window = makeTimeWindow(request, graph);
 
         RaptorWorkerData raptorWorkerData;
-        if (sampleSet == null)
-            raptorWorkerData = new RaptorWorkerData(graph, window, request, ts);
+        if (baseline != null && RaptorWorkerData.canOverlay(request.scenario))
+            raptorWorkerData = new RaptorWorkerData(baseline, graph, window, request, ts);
         else
-            raptorWorkerData = new RaptorWorkerData(graph, window, request, sampleSet,
-                    ts);
+            raptorWorkerData = new RaptorWorkerData(graph, window, request, sampleSet, ts);
 
         ts.raptorData = (int) (System.currentTimeMillis() - startData);
 
@@ -316,4 +372,21 @@ public class RepeatedRaptorProfileRouter {
 
         return raptorWorkerData;
     }
+
+    /**
+     * Create RAPTOR worker data ignoring any scenario in the request, to be shared by overlays for several scenarios
+     * using the same graph, time window, walk parameters and sample set.
+     */
+    public static RaptorWorkerData getBaselineRaptorWorkerData (ProfileRequest request, Graph graph, SampleSet sampleSet) {
+        LOG.info("Make baseline data...");
+        return new RaptorWorkerData(graph, makeTimeWindow(request, graph), request, null, sampleSet, new TaskStatistics());
+    }
+
+    private static TimeWindow makeTimeWindow (ProfileRequest request, Graph graph) {
+        // convert from joda to java - ISO day of week with monday == 1
+        DayOfWeek dayOfWeek = DayOfWeek.of(request.date.getDayOfWeek());
+
+        return new TimeWindow(request.fromTime, request.toTime + RaptorWorker.MAX_DURATION,
+                graph.index.servicesRunning(request.date), dayOfWeek);
+    }
 }
@@ -0,0 +1,185 @@
+package org.opentripplanner.profile;
+
+import org.opentripplanner.analyst.core.Sample;
+import org.opentripplanner.routing.core.RoutingRequest;
+
+import java.util.Arrays;
+
+/**
+ * A one-to-many street search from an analyst origin, used to find access times to transit stops and the direct
+ * (non-transit) travel time to every vertex.
+ *
+ * This replaces a general-purpose AStar search for the simple cases that make up nearly all analyst requests (walking
+ * or cycling, no rental, parking or wheelchair constraints). It is a plain Dijkstra search on travel time over the
+ * primitive arrays of StreetAccessTables, with a binary heap of primitive keys. The vertex-indexed working arrays are
+ * kept per thread and reused by every search on that thread; only the entries touched by the previous search are
+ * reset, so a search does no work or allocation proportional to the size of the graph.
+ *
+ * Walk-only searches are equivalent to the least-walk searches they replace, because walk time is simply walk
+ * distance divided by walk speed. Turn costs, slopes and the time to enter a station are not modeled.
+ */
+public class StreetAccessSearch {
+
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    private static final ThreadLocal<StreetAccessSearch> searchForThread = ThreadLocal.withInitial(StreetAccessSearch::new);
+
+    /** Best known travel time to each vertex in milliseconds, or UNREACHED. */
+    private int[] millis = new int[0];
+
+    /** Vertices whose travel time has been set in the current search. */
+    private int[] touched = new int[0];
+
+    private int nTouched;
+
+    /** A binary min-heap of (time, vertex) pairs. Vertices may appear more than once; stale entries are skipped. */
+    private int[] heapKeys = new int[1024];
+
+    private int[] heapVertices = new int[1024];
+
+    private int heapSize;
+
+    private StreetAccessSearch () {
+    }
+
+    /** @return the search for the calling thread. Its results are valid until the next search on this thread. */
+    public static StreetAccessSearch forCurrentThread () {
+        return searchForThread.get();
+    }
+
+    /** @return true if requests with these options can be handled by this search rather than a full AStar search. */
+    public static boolean supports (RoutingRequest rr) {
+        return (rr.modes.getWalk() || rr.modes.getBicycle()) && !rr.modes.getCar() && !rr.allowBikeRental &&
+                !rr.bikeParkAndRide && !rr.parkAndRide && !rr.wheelchairAccessible;
+    }
+
+    /**
+     * Search outward from an origin linked to the street network.
+     *
+     * @param bicycle whether to cycle. Edges where cycling is not allowed are still walked, as in a regular search.
+     * @param maxMillis vertices further than this are not reached.
+     */
+    public void search (StreetAccessTables tables, Sample origin, float walkSpeed, float bikeSpeed, boolean bicycle,
+                        int maxMillis) {
+        reset(tables.nVertices);
+
+        float originSpeed = bicycle ? bikeSpeed : walkSpeed;
+        if (origin.v0 != null && origin.v0.getIndex() < tables.nVertices)
+            relax(origin.v0.getIndex(), (int) (origin.d0 * 1000 / originSpeed), maxMillis);
+        if (origin.v1 != null && origin.v1.getIndex() < tables.nVertices)
+            relax(origin.v1.getIndex(), (int) (origin.d1 * 1000 / originSpeed), maxMillis);
+
+        while (heapSize > 0) {
+            int time = heapKeys[0];
+            int vertex = heapVertices[0];
+            pop();
+
+            // stale entry, this vertex was since reached sooner
+            if (time > millis[vertex])
+                continue;
+
+            // don't walk through transit stops
+            if (tables.terminal[vertex])
+                continue;
+
+            for (int edge = tables.firstEdge[vertex]; edge < tables.firstEdge[vertex + 1]; edge++) {
+                byte modes = tables.modes[edge];
+                float speed;
+                if (bicycle && (modes & StreetAccessTables.BICYCLE) != 0)
+                    speed = bikeSpeed;
+                else if ((modes & StreetAccessTables.WALK) != 0)
+                    speed = walkSpeed;
+                else
+                    continue;
+
+                relax(tables.toVertex[edge], time + (int) (tables.lengthMm[edge] / speed), maxMillis);
+            }
+        }
+    }
+
+    /** @return the travel time in seconds to the given vertex in the last search, or UNREACHED. */
+    public int getTime (int vertex) {
+        if (vertex >= millis.length || millis[vertex] == UNREACHED)
+            return UNREACHED;
+
+        return millis[vertex] / 1000;
+    }
+
+    /** @return a new array of travel times in seconds to every vertex in the last search, UNREACHED where not reached. */
+    public int[] getTimes (int nVertices) {
+        int[] times = new int[nVertices];
+        Arrays.fill(times, UNREACHED);
+        for (int i = 0; i < nTouched; i++) {
+            int vertex = touched[i];
+            if (vertex < nVertices) times[vertex] = millis[vertex] / 1000;
+        }
+        return times;
+    }
+
+    private void reset (int nVertices) {
+        if (millis.length < nVertices) {
+            millis = new int[nVertices];
+            Arrays.fill(millis, UNREACHED);
+            touched = new int[nVertices];
+        } else {
+            for (int i = 0; i < nTouched; i++) {
+                millis[touched[i]] = UNREACHED;
+            }
+        }
+        nTouched = 0;
+        heapSize = 0;
+    }
+
+    private void relax (int vertex, int time, int maxMillis) {
+        if (time > maxMillis || time >= millis[vertex])
+            return;
+
+        if (millis[vertex] == UNREACHED)
+            touched[nTouched++] = vertex;
+
+        millis[vertex] = time;
+        push(time, vertex);
+    }
+
+    private void push (int key, int vertex) {
+        if (heapSize == heapKeys.length) {
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            heapVertices = Arrays.copyOf(heapVertices, heapSize * 2);
+        }
+
+        // sift up
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapKeys[parent] <= key)
+                break;
+            heapKeys[i] = heapKeys[parent];
+            heapVertices[i] = heapVertices[parent];
+            i = parent;
+        }
+        heapKeys[i] = key;
+        heapVertices[i] = vertex;
+    }
+
+    private void pop () {
+        int key = heapKeys[--heapSize];
+        int vertex = heapVertices[heapSize];
+
+        // sift down the last element from the root
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child])
+                child++;
+            if (heapKeys[child] >= key)
+                break;
+            heapKeys[i] = heapKeys[child];
+            heapVertices[i] = heapVertices[child];
+            i = child;
+        }
+        heapKeys[i] = key;
+        heapVertices[i] = vertex;
+    }
+}
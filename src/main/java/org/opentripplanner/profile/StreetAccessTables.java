@@ -0,0 +1,163 @@
+package org.opentripplanner.profile;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.ElevatorEdge;
+import org.opentripplanner.routing.edgetype.FreeEdge;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A compact, read-only copy of the walkable and bikeable street network of a graph, for the one-to-many searches
+ * around analyst origins (see StreetAccessSearch).
+ *
+ * The outgoing edges of every vertex are stored in flat primitive arrays indexed by vertex index (compressed sparse
+ * rows), so a search never touches Edge or State objects. The tables are built once per graph and shared by all
+ * searches on that graph.
+ */
+public class StreetAccessTables {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreetAccessTables.class);
+
+    /** Edge may be traversed on foot. */
+    public static final byte WALK = 1;
+
+    /** Edge may be traversed by bicycle. */
+    public static final byte BICYCLE = 2;
+
+    /** Tables for the graphs currently in use, held weakly so they go away with their graph. */
+    private static final Cache<Graph, StreetAccessTables> tablesForGraph = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    /** One more than the highest vertex index in the graph. */
+    public final int nVertices;
+
+    /** The outgoing edges of vertex v are firstEdge[v] (inclusive) to firstEdge[v + 1] (exclusive). */
+    public final int[] firstEdge;
+
+    /** The vertex index at the end of each edge. */
+    public final int[] toVertex;
+
+    /** The length of each edge in millimeters, matching the fixed-point lengths of StreetEdges. */
+    public final int[] lengthMm;
+
+    /** Bit set of WALK and BICYCLE for each edge. */
+    public final byte[] modes;
+
+    /** Vertices that may be reached but not passed through, i.e. transit stops. */
+    public final boolean[] terminal;
+
+    /** Number of vertices in the graph when these tables were built, used to detect graph changes. */
+    private final int graphVertexCount;
+
+    /** Graph.getModificationCount() when these tables were built, used to detect edges added or removed. */
+    private final long graphModificationCount;
+
+    /** Get the tables for a graph, building them the first time they are requested or if the graph has changed. */
+    public static StreetAccessTables forGraph (Graph graph) {
+        StreetAccessTables tables = tablesForGraph.getIfPresent(graph);
+        if (tables != null && tables.isCurrent(graph))
+            return tables;
+
+        synchronized (tablesForGraph) {
+            tables = tablesForGraph.getIfPresent(graph);
+            if (tables == null || !tables.isCurrent(graph)) {
+                tables = new StreetAccessTables(graph);
+                tablesForGraph.put(graph, tables);
+            }
+            return tables;
+        }
+    }
+
+    private StreetAccessTables (Graph graph) {
+        long startTime = System.currentTimeMillis();
+        // read the count first, so that edges changed while building cause a rebuild on the next request
+        graphModificationCount = graph.getModificationCount();
+        graphVertexCount = graph.countVertices();
+
+        int maxIndex = -1;
+        for (Vertex v : graph.getVertices()) {
+            maxIndex = Math.max(maxIndex, v.getIndex());
+        }
+        nVertices = maxIndex + 1;
+
+        // first pass: count the usable edges of each vertex
+        firstEdge = new int[nVertices + 1];
+        terminal = new boolean[nVertices];
+        for (Vertex v : graph.getVertices()) {
+            terminal[v.getIndex()] = v instanceof TransitStop;
+            for (Edge e : v.getOutgoing()) {
+                if (modesFor(e) != 0 && e.getToVertex().getIndex() < nVertices)
+                    firstEdge[v.getIndex() + 1]++;
+            }
+        }
+
+        for (int v = 0; v < nVertices; v++) {
+            firstEdge[v + 1] += firstEdge[v];
+        }
+
+        // second pass: fill the edge arrays
+        int nEdges = firstEdge[nVertices];
+        toVertex = new int[nEdges];
+        lengthMm = new int[nEdges];
+        modes = new byte[nEdges];
+        int[] next = new int[nVertices];
+        System.arraycopy(firstEdge, 0, next, 0, nVertices);
+
+        for (Vertex v : graph.getVertices()) {
+            for (Edge e : v.getOutgoing()) {
+                byte edgeModes = modesFor(e);
+                if (edgeModes == 0 || e.getToVertex().getIndex() >= nVertices)
+                    continue;
+
+                int edge = next[v.getIndex()]++;
+                toVertex[edge] = e.getToVertex().getIndex();
+                lengthMm[edge] = e instanceof StreetEdge ? (int) Math.round(e.getDistance() * 1000) : 0;
+                modes[edge] = edgeModes;
+            }
+        }
+
+        LOG.info("Built street access tables for {} vertices and {} edges in {} ms", nVertices, nEdges,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * @return whether these tables still match the graph. Edges added or removed from the graph cause a rebuild, as
+     *         the vertex count alone does not change when edges are replaced. Changes to the attributes of existing
+     *         edges are not detected.
+     */
+    private boolean isCurrent (Graph graph) {
+        return graphVertexCount == graph.countVertices() && graphModificationCount == graph.getModificationCount();
+    }
+
+    /** @return the modes that can traverse an edge in an access search, or 0 if the edge is not used at all. */
+    private static byte modesFor (Edge e) {
+        // temporary edges belong to a single request
+        if (e instanceof TemporaryEdge)
+            return 0;
+
+        if (e instanceof StreetEdge) {
+            StreetEdge se = (StreetEdge) e;
+            byte edgeModes = 0;
+            if (se.canTraverseIncludingBarrier(TraverseMode.WALK)) edgeModes |= WALK;
+            if (se.canTraverseIncludingBarrier(TraverseMode.BICYCLE)) edgeModes |= BICYCLE;
+            return edgeModes;
+        }
+
+        if (e instanceof StreetTransitLink || e instanceof FreeEdge || e instanceof ElevatorEdge)
+            return WALK | BICYCLE;
+
+        return 0;
+    }
+}
@@ -0,0 +1,152 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+
+package org.opentripplanner.routing.alertpatch;
+
+import org.opentripplanner.routing.graph.Edge;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The alert patches of each edge of a graph, as an immutable and versioned snapshot which is read without any lock
+ * while itineraries are generated. Changes are made on a {@link Builder}, which only copies the arrays of the edges it
+ * changes, and are published all at once by replacing the snapshot of the graph.
+ */
+public class AlertPatchSnapshot {
+
+    public static final AlertPatchSnapshot EMPTY =
+            new AlertPatchSnapshot(0, Collections.<Edge, AlertPatch[]>emptyMap());
+
+    private static final AlertPatch[] NO_ALERT_PATCHES = new AlertPatch[0];
+
+    private final long version;
+
+    private final Map<Edge, AlertPatch[]> alertPatches;
+
+    private AlertPatchSnapshot(long version, Map<Edge, AlertPatch[]> alertPatches) {
+        this.version = version;
+        this.alertPatches = alertPatches;
+    }
+
+    /** @return The version of the snapshot, incremented each time a changed snapshot is published. */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the alert patches of an edge. The array is shared by all the readers of the snapshot and must not be modified.
+     * @return The alert patches of the edge, or an empty array if there are none or the edge is null.
+     */
+    public AlertPatch[] getAlertPatches(Edge edge) {
+        if (edge != null) {
+            AlertPatch[] result = alertPatches.get(edge);
+            if (result != null) {
+                return result;
+            }
+        }
+        return NO_ALERT_PATCHES;
+    }
+
+    /** @return The number of edges having at least one alert patch. */
+    public int size() {
+        return alertPatches.size();
+    }
+
+    public Builder builder() {
+        return new Builder(this);
+    }
+
+    /** Accumulates additions and removals of alert patches to build the next snapshot. This class is not thread-safe. */
+    public static class Builder {
+
+        private final AlertPatchSnapshot base;
+
+        private Map<Edge, AlertPatch[]> alertPatches;
+
+        private Builder(AlertPatchSnapshot base) {
+            this.base = base;
+        }
+
+        /** Add an alert patch to an edge. Null arguments and patches already on the edge are ignored. */
+        public Builder add(Edge edge, AlertPatch alertPatch) {
+            if (edge == null || alertPatch == null) return this;
+            AlertPatch[] current = get(edge);
+            if (indexOf(current, alertPatch) < 0) {
+                AlertPatch[] added = Arrays.copyOf(current, current.length + 1);
+                added[current.length] = alertPatch;
+                modifiable().put(edge, added);
+            }
+            return this;
+        }
+
+        /** Remove an alert patch from an edge. Null arguments and patches not on the edge are ignored. */
+        public Builder remove(Edge edge, AlertPatch alertPatch) {
+            if (edge == null || alertPatch == null) return this;
+            AlertPatch[] current = get(edge);
+            int index = indexOf(current, alertPatch);
+            if (index >= 0) {
+                if (current.length < 2) {
+                    modifiable().remove(edge);
+                } else {
+                    AlertPatch[] remaining = new AlertPatch[current.length - 1];
+                    System.arraycopy(current, 0, remaining, 0, index);
+                    System.arraycopy(current, index + 1, remaining, index, remaining.length - index);
+                    modifiable().put(edge, remaining);
+                }
+            }
+            return this;
+        }
+
+        /** Remove all the alert patches of an edge, as done when the edge is removed from the graph. */
+        public Builder removeAll(Edge edge) {
+            if (edge != null && get(edge).length > 0) {
+                modifiable().remove(edge);
+            }
+            return this;
+        }
+
+        /** @return A new snapshot with the changes, or the snapshot this builder started from if nothing changed. */
+        public AlertPatchSnapshot build() {
+            if (alertPatches == null) {
+                return base;
+            }
+            return new AlertPatchSnapshot(base.version + 1, Collections.unmodifiableMap(alertPatches));
+        }
+
+        private AlertPatch[] get(Edge edge) {
+            AlertPatch[] result = (alertPatches == null ? base.alertPatches : alertPatches).get(edge);
+            return result == null ? NO_ALERT_PATCHES : result;
+        }
+
+        /** The map is copied once for the first change, the arrays it holds are replaced rather than modified. */
+        private Map<Edge, AlertPatch[]> modifiable() {
+            if (alertPatches == null) {
+                alertPatches = new HashMap<>(base.alertPatches);
+            }
+            return alertPatches;
+        }
+
+        private static int indexOf(AlertPatch[] alertPatches, AlertPatch alertPatch) {
+            for (int i = 0; i < alertPatches.length; i++) {
+                if (alertPatches[i].equals(alertPatch)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -82,6 +82,23 @@ public class AStar {
     }
     
     private RunState runState;
+
+    /** The work done by all the searches of this instance, for the routing metrics. */
+    public static class SearchStats {
+        public int searches;
+        public long heuristicNanos;
+        public long searchNanos;
+        public long verticesVisited;
+        public long statesCreated;
+        public int maxQueueSize;
+    }
+
+    private final SearchStats searchStats = new SearchStats();
+
+    /** @return The work done by all the searches of this instance so far. */
+    public SearchStats getSearchStats() {
+        return searchStats;
+    }
     
     /**
      * Compute SPT using default timeout and termination strategy.
@@ -120,7 +137,10 @@ public class AStar {
         // Since initial states can be multiple, heuristic cannot depend on the initial state.
         // Initializing the bidirectional heuristic is a pretty complicated operation that involves searching through
         // the streets around the origin and destination.
+        long heuristicStart = System.nanoTime();
         runState.heuristic.initialize(runState.options, abortTime);
+        searchStats.searches += 1;
+        searchStats.heuristicNanos += System.nanoTime() - heuristicStart;
         if (abortTime < Long.MAX_VALUE  && System.currentTimeMillis() > abortTime) {
             LOG.warn("Timeout during initialization of goal direction heuristic.");
             options.rctx.debugOutput.timedOut = true;
@@ -221,11 +241,15 @@ public class AStar {
                 
                 // spt.add returns true if the state is hopeful; enqueue state if it's hopeful
                 if (runState.spt.add(v)) {
+                    searchStats.statesCreated += 1;
                     // report to the visitor if there is one
                     if (traverseVisitor != null)
                         traverseVisitor.visitEnqueue(v);
                     //LOG.info("u.w={} v.w={} h={}", runState.u.weight, v.weight, remaining_w);
                     runState.pq.insert(v, estimate);
+                    if (runState.pq.size() > searchStats.maxQueueSize) {
+                        searchStats.maxQueueSize = runState.pq.size();
+                    }
                 } 
             }
         }
@@ -234,6 +258,16 @@ public class AStar {
     }
     
     void runSearch(long abortTime){
+        long searchStart = System.nanoTime();
+        try {
+            runSearchLoop(abortTime);
+        } finally {
+            searchStats.searchNanos += System.nanoTime() - searchStart;
+            searchStats.verticesVisited += runState.nVisited;
+        }
+    }
+
+    private void runSearchLoop(long abortTime){
         /* the core of the A* algorithm */
         while (!runState.pq.empty()) { // Until the priority queue is empty:
             /*
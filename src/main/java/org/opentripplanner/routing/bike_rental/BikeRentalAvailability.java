@@ -0,0 +1,90 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.bike_rental;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The number of bikes and spaces available at the stations of a real-time bike rental system, as a versioned table
+ * which is read by routing without any lock. Each station is given a slot in the table. Every update publishes a new
+ * immutable version of the table, so a reader always sees the counts of a single update.
+ *
+ * Updates are not done in the graph writer thread: only the stations appearing or disappearing need to modify the
+ * graph, which is the rare case.
+ */
+public class BikeRentalAvailability {
+
+    /** The slot of each station ID. Slots are never reused, so that a slot is never read for the wrong station. */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    private volatile Version current = new Version(0, new int[0], new int[0]);
+
+    /** @return The slot of the station with the given ID, allocating a new one if needed. */
+    public synchronized int slot(String stationId) {
+        Integer slot = slots.get(stationId);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(stationId, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Publish a new version of the table with the counts of the given stations. The stations which are not given get
+     * no bikes and no spaces available.
+     */
+    public synchronized void update(Collection<BikeRentalStation> stations) {
+        for (BikeRentalStation station : stations) {
+            slot(station.id);
+        }
+        int[] bikes = new int[slots.size()];
+        int[] spaces = new int[slots.size()];
+        for (BikeRentalStation station : stations) {
+            int slot = slots.get(station.id);
+            bikes[slot] = station.bikesAvailable;
+            spaces[slot] = station.spacesAvailable;
+        }
+        current = new Version(current.version + 1, bikes, spaces);
+    }
+
+    /** @return The version of the table, incremented by each update. */
+    public long getVersion() {
+        return current.version;
+    }
+
+    public int getBikesAvailable(int slot) {
+        int[] bikes = current.bikes;
+        return slot < bikes.length ? bikes[slot] : 0;
+    }
+
+    public int getSpacesAvailable(int slot) {
+        int[] spaces = current.spaces;
+        return slot < spaces.length ? spaces[slot] : 0;
+    }
+
+    private static class Version {
+
+        final long version;
+
+        final int[] bikes, spaces;
+
+        Version(long version, int[] bikes, int[] spaces) {
+            this.version = version;
+            this.bikes = bikes;
+            this.spaces = spaces;
+        }
+    }
+}
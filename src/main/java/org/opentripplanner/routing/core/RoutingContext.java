@@ -359,7 +359,7 @@ public class RoutingContext implements Cloneable {
     /**
      * Cache ServiceDay objects representing which services are running yesterday, today, and tomorrow relative to the search time. This information
      * is very heavily used (at every transit boarding) and Date operations were identified as a performance bottleneck. Must be called after the
-     * TraverseOptions already has a CalendarService set.
+     * TraverseOptions already has a CalendarService set. The ServiceDays come from the graph's ServiceDayCache and must not be modified.
      */
     private void setServiceDays() {
         Calendar c = Calendar.getInstance();
@@ -374,13 +374,16 @@ public class RoutingContext implements Cloneable {
             return;
         }
 
+        // The ServiceDays are computed once and shared by all the requests on the graph.
+        ServiceDayCache serviceDayCache = graph.getServiceDayCache();
+        if (serviceDayCache == null) {
+            serviceDayCache = new ServiceDayCache(graph, calendarService);
+        }
         for (String feedId : graph.getFeedIds()) {
             for (Agency agency : graph.getAgencies(feedId)) {
-                addIfNotExists(this.serviceDays, new ServiceDay(graph, serviceDate.previous(),
-                        calendarService, agency.getId()));
-                addIfNotExists(this.serviceDays, new ServiceDay(graph, serviceDate, calendarService, agency.getId()));
-                addIfNotExists(this.serviceDays, new ServiceDay(graph, serviceDate.next(),
-                        calendarService, agency.getId()));
+                addIfNotExists(this.serviceDays, serviceDayCache.get(serviceDate.previous(), agency.getId()));
+                addIfNotExists(this.serviceDays, serviceDayCache.get(serviceDate, agency.getId()));
+                addIfNotExists(this.serviceDays, serviceDayCache.get(serviceDate.next(), agency.getId()));
             }
         }
     }
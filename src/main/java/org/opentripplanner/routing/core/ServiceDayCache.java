@@ -0,0 +1,128 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.core;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.onebusaway.gtfs.services.calendar.CalendarService;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The ServiceDays of a graph, keyed by service date and time zone, shared by all the requests on the graph.
+ *
+ * A ServiceDay only depends on the calendar of the graph, so there is no need to rebuild the set of services running
+ * on a date for each request. The ServiceDays returned are shared and must not be modified. The days around the
+ * current date are computed when the graph is indexed and kept as long as the graph. The other days, which depend on
+ * the dates chosen by clients, are computed when first requested and kept in a cache of bounded size.
+ */
+public class ServiceDayCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ServiceDayCache.class);
+
+    /** The number of days before the current date for which ServiceDays are computed in advance. */
+    private static final int PRECOMPUTED_DAYS_BEFORE = 7;
+
+    /** The number of days after the current date for which ServiceDays are computed in advance. */
+    private static final int PRECOMPUTED_DAYS_AFTER = 366;
+
+    /** The number of ServiceDays outside of the precomputed days which are kept. */
+    private static final int MAX_OTHER_DAYS = 1000;
+
+    private final Graph graph;
+
+    private final CalendarService calendarService;
+
+    /** The ServiceDays computed by precompute(), which are not evicted. */
+    private final Map<String, ServiceDay> precomputed = new ConcurrentHashMap<>();
+
+    private final Cache<String, ServiceDay> others = CacheBuilder.newBuilder().maximumSize(MAX_OTHER_DAYS).build();
+
+    public ServiceDayCache(Graph graph, CalendarService calendarService) {
+        this.graph = graph;
+        this.calendarService = calendarService;
+    }
+
+    /** @return The ServiceDay for the given date in the time zone of the given agency. */
+    public ServiceDay get(ServiceDate serviceDate, String agencyId) {
+        return get(serviceDate, calendarService.getTimeZoneForAgencyId(agencyId));
+    }
+
+    /**
+     * @return The ServiceDay for the given date in the given time zone. An unknown (null) time zone, e.g. of an agency
+     *         missing from the calendar service, is replaced by the time zone of the graph.
+     */
+    public ServiceDay get(ServiceDate serviceDate, TimeZone agencyTimeZone) {
+        TimeZone timeZone = agencyTimeZone != null ? agencyTimeZone : graph.getTimeZone();
+        if (timeZone == null) {
+            // Not even the graph has a time zone, nothing to key the ServiceDay on
+            return new ServiceDay(graph, serviceDate, calendarService, agencyTimeZone);
+        }
+        String key = key(serviceDate, timeZone);
+        ServiceDay serviceDay = precomputed.get(key);
+        if (serviceDay == null) {
+            try {
+                serviceDay = others.get(key, () -> new ServiceDay(graph, serviceDate, calendarService, timeZone));
+            } catch (ExecutionException | UncheckedExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+        return serviceDay;
+    }
+
+    private static String key(ServiceDate serviceDate, TimeZone timeZone) {
+        return serviceDate.getAsString() + " " + timeZone.getID();
+    }
+
+    /** @return The number of ServiceDays held, precomputed or not. */
+    public long size() {
+        return precomputed.size() + others.size();
+    }
+
+    /**
+     * Compute the ServiceDays of the given time zones for the days around the current date, within the period covered
+     * by the transit feeds. Computing all the days of the feeds is not worth it, as they can span decades.
+     */
+    public void precompute(Collection<TimeZone> timeZones) {
+        long t0 = System.currentTimeMillis();
+        Calendar calendar = Calendar.getInstance(graph.getTimeZone());
+        calendar.add(Calendar.DATE, -PRECOMPUTED_DAYS_BEFORE);
+        ServiceDate serviceDate = new ServiceDate(calendar);
+        int n = 0;
+        for (int i = 0; i <= PRECOMPUTED_DAYS_BEFORE + PRECOMPUTED_DAYS_AFTER; i++) {
+            if (graph.transitFeedCovers(serviceDate.getAsDate(graph.getTimeZone()).getTime() / 1000)) {
+                for (TimeZone timeZone : timeZones) {
+                    ServiceDate date = serviceDate;
+                    precomputed.computeIfAbsent(key(date, timeZone),
+                            key -> new ServiceDay(graph, date, calendarService, timeZone));
+                    n++;
+                }
+            }
+            serviceDate = serviceDate.next();
+        }
+        LOG.info("Computed {} service days in {} msec.", n, System.currentTimeMillis() - t0);
+    }
+
+}
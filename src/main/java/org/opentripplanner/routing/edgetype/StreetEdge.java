@@ -78,6 +78,7 @@ public class StreetEdge extends Edge implements Cloneable {
     private static final int STAIRS_FLAG_INDEX = 4;
     private static final int SLOPEOVERRIDE_FLAG_INDEX = 5;
     private static final int WHEELCHAIR_ACCESSIBLE_FLAG_INDEX = 6;
+    private static final int HASTURNRESTRICTIONS_FLAG_INDEX = 7;
 
     /** back, roundabout, stairs, ... */
     private byte flags;
@@ -240,6 +241,13 @@ public class StreetEdge extends Edge implements Cloneable {
         return null;
     }
 
+    /**
+     * Pass the points of the elevation profile of this edge to a consumer as (distance, elevation) pairs, without
+     * creating a coordinate sequence. Does nothing if there is no elevation profile.
+     */
+    public void forEachElevationPoint(CoordinateConsumer consumer) {
+    }
+
     public boolean isElevationFlattened() {
         return false;
     }
@@ -668,6 +676,14 @@ public class StreetEdge extends Edge implements Cloneable {
 		return CompactLineString.uncompactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), compactGeometry, isBack());
 	}
 
+	/**
+	 * Pass the coordinates of the geometry of this edge to a consumer in order, without creating a LineString.
+	 * The coordinates are the same as those of getGeometry().
+	 */
+	public void forEachGeometryCoordinate(CoordinateConsumer consumer) {
+		CompactLineString.forEachCoordinate(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), compactGeometry, isBack(), consumer);
+	}
+
 	private void setGeometry(LineString geometry) {
 		this.compactGeometry = CompactLineString.compactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), isBack() ? (LineString)geometry.reverse() : geometry, isBack());
 	}
@@ -751,6 +767,18 @@ public class StreetEdge extends Edge implements Cloneable {
 	    flags = BitSetUtils.set(flags, STAIRS_FLAG_INDEX, stairs);
 	}
 
+	/**
+	 * True if turn restrictions start on this edge. This flag is maintained by Graph.addTurnRestriction and
+	 * Graph.removeTurnRestriction, so that the turn restrictions of the many edges without any are never looked up.
+	 */
+	public boolean hasTurnRestrictions() {
+	    return BitSetUtils.get(flags, HASTURNRESTRICTIONS_FLAG_INDEX);
+	}
+
+	public void setHasTurnRestrictions(boolean hasTurnRestrictions) {
+	    flags = BitSetUtils.set(flags, HASTURNRESTRICTIONS_FLAG_INDEX, hasTurnRestrictions);
+	}
+
 	public float getCarSpeed() {
 		return carSpeed;
 	}
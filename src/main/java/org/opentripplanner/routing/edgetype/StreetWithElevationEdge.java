@@ -14,6 +14,7 @@
 package org.opentripplanner.routing.edgetype;
 
 import org.opentripplanner.common.geometry.CompactElevationProfile;
+import org.opentripplanner.common.geometry.CoordinateConsumer;
 import org.opentripplanner.common.geometry.PackedCoordinateSequence;
 import org.opentripplanner.routing.util.ElevationUtils;
 import org.opentripplanner.routing.util.SlopeCosts;
@@ -83,6 +84,11 @@ public class StreetWithElevationEdge extends StreetEdge {
         return CompactElevationProfile.uncompactElevationProfile(packedElevationProfile);
     }
 
+    @Override
+    public void forEachElevationPoint(CoordinateConsumer consumer) {
+        CompactElevationProfile.forEachPoint(packedElevationProfile, consumer);
+    }
+
     @Override
     public boolean isElevationFlattened() {
         return flattened;
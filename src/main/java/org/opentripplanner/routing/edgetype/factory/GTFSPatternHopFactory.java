@@ -83,6 +83,7 @@ import org.opentripplanner.routing.impl.OnBoardDepartServiceImpl;
 import org.opentripplanner.routing.services.FareService;
 import org.opentripplanner.routing.services.FareServiceFactory;
 import org.opentripplanner.routing.services.OnBoardDepartService;
+import org.opentripplanner.routing.trippattern.Deduplicator;
 import org.opentripplanner.routing.trippattern.FrequencyEntry;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.TransitStation;
@@ -100,9 +101,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
 
 // Filtering out (removing) stoptimes from a trip forces us to either have two copies of that list,
 // or do all the steps within one loop over trips. It would be clearer if there were multiple loops over the trips.
@@ -294,16 +298,37 @@ public class GTFSPatternHopFactory {
 
     private CalendarService _calendarService;
     
-    private Map<ShapeSegmentKey, LineString> _geometriesByShapeSegmentKey = new HashMap<ShapeSegmentKey, LineString>();
+    /* These caches are shared by the threads creating pattern geometries. */
 
-    private Map<AgencyAndId, LineString> _geometriesByShapeId = new HashMap<AgencyAndId, LineString>();
+    private Map<ShapeSegmentKey, LineString> _geometriesByShapeSegmentKey = new ConcurrentHashMap<ShapeSegmentKey, LineString>();
 
-    private Map<AgencyAndId, double[]> _distancesByShapeId = new HashMap<AgencyAndId, double[]>();
+    private Map<AgencyAndId, LineString> _geometriesByShapeId = new ConcurrentHashMap<AgencyAndId, LineString>();
+
+    private Map<AgencyAndId, double[]> _distancesByShapeId = new ConcurrentHashMap<AgencyAndId, double[]>();
     
     private FareServiceFactory fareServiceFactory;
 
     private Multimap<StopPattern, TripPattern> tripPatterns = HashMultimap.create();
 
+    /**
+     * The hops don't actually exist when we build their geometries, but we have to build their geometries
+     * in buildPatterns, before we throw away the modified stopTimes, saving only the tripTimes (which don't have
+     * enough information to build a geometry). So we keep them here.
+     *
+     *  A trip pattern actually does not have a single geometry, but one per hop, so we store an array.
+     *  FIXME _why_ doesn't it have a single geometry?
+     */
+    private Map<TripPattern, LineString[]> geometriesByTripPattern = Maps.newHashMap();
+
+    /** Annotations found while building patterns, registered with the graph when the patterns are added to it. */
+    private List<GraphBuilderAnnotation> annotations = new ArrayList<GraphBuilderAnnotation>();
+
+    private boolean patternsBuilt = false;
+
+    private int freqCount = 0;
+
+    private int nonFreqCount = 0;
+
     private GtfsStopContext context = new GtfsStopContext();
 
     public int subwayAccessTime = 0;
@@ -324,27 +349,17 @@ public class GTFSPatternHopFactory {
         this._calendarService = null;
     }
 
-    /** Generate the edges. Assumes that there are already vertices in the graph for the stops. */
-    public void run(Graph graph) {
-        if (fareServiceFactory == null) {
-            fareServiceFactory = new DefaultFareServiceFactory();
-        }
-        fareServiceFactory.processGtfs(_dao);
-        
-        // TODO: Why are we loading stops? The Javadoc above says this method assumes stops are aleady loaded.
-        loadStops(graph);
-        loadPathways(graph);
-        loadAgencies(graph);
+    /**
+     * Build the trip patterns and their timetables and geometries from the GTFS data, without touching the graph.
+     * This is most of the work of loading a feed, and can be done for several feeds at once, in which case the
+     * deduplicator must be thread safe. Geometries of different patterns are created in parallel.
+     * Calling this is optional, run() will build the patterns if they have not been built yet.
+     */
+    public void buildPatterns(Deduplicator deduplicator) {
         // TODO: Why is there cached "data", and why are we clearing it? Due to a general lack of comments, I have no idea.
         // Perhaps it is to allow name collisions with previously loaded feeds.
         clearCachedData(); 
 
-        /* Assign 0-based numeric codes to all GTFS service IDs. */
-        for (AgencyAndId serviceId : _dao.getAllServiceIds()) {
-            // TODO: FIX Service code collision for multiple feeds.
-            graph.serviceCodes.put(serviceId, graph.serviceCodes.size());
-        }
-        
         LOG.debug("building hops from trips");
         Collection<Trip> trips = _dao.getAllTrips();
         int tripCount = 0;
@@ -360,18 +375,13 @@ public class GTFSPatternHopFactory {
         }
         
         /* Then loop over all trips, handling each one as a frequency-based or scheduled trip. */
-        int freqCount = 0;
-        int nonFreqCount = 0;
-        
-        /* The hops don't actually exist when we build their geometries, but we have to build their geometries
-         * below, before we throw away the modified stopTimes, saving only the tripTimes (which don't have enough
-         * information to build a geometry). So we keep them here.
-         *
-         *  A trip pattern actually does not have a single geometry, but one per hop, so we store an array.
-         *  FIXME _why_ doesn't it have a single geometry?
-         */
-        Map<TripPattern, LineString[]> geometriesByTripPattern = Maps.newHashMap();
-        
+
+        /* The first trip with a shape in each pattern, from which the geometry of the pattern is made. */
+        Map<TripPattern, Trip> shapedTrips = new LinkedHashMap<TripPattern, Trip>();
+        Map<TripPattern, List<StopTime>> shapedStopTimes = new HashMap<TripPattern, List<StopTime>>();
+        /* The number of annotations recorded when the shaped trip of each pattern was found. */
+        Map<TripPattern, Integer> annotationPositions = new HashMap<TripPattern, Integer>();
+
         TRIP : for (Trip trip : trips) {
             if (++tripCount % 100000 == 0) {
                 LOG.debug("loading trips {}/{}", tripCount, trips.size());
@@ -379,7 +389,7 @@ public class GTFSPatternHopFactory {
 
             // TODO: move to a validator module
             if ( ! _calendarService.getServiceIds().contains(trip.getServiceId())) {
-                LOG.warn(graph.addBuilderAnnotation(new TripUndefinedService(trip)));
+                LOG.warn(annotate(annotations, new TripUndefinedService(trip)));
                 continue TRIP; // Invalid trip, skip it, it will break later
             }
 
@@ -389,14 +399,14 @@ public class GTFSPatternHopFactory {
             /* GTFS stop times frequently contain duplicate, missing, or incorrect entries. Repair them. */
             TIntList removedStopSequences = removeRepeatedStops(stopTimes);
             if (!removedStopSequences.isEmpty()) {
-                LOG.warn(graph.addBuilderAnnotation(new RepeatedStops(trip, removedStopSequences)));
+                LOG.warn(annotate(annotations, new RepeatedStops(trip, removedStopSequences)));
             }
-            filterStopTimes(stopTimes, graph);
+            filterStopTimes(stopTimes);
             interpolateStopTimes(stopTimes);   
             
             /* If after filtering this trip does not contain at least 2 stoptimes, it does not serve any purpose. */
             if (stopTimes.size() < 2) {
-                LOG.warn(graph.addBuilderAnnotation(new TripDegenerate(trip)));
+                LOG.warn(annotate(annotations, new TripDegenerate(trip)));
                 continue TRIP;
             }
 
@@ -414,7 +424,7 @@ public class GTFSPatternHopFactory {
             TripPattern tripPattern = findOrCreateTripPattern(stopPattern, trip.getRoute(), directionId);
 
             /* Create a TripTimes object for this list of stoptimes, which form one trip. */
-            TripTimes tripTimes = new TripTimes(trip, stopTimes, graph.deduplicator);
+            TripTimes tripTimes = new TripTimes(trip, stopTimes, deduplicator);
 
             /* If this trip is referenced by one or more lines in frequencies.txt, wrap it in a FrequencyEntry. */
             List<Frequency> frequencies = frequenciesForTrip.get(trip);
@@ -432,19 +442,96 @@ public class GTFSPatternHopFactory {
                 nonFreqCount++;
             }
             
-            // create geometries if they aren't already created
+            // remember the trip to create geometries from if there isn't one already
             // note that this is not only done on new trip patterns, because it is possible that
             // there would be a trip pattern with no geometry yet because it failed some of these tests
-            if (!geometriesByTripPattern.containsKey(tripPattern) && 
+            if (!shapedTrips.containsKey(tripPattern) && 
                     trip.getShapeId() != null && trip.getShapeId().getId() != null &&
                     !trip.getShapeId().getId().equals("")) {
-                // save the geometry to later be applied to the hops
-                geometriesByTripPattern.put(tripPattern,  createGeometry(graph, trip, stopTimes));
+                shapedTrips.put(tripPattern, trip);
+                shapedStopTimes.put(tripPattern, stopTimes);
+                annotationPositions.put(tripPattern, annotations.size());
             }
 
 
         } // end foreach TRIP
         LOG.info("Added {} frequency-based and {} single-trip timetable entries.", freqCount, nonFreqCount);
+
+        createGeometries(shapedTrips, shapedStopTimes, annotationPositions);
+        patternsBuilt = true;
+    }
+
+    /**
+     * Snap the stops of each pattern to the shape of one of its trips, in parallel over patterns. The shape of each
+     * pattern is independent of the others, apart from the caches of shapes. Geometries and annotations are
+     * recorded in the order of the patterns, so the result does not depend on the order the work is done in.
+     * The annotations of each pattern are inserted at its position in annotationPositions, where they were
+     * registered when geometries were created within the loop over trips.
+     */
+    private void createGeometries(Map<TripPattern, Trip> shapedTrips,
+            Map<TripPattern, List<StopTime>> shapedStopTimes, Map<TripPattern, Integer> annotationPositions) {
+        List<TripPattern> patterns = new ArrayList<TripPattern>(shapedTrips.keySet());
+        if (patterns.isEmpty()) {
+            return;
+        }
+        // The DAO indexes shape points lazily on first use, do that before using it from several threads.
+        _dao.getShapePointsForShapeId(shapedTrips.get(patterns.get(0)).getShapeId());
+
+        LineString[][] geometries = new LineString[patterns.size()][];
+        List<List<GraphBuilderAnnotation>> patternAnnotations = new ArrayList<List<GraphBuilderAnnotation>>();
+        for (int i = 0; i < patterns.size(); i++) {
+            patternAnnotations.add(new ArrayList<GraphBuilderAnnotation>());
+        }
+        IntStream.range(0, patterns.size()).parallel().forEach(i -> {
+            TripPattern pattern = patterns.get(i);
+            geometries[i] = createGeometry(patternAnnotations.get(i), shapedTrips.get(pattern),
+                    shapedStopTimes.get(pattern));
+        });
+        // patterns are in the order their shaped trips were found, so their positions never decrease
+        List<GraphBuilderAnnotation> merged = new ArrayList<GraphBuilderAnnotation>(annotations.size());
+        int next = 0;
+        for (int i = 0; i < patterns.size(); i++) {
+            // save the geometry to later be applied to the hops
+            geometriesByTripPattern.put(patterns.get(i), geometries[i]);
+            int position = annotationPositions.get(patterns.get(i));
+            merged.addAll(annotations.subList(next, position));
+            merged.addAll(patternAnnotations.get(i));
+            next = position;
+        }
+        merged.addAll(annotations.subList(next, annotations.size()));
+        annotations = merged;
+    }
+
+    /**
+     * Generate the edges. Assumes that there are already vertices in the graph for the stops.
+     * Builds the patterns first if buildPatterns has not been called.
+     */
+    public void run(Graph graph) {
+        if (!patternsBuilt) {
+            buildPatterns(graph.deduplicator);
+        }
+
+        if (fareServiceFactory == null) {
+            fareServiceFactory = new DefaultFareServiceFactory();
+        }
+        fareServiceFactory.processGtfs(_dao);
+        
+        // TODO: Why are we loading stops? The Javadoc above says this method assumes stops are aleady loaded.
+        loadStops(graph);
+        loadPathways(graph);
+        loadAgencies(graph);
+
+        /* Assign 0-based numeric codes to all GTFS service IDs. */
+        for (AgencyAndId serviceId : _dao.getAllServiceIds()) {
+            // TODO: FIX Service code collision for multiple feeds.
+            graph.serviceCodes.put(serviceId, graph.serviceCodes.size());
+        }
+
+        for (GraphBuilderAnnotation annotation : annotations) {
+            graph.addBuilderAnnotation(annotation);
+        }
+        annotations.clear();
+
         graph.hasFrequencyService = graph.hasFrequencyService || freqCount > 0;
         graph.hasScheduledService = graph.hasScheduledService || nonFreqCount > 0;
 
@@ -495,10 +582,17 @@ public class GTFSPatternHopFactory {
         }
         
         clearCachedData(); // eh?
+        geometriesByTripPattern.clear();
         graph.putService(FareService.class, fareServiceFactory.makeFareService());
         graph.putService(OnBoardDepartService.class, new OnBoardDepartServiceImpl());
     }
 
+    /** Record an annotation to be registered with the graph later. @return the message of the annotation. */
+    private static String annotate(List<GraphBuilderAnnotation> annotations, GraphBuilderAnnotation annotation) {
+        annotations.add(annotation);
+        return annotation.getMessage();
+    }
+
     private TripPattern findOrCreateTripPattern(StopPattern stopPattern, Route route, int directionId) {
         for(TripPattern tripPattern : tripPatterns.get(stopPattern)) {
             if(tripPattern.route.equals(route) && tripPattern.directionId == directionId) {
@@ -603,7 +697,7 @@ public class GTFSPatternHopFactory {
      * This geometry will in fact be used for an entire set of trips in a trip pattern. Technically one of the trips
      * with exactly the same sequence of stops could follow a different route on the streets, but that's very uncommon.
      */
-    private LineString[] createGeometry(Graph graph, Trip trip, List<StopTime> stopTimes) {
+    private LineString[] createGeometry(List<GraphBuilderAnnotation> annotations, Trip trip, List<StopTime> stopTimes) {
         AgencyAndId shapeId = trip.getShapeId();
         
         // One less geometry than stoptime as array indexes represetn hops not stops (fencepost problem).
@@ -617,7 +711,7 @@ public class GTFSPatternHopFactory {
             for (int i = 0; i < stopTimes.size() - 1; ++i) {
                 st0 = stopTimes.get(i);
                 StopTime st1 = stopTimes.get(i + 1);
-                geoms[i] = getHopGeometryViaShapeDistTraveled(graph, shapeId, st0, st1);
+                geoms[i] = getHopGeometryViaShapeDistTraveled(annotations, shapeId, st0, st1);
             }
             return geoms;
         }
@@ -703,7 +797,7 @@ public class GTFSPatternHopFactory {
                 LineString geometry = createSimpleGeometry(st0.getStop(), st1.getStop());
                 geoms[i] = geometry;
                 //this warning is not strictly correct, but will do
-                LOG.warn(graph.addBuilderAnnotation(new BogusShapeGeometryCaught(shapeId, st0, st1)));
+                LOG.warn(annotate(annotations, new BogusShapeGeometryCaught(shapeId, st0, st1)));
             }
             return geoms;
         }
@@ -794,13 +888,12 @@ public class GTFSPatternHopFactory {
      * Scan through the given list, looking for clearly incorrect series of stoptimes and unsetting
      * them. This includes duplicate times (0-time hops), as well as negative, fast or slow hops.
      * Unsetting the arrival/departure time of clearly incorrect stoptimes will cause them to be
-     * interpolated in the next step. Annotations are also added to the graph to reveal the problems
-     * to the user.
+     * interpolated in the next step. Annotations are also recorded, to be added to the graph to reveal
+     * the problems to the user.
      * 
      * @param stopTimes the stoptimes to be filtered (from a single trip)
-     * @param graph the graph where annotations will be registered
      */
-    private void filterStopTimes(List<StopTime> stopTimes, Graph graph) {
+    private void filterStopTimes(List<StopTime> stopTimes) {
         
         if (stopTimes.size() < 2) return;
         StopTime st0 = stopTimes.get(0);
@@ -851,7 +944,7 @@ public class GTFSPatternHopFactory {
             }
             int dwellTime = st0.getDepartureTime() - st0.getArrivalTime(); 
             if (dwellTime < 0) {
-                LOG.warn(graph.addBuilderAnnotation(new NegativeDwellTime(st0)));
+                LOG.warn(annotate(annotations, new NegativeDwellTime(st0)));
                 if (st0.getArrivalTime() > 23 * SECONDS_IN_HOUR && st0.getDepartureTime() < 1 * SECONDS_IN_HOUR) {
                     midnightCrossed = true;
                     st0.setDepartureTime(st0.getDepartureTime() + 24 * SECONDS_IN_HOUR);
@@ -862,7 +955,7 @@ public class GTFSPatternHopFactory {
             int runningTime = st1.getArrivalTime() - st0.getDepartureTime();
 
             if (runningTime < 0) {
-                LOG.warn(graph.addBuilderAnnotation(new NegativeHopTime(new StopTime(st0), new StopTime(st1))));
+                LOG.warn(annotate(annotations, new NegativeHopTime(new StopTime(st0), new StopTime(st1))));
                 // negative hops are usually caused by incorrect coding of midnight crossings
                 midnightCrossed = true;
                 if (st0.getDepartureTime() > 23 * SECONDS_IN_HOUR && st1.getArrivalTime() < 1 * SECONDS_IN_HOUR) {
@@ -889,7 +982,7 @@ public class GTFSPatternHopFactory {
                 st0.getDepartureTime() == st1.getDepartureTime()) {
                 LOG.trace("{} {}", st0, st1);
                 // series of identical stop times at different stops
-                LOG.trace(graph.addBuilderAnnotation(new HopZeroTime((float) hopDistance, 
+                LOG.trace(annotate(annotations, new HopZeroTime((float) hopDistance, 
                           st1.getTrip(), st1.getStopSequence())));
                 // clear stoptimes that are obviously wrong, causing them to later be interpolated
 /* FIXME (lines commented out because they break routability in multi-feed NYC for some reason -AMB) */
@@ -899,11 +992,11 @@ public class GTFSPatternHopFactory {
             } else if (hopSpeed > 45) {
                 // 45 m/sec ~= 100 miles/hr
                 // elapsed time of 0 will give speed of +inf
-                LOG.trace(graph.addBuilderAnnotation(new HopSpeedFast((float) hopSpeed, 
+                LOG.trace(annotate(annotations, new HopSpeedFast((float) hopSpeed, 
                         (float) hopDistance, st0.getTrip(), st0.getStopSequence())));
             } else if (hopSpeed < 0.1) {
                 // 0.1 m/sec ~= 0.2 miles/hr
-                LOG.trace(graph.addBuilderAnnotation(new HopSpeedSlow((float) hopSpeed, 
+                LOG.trace(annotate(annotations, new HopSpeedSlow((float) hopSpeed, 
                         (float) hopDistance, st0.getTrip(), st0.getStopSequence())));
             }
             // st0 should reflect the last stoptime that was not clearly incorrect
@@ -1096,7 +1189,7 @@ public class GTFSPatternHopFactory {
     }
 
     
-    private LineString getHopGeometryViaShapeDistTraveled(Graph graph, AgencyAndId shapeId, StopTime st0, StopTime st1) {
+    private LineString getHopGeometryViaShapeDistTraveled(List<GraphBuilderAnnotation> annotations, AgencyAndId shapeId, StopTime st0, StopTime st1) {
 
         double startDistance = st0.getShapeDistTraveled();
         double endDistance = st1.getShapeDistTraveled();
@@ -1109,7 +1202,7 @@ public class GTFSPatternHopFactory {
         double[] distances = getDistanceForShapeId(shapeId);
 
         if (distances == null) {
-            LOG.warn(graph.addBuilderAnnotation(new BogusShapeGeometry(shapeId)));
+            LOG.warn(annotate(annotations, new BogusShapeGeometry(shapeId)));
             return null;
         } else {
             LinearLocation startIndex = getSegmentFraction(distances, startDistance);
@@ -1117,13 +1210,13 @@ public class GTFSPatternHopFactory {
 
             if (equals(startIndex, endIndex)) {
                 //bogus shape_dist_traveled 
-                graph.addBuilderAnnotation(new BogusShapeDistanceTraveled(st1));
+                annotations.add(new BogusShapeDistanceTraveled(st1));
                 return createSimpleGeometry(st0.getStop(), st1.getStop());
             }
             LineString line = getLineStringForShapeId(shapeId);
             LocationIndexedLine lol = new LocationIndexedLine(line);
 
-            geometry = getSegmentGeometry(graph, shapeId, lol, startIndex, endIndex, startDistance,
+            geometry = getSegmentGeometry(annotations, shapeId, lol, startIndex, endIndex, startDistance,
                     endDistance, st0, st1);
 
             return geometry;
@@ -1174,7 +1267,7 @@ public class GTFSPatternHopFactory {
         return true;
     }
 
-    private LineString getSegmentGeometry(Graph graph, AgencyAndId shapeId,
+    private LineString getSegmentGeometry(List<GraphBuilderAnnotation> annotations, AgencyAndId shapeId,
             LocationIndexedLine locationIndexedLine, LinearLocation startIndex,
             LinearLocation endIndex, double startDistance, double endDistance, 
             StopTime st0, StopTime st1) {
@@ -1192,7 +1285,7 @@ public class GTFSPatternHopFactory {
             geometry = _geometryFactory.createLineString(sequence);
             
             if (!isValid(geometry, st0.getStop(), st1.getStop())) {
-                LOG.warn(graph.addBuilderAnnotation(new BogusShapeGeometryCaught(shapeId, st0, st1)));
+                LOG.warn(annotate(annotations, new BogusShapeGeometryCaught(shapeId, st0, st1)));
                 //fall back to trivial geometry
                 geometry = createSimpleGeometry(st0.getStop(), st1.getStop());
             }
@@ -1269,8 +1362,11 @@ public class GTFSPatternHopFactory {
 
         CoordinateSequence sequence = new PackedCoordinateSequence.Double(coordinates, 2);
         geometry = _geometryFactory.createLineString(sequence);
+        // ConcurrentHashMap does not hold nulls. Distances go in first, so they are there once the geometry is seen.
+        if (distances != null) {
+            _distancesByShapeId.put(shapeId, distances);
+        }
         _geometriesByShapeId.put(shapeId, geometry);
-        _distancesByShapeId.put(shapeId, distances);
 
         return geometry;
     }
@@ -0,0 +1,28 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.error;
+
+/**
+ * Indicates that a routing request was not computed because the router is overloaded: too many requests were already
+ * waiting, or the request could not start before its deadline. Reported to the client as 503 Service Unavailable.
+ */
+public class RequestRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RequestRejectedException(String message) {
+        super(message);
+    }
+
+}
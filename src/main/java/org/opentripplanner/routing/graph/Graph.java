@@ -19,8 +19,11 @@ import com.google.common.collect.*;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
 import gnu.trove.list.TDoubleList;
 import gnu.trove.list.linked.TDoubleLinkedList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import org.apache.commons.math3.stat.descriptive.rank.Median;
 import org.joda.time.DateTime;
 import org.onebusaway.gtfs.impl.calendar.CalendarServiceImpl;
@@ -38,7 +41,9 @@ import org.opentripplanner.graph_builder.annotation.GraphBuilderAnnotation;
 import org.opentripplanner.graph_builder.annotation.NoFutureDates;
 import org.opentripplanner.model.GraphBundle;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.alertpatch.AlertPatchSnapshot;
 import org.opentripplanner.routing.core.MortonVertexComparatorFactory;
+import org.opentripplanner.routing.core.ServiceDayCache;
 import org.opentripplanner.routing.core.TransferTable;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.EdgeWithCleanup;
@@ -62,6 +67,7 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.prefs.Preferences;
 /**
  * A graph is really just one or more indexes into a set of vertexes. It used to keep edgelists for each vertex, but those are in the vertex now.
@@ -77,9 +83,26 @@ public class Graph implements Serializable {
     // TODO Remove this field, use Router.routerId ?
     public String routerId;
 
-    private final Map<Edge, Set<AlertPatch>> alertPatches = new HashMap<Edge, Set<AlertPatch>>(0);
+    /** The directory this graph was loaded from, or null if it was not loaded from a file. */
+    public transient File directory;
 
-    private final Map<Edge, List<TurnRestriction>> turnRestrictions = Maps.newHashMap();
+    /**
+     * The alert patches of each edge. Request threads read the current snapshot without locking, and every change
+     * publishes a new one. The patches come from the real-time updaters and are not saved with the graph.
+     */
+    private transient volatile AlertPatchSnapshot alertPatches = AlertPatchSnapshot.EMPTY;
+
+    /** Guards the changes to the alert patches. */
+    private transient Object alertPatchLock = new Object();
+
+    /** The changes of the ongoing updateAlertPatches call, made by the thread holding alertPatchLock, or null. */
+    private transient AlertPatchSnapshot.Builder pendingAlertPatches;
+
+    /**
+     * The turn restrictions starting on each edge, by edge id. The lists are immutable and replaced when restrictions
+     * are added or removed. Only the StreetEdges whose hasTurnRestrictions flag is set have an entry.
+     */
+    private final TIntObjectMap<List<TurnRestriction>> turnRestrictions = new TIntObjectHashMap<>();
 
     public final StreetNotesService streetNotesService = new StreetNotesService();
 
@@ -99,6 +122,8 @@ public class Graph implements Serializable {
 
     private transient CalendarService calendarService;
 
+    private transient volatile ServiceDayCache serviceDayCache;
+
     private boolean debugData = true;
 
     // TODO this would be more efficient if it was just an array.
@@ -114,6 +139,20 @@ public class Graph implements Serializable {
 
     private transient SampleFactory sampleFactory;
 
+    /**
+     * Counts changes to the vertices and edges, see getModificationCount(). Graphs are edited by a single thread at a
+     * time, and a lost increment still changes the count.
+     */
+    private transient volatile long modificationCount = 0;
+
+    /** Lazily computed, see getFingerprint(). */
+    private transient String fingerprint;
+
+    /** Lazily computed, see getVerticesByLabel() and getVertexOrdinals(). */
+    private transient Vertex[] verticesByLabel;
+
+    private transient int[] vertexOrdinals;
+
     public final Deduplicator deduplicator = new Deduplicator();
 
     /**
@@ -209,10 +248,28 @@ public class Graph implements Serializable {
         this.vertexById = new ConcurrentHashMap<Integer, Vertex>();
     }
 
+    /**
+     * @return a number that changes whenever vertices or edges are added to or removed from this graph through its
+     *         methods or the changes are reported with edgesModified(). Data derived from the street network can be
+     *         rebuilt when it differs from the value seen when building it.
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Report that edges were added to or removed from vertices of this graph without calling the methods of the
+     * graph, e.g. when linking stops to the streets. Temporary edges belong to a single request and are not reported.
+     */
+    public void edgesModified() {
+        modificationCount++;
+    }
+
     /**
      * Add the given vertex to the graph. Ideally, only vertices should add themselves to the graph, when they are constructed or deserialized.
      */
     public void addVertex(Vertex v) {
+        modificationCount++;
         Vertex old = vertices.put(v.getLabel(), v);
         if (old != null) {
             if (old == v)
@@ -230,6 +287,7 @@ public class Graph implements Serializable {
      * @param v
      */
     public void removeVertex(Vertex v) {
+        modificationCount++;
         if (vertices.remove(v.getLabel()) != v) {
             LOG.error(
                     "attempting to remove vertex that is not in graph (or mapping value was null): {}",
@@ -243,11 +301,12 @@ public class Graph implements Serializable {
      */
     public void removeEdge(Edge e) {
         if (e != null) {
-            synchronized (alertPatches) {   // This synchronization is somewhat silly because this
-                alertPatches.remove(e);     // method isn't thread-safe anyway, but it is consistent
-            }
+            modificationCount++;
+            changeAlertPatches(changes -> changes.removeAll(e));
 
-            turnRestrictions.remove(e);
+            if (hasTurnRestrictions(e)) {
+                turnRestrictions.remove(e.getId());
+            }
             streetNotesService.removeStaticNotes(e);
             edgeById.remove(e.getId());
 
@@ -328,77 +387,98 @@ public class Graph implements Serializable {
 
     /**
      * Add an {@link AlertPatch} to the {@link AlertPatch} {@link Set} belonging to an {@link Edge}.
+     * The change is published at once, unless it is made within {@link #updateAlertPatches(Runnable)}.
      * @param edge
      * @param alertPatch
      */
     public void addAlertPatch(Edge edge, AlertPatch alertPatch) {
         if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-            if (alertPatches == null) {
-                this.alertPatches.put(edge, Collections.singleton(alertPatch));
-            } else if (alertPatches instanceof HashSet) {
-                alertPatches.add(alertPatch);
-            } else {
-                alertPatches = new HashSet<AlertPatch>(alertPatches);
-                if (alertPatches.add(alertPatch)) {
-                    this.alertPatches.put(edge, alertPatches);
-                }
-            }
-        }
+        changeAlertPatches(changes -> changes.add(edge, alertPatch));
     }
 
     /**
      * Remove an {@link AlertPatch} from the {@link AlertPatch} {@link Set} belonging to an
-     * {@link Edge}.
+     * {@link Edge}. The change is published at once, unless it is made within
+     * {@link #updateAlertPatches(Runnable)}.
      * @param edge
      * @param alertPatch
      */
     public void removeAlertPatch(Edge edge, AlertPatch alertPatch) {
         if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-            if (alertPatches != null && alertPatches.contains(alertPatch)) {
-                if (alertPatches.size() < 2) {
-                    this.alertPatches.remove(edge);
-                } else {
-                    alertPatches.remove(alertPatch);
-                }
+        changeAlertPatches(changes -> changes.remove(edge, alertPatch));
+    }
+
+    /**
+     * Make all the additions and removals of alert patches done by the given update, on any edge, and publish them as
+     * a single new snapshot. Request threads see either none or all of them, and the map of patches by edge is copied
+     * once rather than for each change. Calls can be nested, the outermost one publishes the changes.
+     */
+    public void updateAlertPatches(Runnable update) {
+        synchronized (alertPatchLock) {
+            if (pendingAlertPatches != null) {
+                update.run();
+                return;
+            }
+            pendingAlertPatches = alertPatches.builder();
+            try {
+                update.run();
+            } finally {
+                AlertPatchSnapshot.Builder changes = pendingAlertPatches;
+                pendingAlertPatches = null;
+                alertPatches = changes.build();
+            }
+        }
+    }
+
+    /** Make a change to the alert patches, published at once unless an updateAlertPatches call is ongoing. */
+    private void changeAlertPatches(Consumer<AlertPatchSnapshot.Builder> change) {
+        synchronized (alertPatchLock) {
+            if (pendingAlertPatches != null) {
+                change.accept(pendingAlertPatches);
+            } else {
+                AlertPatchSnapshot.Builder changes = alertPatches.builder();
+                change.accept(changes);
+                alertPatches = changes.build();
             }
         }
     }
 
     /**
-     * Get the {@link AlertPatch} {@link Set} that belongs to an {@link Edge} and build a new array.
+     * Get the {@link AlertPatch} array that belongs to an {@link Edge}. This method does not lock or allocate, the
+     * array is shared and must not be modified.
      * @param edge
      * @return The {@link AlertPatch} array that belongs to the {@link Edge}
      */
     public AlertPatch[] getAlertPatches(Edge edge) {
-        if (edge != null) {
-            synchronized (alertPatches) {
-                Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-                if (alertPatches != null) {
-                    return alertPatches.toArray(new AlertPatch[alertPatches.size()]);
-                }
-            }
-        }
-        return new AlertPatch[0];
+        return alertPatches.getAlertPatches(edge);
+    }
+
+    /**
+     * @return The current snapshot of the alert patches of all edges. It does not change, so that reading all the
+     *         patches of an itinerary from it gives a consistent view even while the patches are updated.
+     */
+    public AlertPatchSnapshot getAlertPatchSnapshot() {
+        return alertPatches;
     }
 
     /**
      * Add a {@link TurnRestriction} to the {@link TurnRestriction} {@link List} belonging to an
-     * {@link Edge}. This method is not thread-safe.
+     * {@link Edge}. Turn restrictions can only start on a {@link StreetEdge}. This method is not thread-safe.
      * @param edge
      * @param turnRestriction
      */
     public void addTurnRestriction(Edge edge, TurnRestriction turnRestriction) {
         if (edge == null || turnRestriction == null) return;
-        List<TurnRestriction> turnRestrictions = this.turnRestrictions.get(edge);
-        if (turnRestrictions == null) {
-            turnRestrictions = Lists.newArrayList();
-            this.turnRestrictions.put(edge, turnRestrictions);
+        if (!(edge instanceof StreetEdge)) {
+            LOG.warn("Ignoring turn restriction starting on {}, which is not a street.", edge);
+            return;
         }
-        turnRestrictions.add(turnRestriction);
+        StreetEdge streetEdge = (StreetEdge) edge;
+        turnRestrictions.put(edge.getId(), ImmutableList.<TurnRestriction>builder()
+                .addAll(getTurnRestrictions(edge))
+                .add(turnRestriction)
+                .build());
+        streetEdge.setHasTurnRestrictions(true);
     }
 
     /**
@@ -409,33 +489,42 @@ public class Graph implements Serializable {
      */
     public void removeTurnRestriction(Edge edge, TurnRestriction turnRestriction) {
         if (edge == null || turnRestriction == null) return;
-        List<TurnRestriction> turnRestrictions = this.turnRestrictions.get(edge);
-        if (turnRestrictions != null && turnRestrictions.contains(turnRestriction)) {
+        List<TurnRestriction> turnRestrictions = getTurnRestrictions(edge);
+        if (turnRestrictions.contains(turnRestriction)) {
             if (turnRestrictions.size() < 2) {
-                this.turnRestrictions.remove(edge);
+                this.turnRestrictions.remove(edge.getId());
+                ((StreetEdge) edge).setHasTurnRestrictions(false);
             } else {
-                turnRestrictions.remove(turnRestriction);
+                List<TurnRestriction> remaining = Lists.newArrayList(turnRestrictions);
+                remaining.remove(turnRestriction);
+                this.turnRestrictions.put(edge.getId(), ImmutableList.copyOf(remaining));
             }
         }
     }
 
     /**
-     * Get the {@link TurnRestriction} {@link List} that belongs to an {@link Edge} and return an
-     * immutable copy. This method is thread-safe when used by itself, but not if addTurnRestriction
-     * or removeTurnRestriction is called concurrently.
+     * Get the {@link TurnRestriction} {@link List} that belongs to an {@link Edge}. The list is
+     * immutable and is not copied, as this method is called at each traversal of a street. It is
+     * thread-safe when used by itself, but not if addTurnRestriction or removeTurnRestriction is
+     * called concurrently.
      * @param edge
      * @return The {@link TurnRestriction} {@link List} that belongs to the {@link Edge}
      */
     public List<TurnRestriction> getTurnRestrictions(Edge edge) {
-        if (edge != null) {
-            List<TurnRestriction> turnRestrictions = this.turnRestrictions.get(edge);
+        if (hasTurnRestrictions(edge)) {
+            List<TurnRestriction> turnRestrictions = this.turnRestrictions.get(edge.getId());
             if (turnRestrictions != null) {
-                return ImmutableList.copyOf(turnRestrictions);
+                return turnRestrictions;
             }
         }
         return Collections.emptyList();
     }
 
+    /** @return True if turn restrictions start on the given edge, without looking them up. */
+    public static boolean hasTurnRestrictions(Edge edge) {
+        return edge instanceof StreetEdge && ((StreetEdge) edge).hasTurnRestrictions();
+    }
+
     /**
      * Return only the StreetEdges in the graph.
      * @return
@@ -480,6 +569,7 @@ public class Graph implements Serializable {
     }
 
     public void remove(Vertex vertex) {
+        modificationCount++;
         vertices.remove(vertex.getLabel());
     }
 
@@ -617,6 +707,8 @@ public class Graph implements Serializable {
     private void readObject(ObjectInputStream inputStream) throws ClassNotFoundException,
             IOException {
         inputStream.defaultReadObject();
+        alertPatches = AlertPatchSnapshot.EMPTY;
+        alertPatchLock = new Object();
     }
 
     /**
@@ -873,6 +965,21 @@ public class Graph implements Serializable {
         return this.calendarService;
     }
 
+    /**
+     * @return The ServiceDays shared by all the requests on this graph, or null if the graph has no calendar.
+     */
+    public ServiceDayCache getServiceDayCache() {
+        if (serviceDayCache == null) {
+            synchronized (this) {
+                CalendarService calendarService = getCalendarService();
+                if (serviceDayCache == null && calendarService != null) {
+                    serviceDayCache = new ServiceDayCache(this, calendarService);
+                }
+            }
+        }
+        return serviceDayCache;
+    }
+
     public int removeEdgelessVertices() {
         int removed = 0;
         List<Vertex> toRemove = new LinkedList<Vertex>();
@@ -1022,6 +1129,98 @@ public class Graph implements Serializable {
         return this.sampleFactory;	
     }
 
+    /**
+     * Return a string identifying this graph, to be used as a key for data derived from the graph and saved on disk
+     * (e.g. the results of linking a PointSet). It combines the build time of the graph, which is saved with it, and a
+     * hash of the labels and coordinates of the vertices and of the endpoints, geometries and attributes of the edges.
+     * Vertex indices are not part of it, as they depend on the order in which graphs are loaded in a JVM: saved data
+     * must refer to vertices by their position in getVerticesByLabel() instead. The fingerprint is computed once when
+     * first requested; later changes to the graph are not reflected.
+     */
+    public synchronized String getFingerprint() {
+        if (fingerprint == null) {
+            long hash = vertices.size();
+            for (Vertex v : getVertices()) {
+                // Sum of well-mixed per-vertex and per-edge hashes, so the result does not depend on iteration order.
+                long vertexHash = v.getLabel().hashCode();
+                vertexHash = vertexHash * 31 + Double.doubleToLongBits(v.getLat());
+                vertexHash = vertexHash * 31 + Double.doubleToLongBits(v.getLon());
+                hash += mix(vertexHash);
+                for (Edge e : v.getOutgoing()) {
+                    hash += mix(edgeHash(e));
+                }
+            }
+            fingerprint = String.format("%016x-%016x", buildTime.getTime(), hash);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Return the vertices of this graph sorted by label. The position of a vertex in this array only depends on the
+     * content of the graph, unlike its index, so it can be saved with data keyed on getFingerprint(). The array is
+     * computed once when first requested and must not be modified.
+     */
+    public synchronized Vertex[] getVerticesByLabel() {
+        if (verticesByLabel == null) {
+            verticesByLabel = getVertices().stream()
+                    .sorted(Comparator.comparing(Vertex::getLabel))
+                    .toArray(Vertex[]::new);
+        }
+        return verticesByLabel;
+    }
+
+    /**
+     * @return The position of each vertex in getVerticesByLabel(), by vertex index. Vertices created afterwards, such as
+     *         temporary vertices, are out of the bounds of the array or at -1. The array must not be modified.
+     */
+    public synchronized int[] getVertexOrdinals() {
+        if (vertexOrdinals == null) {
+            Vertex[] sorted = getVerticesByLabel();
+            int[] ordinals = new int[Vertex.getMaxIndex()];
+            Arrays.fill(ordinals, -1);
+            for (int i = 0; i < sorted.length; i++) {
+                ordinals[sorted[i].getIndex()] = i;
+            }
+            vertexOrdinals = ordinals;
+        }
+        return vertexOrdinals;
+    }
+
+    /** A hash of the endpoints, geometry and the attributes used in routing of an edge, for getFingerprint(). */
+    private static long edgeHash(Edge e) {
+        long hash = e.getClass().getName().hashCode();
+        hash = hash * 31 + e.getFromVertex().getLabel().hashCode();
+        hash = hash * 31 + e.getToVertex().getLabel().hashCode();
+        hash = hash * 31 + Double.doubleToLongBits(e.getDistance());
+        LineString geometry = e.getGeometry();
+        if (geometry != null) {
+            for (Coordinate c : geometry.getCoordinates()) {
+                hash = hash * 31 + Double.doubleToLongBits(c.x);
+                hash = hash * 31 + Double.doubleToLongBits(c.y);
+            }
+        }
+        if (e instanceof StreetEdge) {
+            StreetEdge se = (StreetEdge) e;
+            hash = hash * 31 + se.getPermission().ordinal();
+            hash = hash * 31 + Float.floatToIntBits(se.getBicycleSafetyFactor());
+            hash = hash * 31 + Float.floatToIntBits(se.getCarSpeed());
+            hash = hash * 31 + se.getStreetClass();
+            hash = hash * 31 + (se.isWheelchairAccessible() ? 1 : 0);
+            hash = hash * 31 + (se.isStairs() ? 1 : 0);
+        }
+        return hash;
+    }
+
+    /** MurmurHash3 64-bit finalizer. */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
     /**
      * Calculates Transit center from median of coordinates of all transitStops if graph
      * has transit. If it doesn't it isn't calculated. (mean walue of min, max latitude and longitudes are used)
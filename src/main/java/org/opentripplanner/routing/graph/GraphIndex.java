@@ -32,6 +32,7 @@ import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.model.GenericLocation;
 import org.opentripplanner.common.model.P2;
 import org.opentripplanner.index.IndexGraphQLSchema;
+import org.opentripplanner.index.IndexQueryContext;
 import org.opentripplanner.index.model.StopTimesInPattern;
 import org.opentripplanner.index.model.TripTimeShort;
 import org.opentripplanner.profile.ProfileTransfer;
@@ -60,12 +61,15 @@ import javax.ws.rs.core.Response;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 /**
  * This class contains all the transient indexes of graph elements -- those that are not
@@ -98,6 +102,7 @@ public class GraphIndex {
     final HashGridSpatialIndex<TransitStop> stopSpatialIndex = new HashGridSpatialIndex<TransitStop>();
     public final Map<Stop, StopCluster> stopClusterForStop = Maps.newHashMap();
     public final Map<String, StopCluster> stopClusterForId = Maps.newHashMap();
+    public final Map<Stop, StopDepartureIndex> departuresForStop = Maps.newHashMap();
 
     /* Should eventually be replaced with new serviceId indexes. */
     private final CalendarService calendarService;
@@ -179,11 +184,21 @@ public class GraphIndex {
         for (Route route : patternsForRoute.asMap().keySet()) {
             routeForId.put(route.getId(), route);
         }
+        for (Stop stop : patternsForStop.keySet()) {
+            departuresForStop.put(stop, new StopDepartureIndex(stop, patternsForStop.get(stop)));
+        }
 
         // Copy these two service indexes from the graph until we have better ones.
         calendarService = graph.getCalendarService();
         serviceCodes = graph.serviceCodes;
         this.graph = graph;
+        if (calendarService != null) {
+            graph.getServiceDayCache().precompute(agenciesForFeedId.values().stream()
+                    .flatMap(agencyForId -> agencyForId.values().stream())
+                    .map(agency -> calendarService.getTimeZoneForAgencyId(agency.getId()))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toSet()));
+        }
         graphQL = new GraphQL(new IndexGraphQLSchema(this).indexSchema, Executors.newCachedThreadPool(
             new ThreadFactoryBuilder().setNameFormat("GraphQLExecutor-" + graph.routerId + "-%d").build()
         ));
@@ -396,11 +411,15 @@ public class GraphIndex {
 
     /**
      * Fetch upcoming vehicle departures from a stop.
-     * It goes though all patterns passing the stop for the previous, current and next service date.
+     * It goes though all patterns passing the stop for the service date of the start time, and the dates before and
+     * after it.
      * It uses a priority queue to keep track of the next departures. The queue is shared between all dates, as services
      * from the previous service date can visit the stop later than the current service date's services. This happens
      * eg. with sleeper trains.
      *
+     * The scheduled departures are found with a binary search in the departure index of the stop. Patterns whose
+     * timetable has been modified by a realtime update are scanned in full instead.
+     *
      * TODO: Add frequency based trips
      * @param stop Stop object to perform the search for
      * @param startTime Start time for the search. Seconds from UNIX epoch
@@ -409,81 +428,151 @@ public class GraphIndex {
      * @return
      */
     public List<StopTimesInPattern> stopTimesForStop(Stop stop, long startTime, int timeRange, int numberOfDepartures) {
+        return stopTimesForStops(Collections.singleton(stop), startTime, timeRange, numberOfDepartures,
+                currentTimetableSnapshot()).get(stop);
+    }
+
+    /**
+     * Fetch upcoming vehicle departures from several stops at once, as stopTimesForStop does for a single stop.
+     * The service days, and the timetables resolved in the given snapshot, are shared between all the stops of the
+     * batch, as most patterns serve several of them.
+     *
+     * @param snapshot The realtime snapshot to use, null to use the scheduled timetables.
+     * @return The departures for each stop, in the same form as stopTimesForStop.
+     */
+    public Map<Stop, List<StopTimesInPattern>> stopTimesForStops(Collection<Stop> stops, long startTime,
+            int timeRange, int numberOfDepartures, TimetableSnapshot snapshot) {
 
         if (startTime == 0) {
             startTime = System.currentTimeMillis() / 1000;
         }
-        List<StopTimesInPattern> ret = new ArrayList<>();
-        TimetableSnapshot snapshot = null;
-        if (graph.timetableSnapshotSource != null) {
-            snapshot = graph.timetableSnapshotSource.getTimetableSnapshot();
-        }
-        ServiceDate[] serviceDates = {new ServiceDate().previous(), new ServiceDate(), new ServiceDate().next()};
-
-        for (TripPattern pattern : patternsForStop.get(stop)) {
+        // The service dates around the start time, in the time zone of the graph
+        Calendar calendar = Calendar.getInstance(graph.getTimeZone());
+        calendar.setTimeInMillis(startTime * 1000);
+        ServiceDate serviceDate = new ServiceDate(calendar);
+        ServiceDate[] serviceDates = {serviceDate.previous(), serviceDate, serviceDate.next()};
+        BatchTimetables timetables = new BatchTimetables(serviceDates, snapshot);
+
+        Map<Stop, List<StopTimesInPattern>> result = new HashMap<>();
+        for (Stop stop : stops) {
+            List<StopTimesInPattern> ret = new ArrayList<>();
+            StopDepartureIndex departures = departuresForStop.get(stop);
+            if (departures == null) {
+                result.put(stop, ret);
+                continue;
+            }
+            TripPattern[] patterns = departures.patterns;
 
             // Use the Lucene PriorityQueue, which has a fixed size
-            PriorityQueue<TripTimeShort> pq = new PriorityQueue<TripTimeShort>(numberOfDepartures) {
-                @Override
-                protected boolean lessThan(TripTimeShort tripTimeShort, TripTimeShort t1) {
-                    // Calculate exact timestamp
-                    return (tripTimeShort.serviceDay + tripTimeShort.realtimeDeparture) >
-                            (t1.serviceDay + t1.realtimeDeparture);
-                }
-            };
+            List<PriorityQueue<TripTimeShort>> pqs = new ArrayList<>(patterns.length);
+            for (int p = 0; p < patterns.length; p++) {
+                pqs.add(new PriorityQueue<TripTimeShort>(numberOfDepartures) {
+                    @Override
+                    protected boolean lessThan(TripTimeShort tripTimeShort, TripTimeShort t1) {
+                        // Calculate exact timestamp
+                        return (tripTimeShort.serviceDay + tripTimeShort.realtimeDeparture) >
+                                (t1.serviceDay + t1.realtimeDeparture);
+                    }
+                });
+            }
 
             // Loop through all possible days
-            for (ServiceDate serviceDate : serviceDates) {
-                ServiceDay sd = new ServiceDay(graph, serviceDate, calendarService, pattern.route.getAgency().getId());
-                Timetable tt;
-                if (snapshot != null){
-                    tt = snapshot.resolve(pattern, serviceDate);
-                } else {
-                    tt = pattern.scheduledTimetable;
+            ServiceDay[] sds = new ServiceDay[patterns.length];
+            int[] secondsSinceMidnight = new int[patterns.length];
+            int[] needed = new int[patterns.length];
+            for (int d = 0; d < serviceDates.length; d++) {
+                int nPatternsNeeded = 0;
+                int minSecondsSinceMidnight = Integer.MAX_VALUE;
+                for (int p = 0; p < patterns.length; p++) {
+                    TripPattern pattern = patterns[p];
+                    ServiceDay sd = timetables.serviceDay(d, pattern);
+                    Timetable tt = timetables.timetable(d, pattern);
+                    needed[p] = 0;
+                    if (!tt.temporallyViable(sd, startTime, timeRange, true)) continue;
+                    sds[p] = sd;
+                    secondsSinceMidnight[p] = sd.secondsSinceMidnight(startTime);
+                    if (tt == pattern.scheduledTimetable) {
+                        // The scheduled trips are found in the departure index below
+                        needed[p] = numberOfDepartures;
+                        nPatternsNeeded++;
+                        minSecondsSinceMidnight = Math.min(minSecondsSinceMidnight, secondsSinceMidnight[p]);
+                    } else {
+                        scanTripTimes(pqs.get(p), stop, pattern, tt, sd, secondsSinceMidnight[p]);
+                    }
+                    scanFrequencies(pqs.get(p), stop, pattern, tt, sd, secondsSinceMidnight[p], numberOfDepartures);
                 }
 
-                if (!tt.temporallyViable(sd, startTime, timeRange, true)) continue;
+                // The departures of each pattern are sorted, so once a pattern has enough departures for this day
+                // the later ones can be skipped.
+                if (nPatternsNeeded == 0) continue;
+                for (int i = departures.firstDepartureAtOrAfter(minSecondsSinceMidnight);
+                     i < departures.size() && nPatternsNeeded > 0; i++) {
+                    int p = departures.patternIndex(i);
+                    if (needed[p] == 0 || departures.departure(i) < secondsSinceMidnight[p]) continue;
+                    if (!sds[p].serviceRunning(departures.serviceCode(i))) continue;
+                    pqs.get(p).insertWithOverflow(
+                            new TripTimeShort(departures.trip(i), departures.stopIndex(i), stop, sds[p]));
+                    if (--needed[p] == 0) nPatternsNeeded--;
+                }
+            }
 
-                int secondsSinceMidnight = sd.secondsSinceMidnight(startTime);
-                int sidx = 0;
-                for (Stop currStop : pattern.stopPattern.stops) {
-                    if (currStop == stop) {
-                        for (TripTimes t : tt.tripTimes) {
-                            if (!sd.serviceRunning(t.serviceCode)) continue;
-                            if (t.getDepartureTime(sidx) != -1 &&
-                                    t.getDepartureTime(sidx) >= secondsSinceMidnight) {
-                                pq.insertWithOverflow(new TripTimeShort(t, sidx, stop, sd));
-                            }
-                        }
+            for (int p = 0; p < patterns.length; p++) {
+                PriorityQueue<TripTimeShort> pq = pqs.get(p);
+                if (pq.size() != 0) {
+                    StopTimesInPattern stopTimes = new StopTimesInPattern(patterns[p]);
+                    while (pq.size() != 0) {
+                        stopTimes.times.add(0, pq.pop());
+                    }
+                    ret.add(stopTimes);
+                }
+            }
+            result.put(stop, ret);
+        }
+        return result;
+    }
 
-                        // TODO: This needs to be adapted after #1647 is merged
-                        for (FrequencyEntry freq : tt.frequencyEntries) {
-                            if (!sd.serviceRunning(freq.tripTimes.serviceCode)) continue;
-                            int departureTime = freq.nextDepartureTime(sidx, secondsSinceMidnight);
-                            if (departureTime == -1) continue;
-                            int lastDeparture = freq.endTime + freq.tripTimes.getArrivalTime(sidx) -
-                                    freq.tripTimes.getDepartureTime(0);
-                            int i = 0;
-                            while (departureTime <= lastDeparture && i < numberOfDepartures) {
-                                pq.insertWithOverflow(new TripTimeShort(freq.materialize(sidx, departureTime, true), sidx, stop, sd));
-                                departureTime += freq.headway;
-                                i++;
-                            }
-                        }
+    /** Add the trips of a timetable departing from a stop after the given time to a priority queue. */
+    private void scanTripTimes(PriorityQueue<TripTimeShort> pq, Stop stop, TripPattern pattern, Timetable tt,
+            ServiceDay sd, int secondsSinceMidnight) {
+        int sidx = 0;
+        for (Stop currStop : pattern.stopPattern.stops) {
+            if (currStop == stop) {
+                for (TripTimes t : tt.tripTimes) {
+                    if (!sd.serviceRunning(t.serviceCode)) continue;
+                    if (t.getDepartureTime(sidx) != -1 &&
+                            t.getDepartureTime(sidx) >= secondsSinceMidnight) {
+                        pq.insertWithOverflow(new TripTimeShort(t, sidx, stop, sd));
                     }
-                    sidx++;
                 }
             }
+            sidx++;
+        }
+    }
 
-            if (pq.size() != 0) {
-                StopTimesInPattern stopTimes = new StopTimesInPattern(pattern);
-                while (pq.size() != 0) {
-                    stopTimes.times.add(0, pq.pop());
+    /** Add the frequency based departures of a timetable from a stop after the given time to a priority queue. */
+    private void scanFrequencies(PriorityQueue<TripTimeShort> pq, Stop stop, TripPattern pattern, Timetable tt,
+            ServiceDay sd, int secondsSinceMidnight, int numberOfDepartures) {
+        if (tt.frequencyEntries.isEmpty()) return;
+        int sidx = 0;
+        for (Stop currStop : pattern.stopPattern.stops) {
+            if (currStop == stop) {
+                // TODO: This needs to be adapted after #1647 is merged
+                for (FrequencyEntry freq : tt.frequencyEntries) {
+                    if (!sd.serviceRunning(freq.tripTimes.serviceCode)) continue;
+                    int departureTime = freq.nextDepartureTime(sidx, secondsSinceMidnight);
+                    if (departureTime == -1) continue;
+                    int lastDeparture = freq.endTime + freq.tripTimes.getArrivalTime(sidx) -
+                            freq.tripTimes.getDepartureTime(0);
+                    int i = 0;
+                    while (departureTime <= lastDeparture && i < numberOfDepartures) {
+                        pq.insertWithOverflow(new TripTimeShort(freq.materialize(sidx, departureTime, true), sidx, stop, sd));
+                        departureTime += freq.headway;
+                        i++;
+                    }
                 }
-                ret.add(stopTimes);
             }
+            sidx++;
         }
-        return ret;
     }
 
     /**
@@ -495,34 +584,82 @@ public class GraphIndex {
      * @return
      */
     public List<StopTimesInPattern> getStopTimesForStop(Stop stop, ServiceDate serviceDate) {
-        List<StopTimesInPattern> ret = new ArrayList<>();
-        TimetableSnapshot snapshot = null;
-        if (graph.timetableSnapshotSource != null) {
-            snapshot = graph.timetableSnapshotSource.getTimetableSnapshot();
-        }
-        Collection<TripPattern> patterns = patternsForStop.get(stop);
-        for (TripPattern pattern : patterns) {
-            StopTimesInPattern stopTimes = new StopTimesInPattern(pattern);
-            Timetable tt;
-            if (snapshot != null){
-                tt = snapshot.resolve(pattern, serviceDate);
-            } else {
-                tt = pattern.scheduledTimetable;
-            }
-            ServiceDay sd = new ServiceDay(graph, serviceDate, calendarService, pattern.route.getAgency().getId());
-            int sidx = 0;
-            for (Stop currStop : pattern.stopPattern.stops) {
-                if (currStop == stop) {
-                    for (TripTimes t : tt.tripTimes) {
-                        if (!sd.serviceRunning(t.serviceCode)) continue;
-                        stopTimes.times.add(new TripTimeShort(t, sidx, stop, sd));
+        return getStopTimesForStops(Collections.singleton(stop), serviceDate, currentTimetableSnapshot()).get(stop);
+    }
+
+    /**
+     * Get all the trips that pass through several stops during a single ServiceDate, as getStopTimesForStop does for
+     * a single stop, sharing the service days and resolved timetables between the stops.
+     *
+     * @param snapshot The realtime snapshot to use, null to use the scheduled timetables.
+     */
+    public Map<Stop, List<StopTimesInPattern>> getStopTimesForStops(Collection<Stop> stops, ServiceDate serviceDate,
+            TimetableSnapshot snapshot) {
+        BatchTimetables timetables = new BatchTimetables(new ServiceDate[] { serviceDate }, snapshot);
+        Map<Stop, List<StopTimesInPattern>> result = new HashMap<>();
+        for (Stop stop : stops) {
+            List<StopTimesInPattern> ret = new ArrayList<>();
+            for (TripPattern pattern : patternsForStop.get(stop)) {
+                StopTimesInPattern stopTimes = new StopTimesInPattern(pattern);
+                Timetable tt = timetables.timetable(0, pattern);
+                ServiceDay sd = timetables.serviceDay(0, pattern);
+                int sidx = 0;
+                for (Stop currStop : pattern.stopPattern.stops) {
+                    if (currStop == stop) {
+                        for (TripTimes t : tt.tripTimes) {
+                            if (!sd.serviceRunning(t.serviceCode)) continue;
+                            stopTimes.times.add(new TripTimeShort(t, sidx, stop, sd));
+                        }
                     }
+                    sidx++;
                 }
-                sidx++;
+                ret.add(stopTimes);
             }
-            ret.add(stopTimes);
+            result.put(stop, ret);
+        }
+        return result;
+    }
+
+    /** @return The latest realtime snapshot, null if there is no realtime data. */
+    public TimetableSnapshot currentTimetableSnapshot() {
+        if (graph.timetableSnapshotSource == null) {
+            return null;
+        }
+        return graph.timetableSnapshotSource.getTimetableSnapshot();
+    }
+
+    /**
+     * The service days and timetables used while fetching stop times for a batch of stops, computed once for each
+     * agency and pattern of the batch.
+     */
+    private class BatchTimetables {
+
+        private final ServiceDate[] serviceDates;
+
+        private final TimetableSnapshot snapshot;
+
+        private final List<Map<String, ServiceDay>> serviceDays = new ArrayList<>();
+
+        private final List<Map<TripPattern, Timetable>> timetables = new ArrayList<>();
+
+        BatchTimetables(ServiceDate[] serviceDates, TimetableSnapshot snapshot) {
+            this.serviceDates = serviceDates;
+            this.snapshot = snapshot;
+            for (int d = 0; d < serviceDates.length; d++) {
+                serviceDays.add(new HashMap<>());
+                timetables.add(new HashMap<>());
+            }
+        }
+
+        ServiceDay serviceDay(int d, TripPattern pattern) {
+            return serviceDays.get(d).computeIfAbsent(pattern.route.getAgency().getId(),
+                    agencyId -> graph.getServiceDayCache().get(serviceDates[d], agencyId));
+        }
+
+        Timetable timetable(int d, TripPattern pattern) {
+            return timetables.get(d).computeIfAbsent(pattern,
+                    p -> snapshot != null ? snapshot.resolve(p, serviceDates[d]) : p.scheduledTimetable);
         }
-        return ret;
     }
 
     /** Fetch a cache of nearby intersection distances for every transit stop in this graph, lazy-building as needed. */
@@ -537,6 +674,21 @@ public class GraphIndex {
         return stopTreeCache;
     }
 
+    /** @return whether the stop tree cache of this graph has been built, see getStopTreeCache(). */
+    public boolean hasStopTreeCache() {
+        return stopTreeCache != null;
+    }
+
+    /**
+     * Build the lazy indexes of this graph that were already built in a previous version of the same graph, so that
+     * a reloaded graph can be swapped in without slowing down the first requests using them.
+     */
+    public void warmUp(GraphIndex previous) {
+        if (previous.hasStopTreeCache()) {
+            getStopTreeCache();
+        }
+    }
+
     /**
      * Get the most up-to-date timetable for the given TripPattern, as of right now.
      * There should probably be a less awkward way to do this that just gets the latest entry from the resolver without
@@ -600,7 +752,7 @@ public class GraphIndex {
     }
 
     public Response getGraphQLResponse(String query, Map<String, Object> variables) {
-        ExecutionResult executionResult = graphQL.execute(query, null, null, variables);
+        ExecutionResult executionResult = graphQL.execute(query, null, new IndexQueryContext(this), variables);
         Response.ResponseBuilder res = Response.status(Response.Status.OK);
         HashMap<String, Object> content = new HashMap<>();
         if (!executionResult.getErrors().isEmpty()) {
@@ -0,0 +1,136 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.graph;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import org.onebusaway.gtfs.model.Stop;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * All the scheduled departures from one stop, sorted by departure time, in parallel primitive arrays. The departure
+ * times are in seconds since the midnight of the service day, so the same index serves every service day: the
+ * departures of a given day are those whose service code runs on that day.
+ *
+ * The index is built from the scheduled timetables of the patterns. Realtime timetables must be handled separately.
+ */
+public class StopDepartureIndex {
+
+    /** The patterns serving the stop, referenced by their index in this array. */
+    public final TripPattern[] patterns;
+
+    private final int[] departures;
+
+    private final int[] patternIndexes;
+
+    private final int[] tripIndexes;
+
+    private final int[] stopIndexes;
+
+    private final int[] serviceCodes;
+
+    public StopDepartureIndex(Stop stop, Collection<TripPattern> patterns) {
+        this.patterns = patterns.toArray(new TripPattern[patterns.size()]);
+        TIntList departureList = new TIntArrayList();
+        TIntList patternList = new TIntArrayList();
+        TIntList tripList = new TIntArrayList();
+        TIntList stopList = new TIntArrayList();
+        for (int p = 0; p < this.patterns.length; p++) {
+            TripPattern pattern = this.patterns[p];
+            int sidx = 0;
+            for (Stop currStop : pattern.stopPattern.stops) {
+                if (currStop == stop) {
+                    for (int t = 0; t < pattern.scheduledTimetable.tripTimes.size(); t++) {
+                        int departure = pattern.scheduledTimetable.tripTimes.get(t).getDepartureTime(sidx);
+                        if (departure == -1) continue;
+                        departureList.add(departure);
+                        patternList.add(p);
+                        tripList.add(t);
+                        stopList.add(sidx);
+                    }
+                }
+                sidx++;
+            }
+        }
+
+        // Sort the departures, packing each time with its position in the lists so they can be reordered.
+        int n = departureList.size();
+        long[] order = new long[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = ((long) departureList.get(i) << 32) | i;
+        }
+        Arrays.sort(order);
+        departures = new int[n];
+        patternIndexes = new int[n];
+        tripIndexes = new int[n];
+        stopIndexes = new int[n];
+        serviceCodes = new int[n];
+        for (int i = 0; i < n; i++) {
+            int j = (int) order[i];
+            departures[i] = departureList.get(j);
+            patternIndexes[i] = patternList.get(j);
+            tripIndexes[i] = tripList.get(j);
+            stopIndexes[i] = stopList.get(j);
+            serviceCodes[i] = trip(i).serviceCode;
+        }
+    }
+
+    /** @return The number of departures in the index. */
+    public int size() {
+        return departures.length;
+    }
+
+    /** @return The position of the first departure at or after the given time, size() if there is none. */
+    public int firstDepartureAtOrAfter(int time) {
+        int lo = 0, hi = departures.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (departures[mid] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** @return The scheduled departure time of the i-th departure, in seconds since midnight. */
+    public int departure(int i) {
+        return departures[i];
+    }
+
+    /** @return The index in the patterns array of the pattern of the i-th departure. */
+    public int patternIndex(int i) {
+        return patternIndexes[i];
+    }
+
+    /** @return The position of the stop in the pattern of the i-th departure. */
+    public int stopIndex(int i) {
+        return stopIndexes[i];
+    }
+
+    /** @return The service code of the trip of the i-th departure. */
+    public int serviceCode(int i) {
+        return serviceCodes[i];
+    }
+
+    /** @return The scheduled trip times of the i-th departure. */
+    public TripTimes trip(int i) {
+        return patterns[patternIndexes[i]].scheduledTimetable.tripTimes.get(tripIndexes[i]);
+    }
+}
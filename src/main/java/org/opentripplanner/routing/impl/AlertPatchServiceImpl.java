@@ -73,11 +73,13 @@ public class AlertPatchServiceImpl implements AlertPatchService {
 
     @Override
     public synchronized void apply(AlertPatch alertPatch) {
-        if (alertPatches.containsKey(alertPatch.getId())) {
-            expire(alertPatches.get(alertPatch.getId()));
-        }
-
-        alertPatch.apply(graph);
+        // The replaced patch and the new one are swapped in a single snapshot of the alert patches of the graph
+        graph.updateAlertPatches(() -> {
+            if (alertPatches.containsKey(alertPatch.getId())) {
+                expire(alertPatches.get(alertPatch.getId()));
+            }
+            alertPatch.apply(graph);
+        });
         alertPatches.put(alertPatch.getId(), alertPatch);
 
         AgencyAndId stop = alertPatch.getStop();
@@ -91,35 +93,41 @@ public class AlertPatchServiceImpl implements AlertPatchService {
     }
 
     @Override
-    public void expire(Set<String> purge) {
-        for (String patchId : purge) {
-            if (alertPatches.containsKey(patchId)) {
-                expire(alertPatches.get(patchId));
+    public synchronized void expire(Set<String> purge) {
+        graph.updateAlertPatches(() -> {
+            for (String patchId : purge) {
+                if (alertPatches.containsKey(patchId)) {
+                    expire(alertPatches.get(patchId));
+                }
             }
-        }
+        });
 
         alertPatches.keySet().removeAll(purge);
     }
 
     @Override
-    public void expireAll() {
-        for (AlertPatch alertPatch : alertPatches.values()) {
-            expire(alertPatch);
-        }
+    public synchronized void expireAll() {
+        graph.updateAlertPatches(() -> {
+            for (AlertPatch alertPatch : alertPatches.values()) {
+                expire(alertPatch);
+            }
+        });
         alertPatches.clear();
     }
 
     @Override
-    public void expireAllExcept(Set<String> retain) {
+    public synchronized void expireAllExcept(Set<String> retain) {
         ArrayList<String> toRemove = new ArrayList<String>();
 
-        for (Entry<String, AlertPatch> entry : alertPatches.entrySet()) {
-            final String key = entry.getKey();
-            if (!retain.contains(key)) {
-                toRemove.add(key);
-                expire(entry.getValue());
+        graph.updateAlertPatches(() -> {
+            for (Entry<String, AlertPatch> entry : alertPatches.entrySet()) {
+                final String key = entry.getKey();
+                if (!retain.contains(key)) {
+                    toRemove.add(key);
+                    expire(entry.getValue());
+                }
             }
-        }
+        });
         alertPatches.keySet().removeAll(toRemove);
     }
 
@@ -69,10 +69,23 @@ public class GraphPathFinder {
 
     Router router;
 
+    /** The time the request was received in milliseconds since the epoch, or 0 to count timeouts from the search. */
+    private long arrivalTime;
+
     public GraphPathFinder(Router router) {
         this.router = router;
     }
 
+    /**
+     * @param arrivalTime The time the request was received, in milliseconds since the epoch. The router timeouts
+     *        count from this time rather than from the beginning of the search, so time spent waiting to be admitted
+     *        is not granted again to the search.
+     */
+    public GraphPathFinder(Router router, long arrivalTime) {
+        this.router = router;
+        this.arrivalTime = arrivalTime;
+    }
+
     /**
      * Repeatedly build shortest path trees, retaining the best path to the destination after each try.
      * For search N, all trips used in itineraries retained from trips 0..(N-1) are "banned" to create variety.
@@ -89,7 +102,10 @@ public class GraphPathFinder {
         // Reuse one instance of AStar for all N requests, which are carried out sequentially
         AStar aStar = new AStar();
         if (options.rctx == null) {
+            long linkingStart = System.nanoTime();
             options.setRoutingContext(router.graph);
+            RoutingMetrics.recordPhase(RoutingMetrics.Phase.LINKING, router.id, options.modes,
+                    System.nanoTime() - linkingStart);
             // The special long-distance heuristic should be sufficient to constrain the search to the right area.
         }
         // If this Router has a GraphVisualizer attached to it, set it as a callback for the AStar search
@@ -135,6 +151,7 @@ public class GraphPathFinder {
         if (options.maxWalkDistance == Double.MAX_VALUE) options.maxWalkDistance = DEFAULT_MAX_WALK;
         if (options.maxWalkDistance > CLAMP_MAX_WALK) options.maxWalkDistance = CLAMP_MAX_WALK;
         long searchBeginTime = System.currentTimeMillis();
+        long timeoutBeginTime = arrivalTime > 0 ? arrivalTime : searchBeginTime;
         LOG.debug("BEGIN SEARCH");
         List<GraphPath> paths = Lists.newArrayList();
         while (paths.size() < options.numItineraries) {
@@ -143,7 +160,7 @@ public class GraphPathFinder {
             if (timeoutIndex >= router.timeouts.length) {
                 timeoutIndex = router.timeouts.length - 1;
             }
-            double timeout = searchBeginTime + (router.timeouts[timeoutIndex] * 1000);
+            double timeout = timeoutBeginTime + (router.timeouts[timeoutIndex] * 1000);
             timeout -= System.currentTimeMillis(); // Convert from absolute to relative time
             timeout /= 1000; // Convert milliseconds to seconds
             if (timeout <= 0) {
@@ -177,6 +194,7 @@ public class GraphPathFinder {
             LOG.debug("we have {} paths", paths.size());
         }
         LOG.debug("END SEARCH ({} msec)", System.currentTimeMillis() - searchBeginTime);
+        RoutingMetrics.recordSearches(router.id, options.modes, aStar.getSearchStats(), options.rctx.aborted);
         Collections.sort(paths, new PathComparator(options.arriveBy));
         return paths;
     }
@@ -18,6 +18,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.MissingNode;
 import com.google.common.io.ByteStreams;
+import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Graph.LoadLevel;
 import org.opentripplanner.routing.services.GraphSource;
@@ -27,6 +28,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.util.List;
 
 /**
  * The primary implementation of the GraphSource interface. The graph is loaded from a serialized
@@ -46,8 +48,13 @@ public class InputStreamGraphSource implements GraphSource {
      * */
     private static final long LOAD_DELAY_SEC = 10;
 
+    /** Maximum time spent replaying recent requests against a new graph before swapping it in. */
+    private static final long WARM_UP_MAX_SEC = 60;
+
     private Router router;
 
+    private volatile Readiness readiness = Readiness.LOADING;
+
     private String routerId;
 
     private long graphLastModified = 0L;
@@ -107,6 +114,11 @@ public class InputStreamGraphSource implements GraphSource {
         }
     }
 
+    @Override
+    public Readiness getReadiness() {
+        return readiness;
+    }
+
     @Override
     public boolean reload(boolean force, boolean preEvict) {
         /* We synchronize on 'this' to prevent multiple reloads from being called at the same time */
@@ -116,6 +128,7 @@ public class InputStreamGraphSource implements GraphSource {
             if (!doReload)
                 return true;
             if (preEvict) {
+                readiness = Readiness.LOADING;
                 synchronized (preEvictMutex) {
                     if (router != null) {
                         LOG.info("Reloading '{}': pre-evicting router", routerId);
@@ -130,10 +143,14 @@ public class InputStreamGraphSource implements GraphSource {
                     router = loadGraph();
                 }
             } else {
+                // The current router, if any, keeps serving requests until the new one is loaded and warmed up.
+                readiness = router != null ? Readiness.RELOADING : Readiness.LOADING;
                 Router newRouter = loadGraph();
                 if (newRouter != null) {
                     // Load OK
                     if (router != null) {
+                        readiness = Readiness.WARMING_UP;
+                        warmUp(router, newRouter);
                         LOG.info("Reloading '{}': post-evicting router", routerId);
                         router.shutdown();
                     }
@@ -152,6 +169,7 @@ public class InputStreamGraphSource implements GraphSource {
                     }
                 }
             }
+            readiness = router != null ? Readiness.READY : Readiness.UNAVAILABLE;
             if (router == null) {
                 graphLastModified = 0L;
             } else {
@@ -194,7 +212,48 @@ public class InputStreamGraphSource implements GraphSource {
                 router.shutdown();
                 router = null;
             }
+            readiness = Readiness.UNAVAILABLE;
+        }
+    }
+
+    /**
+     * Warm up a newly loaded router before it replaces the current one, which keeps serving requests meanwhile: build
+     * the lazy indexes that were in use in the current graph, and replay the recent requests of the current router
+     * against the new graph. Those requests are also carried over to the new router, for the next reload.
+     */
+    private void warmUp(Router oldRouter, Router newRouter) {
+        long start = System.currentTimeMillis();
+        if (oldRouter.graph.index != null && newRouter.graph.index != null) {
+            newRouter.graph.index.warmUp(oldRouter.graph.index);
+        }
+        for (RoutingRequest request : oldRouter.recentRequests.get()) {
+            newRouter.recentRequests.add(request);
+        }
+        List<RoutingRequest> requests = oldRouter.recentRequests.get();
+        int replayed = 0;
+        for (RoutingRequest request : requests) {
+            if (System.currentTimeMillis() - start > WARM_UP_MAX_SEC * 1000) {
+                LOG.warn("Warm-up of router '{}' took more than {} sec, skipping {} requests.", routerId,
+                        WARM_UP_MAX_SEC, requests.size() - replayed);
+                break;
+            }
+            // The recorded request still holds the routing context it was served with, on the current graph.
+            RoutingRequest replay = request.clone();
+            replay.rctx = null;
+            try {
+                new GraphPathFinder(newRouter).graphPathFinderEntryPoint(replay);
+            } catch (Exception e) {
+                // Requests which cannot be routed (no path found...) warm up the graph all the same.
+                LOG.debug("Warm-up request failed on router '{}': {}", routerId, e.toString());
+            } finally {
+                if (replay.rctx != null) {
+                    replay.cleanup();
+                }
+            }
+            replayed++;
         }
+        LOG.info("Warmed up router '{}' with {} recent requests in {} msec.", routerId, replayed,
+                System.currentTimeMillis() - start);
     }
 
     /**
@@ -214,6 +273,7 @@ public class InputStreamGraphSource implements GraphSource {
             }
 
             newGraph.routerId = (routerId);
+            newGraph.directory = streams.getDirectory();
         } catch (IOException e) {
             LOG.warn("Graph file not found or not openable for routerId '{}': {}", routerId, e);
             return null;
@@ -254,6 +314,9 @@ public class InputStreamGraphSource implements GraphSource {
         public abstract InputStream getConfigInputStream() throws IOException;
 
         public abstract long getLastModified();
+
+        /** @return The directory holding the graph, or null if it is not a directory of the file system. */
+        public abstract File getDirectory();
     }
 
     private static class FileStreams implements Streams {
@@ -287,6 +350,11 @@ public class InputStreamGraphSource implements GraphSource {
             // Note: this returns 0L if the file does not exists
             return new File(path, GRAPH_FILENAME).lastModified();
         }
+
+        @Override
+        public File getDirectory() {
+            return path;
+        }
     }
 
     private static class ClasspathStreams implements Streams {
@@ -321,6 +389,11 @@ public class InputStreamGraphSource implements GraphSource {
         public long getLastModified() {
             return 0L;
         }
+
+        @Override
+        public File getDirectory() {
+            return null;
+        }
     }
 
     /**
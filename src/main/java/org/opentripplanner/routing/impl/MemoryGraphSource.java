@@ -49,6 +49,11 @@ public class MemoryGraphSource implements GraphSource {
         return router;
     }
 
+    @Override
+    public Readiness getReadiness() {
+        return router != null ? Readiness.READY : Readiness.UNAVAILABLE;
+    }
+
     @Override
     public boolean reload(boolean force, boolean preEvict) {
         // "Reloading" does not make sense for memory-graph, but we want to support mixing in-memory and file-based graphs.
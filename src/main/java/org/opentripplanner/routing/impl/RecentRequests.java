@@ -0,0 +1,66 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.impl;
+
+import org.opentripplanner.routing.core.RoutingRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A bounded sample of the most recent routing requests received by a router. When the graph of a router is reloaded,
+ * these requests are replayed against the new graph before it replaces the old one, so that the first requests after
+ * the swap do not pay for cold caches and lazily built indexes.
+ */
+public class RecentRequests {
+
+    private final RoutingRequest[] requests;
+
+    /** The total number of requests added, the next one is stored at index count % capacity. */
+    private long count = 0;
+
+    /** @param capacity The number of requests to keep, 0 to keep none. */
+    public RecentRequests(int capacity) {
+        requests = new RoutingRequest[Math.max(0, capacity)];
+    }
+
+    /** Record a copy of a request, as it was before any routing context was set on it. */
+    public void add(RoutingRequest request) {
+        if (requests.length == 0) {
+            return;
+        }
+        RoutingRequest copy = request.clone();
+        copy.rctx = null;
+        synchronized (this) {
+            requests[(int) (count % requests.length)] = copy;
+            count++;
+        }
+    }
+
+    /** @return Copies of the recorded requests, from the oldest to the most recent. */
+    public List<RoutingRequest> get() {
+        List<RoutingRequest> ret = new ArrayList<>(requests.length);
+        synchronized (this) {
+            long first = Math.max(0, count - requests.length);
+            for (long i = first; i < count; i++) {
+                ret.add(requests[(int) (i % requests.length)].clone());
+            }
+        }
+        return ret;
+    }
+
+    public int capacity() {
+        return requests.length;
+    }
+}
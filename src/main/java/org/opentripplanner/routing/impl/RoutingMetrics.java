@@ -0,0 +1,93 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.routing.impl;
+
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.util.monitoring.Histogram;
+import org.opentripplanner.util.monitoring.MetricsRegistry;
+
+/**
+ * The latency of each phase of a trip planning request, and the work done by its searches, by router and mode. They
+ * are exposed in the Prometheus format by the metrics web service, so that a regression of the latency percentiles
+ * can be traced back to a phase.
+ */
+public class RoutingMetrics {
+
+    // Like the MonitoringStore, this is a global variable rather than a field of the OTPServer, so that it can be
+    // reached from the routing code, which only knows about the Router.
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    /** The phases of a trip planning request. */
+    public enum Phase {
+        /** Linking the origin and destination to the street network, when creating the routing context. */
+        LINKING("otp_linking_seconds", "Time spent linking the origin and destination to the graph."),
+        /** Initializing the goal direction heuristic, which can involve street searches around the endpoints. */
+        HEURISTIC("otp_heuristic_seconds", "Time spent initializing the remaining weight heuristics."),
+        /** The A* searches themselves. */
+        SEARCH("otp_search_seconds", "Time spent in A* searches, excluding heuristic initialization."),
+        /** Converting the paths found into itineraries. */
+        PATH_CONVERSION("otp_path_conversion_seconds", "Time spent converting paths into itineraries."),
+        /** Serializing the response. */
+        SERIALIZATION("otp_serialization_seconds", "Time spent serializing responses.");
+
+        final String metric;
+
+        final String help;
+
+        Phase(String metric, String help) {
+            this.metric = metric;
+            this.help = help;
+        }
+    }
+
+    public static void recordPhase(Phase phase, String routerId, TraverseModeSet modes, long nanos) {
+        REGISTRY.histogram(phase.metric, phase.help, Histogram.SECONDS, "router", label(routerId), "mode", label(modes))
+                .observeNanos(nanos);
+    }
+
+    /** Record the work done by the searches of one request, and their duration per phase. */
+    public static void recordSearches(String routerId, TraverseModeSet modes, AStar.SearchStats stats,
+            boolean timedOut) {
+        String router = label(routerId);
+        String mode = label(modes);
+        REGISTRY.histogram(Phase.HEURISTIC.metric, Phase.HEURISTIC.help, Histogram.SECONDS,
+                "router", router, "mode", mode).observeNanos(stats.heuristicNanos);
+        REGISTRY.histogram(Phase.SEARCH.metric, Phase.SEARCH.help, Histogram.SECONDS,
+                "router", router, "mode", mode).observeNanos(stats.searchNanos);
+        REGISTRY.histogram("otp_vertices_visited", "Vertices visited by the searches of a request.",
+                Histogram.COUNTS, "router", router, "mode", mode).observe(stats.verticesVisited);
+        REGISTRY.histogram("otp_states_created", "States added to the shortest path trees of a request.",
+                Histogram.COUNTS, "router", router, "mode", mode).observe(stats.statesCreated);
+        REGISTRY.histogram("otp_queue_size", "Maximum size of the priority queues of the searches of a request.",
+                Histogram.COUNTS, "router", router, "mode", mode).observe(stats.maxQueueSize);
+        REGISTRY.counter("otp_searches_total", "A* searches run.", "router", router, "mode", mode)
+                .add(stats.searches);
+        REGISTRY.counter("otp_requests_total", "Trip planning requests routed.", "router", router, "mode", mode)
+                .increment();
+        if (timedOut) {
+            REGISTRY.counter("otp_timeouts_total", "Trip planning requests whose searches timed out.",
+                    "router", router, "mode", mode).increment();
+        }
+    }
+
+    private static String label(String routerId) {
+        return routerId == null || routerId.isEmpty() ? "default" : routerId;
+    }
+
+    private static String label(TraverseModeSet modes) {
+        String mode = modes == null ? null : modes.getAsStr();
+        return mode == null ? "" : mode;
+    }
+}
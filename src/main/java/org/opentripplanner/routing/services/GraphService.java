@@ -132,6 +132,19 @@ public class GraphService {
         return router;
     }
 
+    /**
+     * @return the readiness of the given router, or null if no graph is registered with this router ID. Unlike
+     *         getRouter(), this does not wait for a graph being loaded.
+     */
+    public GraphSource.Readiness getReadiness(String routerId) {
+        if (routerId == null || routerId.isEmpty() || routerId.equalsIgnoreCase("default")) {
+            routerId = defaultRouterId;
+        }
+        // Not synchronized on graphSources, which is held during (re)loads, as for getRouter().
+        GraphSource graphSource = graphSources.get(routerId);
+        return graphSource == null ? null : graphSource.getReadiness();
+    }
+
     /**
      * Reload all registered graphs from wherever they came from. See reloadGraph().
      * @return whether the operation completed successfully (all reloads are successful).
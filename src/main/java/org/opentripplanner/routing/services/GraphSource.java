@@ -23,6 +23,27 @@ import org.opentripplanner.standalone.Router;
  */
 public interface GraphSource {
 
+    /**
+     * The state of a graph source, as reported to load balancers and monitoring.
+     */
+    public enum Readiness {
+        /** No router is available yet, the graph is being loaded. */
+        LOADING,
+        /** A new graph is being loaded while the previous router keeps serving requests. */
+        RELOADING,
+        /** Recent requests are being replayed against the new graph, the previous router keeps serving requests. */
+        WARMING_UP,
+        /** The router is serving requests with an up-to-date graph. */
+        READY,
+        /** No router is available. */
+        UNAVAILABLE;
+
+        /** @return True if requests can be routed in this state. */
+        public boolean serving() {
+            return this == RELOADING || this == WARMING_UP || this == READY;
+        }
+    }
+
     /**
      * Factory of GraphSource. It's used for the Jersey API to be able to map GraphSource to
      * external routerID, for operations such as registering new graph, or saving graph data from
@@ -58,6 +79,11 @@ public interface GraphSource {
      */
     public Router getRouter();
 
+    /**
+     * @return The current state of this source. Unlike getRouter(), this never waits for a graph to be loaded.
+     */
+    public Readiness getReadiness();
+
     /**
      * Reload the graph from it's source.
      * 
@@ -68,7 +68,7 @@ public abstract class DominanceFunction implements Serializable {
 
         // Are the two states arriving at a vertex from two different directions where turn restrictions apply?
         if (a.backEdge != b.getBackEdge() && (a.backEdge instanceof StreetEdge)) {
-            if (! a.getOptions().getRoutingContext().graph.getTurnRestrictions(a.backEdge).isEmpty()) {
+            if (((StreetEdge) a.backEdge).hasTurnRestrictions()) {
                 return false;
             }
         }
@@ -24,9 +24,16 @@ import org.opentripplanner.routing.graph.Vertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Walk over a SPT tree to geometrically visit all nodes and edge geometry. For each geometry longer
@@ -71,13 +78,83 @@ public class SPTWalker {
      * Walk over a SPT. Call a visitor for each visited point.
      */
     public void walk(SPTVisitor visitor, double d0) {
-        int nTotal = 0, nSkippedDupEdge = 0, nSkippedNoGeometry = 0;
+        List<VisitedEdge> edges = collectEdges(visitor);
+        int nTotal = 0;
+        for (VisitedEdge edge : edges) {
+            nTotal += walkEdge(edge, visitor, d0);
+        }
+        LOG.info("SPTWalker: Generated {} points from {} edges.", nTotal, edges.size());
+    }
+
+    /**
+     * Walk over a SPT in parallel. The edges are partitioned into tiles according to the location
+     * of their end vertex, and the tiles are walked concurrently in a fork/join pool, each one by
+     * its own visitor. Visitors thus do not need to be thread-safe, but a point of one tile may be
+     * visited near the points of a neighboring tile when edges cross tile borders.
+     * 
+     * @param visitorFactory Creates a visitor for each tile. One more visitor is created to filter
+     *        the edges to visit.
+     * @param tileSize The width (x) and height (y) of a tile.
+     * @return The visitors of all tiles, in an order that only depends on the tiles.
+     */
+    public <V extends SPTVisitor> List<V> walkTiles(Supplier<V> visitorFactory, double d0,
+            Coordinate tileSize) {
+        List<VisitedEdge> edges = collectEdges(visitorFactory.get());
+        // Sort the tiles so that the result does not depend on the iteration order of the SPT.
+        SortedMap<Long, List<VisitedEdge>> tiles = new TreeMap<Long, List<VisitedEdge>>();
+        for (VisitedEdge edge : edges) {
+            Coordinate c = edge.s0.getVertex().getCoordinate();
+            long tileX = (long) Math.floor(c.x / tileSize.x);
+            long tileY = (long) Math.floor(c.y / tileSize.y);
+            long key = (tileX << 32) ^ (tileY & 0xFFFFFFFFL);
+            List<VisitedEdge> tile = tiles.get(key);
+            if (tile == null) {
+                tile = new ArrayList<VisitedEdge>();
+                tiles.put(key, tile);
+            }
+            tile.add(edge);
+        }
+        AtomicInteger nTotal = new AtomicInteger();
+        List<V> visitors = new ArrayList<List<VisitedEdge>>(tiles.values()).parallelStream()
+                .map(tile -> {
+                    V visitor = visitorFactory.get();
+                    int n = 0;
+                    for (VisitedEdge edge : tile) {
+                        n += walkEdge(edge, visitor, d0);
+                    }
+                    nTotal.addAndGet(n);
+                    return visitor;
+                }).collect(Collectors.toList());
+        LOG.info("SPTWalker: Generated {} points from {} edges in {} tiles.", nTotal.get(),
+                edges.size(), tiles.size());
+        return visitors;
+    }
+
+    /** An edge of the SPT to walk, with the states at its end (s0) and start (s1) vertices. */
+    private static class VisitedEdge {
+        private final Edge e;
+        private final State s0, s1;
+
+        private VisitedEdge(Edge e, State s0, State s1) {
+            this.e = e;
+            this.s0 = s0;
+            this.s1 = s1;
+        }
+    }
+
+    /**
+     * @return The edges accepted by the visitor that lead to a final state of the SPT from another
+     *         final state, each edge only once.
+     */
+    private List<VisitedEdge> collectEdges(SPTVisitor visitor) {
+        int nSkippedDupEdge = 0, nSkippedNoGeometry = 0;
         Collection<? extends State> allStates = spt.getAllStates();
         Set<Vertex> allVertices = new HashSet<Vertex>(spt.getVertexCount());
         for (State s : allStates) {
             allVertices.add(s.getVertex());
         }
         Set<Edge> processedEdges = new HashSet<Edge>(allVertices.size());
+        List<VisitedEdge> edges = new ArrayList<VisitedEdge>(allVertices.size());
         for (Vertex v : allVertices) {
             State s0 = spt.getState(v);
             if (s0 == null || !s0.isFinal())
@@ -96,77 +173,92 @@ public class SPTWalker {
                         }
                         processedEdges.add(e);
                     }
-                    Vertex vx0 = s0.getVertex();
-                    Vertex vx1 = s1.getVertex();
-                    LineString lineString = e.getGeometry();
-                    if (lineString == null) {
+                    if (e.getGeometry() == null) {
                         nSkippedNoGeometry++;
                         continue;
                     }
+                    edges.add(new VisitedEdge(e, s0, s1));
+                }
+            }
+        }
+        LOG.info("SPTWalker: Walking {} edges ({} dup edges, {} no geometry) from {} vertices / {} states.",
+                edges.size(), nSkippedDupEdge, nSkippedNoGeometry, allVertices.size(), allStates.size());
+        return edges;
+    }
 
-                    // Compute speed along edge
-                    double speedAlongEdge = spt.getOptions().walkSpeed;
-                    if (e instanceof StreetEdge) {
-                        StreetEdge se = (StreetEdge) e;
-                        /*
-                         * Compute effective speed, taking into account end state mode (car, bike,
-                         * walk...) and edge properties (car max speed, slope, etc...)
-                         */
-                        TraverseMode mode = s0.getNonTransitMode();
-                        speedAlongEdge = se.calculateSpeed(spt.getOptions(), mode, s0.getTimeInMillis());
-                        if (mode != TraverseMode.CAR)
-                            speedAlongEdge = speedAlongEdge * se.getDistance() / se.getSlopeSpeedEffectiveLength();
-                        double avgSpeed = se.getDistance()
-                                / Math.abs(s0.getTimeInMillis() - s1.getTimeInMillis()) * 1000;
-                        if (avgSpeed < 1e-10)
-                            avgSpeed = 1e-10;
-                        /*
-                         * We can't go faster than the average speed on the edge. We can go slower
-                         * however, that simply means that one end vertice has a time higher than
-                         * the other end vertice + time to traverse the edge (can happen due to
-                         * max walk clamping).
-                         */
-                        if (speedAlongEdge > avgSpeed)
-                            speedAlongEdge = avgSpeed;
-                    }
+    /**
+     * Visit the points along one edge.
+     * 
+     * @return The number of visited points.
+     */
+    private int walkEdge(VisitedEdge edge, SPTVisitor visitor, double d0) {
+        Edge e = edge.e;
+        State s0 = edge.s0;
+        State s1 = edge.s1;
+        int nTotal = 0;
+        Vertex vx0 = s0.getVertex();
+        Vertex vx1 = s1.getVertex();
+        LineString lineString = e.getGeometry();
 
-                    // Length of linestring
-                    double lineStringLen = SphericalDistanceLibrary.fastLength(lineString);
-                    visitor.visit(e, vx0.getCoordinate(), s0, s1, 0.0, lineStringLen, speedAlongEdge);
-                    visitor.visit(e, vx1.getCoordinate(), s0, s1, lineStringLen, 0.0, speedAlongEdge);
-                    nTotal += 2;
-                    Coordinate[] pList = lineString.getCoordinates();
-                    boolean reverse = vx1.getCoordinate().equals(pList[0]);
-                    // Split the linestring in nSteps
-                    if (lineStringLen > d0) {
-                        int nSteps = (int) Math.floor(lineStringLen / d0) + 1; // Number of steps
-                        double stepLen = lineStringLen / nSteps; // Length of step
-                        double startLen = 0; // Distance at start of current seg
-                        double curLen = stepLen; // Distance cursor
-                        int ns = 1;
-                        for (int i = 0; i < pList.length - 1; i++) {
-                            Coordinate p0 = pList[i];
-                            Coordinate p1 = pList[i + 1];
-                            double segLen = SphericalDistanceLibrary.fastDistance(p0, p1);
-                            while (curLen - startLen < segLen) {
-                                double k = (curLen - startLen) / segLen;
-                                Coordinate p = new Coordinate(p0.x * (1 - k) + p1.x * k, p0.y
-                                        * (1 - k) + p1.y * k);
-                                visitor.visit(e, p, reverse ? s1 : s0, reverse ? s0 : s1, curLen,
-                                        lineStringLen - curLen, speedAlongEdge);
-                                nTotal++;
-                                curLen += stepLen;
-                                ns++;
-                            }
-                            startLen += segLen;
-                            if (ns >= nSteps)
-                                break;
-                        }
-                    }
+        // Compute speed along edge
+        double speedAlongEdge = spt.getOptions().walkSpeed;
+        if (e instanceof StreetEdge) {
+            StreetEdge se = (StreetEdge) e;
+            /*
+             * Compute effective speed, taking into account end state mode (car, bike,
+             * walk...) and edge properties (car max speed, slope, etc...)
+             */
+            TraverseMode mode = s0.getNonTransitMode();
+            speedAlongEdge = se.calculateSpeed(spt.getOptions(), mode, s0.getTimeInMillis());
+            if (mode != TraverseMode.CAR)
+                speedAlongEdge = speedAlongEdge * se.getDistance() / se.getSlopeSpeedEffectiveLength();
+            double avgSpeed = se.getDistance()
+                    / Math.abs(s0.getTimeInMillis() - s1.getTimeInMillis()) * 1000;
+            if (avgSpeed < 1e-10)
+                avgSpeed = 1e-10;
+            /*
+             * We can't go faster than the average speed on the edge. We can go slower
+             * however, that simply means that one end vertice has a time higher than
+             * the other end vertice + time to traverse the edge (can happen due to
+             * max walk clamping).
+             */
+            if (speedAlongEdge > avgSpeed)
+                speedAlongEdge = avgSpeed;
+        }
+
+        // Length of linestring
+        double lineStringLen = SphericalDistanceLibrary.fastLength(lineString);
+        visitor.visit(e, vx0.getCoordinate(), s0, s1, 0.0, lineStringLen, speedAlongEdge);
+        visitor.visit(e, vx1.getCoordinate(), s0, s1, lineStringLen, 0.0, speedAlongEdge);
+        nTotal += 2;
+        Coordinate[] pList = lineString.getCoordinates();
+        boolean reverse = vx1.getCoordinate().equals(pList[0]);
+        // Split the linestring in nSteps
+        if (lineStringLen > d0) {
+            int nSteps = (int) Math.floor(lineStringLen / d0) + 1; // Number of steps
+            double stepLen = lineStringLen / nSteps; // Length of step
+            double startLen = 0; // Distance at start of current seg
+            double curLen = stepLen; // Distance cursor
+            int ns = 1;
+            for (int i = 0; i < pList.length - 1; i++) {
+                Coordinate p0 = pList[i];
+                Coordinate p1 = pList[i + 1];
+                double segLen = SphericalDistanceLibrary.fastDistance(p0, p1);
+                while (curLen - startLen < segLen) {
+                    double k = (curLen - startLen) / segLen;
+                    Coordinate p = new Coordinate(p0.x * (1 - k) + p1.x * k, p0.y
+                            * (1 - k) + p1.y * k);
+                    visitor.visit(e, p, reverse ? s1 : s0, reverse ? s0 : s1, curLen,
+                            lineStringLen - curLen, speedAlongEdge);
+                    nTotal++;
+                    curLen += stepLen;
+                    ns++;
                 }
+                startLen += segLen;
+                if (ns >= nSteps)
+                    break;
             }
         }
-        LOG.info("SPTWalker: Generated {} points ({} dup edges, {} no geometry) from {} vertices / {} states.",
-                nTotal, nSkippedDupEdge, nSkippedNoGeometry, allVertices.size(), allStates.size());
+        return nTotal;
     }
 }
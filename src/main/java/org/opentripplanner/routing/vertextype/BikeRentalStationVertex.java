@@ -14,6 +14,7 @@
 package org.opentripplanner.routing.vertextype;
 
 import org.opentripplanner.common.MavenVersion;
+import org.opentripplanner.routing.bike_rental.BikeRentalAvailability;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
@@ -35,6 +36,11 @@ public class BikeRentalStationVertex extends Vertex {
     private int spacesAvailable;
 
     private String id;
+
+    /** The real-time availability table of this station, or null if the counts are the ones set on this vertex. */
+    private transient BikeRentalAvailability availability;
+
+    private int availabilitySlot;
     
     public BikeRentalStationVertex(Graph g, BikeRentalStation station) {
         //FIXME: raw_name can be null if bike station is made from graph updater
@@ -45,12 +51,19 @@ public class BikeRentalStationVertex extends Vertex {
         this.setSpacesAvailable(station.spacesAvailable);
     }
 
+    /** Create a vertex reading the number of bikes and spaces available from a real-time availability table. */
+    public BikeRentalStationVertex(Graph g, BikeRentalStation station, BikeRentalAvailability availability) {
+        this(g, station);
+        this.availability = availability;
+        this.availabilitySlot = availability.slot(station.id);
+    }
+
     public int getBikesAvailable() {
-        return bikesAvailable;
+        return availability == null ? bikesAvailable : availability.getBikesAvailable(availabilitySlot);
     }
 
     public int getSpacesAvailable() {
-        return spacesAvailable;
+        return availability == null ? spacesAvailable : availability.getSpacesAvailable(availabilitySlot);
     }
 
     public void setBikesAvailable(int bikes) {
@@ -0,0 +1,170 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.standalone;
+
+import org.opentripplanner.routing.error.RequestRejectedException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of routing requests computed at the same time by a router. Routing is CPU-bound, so requests
+ * beyond that number wait in a bounded queue. A request is rejected right away when the queue is full, and when it
+ * could not start before its deadline: its client would not wait for a response computed that late. The routing
+ * timeouts of the router count from the arrival time of the request, so that the time spent waiting here is not
+ * granted again to the search. The deadline is therefore well before the first timeout, leaving time to link the
+ * request and search: a request admitted right before the timeout would only be answered with "no trip found".
+ */
+public class AdmissionControl {
+
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = Runtime.getRuntime().availableProcessors();
+
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 4 * DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+    /** The part of the first routing timeout a request may spend waiting, the rest is left to compute it. */
+    public static final double MAX_WAIT_FRACTION = 0.5;
+
+    public final int maxConcurrentRequests;
+
+    public final int maxQueuedRequests;
+
+    private final Semaphore running;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong admitted = new AtomicLong();
+
+    private final AtomicLong rejectedQueueFull = new AtomicLong();
+
+    private final AtomicLong rejectedDeadline = new AtomicLong();
+
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    public AdmissionControl() {
+        this(DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_QUEUED_REQUESTS);
+    }
+
+    public AdmissionControl(int maxConcurrentRequests, int maxQueuedRequests) {
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.maxQueuedRequests = Math.max(0, maxQueuedRequests);
+        this.running = new Semaphore(this.maxConcurrentRequests, true);
+    }
+
+    /**
+     * Wait until the request can be computed. The returned permit must be closed once the request is done.
+     * @param arrivalTime The time the request was received, in milliseconds since the epoch.
+     * @param deadline The time after which the request is not worth starting, in milliseconds since the epoch.
+     * @throws RequestRejectedException if the queue is full, or the deadline passed before the request could start.
+     */
+    public Permit admit(long arrivalTime, long deadline) {
+        try {
+            // Unlike tryAcquire(), a timed tryAcquire honors the fairness of the semaphore: a new request does not
+            // take a released permit from the requests already waiting for one.
+            if (running.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                return admitted(arrivalTime);
+            }
+            if (queued.incrementAndGet() > maxQueuedRequests) {
+                queued.decrementAndGet();
+                rejectedQueueFull.incrementAndGet();
+                throw new RequestRejectedException("Too many requests waiting, try again later.");
+            }
+            try {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait > 0 && running.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                    return admitted(arrivalTime);
+                }
+            } finally {
+                queued.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rejectedDeadline.incrementAndGet();
+        throw new RequestRejectedException("Request could not start before its deadline, try again later.");
+    }
+
+    /** Wait until the request can be computed, with a deadline before the first routing timeout of the router. */
+    public Permit admit(long arrivalTime, Router router) {
+        return admit(arrivalTime, deadline(arrivalTime, router));
+    }
+
+    /**
+     * @return The time after which a request received at the given time is not worth starting, in milliseconds since
+     *         the epoch: once MAX_WAIT_FRACTION of the first routing timeout of the router has elapsed.
+     */
+    public static long deadline(long arrivalTime, Router router) {
+        return arrivalTime + (long) (router.timeouts[0] * 1000 * MAX_WAIT_FRACTION);
+    }
+
+    private Permit admitted(long arrivalTime) {
+        long waitMillis = Math.max(0, System.currentTimeMillis() - arrivalTime);
+        admitted.incrementAndGet();
+        totalWaitMillis.addAndGet(waitMillis);
+        maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+        return new Permit(arrivalTime);
+    }
+
+    /** @return The current state and the counters of this admission control. */
+    public Stats getStats() {
+        Stats stats = new Stats();
+        stats.maxConcurrentRequests = maxConcurrentRequests;
+        stats.maxQueuedRequests = maxQueuedRequests;
+        stats.running = maxConcurrentRequests - running.availablePermits();
+        stats.queued = queued.get();
+        stats.admitted = admitted.get();
+        stats.rejectedQueueFull = rejectedQueueFull.get();
+        stats.rejectedDeadline = rejectedDeadline.get();
+        stats.totalWaitMillis = totalWaitMillis.get();
+        stats.maxWaitMillis = maxWaitMillis.get();
+        return stats;
+    }
+
+    /** The right to compute one request, released when closed. */
+    public class Permit implements AutoCloseable {
+
+        /** The time the request was received, in milliseconds since the epoch. Routing timeouts count from it. */
+        public final long arrivalTime;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Permit(long arrivalTime) {
+            this.arrivalTime = arrivalTime;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                running.release();
+            }
+        }
+    }
+
+    /** A snapshot of the queue depth, wait times and counters, serialized in the router admission web service. */
+    public static class Stats {
+        public int maxConcurrentRequests;
+        public int maxQueuedRequests;
+        public int running;
+        public int queued;
+        public long admitted;
+        public long rejectedQueueFull;
+        public long rejectedDeadline;
+        public long totalWaitMillis;
+        public long maxWaitMillis;
+    }
+}
@@ -117,6 +117,11 @@ public class GraphBuilderParameters {
      */
     public int maxInterlineDistance = 200;
 
+    /**
+     * Whether the geocoder index of stops and street corners should be built with the graph and saved alongside it.
+     */
+    public final boolean geocoderIndex;
+
     /**
      * Set all parameters from the given Jackson JSON tree, applying defaults.
      * Supplying MissingNode.getInstance() will cause all the defaults to be applied.
@@ -144,6 +149,7 @@ public class GraphBuilderParameters {
         staticBikeParkAndRide = config.path("staticBikeParkAndRide").asBoolean(false);
         maxHtmlAnnotationsPerFile = config.path("maxHtmlAnnotationsPerFile").asInt(1000);
         maxInterlineDistance = config.path("maxInterlineDistance").asInt(200);
+        geocoderIndex = config.path("geocoderIndex").asBoolean(true);
     }
 
 }
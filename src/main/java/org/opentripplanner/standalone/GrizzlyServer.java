@@ -14,6 +14,7 @@ import org.glassfish.grizzly.ssl.SSLContextConfigurator;
 import org.glassfish.grizzly.ssl.SSLEngineConfigurator;
 import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 import org.glassfish.jersey.server.ContainerFactory;
+import org.opentripplanner.routing.error.GraphNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.bridge.SLF4JBridgeHandler;
@@ -57,10 +58,20 @@ public class GrizzlyServer {
         sslConfig.setKeyStoreFile(new File(params.basePath, "keystore").getAbsolutePath());
         sslConfig.setKeyStorePass("opentrip");
 
-        /* OTP is CPU-bound, so we want only as many worker threads as we have cores. */
+        /*
+         * OTP is CPU-bound, but the number of routing requests computed at the same time is limited by the admission
+         * control of each router, where the requests beyond that limit wait in a bounded queue against their deadline.
+         * Requests should wait there rather than in the queue of the worker pool, where their waiting time is not
+         * accounted for, so there are enough worker threads for the requests being computed and waiting in all the
+         * routers. The queue of the worker pool is left unbounded: it is shared with the endpoints that are not
+         * admission controlled (index, tiles, static files, geocoder...), which would otherwise be refused by Grizzly
+         * instead of answered with a 503.
+         */
+        int maxWorkerThreads = maxAdmittedRequests();
+        LOG.info("Using at most {} worker threads.", maxWorkerThreads);
         ThreadPoolConfig threadPoolConfig = ThreadPoolConfig.defaultConfig()
             .setCorePoolSize(1)
-            .setMaxPoolSize(Runtime.getRuntime().availableProcessors());
+            .setMaxPoolSize(maxWorkerThreads);
 
         /* HTTP (non-encrypted) listener */
         NetworkListener httpListener = new NetworkListener("otp_insecure", params.bindAddress, params.port);
@@ -134,4 +145,22 @@ public class GrizzlyServer {
         httpServer.shutdown();
 
     }
+
+    /**
+     * @return The number of requests that can be computed or waiting at the same time in the admission controls of the
+     *         routers registered at startup, or of a single router with the default limits if that is more.
+     */
+    private int maxAdmittedRequests() {
+        int total = 0;
+        for (String routerId : server.getRouterIds()) {
+            try {
+                AdmissionControl admissionControl = server.getRouter(routerId).admissionControl;
+                total += admissionControl.maxConcurrentRequests + admissionControl.maxQueuedRequests;
+            } catch (GraphNotFoundException e) {
+                LOG.warn("Router '{}' was evicted while starting the server.", routerId);
+            }
+        }
+        return Math.max(total,
+                AdmissionControl.DEFAULT_MAX_CONCURRENT_REQUESTS + AdmissionControl.DEFAULT_MAX_QUEUED_REQUESTS);
+    }
 }
@@ -9,15 +9,18 @@ import ch.qos.logback.core.FileAppender;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.opentripplanner.analyst.request.*;
 import org.opentripplanner.analyst.scenario.ScenarioStore;
+import org.opentripplanner.common.LuceneIndex;
 import org.opentripplanner.inspector.TileRendererManager;
 import org.opentripplanner.reflect.ReflectiveInitializer;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.RecentRequests;
 import org.opentripplanner.updater.GraphUpdaterConfigurator;
 import org.opentripplanner.visualizer.GraphVisualizer;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.util.EnumMap;
 
 /**
@@ -30,6 +33,9 @@ public class Router {
 
     public static final String ROUTER_CONFIG_FILENAME = "router-config.json";
 
+    /** The default number of recent requests replayed to warm up a reloaded graph. */
+    public static final int DEFAULT_WARM_UP_REQUESTS = 20;
+
     public String id;
     public Graph graph;
     public double[] timeouts = {5, 4, 2};
@@ -60,6 +66,12 @@ public class Router {
     /** Storage for non-destructive alternatives analysis scenarios. */
     public ScenarioStore scenarioStore = new ScenarioStore();
 
+    /** Limits the number of routing requests computed at the same time, see AdmissionControl. */
+    public AdmissionControl admissionControl = new AdmissionControl();
+
+    /** The recent requests replayed against a reloaded graph of this router before it is swapped in. */
+    public RecentRequests recentRequests = new RecentRequests(DEFAULT_WARM_UP_REQUESTS);
+
     public Router(String id, Graph graph) {
         this.id = id;
         this.graph = graph;
@@ -78,11 +90,25 @@ public class Router {
      */
     public void startup(JsonNode config) {
 
-        this.tileRendererManager = new TileRendererManager(this.graph);
+        /* Save inspector tiles on disk if a directory is configured, otherwise keep them in memory only. */
+        JsonNode inspectorTileCache = config.get("inspectorTileCache");
+        File inspectorTileDirectory = null;
+        if (inspectorTileCache != null) {
+            inspectorTileDirectory = new File(inspectorTileCache.asText(), this.id);
+            LOG.info("Caching inspector tiles in '{}'", inspectorTileDirectory);
+        }
+        this.tileRendererManager = new TileRendererManager(this.graph, inspectorTileDirectory);
 
         // Analyst Modules FIXME make these optional based on JSON?
         {
-            this.tileCache = new TileCache(this.graph);
+            /* Save the samples of analyst tiles on disk if a directory is configured. */
+            JsonNode analystTileCache = config.get("analystTileCache");
+            File analystTileDirectory = null;
+            if (analystTileCache != null) {
+                analystTileDirectory = new File(analystTileCache.asText(), this.id);
+                LOG.info("Caching analyst tiles in '{}'", analystTileDirectory);
+            }
+            this.tileCache = new TileCache(this.graph, analystTileDirectory, TileCache.DEFAULT_MAX_BYTES);
             this.renderer = new Renderer(this.tileCache);
             this.sampleGridRenderer = new SampleGridRenderer(this.graph);
             this.isoChroneSPTRenderer = new IsoChroneSPTRendererAccSampling(this.sampleGridRenderer);
@@ -124,6 +150,17 @@ public class Router {
         }
         LOG.info("Timeouts for router '{}': {}", this.id, this.timeouts);
 
+        /* Bound the number of requests computed at the same time and waiting to be computed. */
+        JsonNode maxConcurrentRequests = config.get("maxConcurrentRequests");
+        JsonNode maxQueuedRequests = config.get("maxQueuedRequests");
+        if (maxConcurrentRequests != null || maxQueuedRequests != null) {
+            this.admissionControl = new AdmissionControl(
+                    maxConcurrentRequests != null ? maxConcurrentRequests.asInt() : AdmissionControl.DEFAULT_MAX_CONCURRENT_REQUESTS,
+                    maxQueuedRequests != null ? maxQueuedRequests.asInt() : AdmissionControl.DEFAULT_MAX_QUEUED_REQUESTS);
+        }
+        LOG.info("Router '{}' computes at most {} requests at a time, with {} more waiting.", this.id,
+                this.admissionControl.maxConcurrentRequests, this.admissionControl.maxQueuedRequests);
+
         JsonNode requestLogFile = config.get("requestLogFile");
         if (requestLogFile != null) {
             this.requestLogger = createLogger(requestLogFile.asText());
@@ -132,6 +169,16 @@ public class Router {
             LOG.info("Incoming requests will not be logged.");
         }
 
+        /* Number of recent requests to replay against a reloaded graph before swapping it in, 0 to disable. */
+        JsonNode warmUpRequests = config.get("warmUpRequests");
+        if (warmUpRequests != null) {
+            if (warmUpRequests.isInt()) {
+                this.recentRequests = new RecentRequests(warmUpRequests.intValue());
+            } else {
+                LOG.error("The 'warmUpRequests' configuration option should be a number of requests.");
+            }
+        }
+
         JsonNode boardTimes = config.get("boardTimes");
         if (boardTimes != null && boardTimes.isObject()) {
             graph.boardTimes = new EnumMap<>(TraverseMode.class);
@@ -152,6 +199,14 @@ public class Router {
             }
         }
 
+        /* Memory-map the geocoder index saved alongside the graph, rather than building it on the first request. */
+        if (graph.index != null && graph.directory != null) {
+            File luceneDirectory = new File(graph.directory, LuceneIndex.DIRECTORY_NAME);
+            if (LuceneIndex.exists(graph, luceneDirectory)) {
+                graph.index.luceneIndex = new LuceneIndex(graph.index, luceneDirectory, false);
+            }
+        }
+
         /* Create Graph updater modules from JSON config. */
         GraphUpdaterConfigurator.setupGraph(this.graph, config);
 
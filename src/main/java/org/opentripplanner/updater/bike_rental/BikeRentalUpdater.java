@@ -19,11 +19,12 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import com.fasterxml.jackson.databind.JsonNode;
 import org.opentripplanner.graph_builder.linking.SimpleStreetSplitter;
+import org.opentripplanner.routing.bike_rental.BikeRentalAvailability;
 import org.opentripplanner.routing.bike_rental.BikeRentalStation;
 import org.opentripplanner.routing.bike_rental.BikeRentalStationService;
 import org.opentripplanner.routing.edgetype.RentABikeOffEdge;
@@ -36,8 +37,6 @@ import org.opentripplanner.updater.JsonConfigurable;
 import org.opentripplanner.updater.PollingGraphUpdater;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.Map.Entry;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Dynamic bike-rental station updater which encapsulate one BikeRentalDataSource.
@@ -51,6 +50,10 @@ import java.util.concurrent.ExecutionException;
  * bike1.sourceType = jcdecaux
  * bike1.url = https://api.jcdecaux.com/vls/v1/stations?contract=Xxx?apiKey=Zzz
  * </pre>
+ *
+ * Each poll is compared to the previous one. The number of bikes and spaces available are published directly in a
+ * BikeRentalAvailability table read by the station vertices, and the graph is only modified, by a graph writer
+ * runnable, for the stations which appeared, disappeared or moved.
  */
 public class BikeRentalUpdater extends PollingGraphUpdater {
 
@@ -62,6 +65,11 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
     Map<BikeRentalStation, BikeRentalStationVertex> verticesByStation = new HashMap<BikeRentalStation, BikeRentalStationVertex>();
 
+    /** The stations of the previous poll by ID. Only used in the polling thread. */
+    private Map<String, BikeRentalStation> previousStations = new HashMap<>();
+
+    private final BikeRentalAvailability availability = new BikeRentalAvailability();
+
     private BikeRentalDataSource source;
 
     private Graph graph;
@@ -150,9 +158,56 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
         }
         List<BikeRentalStation> stations = source.getStations();
 
-        // Create graph writer runnable to apply these stations to the graph
-        BikeRentalGraphWriterRunnable graphWriterRunnable = new BikeRentalGraphWriterRunnable(stations);
-        updaterManager.execute(graphWriterRunnable);
+        Set<String> defaultNetworks = new HashSet<String>(Arrays.asList(network));
+        Map<String, BikeRentalStation> currentStations = new HashMap<>();
+        List<BikeRentalStation> added = new ArrayList<>();
+        List<BikeRentalStation> removed = new ArrayList<>();
+        for (BikeRentalStation station : stations) {
+            if (station.networks == null) {
+                /* API did not provide a network list, use default */
+                station.networks = defaultNetworks;
+            }
+            BikeRentalStation previous = previousStations.get(station.id);
+            if (previous == null) {
+                added.add(station);
+            } else if (structuralChange(previous, station)) {
+                removed.add(previous);
+                added.add(station);
+            } else {
+                /* Keep the station known by the graph and the station service, only its counts changed. */
+                previous.bikesAvailable = station.bikesAvailable;
+                previous.spacesAvailable = station.spacesAvailable;
+                previous.realTimeData = station.realTimeData;
+                station = previous;
+            }
+            currentStations.put(station.id, station);
+        }
+        for (BikeRentalStation previous : previousStations.values()) {
+            if (!currentStations.containsKey(previous.id)) {
+                removed.add(previous);
+            }
+        }
+        previousStations = currentStations;
+
+        // Publish the counts, which are read directly by the station vertices
+        availability.update(currentStations.values());
+
+        // Create graph writer runnable to apply the new and removed stations to the graph
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            LOG.debug("{} bike rental stations added, {} removed", added.size(), removed.size());
+            updaterManager.execute(new BikeRentalGraphWriterRunnable(added, removed));
+        }
+    }
+
+    /**
+     * @return True if a station changed in a way that requires to rebuild its vertex and edges, rather than only its
+     *         number of bikes and spaces available.
+     */
+    static boolean structuralChange(BikeRentalStation previous, BikeRentalStation station) {
+        return previous.x != station.x || previous.y != station.y
+                || previous.allowDropoff != station.allowDropoff
+                || !Objects.equals(previous.networks, station.networks)
+                || !Objects.equals(Objects.toString(previous.name, null), Objects.toString(station.name, null));
     }
 
     @Override
@@ -161,58 +216,38 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
     private class BikeRentalGraphWriterRunnable implements GraphWriterRunnable {
 
-        private List<BikeRentalStation> stations;
+        private List<BikeRentalStation> added;
 
-        public BikeRentalGraphWriterRunnable(List<BikeRentalStation> stations) {
-            this.stations = stations;
+        private List<BikeRentalStation> removed;
+
+        public BikeRentalGraphWriterRunnable(List<BikeRentalStation> added, List<BikeRentalStation> removed) {
+            this.added = added;
+            this.removed = removed;
         }
 
-		@Override
+        @Override
         public void run(Graph graph) {
-            // Apply stations to graph
-            Set<BikeRentalStation> stationSet = new HashSet<BikeRentalStation>();
-            Set<String> defaultNetworks = new HashSet<String>(Arrays.asList(network));
-            /* add any new stations and update bike counts for existing stations */
-            for (BikeRentalStation station : stations) {
-                if (station.networks == null) {
-                    /* API did not provide a network list, use default */
-                    station.networks = defaultNetworks;
-                }
-                service.addBikeRentalStation(station);
-                stationSet.add(station);
-                BikeRentalStationVertex vertex = verticesByStation.get(station);
-                if (vertex == null) {
-                    vertex = new BikeRentalStationVertex(graph, station);
-                    if (!linker.link(vertex)) {
-                        // the toString includes the text "Bike rental station"
-                        LOG.warn("{} not near any streets; it will not be usable.", station);
-                    }
-                    verticesByStation.put(station, vertex);
-                    new RentABikeOnEdge(vertex, vertex, station.networks);
-                    if (station.allowDropoff)
-                        new RentABikeOffEdge(vertex, vertex, station.networks);
-                } else {
-                    vertex.setBikesAvailable(station.bikesAvailable);
-                    vertex.setSpacesAvailable(station.spacesAvailable);
-                }
-            }
-            /* remove existing stations that were not present in the update */
-            List<BikeRentalStation> toRemove = new ArrayList<BikeRentalStation>();
-            for (Entry<BikeRentalStation, BikeRentalStationVertex> entry : verticesByStation.entrySet()) {
-                BikeRentalStation station = entry.getKey();
-                if (stationSet.contains(station))
-                    continue;
-                BikeRentalStationVertex vertex = entry.getValue();
-                if (graph.containsVertex(vertex)) {
+            /* remove the stations that disappeared or changed, before adding them back */
+            for (BikeRentalStation station : removed) {
+                BikeRentalStationVertex vertex = verticesByStation.remove(station);
+                if (vertex != null && graph.containsVertex(vertex)) {
                     graph.removeVertexAndEdges(vertex);
                 }
-                toRemove.add(station);
                 service.removeBikeRentalStation(station);
                 // TODO: need to unsplit any streets that were split
             }
-            for (BikeRentalStation station : toRemove) {
-                // post-iteration removal to avoid concurrent modification
-                verticesByStation.remove(station);
+            /* add the new stations, their counts are read from the availability table */
+            for (BikeRentalStation station : added) {
+                service.addBikeRentalStation(station);
+                BikeRentalStationVertex vertex = new BikeRentalStationVertex(graph, station, availability);
+                if (!linker.link(vertex)) {
+                    // the toString includes the text "Bike rental station"
+                    LOG.warn("{} not near any streets; it will not be usable.", station);
+                }
+                verticesByStation.put(station, vertex);
+                new RentABikeOnEdge(vertex, vertex, station.networks);
+                if (station.allowDropoff)
+                    new RentABikeOffEdge(vertex, vertex, station.networks);
             }
         }
     }
@@ -84,9 +84,10 @@ public class PolylineEncoder {
             plat = late5;
             plng = lnge5;
 
-            encodedPoints.append(encodeSignedNumber(dlat)).append(encodeSignedNumber(dlng));
+            appendSignedNumber(encodedPoints, dlat);
+            appendSignedNumber(encodedPoints, dlng);
             if (level >= 0)
-                encodedLevels.append(encodeNumber(level));
+                appendNumber(encodedLevels, level);
             count++;
         }
 
@@ -125,16 +126,22 @@ public class PolylineEncoder {
      * Private Methods
      ****************************************************************************/
 
-    private static final int floor1e5(double coordinate) {
+    static final int floor1e5(double coordinate) {
         return (int) Math.floor(coordinate * 1e5);
     }
 
     public static String encodeSignedNumber(int num) {
+        StringBuilder encodeString = new StringBuilder();
+        appendSignedNumber(encodeString, num);
+        return encodeString.toString();
+    }
+
+    static void appendSignedNumber(StringBuilder encodeString, int num) {
         int sgn_num = num << 1;
         if (num < 0) {
             sgn_num = ~(sgn_num);
         }
-        return (encodeNumber(sgn_num));
+        appendNumber(encodeString, sgn_num);
     }
 
     public static int decodeSignedNumber(String value) {
@@ -153,8 +160,12 @@ public class PolylineEncoder {
     }
 
     public static String encodeNumber(int num) {
+        StringBuilder encodeString = new StringBuilder();
+        appendNumber(encodeString, num);
+        return encodeString.toString();
+    }
 
-        StringBuffer encodeString = new StringBuffer();
+    static void appendNumber(StringBuilder encodeString, int num) {
 
         while (num >= 0x20) {
             int nextValue = (0x20 | (num & 0x1f)) + 63;
@@ -164,8 +175,6 @@ public class PolylineEncoder {
 
         num += 63;
         encodeString.append((char) (num));
-
-        return encodeString.toString();
     }
 
     public static int decodeNumber(String value) {
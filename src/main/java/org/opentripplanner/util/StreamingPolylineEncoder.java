@@ -0,0 +1,68 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.util;
+
+import org.opentripplanner.common.geometry.CoordinateConsumer;
+import org.opentripplanner.util.model.EncodedPolylineBean;
+
+/**
+ * Builds an encoded polyline one point at a time, so that geometries can be encoded straight from their compacted
+ * form (see StreetEdge.forEachGeometryCoordinate) without creating JTS objects. The result is identical to that of
+ * {@link PolylineEncoder#createEncodings(Iterable)} on the same points, without levels.
+ */
+public class StreamingPolylineEncoder implements CoordinateConsumer {
+
+    private final StringBuilder encodedPoints = new StringBuilder();
+
+    private int plat = 0;
+
+    private int plng = 0;
+
+    private int count = 0;
+
+    private boolean skipNext = false;
+
+    /** Add a point, unless skipNextPoint() was called since the last point was added. */
+    @Override
+    public void accept(double lon, double lat) {
+        if (skipNext) {
+            skipNext = false;
+            return;
+        }
+
+        int late5 = PolylineEncoder.floor1e5(lat);
+        int lnge5 = PolylineEncoder.floor1e5(lon);
+
+        PolylineEncoder.appendSignedNumber(encodedPoints, late5 - plat);
+        PolylineEncoder.appendSignedNumber(encodedPoints, lnge5 - plng);
+
+        plat = late5;
+        plng = lnge5;
+        count++;
+    }
+
+    /** Drop the next point added, for geometries that start where the previous one ended. */
+    public void skipNextPoint() {
+        skipNext = true;
+    }
+
+    /** @return the number of points encoded so far. */
+    public int getPointCount() {
+        return count;
+    }
+
+    public EncodedPolylineBean getEncodedPolyline() {
+        return new EncodedPolylineBean(encodedPoints.toString(), null, count);
+    }
+}
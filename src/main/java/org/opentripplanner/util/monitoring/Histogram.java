@@ -0,0 +1,82 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.util.monitoring;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram with fixed buckets, in the manner of Prometheus: each observed value is counted in the first bucket
+ * whose upper bound is not below it, or in an overflow bucket. Recording a value does not take any lock, so this can
+ * be used on the routing path of every request.
+ */
+public class Histogram {
+
+    /** Bucket upper bounds in seconds, for latencies from a fraction of a millisecond to a minute. */
+    public static final double[] SECONDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+    /** Bucket upper bounds for counts, such as the number of vertices visited by a search. */
+    public static final double[] COUNTS = {
+            10, 100, 1000, 5000, 10000, 50000, 100000, 500000, 1000000, 5000000, 10000000 };
+
+    private final double[] bounds;
+
+    /** One counter per bound, plus one for the values above all the bounds. */
+    private final LongAdder[] buckets;
+
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /** @param bounds The upper bounds of the buckets, in increasing order. */
+    public Histogram(double[] bounds) {
+        this.bounds = bounds;
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double value) {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        sum.add(value);
+    }
+
+    /** Observe a duration given in nanoseconds, in a histogram with bounds in seconds. */
+    public void observeNanos(long nanos) {
+        observe(nanos / 1e9);
+    }
+
+    public double[] getBounds() {
+        return bounds;
+    }
+
+    /** @return The number of values observed up to each bound, the last one being the total count. */
+    public long[] getCumulativeCounts() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            total += buckets[i].sum();
+            counts[i] = total;
+        }
+        return counts;
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+}
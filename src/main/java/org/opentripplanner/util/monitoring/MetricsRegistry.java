@@ -0,0 +1,138 @@
+/* This program is free software: you can redistribute it and/or
+ modify it under the terms of the GNU Lesser General Public License
+ as published by the Free Software Foundation, either version 3 of
+ the License, or (props, at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>. */
+
+package org.opentripplanner.util.monitoring;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A set of named histograms and counters, each one possibly split by labels (for instance by router and mode), which
+ * can be written in the Prometheus text exposition format. Metrics are created on first use.
+ */
+public class MetricsRegistry {
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param labels Alternating label names and values, the same names in the same order at each call for a name.
+     * @return The histogram with the given name and label values.
+     */
+    public Histogram histogram(String name, String help, double[] bounds, String... labels) {
+        return (Histogram) family(name, help, "histogram", labels, l -> new Histogram(bounds));
+    }
+
+    /**
+     * @param labels Alternating label names and values, the same names in the same order at each call for a name.
+     * @return The counter with the given name and label values.
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, help, "counter", labels, l -> new LongAdder());
+    }
+
+    private Object family(String name, String help, String type, String[] labels, Function<List<String>, Object> create) {
+        Family family = families.get(name);
+        if (family == null) {
+            family = families.computeIfAbsent(name, n -> new Family(help, type));
+        }
+        return family.metrics.computeIfAbsent(Arrays.asList(labels), create);
+    }
+
+    /** Write all the metrics in the Prometheus text exposition format (version 0.0.4). */
+    public void writePrometheus(Writer writer) throws IOException {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            writer.write("# HELP " + name + " " + family.help + "\n");
+            writer.write("# TYPE " + name + " " + family.type + "\n");
+            for (Map.Entry<List<String>, Object> metric : family.metrics.entrySet()) {
+                List<String> labels = metric.getKey();
+                if (metric.getValue() instanceof Histogram) {
+                    Histogram histogram = (Histogram) metric.getValue();
+                    double[] bounds = histogram.getBounds();
+                    long[] counts = histogram.getCumulativeCounts();
+                    for (int i = 0; i < counts.length; i++) {
+                        String le = i < bounds.length ? format(bounds[i]) : "+Inf";
+                        writeSample(writer, name + "_bucket", labels, "le", le, counts[i]);
+                    }
+                    writeSample(writer, name + "_sum", labels, null, null, histogram.getSum());
+                    writeSample(writer, name + "_count", labels, null, null, counts[counts.length - 1]);
+                } else {
+                    writeSample(writer, name, labels, null, null, ((LongAdder) metric.getValue()).sum());
+                }
+            }
+        }
+    }
+
+    /** Write a single sample with its labels, and an extra label if extraName is not null. */
+    public static void writeSample(Writer writer, String name, List<String> labels, String extraName,
+            String extraValue, double value) throws IOException {
+        StringBuilder sb = new StringBuilder(name);
+        if (!labels.isEmpty() || extraName != null) {
+            sb.append('{');
+            for (int i = 0; i + 1 < labels.size(); i += 2) {
+                appendLabel(sb, labels.get(i), labels.get(i + 1));
+            }
+            if (extraName != null) {
+                appendLabel(sb, extraName, extraValue);
+            }
+            sb.setCharAt(sb.length() - 1, '}');
+        }
+        sb.append(' ').append(format(value)).append('\n');
+        writer.write(sb.toString());
+    }
+
+    private static void appendLabel(StringBuilder sb, String name, String value) {
+        sb.append(name).append("=\"");
+        String v = value == null ? "" : value;
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append("\",");
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static class Family {
+
+        final String help;
+
+        final String type;
+
+        final Map<List<String>, Object> metrics = new ConcurrentHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
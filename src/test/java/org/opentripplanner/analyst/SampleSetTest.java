@@ -0,0 +1,87 @@
+package org.opentripplanner.analyst;
+
+import com.vividsolutions.jts.geom.Envelope;
+import junit.framework.TestCase;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.buildGraphNoTransit;
+
+/**
+ * Test linking point sets to the street network and saving the results.
+ */
+public class SampleSetTest extends TestCase {
+
+    /** Link a grid of points, save the result and load it again. Both versions should be identical. */
+    public void testWriteAndRead () throws Exception {
+        Graph g = buildGraphNoTransit();
+        g.index(new DefaultStreetVertexIndexFactory());
+
+        PointSet grid = PointSet.regularGrid(new Envelope(-83.02, -83.00, 39.98, 40.00), 200);
+        SampleSet linked = new SampleSet(grid, g.getSampleFactory());
+
+        int linkedCount = 0;
+        for (int i = 0; i < grid.capacity; i++) {
+            if (linked.v0s[i] != null) linkedCount++;
+        }
+        assertTrue(linkedCount > 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        linked.write(out, g);
+        SampleSet loaded = SampleSet.read(new ByteArrayInputStream(out.toByteArray()), grid, g);
+        assertNotNull(loaded);
+
+        for (int i = 0; i < grid.capacity; i++) {
+            assertSame(linked.v0s[i], loaded.v0s[i]);
+            assertSame(linked.v1s[i], loaded.v1s[i]);
+            assertEquals(linked.d0s[i], loaded.d0s[i]);
+            assertEquals(linked.d1s[i], loaded.d1s[i]);
+        }
+
+        // A SampleSet saved for another graph must not be used.
+        Thread.sleep(10);
+        Graph rebuilt = buildGraphNoTransit();
+        rebuilt.index(new DefaultStreetVertexIndexFactory());
+        assertNull(SampleSet.read(new ByteArrayInputStream(out.toByteArray()), grid, rebuilt));
+    }
+
+    /**
+     * A SampleSet can be read back for the same graph saved and loaded again, although loading the graph gives its
+     * vertices new indices.
+     */
+    public void testReadInLoadedGraph () throws Exception {
+        Graph g = buildGraphNoTransit();
+        g.index(new DefaultStreetVertexIndexFactory());
+        PointSet grid = PointSet.regularGrid(new Envelope(-83.02, -83.00, 39.98, 40.00), 200);
+        SampleSet linked = new SampleSet(grid, g.getSampleFactory());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        linked.write(out, g);
+
+        ByteArrayOutputStream graphBytes = new ByteArrayOutputStream();
+        ObjectOutputStream graphOut = new ObjectOutputStream(graphBytes);
+        g.save(graphOut);
+        graphOut.close();
+        Graph loadedGraph = Graph.load(new ByteArrayInputStream(graphBytes.toByteArray()), Graph.LoadLevel.FULL);
+        assertEquals(g.getFingerprint(), loadedGraph.getFingerprint());
+
+        SampleSet loaded = SampleSet.read(new ByteArrayInputStream(out.toByteArray()), grid, loadedGraph);
+        assertNotNull(loaded);
+        for (int i = 0; i < grid.capacity; i++) {
+            if (linked.v0s[i] == null) {
+                assertNull(loaded.v0s[i]);
+                continue;
+            }
+            assertNotSame(linked.v0s[i], loaded.v0s[i]);
+            assertEquals(linked.v0s[i].getLabel(), loaded.v0s[i].getLabel());
+            if (linked.v1s[i] != null) {
+                assertEquals(linked.v1s[i].getLabel(), loaded.v1s[i].getLabel());
+            }
+            assertEquals(linked.d0s[i], loaded.d0s[i]);
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.opentripplanner.analyst.broker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import junit.framework.TestCase;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.grizzly.http.server.NetworkListener;
+import org.opentripplanner.analyst.cluster.AnalystWorker;
+
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Run an AnalystWorker in dry run mode against a LocalBroker, to test the prefetching and acknowledgement of tasks.
+ */
+public class LocalBrokerTest extends TestCase {
+
+    private static final int N_TASKS = 50;
+
+    /** With a single compute thread, every task should be processed and acknowledged exactly once, in order. */
+    public void testAllTasksAcknowledgedInOrder () throws Exception {
+        ObjectNode template = new ObjectMapper().createObjectNode();
+        template.put("graphId", "GRAPH");
+        template.put("jobId", "JOB");
+        template.put("outputLocation", "BUCKET");
+        LocalBroker broker = new LocalBroker(template, N_TASKS);
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        HttpServer httpServer = new HttpServer();
+        httpServer.addListener(new NetworkListener("local-broker", "127.0.0.1", port));
+        httpServer.getServerConfiguration().addHttpHandler(broker, "/*");
+        httpServer.start();
+
+        AnalystWorker worker = null;
+        Thread workerThread = null;
+        try {
+            Properties config = new Properties();
+            config.setProperty("broker-address", "127.0.0.1");
+            config.setProperty("broker-port", Integer.toString(port));
+            config.setProperty("dry-run-failure-rate", "0");
+            config.setProperty("batch-threads", "1");
+            worker = new AnalystWorker(config);
+            workerThread = new Thread(worker);
+            workerThread.start();
+
+            long timeout = System.currentTimeMillis() + 60 * 1000;
+            while (broker.getCompletedTaskIds().size() < N_TASKS && System.currentTimeMillis() < timeout) {
+                Thread.sleep(100);
+            }
+            // Stopping the worker acknowledges any task it still holds, so a task acknowledged twice shows up below.
+            worker.stop();
+            workerThread.join(60 * 1000);
+            assertFalse("The worker should stop once its tasks are acknowledged.", workerThread.isAlive());
+
+            List<Integer> expected = IntStream.range(0, N_TASKS).boxed().collect(Collectors.toList());
+            assertEquals(expected, broker.getCompletedTaskIds());
+        } finally {
+            if (workerThread != null) {
+                worker.stop();
+                workerThread.join(60 * 1000);
+            }
+            httpServer.shutdownNow();
+        }
+    }
+}
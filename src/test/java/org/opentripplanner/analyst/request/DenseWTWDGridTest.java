@@ -0,0 +1,55 @@
+package org.opentripplanner.analyst.request;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
+import org.opentripplanner.analyst.request.SampleGridRenderer.WTWDAccumulativeMetric;
+import org.opentripplanner.common.geometry.AccumulativeGridSampler;
+import org.opentripplanner.common.geometry.SparseMatrixZSampleGrid;
+import org.opentripplanner.common.geometry.ZSampleGrid.ZSamplePoint;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+public class DenseWTWDGridTest extends TestCase {
+
+    /** Sampling in two dense grids and merging them gives the same grid as sampling directly. */
+    public void testMergeEqualsDirectSampling() {
+        Coordinate center = new Coordinate(-122.68, 45.52);
+        double dX = 0.001, dY = 0.0007;
+        WTWDAccumulativeMetric metric = new WTWDAccumulativeMetric(Math.cos(Math.toRadians(center.y)),
+                200, 1.3, 100);
+        SparseMatrixZSampleGrid<WTWD> direct = new SparseMatrixZSampleGrid<WTWD>(16, 1000, dX, dY, center);
+        AccumulativeGridSampler<WTWD> sampler = new AccumulativeGridSampler<WTWD>(direct, metric);
+        DenseWTWDGrid tile1 = new DenseWTWDGrid(dX, dY, center);
+        DenseWTWDGrid tile2 = new DenseWTWDGrid(dX, dY, center);
+        // Spread the points widely enough for the dense grids to grow in every direction
+        for (int i = 0; i < 200; i++) {
+            Coordinate c = new Coordinate(center.x + Math.sin(i * 0.7) * 0.1 * i / 200, center.y
+                    + Math.cos(i * 1.3) * 0.1 * i / 200);
+            double t = i * 10, b = i % 3, wd = i * 5;
+            WTWD z = new WTWD();
+            z.w = 1.0;
+            z.wTime = t;
+            z.wBoardings = b;
+            z.wWalkDist = wd;
+            z.d = 0;
+            sampler.addSamplingPoint(c, z, 1.3);
+            (i % 2 == 0 ? tile1 : tile2).addSamplingPoint(c, t, b, wd, 1.3, metric);
+        }
+        SparseMatrixZSampleGrid<WTWD> merged = new SparseMatrixZSampleGrid<WTWD>(16, 1000, dX, dY, center);
+        tile1.mergeInto(merged);
+        tile2.mergeInto(merged);
+
+        assertEquals(direct.size(), merged.size());
+        for (ZSamplePoint<WTWD> p : direct) {
+            WTWD expected = p.getZ();
+            WTWD actual = merged.getOrCreate(p.getX(), p.getY()).getZ();
+            assertNotNull(actual);
+            assertEquals(expected.w, actual.w, expected.w * 1e-9);
+            assertEquals(expected.wTime / expected.w, actual.wTime / actual.w, 1e-6);
+            assertEquals(expected.wBoardings / expected.w, actual.wBoardings / actual.w, 1e-6);
+            assertEquals(expected.wWalkDist / expected.w, actual.wWalkDist / actual.w, 1e-6);
+            assertEquals(expected.d, actual.d, 1e-9);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.opentripplanner.analyst.request;
+
+import com.google.common.io.Files;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.opentripplanner.analyst.core.Sample;
+import org.opentripplanner.analyst.core.SlippyTile;
+import org.opentripplanner.analyst.core.TemplateTile;
+import org.opentripplanner.analyst.core.Tile;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectOutputStream;
+
+public class TileCacheTest extends TestCase {
+
+    /** Samples saved on disk are the same as the ones computed when the tile was first requested. */
+    public void testDiskCache() throws Exception {
+        Graph graph = FakeGraph.buildGraphNoTransit();
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        // A zoom 15 tile around a vertex of the graph
+        Vertex v = graph.getVertices().iterator().next();
+        int zoom = 15;
+        int x = (int) Math.floor((v.getLon() + 180) / 360 * (1 << zoom));
+        double latRad = Math.toRadians(v.getLat());
+        int y = (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * (1 << zoom));
+        TileRequest request = new TileRequest(SlippyTile.tile2Envelope(x, y, zoom), 64, 64);
+
+        File dir = Files.createTempDir();
+        try {
+            Sample[] sampled = new TileCache(graph, dir, 1024 * 1024).get(request).getSamples();
+            assertEquals(64 * 64, sampled.length);
+            assertTrue(new File(dir, graph.getFingerprint()).list().length == 1);
+
+            int nSamples = 0;
+            Sample[] loaded = new TileCache(graph, dir, 1024 * 1024).get(request).getSamples();
+            assertEquals(sampled.length, loaded.length);
+            for (int i = 0; i < sampled.length; i++) {
+                if (sampled[i] == null) {
+                    assertNull(loaded[i]);
+                    continue;
+                }
+                nSamples++;
+                assertSame(sampled[i].v0, loaded[i].v0);
+                assertSame(sampled[i].v1, loaded[i].v1);
+                assertEquals(sampled[i].d0, loaded[i].d0);
+                assertEquals(sampled[i].d1, loaded[i].d1);
+            }
+            assertTrue(nSamples > 0);
+
+            // the same graph loaded again, with other vertex indices, reads the saved samples
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            graph.save(out);
+            out.close();
+            Graph reloaded = Graph.load(new ByteArrayInputStream(bytes.toByteArray()), Graph.LoadLevel.FULL);
+            File saved = new File(dir, graph.getFingerprint()).listFiles()[0];
+            assertTrue(saved.setLastModified(0));
+            Sample[] reloadedSamples = new TileCache(reloaded, dir, 1024 * 1024).get(request).getSamples();
+            assertEquals(0, saved.lastModified());
+            for (int i = 0; i < sampled.length; i++) {
+                if (sampled[i] != null && sampled[i].v0 != null) {
+                    assertEquals(sampled[i].v0.getLabel(), reloadedSamples[i].v0.getLabel());
+                    assertEquals(sampled[i].d0, reloadedSamples[i].d0);
+                }
+            }
+
+            // the tiles of another graph are removed
+            File otherGraph = new File(dir, "another");
+            otherGraph.mkdirs();
+            new TileCache(graph, dir, 1024 * 1024);
+            assertFalse(otherGraph.exists());
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    /** A tile which could not be sampled entirely is neither saved on disk nor kept in memory. */
+    public void testIncompleteTile() throws Exception {
+        // Without a street index, sampling fails
+        Graph graph = FakeGraph.buildGraphNoTransit();
+        TileRequest request = new TileRequest(SlippyTile.tile2Envelope(8719, 12376, 15), 64, 64);
+
+        File dir = Files.createTempDir();
+        try {
+            TileCache cache = new TileCache(graph, dir, 1024 * 1024);
+            Tile tile = cache.get(request);
+            assertFalse(((TemplateTile) tile).isComplete());
+            String[] files = new File(dir, graph.getFingerprint()).list();
+            assertTrue(files == null || files.length == 0);
+            assertNotSame(tile, cache.get(request));
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+}
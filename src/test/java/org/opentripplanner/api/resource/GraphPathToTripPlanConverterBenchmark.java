@@ -0,0 +1,90 @@
+package org.opentripplanner.api.resource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.impl.GraphPathFinder;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.standalone.Router;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time the conversion of the paths found by walk and transit searches on the Columbus test graph into trip plans, as
+ * done for the responses of the planner API. The searches themselves are done once, during the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphPathToTripPlanConverterBenchmark {
+
+    /** The number of trip plans in each invocation of the benchmark. */
+    private static final int N_PLANS = 20;
+
+    private List<RoutingRequest> requests = new ArrayList<>();
+
+    private List<List<GraphPath>> paths = new ArrayList<>();
+
+    @Setup
+    public void setup () throws Exception {
+        Graph graph = FakeGraph.buildGraphNoTransit();
+        FakeGraph.addPerpendicularRoutes(graph);
+        FakeGraph.link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+        GraphPathFinder graphPathFinder = new GraphPathFinder(new Router("default", graph));
+        // Random places within the grid of transit lines
+        Random random = new Random(42);
+        while (requests.size() < N_PLANS) {
+            RoutingRequest request = new RoutingRequest("WALK,TRANSIT");
+            request.setDateTime("2016-04-20", "13:00", graph.getTimeZone());
+            request.from = new GenericLocation(39.92 + random.nextDouble() * 0.09, -83.10 + random.nextDouble() * 0.2);
+            request.to = new GenericLocation(39.92 + random.nextDouble() * 0.09, -83.10 + random.nextDouble() * 0.2);
+            request.showIntermediateStops = true;
+            try {
+                List<GraphPath> found = graphPathFinder.graphPathFinderEntryPoint(request);
+                requests.add(request);
+                paths.add(found);
+            } catch (RuntimeException e) {
+                // No path between these places, draw others
+                request.cleanup();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown () {
+        for (RoutingRequest request : requests) {
+            request.cleanup();
+        }
+    }
+
+    @Benchmark
+    public int generatePlans () {
+        int nLegs = 0;
+        for (int i = 0; i < N_PLANS; i++) {
+            TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths.get(i), requests.get(i));
+            nLegs += plan.itinerary.get(0).legs.size();
+        }
+        return nLegs;
+    }
+}
@@ -0,0 +1,68 @@
+package org.opentripplanner.common;
+
+import com.google.common.io.Files;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.common.LuceneIndex.LuceneResult;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.io.File;
+import java.util.List;
+
+public class LuceneIndexTest extends TestCase {
+
+    /** An index is saved for its graph, opened again rather than rebuilt, and replaced by the index of a new graph. */
+    public void testSavedIndex() throws Exception {
+        File dir = Files.createTempDir();
+        try {
+            Graph graph = ConstantsForTests.buildGraph(ConstantsForTests.FAKE_GTFS);
+            graph.index(new DefaultStreetVertexIndexFactory());
+            assertFalse(LuceneIndex.exists(graph, dir));
+
+            LuceneIndex index = new LuceneIndex(graph.index, dir, false);
+            assertTrue(LuceneIndex.exists(graph, dir));
+            File indexDirectory = new File(dir, LuceneIndex.graphKey(graph));
+            assertFalse(new File(dir, indexDirectory.getName() + ".tmp").exists());
+            List<LuceneResult> results = index.query("b", true, true, false, false);
+            assertFalse(results.isEmpty());
+
+            // Lucene ignores files it did not write, and a rebuilt index would not contain this one
+            File marker = new File(indexDirectory, "marker");
+            assertTrue(marker.createNewFile());
+            LuceneIndex reopened = new LuceneIndex(graph.index, dir, false);
+            assertTrue(marker.exists());
+            assertEquals(results.size(), reopened.query("b", true, true, false, false).size());
+
+            Thread.sleep(10);
+            Graph rebuilt = ConstantsForTests.buildGraph(ConstantsForTests.FAKE_GTFS);
+            rebuilt.index(new DefaultStreetVertexIndexFactory());
+            new LuceneIndex(rebuilt.index, dir, false);
+            assertTrue(LuceneIndex.exists(rebuilt, dir));
+            assertFalse(indexDirectory.exists());
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    /** Autocomplete results are cached for each combination of query string and categories. */
+    public void testAutocompleteCache() throws Exception {
+        File dir = Files.createTempDir();
+        try {
+            Graph graph = ConstantsForTests.buildGraph(ConstantsForTests.FAKE_GTFS);
+            graph.index(new DefaultStreetVertexIndexFactory());
+            LuceneIndex index = new LuceneIndex(graph.index, dir, false);
+
+            List<LuceneResult> results = index.query("b", true, true, false, false);
+            assertSame(results, index.query("b", true, true, false, false));
+            assertNotSame(results, index.query("b", true, true, true, false));
+            assertNotSame(results, index.query("c", true, true, false, false));
+            // Fuzzy queries are not cached
+            List<LuceneResult> fuzzy = index.query("b", false, true, false, false);
+            assertNotSame(fuzzy, index.query("b", false, true, false, false));
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.opentripplanner.common;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time the detection of islands in StreetUtils.pruneFloatingIslands on a large synthetic street grid, scattered with
+ * small islands as a street network built from OSM would be.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StreetUtilsBenchmark {
+
+    /** The number of vertices along each side of the main grid. */
+    @Param({ "300", "1000" })
+    public int size;
+
+    private Graph graph;
+
+    @Setup
+    public void setup () {
+        graph = new Graph();
+        StreetUtilsTest.makeGrid(graph, "grid", size, 0, 0, StreetTraversalPermission.ALL);
+        // one small island per 10000 vertices of the grid, above it
+        for (int i = 0; i < size * size / 10000; i++) {
+            StreetUtilsTest.makeGrid(graph, "island" + i, 3, i * 0.01, size * 0.001 + 0.01,
+                    StreetTraversalPermission.PEDESTRIAN);
+        }
+    }
+
+    /** Pruning itself is not measured, as it would change the graph. */
+    @Benchmark
+    public int findStreetComponents () {
+        return StreetUtils.findStreetComponents(graph).countComponents();
+    }
+}
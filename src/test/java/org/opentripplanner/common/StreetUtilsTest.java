@@ -0,0 +1,75 @@
+package org.opentripplanner.common;
+
+import junit.framework.TestCase;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+/**
+ * Test island detection and pruning.
+ */
+public class StreetUtilsTest extends TestCase {
+
+    public void testIntDisjointSet() {
+        IntDisjointSet sets = new IntDisjointSet(10);
+        sets.union(1, 2);
+        sets.union(3, 4);
+        sets.union(2, 4);
+        assertEquals(sets.find(1), sets.find(3));
+        assertEquals(4, sets.size(4));
+        assertEquals(1, sets.size(5));
+        assertTrue(sets.find(5) != sets.find(1));
+    }
+
+    public void testPruneFloatingIslands() {
+        Graph graph = new Graph();
+        IntersectionVertex[][] grid = makeGrid(graph, "grid", 8, 0, 0, StreetTraversalPermission.ALL);
+        IntersectionVertex[][] island = makeGrid(graph, "island", 2, 1, 1, StreetTraversalPermission.PEDESTRIAN);
+        IntersectionVertex[][] carIsland = makeGrid(graph, "car", 2, 2, 2, StreetTraversalPermission.ALL);
+
+        StreetUtils.StreetComponents components = StreetUtils.findStreetComponents(graph);
+        assertEquals(3, components.countComponents());
+        assertEquals(64, components.sets.size(grid[0][0].getIndex()));
+        assertEquals(components.sets.find(grid[0][0].getIndex()), components.sets.find(grid[7][7].getIndex()));
+
+        StreetUtils.pruneFloatingIslands(graph, 10, 5, null);
+
+        // the large component is untouched
+        assertNotNull(graph.getVertex(grid[7][7].getLabel()));
+        assertEquals(StreetTraversalPermission.ALL, ((StreetEdge) grid[0][0].getOutgoing().iterator().next()).getPermission());
+        // the pedestrian island is removed entirely, the other one can only be driven
+        assertNull(graph.getVertex(island[0][0].getLabel()));
+        for (IntersectionVertex[] row : carIsland) {
+            for (IntersectionVertex v : row) {
+                assertEquals(StreetTraversalPermission.CAR, ((StreetEdge) v.getOutgoing().iterator().next()).getPermission());
+            }
+        }
+    }
+
+    /**
+     * Make a square grid of vertices about 100m apart, connected by streets in both directions.
+     */
+    static IntersectionVertex[][] makeGrid(Graph graph, String name, int size, double lon, double lat,
+            StreetTraversalPermission permission) {
+        double spacing = 0.001;
+        IntersectionVertex[][] vertices = new IntersectionVertex[size][size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                vertices[x][y] = new IntersectionVertex(graph, name + "_" + x + "_" + y, lon + x * spacing,
+                        lat + y * spacing);
+                if (x > 0) link(vertices[x - 1][y], vertices[x][y], permission);
+                if (y > 0) link(vertices[x][y - 1], vertices[x][y], permission);
+            }
+        }
+        return vertices;
+    }
+
+    private static void link(IntersectionVertex v0, IntersectionVertex v1, StreetTraversalPermission permission) {
+        new StreetEdge(v0, v1, GeometryUtils.makeLineString(v0.getX(), v0.getY(), v1.getX(), v1.getY()),
+                v0.getLabel() + " to " + v1.getLabel(), 100, permission, false);
+        new StreetEdge(v1, v0, GeometryUtils.makeLineString(v1.getX(), v1.getY(), v0.getX(), v0.getY()),
+                v1.getLabel() + " to " + v0.getLabel(), 100, permission, true);
+    }
+}
@@ -13,6 +13,9 @@
 
 package org.opentripplanner.common.geometry;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import junit.framework.TestCase;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -45,6 +48,13 @@ public class CompactElevationProfileTest extends TestCase {
             return;
         }
         assertEquals(elev1.size(), elev2.size());
+        List<Coordinate> points = new ArrayList<Coordinate>();
+        CompactElevationProfile.forEachPoint(packed, (x, y) -> points.add(new Coordinate(x, y)));
+        assertEquals(elev2.size(), points.size());
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(elev2.getOrdinate(i, 0), points.get(i).x);
+            assertEquals(elev2.getOrdinate(i, 1), points.get(i).y);
+        }
         for (int i = 0; i < elev1.size(); i++) {
             Coordinate c1 = elev1.getCoordinate(i);
             Coordinate c2 = elev2.getCoordinate(i);
@@ -116,6 +116,36 @@ public class CompactLineStringTest extends TestCase {
         packTest(new int[] { 8100, 8200, 8300 }, 8);
     }
 
+    @Test
+    public final void testForEachCoordinate() {
+
+        GeometryFactory gf = new GeometryFactory();
+
+        double x0 = 1.111111111;
+        double y0 = 0.123456789;
+        double x1 = 2.0;
+        double y1 = 0.0;
+        LineString ls = gf.createLineString(new Coordinate[] { new Coordinate(x0, y0),
+                new Coordinate(1.3333333, 0.654321), new Coordinate(1.5, -0.987654),
+                new Coordinate(x1, y1) });
+        for (boolean reverse : new boolean[] { false, true }) {
+            // As in StreetEdge, back edges store the reversed geometry.
+            LineString stored = reverse ? (LineString) ls.reverse() : ls;
+            int[] coords = CompactLineString.compactLineString(x0, y0, x1, y1, stored, reverse);
+            Coordinate[] expected = CompactLineString.uncompactLineString(x0, y0, x1, y1, coords,
+                    reverse).getCoordinates();
+            List<Coordinate> actual = new ArrayList<Coordinate>();
+            CompactLineString.forEachCoordinate(x0, y0, x1, y1, coords, reverse,
+                    (x, y) -> actual.add(new Coordinate(x, y)));
+            assertEquals(expected.length, actual.size());
+            for (int i = 0; i < expected.length; i++) {
+                // Exactly equal, so that encoded polylines do not change
+                assertEquals(expected[i].x, actual.get(i).x);
+                assertEquals(expected[i].y, actual.get(i).y);
+            }
+        }
+    }
+
     private void packTest(int[] arr, int expectedPackedLen) {
         byte[] packed = DlugoszVarLenIntPacker.pack(arr);
         System.out.println("Unpacked: " + Arrays.toString(arr) + " -> packed: "
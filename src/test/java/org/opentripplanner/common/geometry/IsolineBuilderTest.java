@@ -0,0 +1,120 @@
+package org.opentripplanner.common.geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.opentripplanner.common.geometry.IsolineBuilder.ZMetric;
+import org.opentripplanner.common.geometry.ZSampleGrid.ZSamplePoint;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+
+public class IsolineBuilderTest extends TestCase {
+
+    private static final ZMetric<Double> METRIC = new ZMetric<Double>() {
+        @Override
+        public int cut(Double zA, Double zB, Double z0) {
+            if (zA < z0 && z0 <= zB)
+                return 1;
+            if (zB < z0 && z0 <= zA)
+                return -1;
+            return 0;
+        }
+
+        @Override
+        public double interpolate(Double zA, Double zB, Double z0) {
+            return zA.equals(zB) ? 0.5 : (z0 - zA) / (zB - zA);
+        }
+    };
+
+    /** Computing several isolines at once gives the same isolines as computing them one by one. */
+    public void testDelaunayMultipleIsolines() {
+        SparseMatrixZSampleGrid<Double> grid = new SparseMatrixZSampleGrid<Double>(16, 2000, 1.0,
+                1.0, new Coordinate(0, 0));
+        // A cone with a dent in it, so some isolines have holes, surrounded by a border of high
+        // values so that the triangulation is closed.
+        for (int x = -20; x <= 20; x++) {
+            for (int y = -20; y <= 20; y++) {
+                double z = Math.sqrt(x * x + y * y);
+                if (Math.abs(x - 3) <= 1 && Math.abs(y) <= 1)
+                    z = 20;
+                if (Math.abs(x) == 20 || Math.abs(y) == 20)
+                    z = 100;
+                ZSamplePoint<Double> p = grid.getOrCreate(x, y);
+                p.setZ(z);
+            }
+        }
+        List<Double> z0s = Arrays.asList(15.5, 3.5, 7.5, 11.5, 7.5);
+        DelaunayIsolineBuilder<Double> builder = new DelaunayIsolineBuilder<Double>(
+                grid.delaunayTriangulate(), METRIC);
+        List<Geometry> isolines = builder.computeIsolines(z0s);
+        assertEquals(z0s.size(), isolines.size());
+        for (int i = 0; i < z0s.size(); i++) {
+            Geometry single = builder.computeIsoline(z0s.get(i));
+            assertTrue(single.getNumGeometries() > 0);
+            assertTrue(single.equalsExact(isolines.get(i)));
+        }
+        // The isoline around the dent has a hole
+        assertEquals(1, isolines.get(2).getNumGeometries());
+        assertEquals(1, ((Polygon) isolines.get(2).getGeometryN(0)).getNumInteriorRing());
+    }
+
+    /** Each isoline computed at once gets its own debug geometry, with the points it cuts. */
+    public void testDelaunayDebugGeometry() {
+        SparseMatrixZSampleGrid<Double> grid = new SparseMatrixZSampleGrid<Double>(16, 2000, 1.0,
+                1.0, new Coordinate(0, 0));
+        for (int x = -10; x <= 10; x++) {
+            for (int y = -10; y <= 10; y++) {
+                double z = Math.abs(x) == 10 || Math.abs(y) == 10 ? 100 : Math.sqrt(x * x + y * y);
+                grid.getOrCreate(x, y).setZ(z);
+            }
+        }
+        DelaunayTriangulation<Double> triangulation = grid.delaunayTriangulate();
+        DelaunayIsolineBuilder<Double> builder = new DelaunayIsolineBuilder<Double>(
+                triangulation, METRIC);
+        builder.setDebug(true);
+        builder.computeIsolines(Arrays.asList(2.5, 6.5));
+
+        List<Geometry> debugGeoms = builder.getDebugGeometries();
+        assertEquals(2, debugGeoms.size());
+        // All the edges of the triangulation, plus one point per cutting edge
+        int nPoints0 = debugGeoms.get(0).getNumGeometries() - triangulation.edgesCount();
+        int nPoints1 = debugGeoms.get(1).getNumGeometries() - triangulation.edgesCount();
+        assertTrue(nPoints0 > 0);
+        assertTrue(nPoints1 > nPoints0);
+        assertSame(debugGeoms.get(0), builder.getDebugGeometry());
+    }
+
+    /** Same check for the recursive grid builder, which samples a function directly. */
+    public void testRecursiveGridMultipleIsolines() {
+        RecursiveGridIsolineBuilder.ZFunc fz = new RecursiveGridIsolineBuilder.ZFunc() {
+            @Override
+            public long z(Coordinate c) {
+                return Math.round(Math.sqrt(c.x * c.x + c.y * c.y) * 10);
+            }
+        };
+        List<Coordinate> p0List = new ArrayList<Coordinate>();
+        for (int x = -30; x <= 30; x += 2) {
+            for (int y = -30; y <= 30; y += 2) {
+                p0List.add(new Coordinate(x, y));
+            }
+        }
+        long[] z0s = { 200, 50, 120 };
+        RecursiveGridIsolineBuilder builder = new RecursiveGridIsolineBuilder(1.0, 1.0,
+                new Coordinate(0, 0), fz, p0List);
+        List<Geometry> isolines = builder.computeIsolines(z0s);
+        assertEquals(z0s.length, isolines.size());
+        for (int i = 0; i < z0s.length; i++) {
+            Geometry single = builder.computeIsoline(z0s[i]);
+            assertEquals(1, single.getNumGeometries());
+            assertTrue(single.equalsExact(isolines.get(i)));
+            // A disk of radius z0 / 10
+            double radius = z0s[i] / 10.0;
+            assertEquals(Math.PI * radius * radius, single.getArea(), Math.PI * radius * radius * 0.1);
+        }
+    }
+}
@@ -14,6 +14,7 @@
 package org.opentripplanner.graph_builder.module;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -96,6 +97,28 @@ public class GtfsGraphBuilderModuleTest {
                 BikeAccess.fromTrip(withId(trips, new AgencyAndId(feedId.getId(), "t1"))));
     }
 
+    @Test
+    public void testFeedIdsInBundleOrder() throws IOException {
+        // Neither feed has a feed_info.txt, so both get a numbered feed id while being loaded concurrently.
+        List<GtfsBundle> bundleList = Lists.newArrayList();
+        for (int i = 0; i < 2; i++) {
+            GtfsBundle bundle = new GtfsBundle();
+            bundle.setPath(getSimpleGtfs().getPath());
+            bundleList.add(bundle);
+        }
+        _builder = new GtfsModule(bundleList);
+
+        Graph graph = new Graph();
+        _builder.buildGraph(graph, _extra);
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        String firstId = bundleList.get(0).getFeedId().getId();
+        String secondId = bundleList.get(1).getFeedId().getId();
+        assertEquals(Integer.parseInt(firstId) + 1, Integer.parseInt(secondId));
+        assertNotNull(graph.index.tripForId.get(new AgencyAndId(firstId, "t0")));
+        assertNotNull(graph.index.tripForId.get(new AgencyAndId(secondId, "t0")));
+    }
+
     private MockGtfs getSimpleGtfs() throws IOException {
         MockGtfs gtfs = MockGtfs.create();
         gtfs.putAgencies(1);
@@ -0,0 +1,104 @@
+package org.opentripplanner.graph_builder.module.ned;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import junit.framework.TestCase;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.coverage.Coverage;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.graph_builder.module.osm.DefaultWayPropertySetSource;
+import org.opentripplanner.graph_builder.module.osm.OpenStreetMapModule;
+import org.opentripplanner.graph_builder.services.DefaultStreetEdgeFactory;
+import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
+import org.opentripplanner.openstreetmap.impl.AnyFileBasedOpenStreetMapProviderImpl;
+import org.opentripplanner.routing.edgetype.StreetWithElevationEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+
+import javax.media.jai.JAI;
+import java.io.File;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test that sampling the DEM in parallel gives the same elevation profiles as sampling on a single thread.
+ */
+public class ElevationModuleTest extends TestCase {
+
+    /** A synthetic DEM covering Columbus, with elevations varying in both directions. */
+    private static GridCoverage2D makeCoverage () {
+        int size = 400;
+        float[][] elevations = new float[size][size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                elevations[row][col] = (float) (200 + 50 * Math.sin(row * 0.1) + 30 * Math.cos(col * 0.13));
+            }
+        }
+        ReferencedEnvelope envelope = new ReferencedEnvelope(-84, -82, 39, 41, GeometryUtils.WGS84_XY);
+        return new GridCoverageFactory().create("dem", elevations, envelope);
+    }
+
+    /** Build the Columbus street graph with edges that can hold elevation profiles, and sample the DEM. */
+    private static Graph buildGraph (Coverage coverage, int nThreads) throws Exception {
+        Graph graph = new Graph();
+        OpenStreetMapModule loader = new OpenStreetMapModule();
+        loader.setDefaultWayPropertySetSource(new DefaultWayPropertySetSource());
+        DefaultStreetEdgeFactory edgeFactory = new DefaultStreetEdgeFactory();
+        edgeFactory.useElevationData = true;
+        loader.edgeFactory = edgeFactory;
+        AnyFileBasedOpenStreetMapProviderImpl provider = new AnyFileBasedOpenStreetMapProviderImpl();
+        provider.setPath(new File(URLDecoder.decode(
+                FakeGraph.class.getResource("columbus.osm.pbf").getFile(), "UTF-8")));
+        loader.setProvider(provider);
+        loader.buildGraph(graph, new HashMap<Class<?>, Object>());
+
+        ElevationModule elevationModule = new ElevationModule(new ElevationGridCoverageFactory() {
+            @Override
+            public Coverage getGridCoverage() {
+                return coverage;
+            }
+
+            @Override
+            public void checkInputs() { }
+
+            @Override
+            public void setGraph(Graph graph) { }
+        });
+        elevationModule.setNThreads(nThreads);
+        elevationModule.buildGraph(graph, new HashMap<Class<?>, Object>());
+        return graph;
+    }
+
+    /** The elevation profiles of a graph, keyed on the endpoints and geometry of their edges. */
+    private static Map<String, Coordinate[]> profiles (Graph graph) {
+        Map<String, Coordinate[]> profiles = new HashMap<>();
+        for (Edge e : graph.getEdges()) {
+            if (e instanceof StreetWithElevationEdge && ((StreetWithElevationEdge) e).getElevationProfile() != null) {
+                String key = e.getFromVertex().getLabel() + " " + e.getToVertex().getLabel() + " " +
+                        e.getGeometry().toText();
+                profiles.put(key, ((StreetWithElevationEdge) e).getElevationProfile().toCoordinateArray());
+            }
+        }
+        return profiles;
+    }
+
+    public void testParallelMatchesSequential () throws Exception {
+        GridCoverage2D coverage = makeCoverage();
+        long tileCacheCapacity = JAI.getDefaultInstance().getTileCache().getMemoryCapacity();
+        Map<String, Coordinate[]> sequential = profiles(buildGraph(coverage, 1));
+        Map<String, Coordinate[]> parallel = profiles(buildGraph(coverage, 4));
+        // the process-wide tile cache is left as it was
+        assertEquals(tileCacheCapacity, JAI.getDefaultInstance().getTileCache().getMemoryCapacity());
+
+        // enough edges that each thread samples several blocks
+        assertTrue(sequential.size() > 1000);
+        assertEquals(sequential.keySet(), parallel.keySet());
+        for (Map.Entry<String, Coordinate[]> entry : sequential.entrySet()) {
+            assertTrue(entry.getKey(), Arrays.equals(entry.getValue(), parallel.get(entry.getKey())));
+        }
+    }
+}
@@ -13,7 +13,11 @@
 
 package org.opentripplanner.graph_builder.module.osm;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
+import org.opentripplanner.common.model.P2;
 import org.opentripplanner.openstreetmap.model.OSMWithTags;
 
 import junit.framework.TestCase;
@@ -129,4 +133,70 @@ public class TestWayPropertySet extends TestCase {
        assertTrue(within(kmhAsMs(25), wps.getCarSpeedForWay(way, false), epsilon));
        assertTrue(within(kmhAsMs(25), wps.getCarSpeedForWay(way, true), epsilon));
     }
+
+    /**
+     * Test that the compiled specifiers give the same scores as the specifiers themselves.
+     */
+    @Test
+    public void testSpecifierIndex () {
+        List<OSMSpecifier> specifiers = Arrays.asList(
+                new OSMSpecifier("highway=residential"),
+                new OSMSpecifier("highway=residential;cycleway=*"),
+                new OSMSpecifier("highway=residential;surface=paved"),
+                new OSMSpecifier("Surface=Cobblestone:flattened"),
+                new OSMSpecifier("cycleway=lane"),
+                new OSMSpecifier("bicycle=designated"));
+        SpecifierIndex index = new SpecifierIndex(specifiers);
+
+        List<OSMWithTags> ways = Arrays.asList(
+                way(),
+                way("name", "Main Street"),
+                way("highway", "residential"),
+                way("highway", "residential", "cycleway", "lane", "surface", "paved"),
+                way("highway", "residential", "cycleway:left", "lane"),
+                way("highway", "primary", "cycleway:right", "track", "bicycle", "designated"),
+                way("surface", "cobblestone"),
+                way("surface", "cobblestone:flattened"));
+        for (OSMWithTags way : ways) {
+            int best = -1, bestScore = 0;
+            for (int i = 0; i < specifiers.size(); i++) {
+                int score = specifiers.get(i).matchScore(way);
+                assertEquals(score, index.matchScore(i, way));
+                assertEquals(specifiers.get(i).matchScores(way), index.matchScores(i, way));
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            assertEquals(best, index.bestMatch(way));
+            // memoized
+            assertEquals(best, index.bestMatch(way));
+        }
+        assertEquals(index.tagsKey(way("highway", "residential", "name", "Main Street")),
+                index.tagsKey(way("name", "Broad Street", "highway", "residential")));
+    }
+
+    /**
+     * Test that the WayProperties memoized for a combination of tags are not shared with the callers.
+     */
+    @Test
+    public void testMemoizedDataForWay () {
+        WayPropertySet wps = new DefaultWayPropertySetSource().getWayPropertySet();
+
+        WayProperties first = wps.getDataForWay(way("highway", "cycleway", "name", "A"));
+        P2<Double> safety = first.getSafetyFeatures();
+        first.setSafetyFeatures(new P2<Double>(100.0, 100.0));
+
+        WayProperties second = wps.getDataForWay(way("highway", "cycleway", "name", "B"));
+        assertEquals(safety, second.getSafetyFeatures());
+        assertEquals(first.getPermission(), second.getPermission());
+    }
+
+    private static OSMWithTags way (String... tags) {
+        OSMWithTags way = new OSMWithTags();
+        for (int i = 0; i < tags.length; i += 2) {
+            way.addTag(tags[i], tags[i + 1]);
+        }
+        return way;
+    }
 }
@@ -0,0 +1,69 @@
+package org.opentripplanner.graph_builder.module.osm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.openstreetmap.impl.AnyFileBasedOpenStreetMapProviderImpl;
+import org.opentripplanner.openstreetmap.model.OSMWay;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.io.File;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time the evaluation of the way properties of all the ways of the Columbus OSM extract, as done by
+ * OpenStreetMapModule, and the whole OSM phase of a graph build on the same extract.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WayPropertySetBenchmark {
+
+    private List<OSMWay> ways;
+
+    @Setup
+    public void setup () throws Exception {
+        File file = new File(URLDecoder.decode(FakeGraph.class.getResource("columbus.osm.pbf").getFile(), "UTF-8"));
+        OSMDatabase osmdb = new OSMDatabase();
+        new AnyFileBasedOpenStreetMapProviderImpl(file).readOSM(osmdb);
+        osmdb.postLoad();
+        ways = new ArrayList<>(osmdb.getWays());
+    }
+
+    /** A new WayPropertySet is used in each invocation, so that nothing is memoized from a previous one. */
+    @Benchmark
+    public int wayProperties () {
+        WayPropertySet wayPropertySet = new DefaultWayPropertySetSource().getWayPropertySet();
+        int n = 0;
+        for (OSMWay way : ways) {
+            WayProperties properties = wayPropertySet.getDataForWay(way);
+            wayPropertySet.getCarSpeedForWay(way, false);
+            wayPropertySet.getSlopeOverride(way);
+            wayPropertySet.getNoteForWay(way);
+            if (!way.hasTag("name")) {
+                wayPropertySet.getCreativeNameForWay(way);
+            }
+            n += properties.getPermission().code;
+        }
+        return n;
+    }
+
+    @Benchmark
+    public Graph buildStreetGraph () throws Exception {
+        return FakeGraph.buildGraphNoTransit();
+    }
+}
@@ -0,0 +1,102 @@
+package org.opentripplanner.inspector;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test caching and encoding of inspector tiles.
+ */
+public class InspectorTileCacheTest extends TestCase {
+
+    /** A tile is rendered once, then served from memory, and from disk by a new cache for the same graph. */
+    public void testCache() throws Exception {
+        File dir = Files.createTempDir();
+        try {
+            AtomicInteger renders = new AtomicInteger();
+            InspectorTileCache cache = new InspectorTileCache(1024 * 1024, dir, "graph1");
+            byte[] tile = cache.get("layer/1/2/3.png", () -> new byte[] { (byte) renders.incrementAndGet() });
+            assertEquals(1, tile[0]);
+            cache.get("layer/1/2/3.png", () -> new byte[] { (byte) renders.incrementAndGet() });
+            assertEquals(1, renders.get());
+
+            cache = new InspectorTileCache(1024 * 1024, dir, "graph1");
+            assertEquals(1, cache.get("layer/1/2/3.png", () -> new byte[] { (byte) renders.incrementAndGet() })[0]);
+            assertEquals(1, renders.get());
+
+            // a different graph must not see the tiles of the first, which are removed
+            cache = new InspectorTileCache(1024 * 1024, dir, "graph2");
+            assertFalse(new File(dir, "graph1").exists());
+            assertEquals(2, cache.get("layer/1/2/3.png", () -> new byte[] { (byte) renders.incrementAndGet() })[0]);
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    /**
+     * The tiles saved on disk are kept when the same graph is loaded again, which gives its vertices new indices, and
+     * deleted when a street of the graph has different permissions.
+     */
+    public void testGraphChange() throws Exception {
+        Graph graph = FakeGraph.buildGraphNoTransit();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        graph.save(out);
+        out.close();
+
+        File dir = Files.createTempDir();
+        try {
+            new TileRendererManager(graph, dir);
+            File graphDirectory = new File(dir, graph.getFingerprint());
+            assertTrue(graphDirectory.mkdirs());
+
+            Graph loaded = Graph.load(new ByteArrayInputStream(bytes.toByteArray()), Graph.LoadLevel.FULL);
+            new TileRendererManager(loaded, dir);
+            assertTrue(graphDirectory.exists());
+
+            Graph modified = Graph.load(new ByteArrayInputStream(bytes.toByteArray()), Graph.LoadLevel.FULL);
+            for (StreetEdge street : modified.getStreetEdges()) {
+                street.setPermission(StreetTraversalPermission.PEDESTRIAN);
+            }
+            new TileRendererManager(modified, dir);
+            assertFalse(graphDirectory.exists());
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    /** Check the structure of a vector tile containing a single line. */
+    public void testVectorTile() throws Exception {
+        VectorTileEncoder encoder = new VectorTileEncoder(new Envelope(0, 1, 0, 1));
+        encoder.addLineString("edges", new Coordinate[] { new Coordinate(0, 1), new Coordinate(0.5, 0.5) },
+                ImmutableMap.of("name", "Main Street"));
+        // too short to be encoded
+        encoder.addLineString("edges", new Coordinate[] { new Coordinate(0, 1), new Coordinate(0, 1) },
+                ImmutableMap.of("name", "Nowhere"));
+        byte[] tile = encoder.encode();
+
+        // one layer (field 3, length delimited)
+        assertEquals(0x1a, tile[0]);
+        String text = new String(tile, "ISO-8859-1");
+        assertTrue(text.contains("edges"));
+        assertTrue(text.contains("Main Street"));
+        assertFalse(text.contains("Nowhere"));
+
+        // line geometry: MoveTo(0, 0), LineTo(+2048, +2048), zigzag encoded as varints
+        byte[] geometry = { 9, 0, 0, 10, (byte) 0x80, 0x20, (byte) 0x80, 0x20 };
+        assertTrue(text.contains(new String(geometry, "ISO-8859-1")));
+    }
+}
@@ -0,0 +1,76 @@
+package org.opentripplanner.profile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.profile.PropagatedTimesStore.ConfidenceCalculationMethod;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the histogram-based summary statistics calculation in PropagatedTimesStore.setFromArray with the original
+ * list-based implementation, on a synthetic result the size of a typical regional analysis task.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PropagatedTimesStoreBenchmark {
+
+    @Param({ "MIN_MAX", "PERCENTILE", "BOOTSTRAP" })
+    public ConfidenceCalculationMethod method;
+
+    @Param({ "10000" })
+    public int nTargets;
+
+    /** One search per minute over a two hour window, plus best and worst case iterations. */
+    @Param({ "122" })
+    public int nIterations;
+
+    private int[][] times;
+
+    private boolean[] includeInAverages;
+
+    private ProfileRequest request = new ProfileRequest();
+
+    private Graph graph = new Graph();
+
+    @Setup
+    public void setup () {
+        Random random = new Random(42);
+        times = new int[nIterations][nTargets];
+        includeInAverages = new boolean[nIterations];
+        for (int i = 0; i < nIterations; i++) {
+            includeInAverages[i] = i > 0 && i < nIterations - 1;
+            for (int t = 0; t < nTargets; t++) {
+                times[i][t] = random.nextInt(10) == 0 ? RaptorWorker.UNREACHED : 300 + random.nextInt(7200);
+            }
+        }
+    }
+
+    @Benchmark
+    public PropagatedTimesStore histogram () {
+        PropagatedTimesStore pts = new PropagatedTimesStore(graph, request, nTargets);
+        pts.setFromArray(times, includeInAverages, method);
+        return pts;
+    }
+
+    @Benchmark
+    public PropagatedTimesStore reference () {
+        PropagatedTimesStore pts = new PropagatedTimesStore(graph, request, nTargets);
+        pts.setFromArrayReference(times, includeInAverages, method);
+        return pts;
+    }
+}
@@ -5,6 +5,9 @@ import org.junit.Test;
 import org.opentripplanner.graph_builder.module.FakeGraph;
 import org.opentripplanner.routing.graph.Graph;
 
+import java.util.Arrays;
+import java.util.Random;
+
 /**
  * Test the propagated times store.
  */
@@ -66,4 +69,49 @@ public class PropagatedTimesStoreTest extends TestCase {
         // 1000 should not be included in average
         assertEquals(1, pts.avgs[0]);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test that the histogram-based calculation gives the same results as the original implementation, including exact
+     * percentiles, and that bootstrapped confidence intervals bracket the mean.
+     */
+    @Test
+    public static void testMatchesReference () {
+        ProfileRequest pr = new ProfileRequest();
+        Graph g = new Graph();
+        Random random = new Random(42);
+
+        int nIterations = 120, nTargets = 500;
+        int[][] times = new int[nIterations][nTargets];
+        boolean[] includeInAverages = new boolean[nIterations];
+        for (int i = 0; i < nIterations; i++) {
+            // leave out the first and last iterations as the Monte Carlo extrema do
+            includeInAverages[i] = i > 0 && i < nIterations - 1;
+            for (int t = 0; t < nTargets; t++) {
+                // some targets are never reached, some are only sometimes reached
+                times[i][t] = random.nextInt(nTargets) < t ? RaptorWorker.UNREACHED : 600 + random.nextInt(5400);
+            }
+        }
+
+        for (PropagatedTimesStore.ConfidenceCalculationMethod method : new PropagatedTimesStore.ConfidenceCalculationMethod[] {
+                PropagatedTimesStore.ConfidenceCalculationMethod.NONE,
+                PropagatedTimesStore.ConfidenceCalculationMethod.PERCENTILE,
+                PropagatedTimesStore.ConfidenceCalculationMethod.MIN_MAX }) {
+            PropagatedTimesStore expected = new PropagatedTimesStore(g, pr, nTargets);
+            expected.setFromArrayReference(times, includeInAverages, method);
+            PropagatedTimesStore actual = new PropagatedTimesStore(g, pr, nTargets);
+            actual.setFromArray(times, includeInAverages, method);
+
+            assertTrue(method.toString(), Arrays.equals(expected.mins, actual.mins));
+            assertTrue(method.toString(), Arrays.equals(expected.avgs, actual.avgs));
+            assertTrue(method.toString(), Arrays.equals(expected.maxs, actual.maxs));
+        }
+
+        PropagatedTimesStore pts = new PropagatedTimesStore(g, pr, nTargets);
+        pts.setFromArray(times, includeInAverages, PropagatedTimesStore.ConfidenceCalculationMethod.BOOTSTRAP);
+        for (int t = 0; t < nTargets; t++) {
+            if (pts.avgs[t] == RaptorWorker.UNREACHED) continue;
+            assertTrue(pts.mins[t] <= pts.avgs[t]);
+            assertTrue(pts.maxs[t] >= pts.avgs[t]);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.map.TIntIntMap;
+import org.joda.time.LocalDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.api.parameter.QualifiedModeSet;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time a two-hour range RAPTOR search from the center of the Columbus test graph over the grid of transit lines of
+ * FakeGraph.addPerpendicularRoutes, including the propagation of the times to all the vertices. The timetables and the
+ * access times to the transit stops are computed once, during the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RaptorWorkerBenchmark {
+
+    private Graph graph;
+
+    private ProfileRequest request;
+
+    private RaptorWorkerData data;
+
+    private TIntIntMap accessTimes;
+
+    private int[] nonTransitTimes;
+
+    @Setup
+    public void setup () throws Exception {
+        graph = FakeGraph.buildGraphNoTransit();
+        FakeGraph.addPerpendicularRoutes(graph);
+        FakeGraph.link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        request = new ProfileRequest();
+        request.date = new LocalDate(2015, 6, 10);
+        request.fromTime = 7 * 3600;
+        request.toTime = 9 * 3600;
+        request.fromLat = request.toLat = 39.9621;
+        request.fromLon = request.toLon = -83.0007;
+        request.accessModes = request.egressModes = request.directModes = new QualifiedModeSet("WALK");
+        request.transitModes = new TraverseModeSet("TRANSIT");
+
+        data = RepeatedRaptorProfileRouter.getRaptorWorkerData(request, graph, null, new TaskStatistics());
+        accessTimes = new RepeatedRaptorProfileRouter(graph, request, null).findInitialStops(false, data);
+        // Only the transit times are propagated to the vertices, no vertex is reached by walking alone.
+        nonTransitTimes = new int[data.nTargets];
+        Arrays.fill(nonTransitTimes, RaptorWorker.UNREACHED);
+    }
+
+    @Benchmark
+    public PropagatedTimesStore runRaptor () {
+        RaptorWorker worker = new RaptorWorker(data, request);
+        return worker.runRaptor(graph, accessTimes, nonTransitTimes, new TaskStatistics());
+    }
+}
@@ -0,0 +1,157 @@
+package org.opentripplanner.profile;
+
+import com.google.common.collect.Lists;
+import junit.framework.TestCase;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.analyst.scenario.RemoveTrip;
+import org.opentripplanner.analyst.scenario.Scenario;
+import org.onebusaway.gtfs.model.Trip;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.trippattern.FrequencyEntry;
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.*;
+
+/**
+ * Test building RAPTOR data for scenarios as overlays on shared baseline data.
+ */
+public class RaptorWorkerDataOverlayTest extends TestCase {
+
+    private Graph graph;
+
+    @Override
+    protected void setUp () throws Exception {
+        graph = buildGraphNoTransit();
+        addTransit(graph);
+        addTransitMultipleLines(graph);
+        link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+    }
+
+    private ProfileRequest makeRequest (Scenario scenario) {
+        ProfileRequest req = new ProfileRequest();
+        req.date = new LocalDate(2015, 6, 10);
+        req.fromTime = 7 * 3600;
+        req.toTime = 9 * 3600;
+        req.walkSpeed = 1.3f;
+        req.maxWalkTime = 20;
+        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.RANDOM;
+        req.scenario = scenario;
+        return req;
+    }
+
+    /** An overlay must contain the same trips as data built from scratch for the same scenario. */
+    @Test
+    public void testOverlayMatchesFullBuild () throws Exception {
+        RemoveTrip rt = new RemoveTrip();
+        rt.agencyId = "agency";
+        rt.tripId = Arrays.asList("trip25200", "trip25800", "trip26400");
+        Scenario scenario = new Scenario(1);
+        scenario.modifications = Lists.newArrayList(rt);
+        ProfileRequest req = makeRequest(scenario);
+
+        TaskStatistics fullStats = new TaskStatistics();
+        RaptorWorkerData full = RepeatedRaptorProfileRouter.getRaptorWorkerData(req, graph, null, fullStats);
+
+        RaptorWorkerData baseline = RepeatedRaptorProfileRouter.getBaselineRaptorWorkerData(req, graph, null);
+        TaskStatistics overlayStats = new TaskStatistics();
+        RaptorWorkerData overlay =
+                RepeatedRaptorProfileRouter.getRaptorWorkerData(req, graph, null, baseline, overlayStats);
+
+        assertEquals(full.nPatterns, overlay.nPatterns);
+        assertEquals(full.nStops, overlay.nStops);
+        assertEquals(full.nTargets, overlay.nTargets);
+        assertEquals(fullStats.scheduledTripCount, overlayStats.scheduledTripCount);
+        assertTrue(overlayStats.scheduledTripCount < baseline.timetablesForPattern.stream()
+                .mapToInt(tt -> tt.nTrips).sum());
+
+        // every pattern must serve the same stops in both
+        assertEquals(baseline.nPatterns, overlay.nPatterns);
+        for (int p = 0; p < overlay.nPatterns; p++) {
+            assertEquals(overlay.timetablesForPattern.get(p).dataIndex, p);
+            assertSame(overlay, overlay.timetablesForPattern.get(p).raptorData);
+            assertTrue(Arrays.equals(baseline.timetablesForPattern.get(p).stopIndices,
+                    overlay.timetablesForPattern.get(p).stopIndices));
+        }
+
+        // the baseline must not have been modified
+        assertSame(baseline, baseline.timetablesForPattern.get(0).raptorData);
+    }
+
+    /** Patterns a scenario cannot affect should share their timetables and stop tables with the baseline. */
+    @Test
+    public void testUntouchedPatternsAreShared () throws Exception {
+        RemoveTrip rt = new RemoveTrip();
+        rt.agencyId = "no such agency";
+        Scenario scenario = new Scenario(2);
+        scenario.modifications = Lists.newArrayList(rt);
+        ProfileRequest req = makeRequest(scenario);
+
+        RaptorWorkerData baseline = RepeatedRaptorProfileRouter.getBaselineRaptorWorkerData(req, graph, null);
+        RaptorWorkerData overlay =
+                RepeatedRaptorProfileRouter.getRaptorWorkerData(req, graph, null, baseline, new TaskStatistics());
+
+        assertEquals(baseline.nPatterns, overlay.nPatterns);
+        assertEquals(baseline.nStops, overlay.nStops);
+
+        for (int p = 0; p < baseline.nPatterns; p++) {
+            assertSame(baseline.timetablesForPattern.get(p).timesPerTrip, overlay.timetablesForPattern.get(p).timesPerTrip);
+        }
+
+        for (int s = 0; s < baseline.nStops; s++) {
+            assertSame(baseline.transfersForStop.get(s), overlay.transfersForStop.get(s));
+            assertSame(baseline.targetsForStop.get(s), overlay.targetsForStop.get(s));
+        }
+    }
+
+    /** Frequency trips of patterns shared with the baseline must be kept and counted like in a full build. */
+    @Test
+    public void testFrequencyTrips () throws Exception {
+        TripPattern pattern = null;
+        TripTimes tripTimes = null;
+        for (Map.Entry<Trip, TripPattern> e : graph.index.patternForTrip.entrySet()) {
+            if ("trip28800".equals(e.getKey().getId().getId())) {
+                pattern = e.getValue();
+                tripTimes = pattern.scheduledTimetable.getTripTimes(e.getKey());
+            }
+        }
+        assertNotNull(tripTimes);
+        pattern.scheduledTimetable.addFrequencyEntry(new FrequencyEntry(7 * 3600, 9 * 3600, 300, false, tripTimes));
+
+        RemoveTrip rt = new RemoveTrip();
+        rt.agencyId = "no such agency";
+        Scenario scenario = new Scenario(3);
+        scenario.modifications = Lists.newArrayList(rt);
+        ProfileRequest req = makeRequest(scenario);
+
+        TaskStatistics fullStats = new TaskStatistics();
+        RaptorWorkerData full = RepeatedRaptorProfileRouter.getRaptorWorkerData(req, graph, null, fullStats);
+
+        RaptorWorkerData baseline = RepeatedRaptorProfileRouter.getBaselineRaptorWorkerData(req, graph, null);
+        TaskStatistics overlayStats = new TaskStatistics();
+        RaptorWorkerData overlay =
+                RepeatedRaptorProfileRouter.getRaptorWorkerData(req, graph, null, baseline, overlayStats);
+
+        assertTrue(full.hasFrequencies);
+        assertTrue(overlay.hasFrequencies);
+        assertEquals(1, overlayStats.frequencyEntryCount);
+        assertEquals(fullStats.frequencyEntryCount, overlayStats.frequencyEntryCount);
+        assertEquals(2 * 3600 / 300, overlayStats.frequencyTripCount);
+        assertEquals(fullStats.frequencyTripCount, overlayStats.frequencyTripCount);
+
+        for (int p = 0; p < baseline.nPatterns; p++) {
+            RaptorWorkerTimetable baseTimetable = baseline.timetablesForPattern.get(p);
+            RaptorWorkerTimetable timetable = overlay.timetablesForPattern.get(p);
+            assertEquals(baseTimetable.hasFrequencyTrips(), timetable.hasFrequencyTrips());
+            assertSame(baseTimetable.frequencyTrips, timetable.frequencyTrips);
+            assertSame(baseTimetable.headwaySecs, timetable.headwaySecs);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.opentripplanner.profile;
+
+import junit.framework.TestCase;
+import org.opentripplanner.analyst.core.Sample;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.spt.DominanceFunction;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+
+import java.util.Arrays;
+
+import static org.opentripplanner.graph_builder.module.FakeGraph.buildGraphNoTransit;
+
+/**
+ * Test the primitive street search used for access from analyst origins.
+ */
+public class StreetAccessSearchTest extends TestCase {
+
+    private Graph graph;
+
+    @Override
+    protected void setUp () throws Exception {
+        graph = buildGraphNoTransit();
+        graph.index(new DefaultStreetVertexIndexFactory());
+    }
+
+    /** Walk times should match those found by a general AStar search, up to differences in linking the origin. */
+    public void testMatchesAStar () throws Exception {
+        double lat = 39.9908, lon = -83.0118;
+        float walkSpeed = 1.3f;
+
+        Sample origin = graph.getSampleFactory().getSample(lon, lat);
+        assertNotNull(origin);
+        StreetAccessSearch search = StreetAccessSearch.forCurrentThread();
+        search.search(StreetAccessTables.forGraph(graph), origin, walkSpeed, 4f, false, 1800 * 1000);
+
+        RoutingRequest rr = new RoutingRequest(new TraverseModeSet("WALK"));
+        rr.batch = true;
+        rr.from = new GenericLocation(lat, lon);
+        rr.to = rr.from;
+        rr.setRoutingContext(graph);
+        rr.dateTime = 1434000000;
+        rr.walkSpeed = walkSpeed;
+        rr.worstTime = rr.dateTime + 1800;
+        rr.dominanceFunction = new DominanceFunction.EarliestArrival();
+        ShortestPathTree spt = new AStar().getShortestPathTree(rr, 5);
+
+        int compared = 0;
+        for (State state : spt.getAllStates()) {
+            int time = search.getTime(state.getVertex().getIndex());
+            // temporary vertices of the AStar search are not in the street tables
+            if (time == StreetAccessSearch.UNREACHED)
+                continue;
+
+            assertEquals(state.getElapsedTimeSeconds(), time, 60);
+            compared++;
+        }
+        assertTrue(compared > 100);
+        rr.cleanup();
+    }
+
+    /** Scratch buffers are reused, but a search must not see any trace of the previous search on the same thread. */
+    public void testReuse () throws Exception {
+        StreetAccessTables tables = StreetAccessTables.forGraph(graph);
+        assertSame(tables, StreetAccessTables.forGraph(graph));
+        StreetAccessSearch search = StreetAccessSearch.forCurrentThread();
+
+        Sample a = graph.getSampleFactory().getSample(-83.0118, 39.9908);
+        Sample b = graph.getSampleFactory().getSample(-83.0, 39.985);
+
+        search.search(tables, a, 1.3f, 4f, false, 1200 * 1000);
+        int[] first = search.getTimes(tables.nVertices);
+
+        search.search(tables, b, 1.3f, 4f, true, 3600 * 1000);
+        int[] other = search.getTimes(tables.nVertices);
+        assertFalse(Arrays.equals(first, other));
+
+        search.search(tables, a, 1.3f, 4f, false, 1200 * 1000);
+        assertTrue(Arrays.equals(first, search.getTimes(tables.nVertices)));
+    }
+
+    /** Removing an edge keeps the number of vertices, but the tables must still be rebuilt. */
+    public void testGraphChange () throws Exception {
+        StreetAccessTables tables = StreetAccessTables.forGraph(graph);
+        int nEdges = tables.firstEdge[tables.nVertices];
+
+        StreetEdge edge = graph.getStreetEdges().stream()
+                .filter(e -> e.canTraverseIncludingBarrier(TraverseMode.WALK))
+                .findFirst().get();
+        int nVertices = graph.countVertices();
+        graph.removeEdge(edge);
+        assertEquals(nVertices, graph.countVertices());
+
+        StreetAccessTables rebuilt = StreetAccessTables.forGraph(graph);
+        assertNotSame(tables, rebuilt);
+        assertEquals(nEdges - 1, rebuilt.firstEdge[rebuilt.nVertices]);
+        assertSame(rebuilt, StreetAccessTables.forGraph(graph));
+    }
+}
@@ -116,6 +116,26 @@ public class AStarTest {
         assertEquals("leary_20th", states.get(6).getVertex().getLabel());
     }
 
+    @Test
+    public void testSearchStats() {
+        RoutingRequest options = new RoutingRequest();
+        options.walkSpeed = 1.0;
+        options.setRoutingContext(_graph, _graph.getVertex("56th_24th"), _graph.getVertex("leary_20th"));
+        AStar aStar = new AStar();
+        aStar.getShortestPathTree(options);
+
+        AStar.SearchStats stats = aStar.getSearchStats();
+        assertEquals(1, stats.searches);
+        assertTrue(stats.verticesVisited > 0);
+        assertTrue(stats.statesCreated > 0);
+        assertTrue(stats.maxQueueSize > 0);
+        assertTrue(stats.searchNanos > 0);
+
+        // The stats of a reused instance add up
+        aStar.getShortestPathTree(options);
+        assertEquals(2, aStar.getSearchStats().searches);
+    }
+
     @Test
     public void testBack() {
 
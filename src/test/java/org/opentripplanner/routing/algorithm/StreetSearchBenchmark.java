@@ -0,0 +1,80 @@
+package org.opentripplanner.routing.algorithm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Time walk, bicycle and car searches between random intersections of the Columbus test graph. Car searches check the
+ * turn restrictions of the OSM data at every street traversal and every dominance check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StreetSearchBenchmark {
+
+    /** The number of searches in each invocation of the benchmark. */
+    private static final int N_SEARCHES = 20;
+
+    @Param({ "WALK", "BICYCLE", "CAR" })
+    public TraverseMode mode;
+
+    private Graph graph;
+
+    private Vertex[] origins = new Vertex[N_SEARCHES];
+
+    private Vertex[] destinations = new Vertex[N_SEARCHES];
+
+    @Setup
+    public void setup () throws Exception {
+        graph = FakeGraph.buildGraphNoTransit();
+        graph.index(new DefaultStreetVertexIndexFactory());
+        List<Vertex> intersections = graph.getVertices().stream()
+                .filter(v -> v instanceof IntersectionVertex)
+                .sorted(Comparator.comparing(Vertex::getLabel))
+                .collect(Collectors.toList());
+        Random random = new Random(42);
+        for (int i = 0; i < N_SEARCHES; i++) {
+            origins[i] = intersections.get(random.nextInt(intersections.size()));
+            destinations[i] = intersections.get(random.nextInt(intersections.size()));
+        }
+    }
+
+    @Benchmark
+    public int streetSearches () {
+        int nVertices = 0;
+        for (int i = 0; i < N_SEARCHES; i++) {
+            RoutingRequest options = new RoutingRequest(mode);
+            options.setRoutingContext(graph, origins[i], destinations[i]);
+            ShortestPathTree tree = new AStar().getShortestPathTree(options);
+            nVertices += tree.getVertexCount();
+            options.cleanup();
+        }
+        return nVertices;
+    }
+}
@@ -0,0 +1,78 @@
+package org.opentripplanner.routing.algorithm;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Time walk and transit searches between random intersections of the Columbus test graph, with the grid of bus and
+ * tram lines of FakeGraph.addPerpendicularRoutes running every ten minutes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TransitSearchBenchmark {
+
+    /** The number of searches in each invocation of the benchmark. */
+    private static final int N_SEARCHES = 20;
+
+    private Graph graph;
+
+    private Vertex[] origins = new Vertex[N_SEARCHES];
+
+    private Vertex[] destinations = new Vertex[N_SEARCHES];
+
+    @Setup
+    public void setup () throws Exception {
+        graph = FakeGraph.buildGraphNoTransit();
+        FakeGraph.addPerpendicularRoutes(graph);
+        FakeGraph.link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+        List<Vertex> intersections = graph.getVertices().stream()
+                .filter(v -> v instanceof IntersectionVertex)
+                .sorted(Comparator.comparing(Vertex::getLabel))
+                .collect(Collectors.toList());
+        Random random = new Random(42);
+        for (int i = 0; i < N_SEARCHES; i++) {
+            origins[i] = intersections.get(random.nextInt(intersections.size()));
+            destinations[i] = intersections.get(random.nextInt(intersections.size()));
+        }
+    }
+
+    @Benchmark
+    public int transitSearches () {
+        int nVertices = 0;
+        for (int i = 0; i < N_SEARCHES; i++) {
+            RoutingRequest options = new RoutingRequest("WALK,TRANSIT");
+            options.setDateTime("2016-04-20", "13:00", graph.getTimeZone());
+            options.setRoutingContext(graph, origins[i], destinations[i]);
+            ShortestPathTree tree = new AStar().getShortestPathTree(options);
+            nVertices += tree.getVertexCount();
+            options.cleanup();
+        }
+        return nVertices;
+    }
+}
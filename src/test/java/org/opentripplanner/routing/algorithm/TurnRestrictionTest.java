@@ -102,6 +102,31 @@ public class TurnRestrictionTest {
     public void testHasExplicitTurnRestrictions() {
         assertFalse(_graph.getTurnRestrictions(maple_main1).isEmpty());
         assertTrue(_graph.getTurnRestrictions(broad1_2).isEmpty());
+        assertTrue(maple_main1.hasTurnRestrictions());
+        assertFalse(broad1_2.hasTurnRestrictions());
+    }
+
+    @Test
+    public void testAddAndRemoveTurnRestrictions() {
+        List<TurnRestriction> restrictions = _graph.getTurnRestrictions(maple_main1);
+        assertEquals(1, restrictions.size());
+        TurnRestriction first = restrictions.get(0);
+
+        TurnRestriction second = new TurnRestriction(maple_main1, broad1_2, TurnRestrictionType.NO_TURN,
+                new TraverseModeSet(TraverseMode.BICYCLE));
+        _graph.addTurnRestriction(maple_main1, second);
+        assertEquals(2, _graph.getTurnRestrictions(maple_main1).size());
+        // Lists already returned are not modified
+        assertEquals(1, restrictions.size());
+
+        _graph.removeTurnRestriction(maple_main1, first);
+        assertEquals(1, _graph.getTurnRestrictions(maple_main1).size());
+        assertSame(second, _graph.getTurnRestrictions(maple_main1).get(0));
+        assertTrue(maple_main1.hasTurnRestrictions());
+
+        _graph.removeTurnRestriction(maple_main1, second);
+        assertTrue(_graph.getTurnRestrictions(maple_main1).isEmpty());
+        assertFalse(maple_main1.hasTurnRestrictions());
     }
     
     @Test
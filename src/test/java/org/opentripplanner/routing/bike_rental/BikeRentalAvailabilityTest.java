@@ -0,0 +1,69 @@
+package org.opentripplanner.routing.bike_rental;
+
+import junit.framework.TestCase;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.BikeRentalStationVertex;
+import org.opentripplanner.util.NonLocalizedString;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class BikeRentalAvailabilityTest extends TestCase {
+
+    public void testVersionedCounts() {
+        BikeRentalAvailability availability = new BikeRentalAvailability();
+        BikeRentalStation a = station("A", 3, 7);
+        BikeRentalStation b = station("B", 0, 10);
+        assertEquals(0, availability.getVersion());
+
+        availability.update(Arrays.asList(a, b));
+        assertEquals(1, availability.getVersion());
+        int slotA = availability.slot("A");
+        int slotB = availability.slot("B");
+        assertTrue(slotA != slotB);
+        assertEquals(3, availability.getBikesAvailable(slotA));
+        assertEquals(7, availability.getSpacesAvailable(slotA));
+        assertEquals(0, availability.getBikesAvailable(slotB));
+        assertEquals(10, availability.getSpacesAvailable(slotB));
+
+        // A disappears: it has no bikes nor spaces anymore, and its slot is not given to a new station
+        availability.update(Arrays.asList(station("B", 4, 6), station("C", 1, 1)));
+        assertEquals(2, availability.getVersion());
+        assertEquals(0, availability.getBikesAvailable(slotA));
+        assertEquals(0, availability.getSpacesAvailable(slotA));
+        assertEquals(4, availability.getBikesAvailable(slotB));
+        assertEquals(slotB, availability.slot("B"));
+        assertTrue(availability.slot("C") != slotA);
+
+        // A slot allocated after the last update has nothing available yet
+        assertEquals(0, availability.getBikesAvailable(availability.slot("D")));
+    }
+
+    public void testVertexReadsAvailability() {
+        Graph graph = new Graph();
+        BikeRentalAvailability availability = new BikeRentalAvailability();
+        BikeRentalStation station = station("A", 3, 7);
+        availability.update(Collections.singletonList(station));
+
+        BikeRentalStationVertex vertex = new BikeRentalStationVertex(graph, station, availability);
+        assertEquals(3, vertex.getBikesAvailable());
+        assertEquals(7, vertex.getSpacesAvailable());
+
+        availability.update(Collections.singletonList(station("A", 5, 5)));
+        assertEquals(5, vertex.getBikesAvailable());
+        assertEquals(5, vertex.getSpacesAvailable());
+
+        // A vertex without availability table keeps its own counts
+        BikeRentalStationVertex staticVertex = new BikeRentalStationVertex(graph, station("S", 2, 2));
+        assertEquals(2, staticVertex.getBikesAvailable());
+    }
+
+    private static BikeRentalStation station(String id, int bikes, int spaces) {
+        BikeRentalStation station = new BikeRentalStation();
+        station.id = id;
+        station.name = new NonLocalizedString(id);
+        station.bikesAvailable = bikes;
+        station.spacesAvailable = spaces;
+        return station;
+    }
+}
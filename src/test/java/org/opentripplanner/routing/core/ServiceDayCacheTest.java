@@ -0,0 +1,76 @@
+package org.opentripplanner.routing.core;
+
+import junit.framework.TestCase;
+import org.onebusaway.gtfs.model.AgencyAndId;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.onebusaway.gtfs.services.calendar.CalendarService;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+public class ServiceDayCacheTest extends TestCase {
+
+    private Graph graph;
+
+    public void setUp() {
+        graph = ConstantsForTests.buildGraph(ConstantsForTests.FAKE_GTFS);
+        graph.index(new DefaultStreetVertexIndexFactory());
+    }
+
+    public void testSharedServiceDays() {
+        ServiceDayCache cache = graph.getServiceDayCache();
+        assertSame(cache, graph.getServiceDayCache());
+
+        ServiceDate today = new ServiceDate();
+        ServiceDay serviceDay = cache.get(today, "agency");
+        assertSame(serviceDay, cache.get(today, "agency"));
+        assertSame(serviceDay, cache.get(new ServiceDate(today), graph.getCalendarService()
+                .getTimeZoneForAgencyId("agency")));
+        assertNotSame(serviceDay, cache.get(today.next(), "agency"));
+    }
+
+    public void testSameAsNewServiceDays() {
+        ServiceDayCache cache = graph.getServiceDayCache();
+        CalendarService calendarService = graph.getCalendarService();
+        int weekdays = -1;
+        for (AgencyAndId serviceId : graph.serviceCodes.keySet()) {
+            if (serviceId.getId().equals("weekdays")) {
+                weekdays = graph.serviceCodes.get(serviceId);
+            }
+        }
+        assertTrue(weekdays >= 0);
+
+        // 2 July 2016 is a Saturday
+        ServiceDate serviceDate = new ServiceDate(2016, 7, 1);
+        for (int d = 0; d < 7; d++) {
+            ServiceDay cached = cache.get(serviceDate, "agency");
+            ServiceDay expected = new ServiceDay(graph, serviceDate, calendarService, "agency");
+            assertEquals(expected, cached);
+            assertEquals(expected.getServiceDate(), cached.getServiceDate());
+            for (int serviceCode : graph.serviceCodes.values()) {
+                assertEquals(expected.serviceRunning(serviceCode), cached.serviceRunning(serviceCode));
+            }
+            assertEquals(d != 1 && d != 2, cached.serviceRunning(weekdays));
+            serviceDate = serviceDate.next();
+        }
+    }
+
+    /** An agency unknown to the calendar service gets the ServiceDays of the time zone of the graph. */
+    public void testUnknownAgency() {
+        ServiceDayCache cache = graph.getServiceDayCache();
+        ServiceDate today = new ServiceDate();
+        assertSame(cache.get(today, graph.getTimeZone()), cache.get(today, "no such agency"));
+    }
+
+    /** The ServiceDays of the dates requested by clients outside of the precomputed ones are not all kept. */
+    public void testBoundedSize() {
+        ServiceDayCache cache = graph.getServiceDayCache();
+        long size = cache.size();
+        ServiceDate serviceDate = new ServiceDate(1900, 1, 1);
+        for (int d = 0; d < 3000; d++) {
+            cache.get(serviceDate, "agency");
+            serviceDate = serviceDate.next();
+        }
+        assertTrue(cache.size() <= size + 1000);
+    }
+}
@@ -0,0 +1,89 @@
+package org.opentripplanner.routing.edgetype;
+
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Time the lookup of the next departure from every stop of every pattern of the Caltrain and KCM test feeds, as done
+ * by TransitBoardAlight for each boarding during a search, at several times of a weekday.
+ */
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TimetableBenchmark {
+
+    @Param({ ConstantsForTests.CALTRAIN_GTFS, ConstantsForTests.KCM_GTFS })
+    public String feed;
+
+    private List<TripPattern> patterns;
+
+    private List<ServiceDay> serviceDays = new ArrayList<>();
+
+    /** The states boarding at 6:00, 8:00, ... 22:00 on the service day of each pattern. */
+    private List<State[]> states = new ArrayList<>();
+
+    @Setup
+    public void setup () {
+        Graph graph = ConstantsForTests.buildGraph(feed);
+        graph.index(new DefaultStreetVertexIndexFactory());
+        patterns = graph.index.patternForId.values().stream()
+                .sorted(Comparator.comparing(pattern -> pattern.code))
+                .collect(Collectors.toList());
+        RoutingRequest options = new RoutingRequest("WALK,TRANSIT");
+        // Tuesday 7 June 2016 is within the service period of both feeds
+        ServiceDate serviceDate = new ServiceDate(2016, 6, 7);
+        for (TripPattern pattern : patterns) {
+            ServiceDay serviceDay = graph.getServiceDayCache().get(serviceDate, pattern.route.getAgency().getId());
+            serviceDays.add(serviceDay);
+            State[] patternStates = new State[9];
+            for (int i = 0; i < patternStates.length; i++) {
+                patternStates[i] = new State(graph.index.stopVertexForStop.get(pattern.getStop(0)),
+                        serviceDay.time((6 + 2 * i) * 3600), options);
+            }
+            states.add(patternStates);
+        }
+    }
+
+    @Benchmark
+    public int nextTrips () {
+        int nTrips = 0;
+        for (int p = 0; p < patterns.size(); p++) {
+            TripPattern pattern = patterns.get(p);
+            ServiceDay serviceDay = serviceDays.get(p);
+            for (State s0 : states.get(p)) {
+                for (int stop = 0; stop < pattern.stopPattern.size - 1; stop++) {
+                    TripTimes tripTimes = pattern.scheduledTimetable.getNextTrip(s0, serviceDay, stop, true);
+                    if (tripTimes != null) {
+                        nTrips += 1;
+                    }
+                }
+            }
+        }
+        return nTrips;
+    }
+}
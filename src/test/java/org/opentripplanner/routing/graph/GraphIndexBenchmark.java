@@ -0,0 +1,76 @@
+package org.opentripplanner.routing.graph;
+
+import graphql.ExecutionResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.gtfs.GtfsLibrary;
+import org.opentripplanner.index.IndexQueryContext;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Time a typical departure board query on the GraphQL index API, fetching the departures of a day for a list of stops
+ * of the KCM test feed. Without a query context each stop is looked up on its own, as before batching was added.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphIndexBenchmark {
+
+    /** The number of stops on the departure board. */
+    @Param({ "1", "20", "50" })
+    public int nStops;
+
+    private GraphIndex index;
+
+    private String query;
+
+    @Setup
+    public void setup () {
+        Graph graph = ConstantsForTests.buildGraph(ConstantsForTests.KCM_GTFS);
+        graph.index(new DefaultStreetVertexIndexFactory());
+        index = graph.index;
+        String ids = index.stopForId.keySet().stream()
+                .sorted()
+                .limit(nStops)
+                .map(id -> "\"" + GtfsLibrary.convertIdToString(id) + "\"")
+                .collect(Collectors.joining(","));
+        query = "query DepartureBoard{" +
+                "    stops(ids: [" + ids + "]){" +
+                "        gtfsId" +
+                "        name" +
+                "        routes{ shortName }" +
+                "        stoptimesForServiceDate(date: \"20160607\"){" +
+                "            pattern{ id }" +
+                "            stoptimes{ scheduledDeparture realtimeDeparture serviceDay }" +
+                "        }" +
+                "    }" +
+                "}";
+    }
+
+    @Benchmark
+    public ExecutionResult perStop () {
+        return index.graphQL.execute(query);
+    }
+
+    @Benchmark
+    public ExecutionResult batched () {
+        return index.graphQL.execute(query, null, new IndexQueryContext(index), new HashMap<>());
+    }
+}
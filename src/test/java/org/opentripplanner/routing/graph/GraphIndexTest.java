@@ -6,17 +6,34 @@ import org.onebusaway.gtfs.model.AgencyAndId;
 import org.onebusaway.gtfs.model.Route;
 import org.onebusaway.gtfs.model.Stop;
 import org.onebusaway.gtfs.model.Trip;
+import org.onebusaway.gtfs.model.calendar.ServiceDate;
 import org.opentripplanner.GtfsTest;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.index.BatchLoader;
+import org.opentripplanner.index.IndexQueryContext;
+import org.opentripplanner.index.model.StopTimesInPattern;
+import org.opentripplanner.index.model.TripTimeShort;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TimetableSnapshot;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.trippattern.FrequencyEntry;
+import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.TransitStop;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * Check that the graph index is created, that GTFS elements can be found in the index, and that
@@ -131,6 +148,181 @@ public class GraphIndexTest extends GtfsTest {
 
     }
 
+    /** Stop times fetched in batches within a query context are the same as those fetched stop by stop. */
+    public void testGraphQLBatchedStopTimes() {
+        String query =
+                "query Stops{" +
+                "    stops{" +
+                "        gtfsId" +
+                "        routes{ shortName }" +
+                "        stoptimesForServiceDate(date: \"20150101\"){" +
+                "            pattern{ id }" +
+                "            stoptimes{ scheduledDeparture realtimeDeparture }" +
+                "        }" +
+                "    }" +
+                "}";
+
+        ExecutionResult unbatched = graph.index.graphQL.execute(query);
+        IndexQueryContext context = new IndexQueryContext(graph.index);
+        ExecutionResult batched = graph.index.graphQL.execute(query, null, context, new HashMap<>());
+        assertTrue(unbatched.getErrors().isEmpty());
+        assertTrue(batched.getErrors().isEmpty());
+        assertEquals(unbatched.getData(), batched.getData());
+
+        // The stop times are memoized for the rest of the query
+        Stop stop = graph.index.stopForId.values().iterator().next();
+        ServiceDate date = new ServiceDate(2015, 1, 1);
+        assertSame(context.getStopTimesForStop(stop, date), context.getStopTimesForStop(stop, date));
+    }
+
+    public void testBatchLoader() {
+        List<Collection<Integer>> batches = new ArrayList<>();
+        BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> {
+            batches.add(keys);
+            return keys.stream().collect(Collectors.toMap(k -> k, k -> "v" + k));
+        }, 3);
+        loader.prime(Arrays.asList(1, 2, 3, 4));
+        assertEquals("v2", loader.load(2));
+        assertEquals("v1", loader.load(1));
+        assertEquals("v3", loader.load(3));
+        assertEquals(1, batches.size());
+        assertEquals(Arrays.asList(2, 1, 3), batches.get(0));
+        assertEquals("v4", loader.load(4));
+        assertEquals("v5", loader.load(5));
+        assertEquals(3, batches.size());
+    }
+
+    /** The keys primed together are loaded together, without the keys of other lists. */
+    public void testBatchLoaderLists() {
+        List<Collection<Integer>> batches = new ArrayList<>();
+        BatchLoader<Integer, String> loader = new BatchLoader<>(keys -> {
+            batches.add(keys);
+            return keys.stream().collect(Collectors.toMap(k -> k, k -> "v" + k));
+        }, 10);
+        loader.prime(Arrays.asList(1, 2));
+        loader.prime(Arrays.asList(2, 3, 4));
+        assertEquals("v3", loader.load(3));
+        assertEquals(Arrays.asList(3, 4), batches.get(0));
+        assertEquals("v2", loader.load(2));
+        assertEquals(Arrays.asList(2, 1), batches.get(1));
+        assertEquals("v1", loader.load(1));
+        assertEquals(2, batches.size());
+    }
+
+    /** The departure index of each stop contains all the scheduled departures from the stop, sorted. */
+    public void testStopDepartureIndex() {
+        for (Stop stop : graph.index.stopForId.values()) {
+            StopDepartureIndex departures = graph.index.departuresForStop.get(stop);
+            int expectedSize = 0;
+            for (TripPattern pattern : graph.index.patternsForStop.get(stop)) {
+                for (int sidx = 0; sidx < pattern.getStops().size(); sidx++) {
+                    if (pattern.getStops().get(sidx) == stop) {
+                        expectedSize += pattern.scheduledTimetable.tripTimes.size();
+                    }
+                }
+            }
+            if (departures == null) {
+                assertEquals(0, expectedSize);
+                continue;
+            }
+            assertEquals(expectedSize, departures.size());
+            for (int i = 0; i < departures.size(); i++) {
+                if (i > 0) {
+                    assertTrue(departures.departure(i - 1) <= departures.departure(i));
+                }
+                assertEquals(departures.departure(i), departures.trip(i).getDepartureTime(departures.stopIndex(i)));
+                assertSame(stop, departures.patterns[departures.patternIndex(i)].getStops().get(departures.stopIndex(i)));
+                int first = departures.firstDepartureAtOrAfter(departures.departure(i));
+                assertTrue(first <= i);
+                assertTrue(first == 0 || departures.departure(first - 1) < departures.departure(i));
+            }
+            assertEquals(departures.size(), departures.firstDepartureAtOrAfter(Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Upcoming departures are limited in number and sorted for each pattern, and are the same as found by scanning
+     * every trip of every pattern serving the stop.
+     */
+    public void testStopTimesForStop() {
+        // A Wednesday morning inside the service period of the feed
+        Calendar calendar = Calendar.getInstance(graph.getTimeZone());
+        calendar.clear();
+        calendar.set(2015, Calendar.JUNE, 10, 8, 0, 0);
+        long startTime = calendar.getTimeInMillis() / 1000;
+        int timeRange = 24 * 60 * 60;
+
+        int nDepartures = 0;
+        for (Stop stop : graph.index.stopForId.values()) {
+            Map<String, List<Long>> departures = new HashMap<>();
+            for (StopTimesInPattern stopTimes : graph.index.stopTimesForStop(stop, startTime, timeRange, 3)) {
+                TripPattern pattern = graph.index.patternForId.get(stopTimes.pattern.id);
+                assertTrue(graph.index.patternsForStop.get(stop).contains(pattern));
+                assertTrue(stopTimes.times.size() <= 3);
+                long previous = 0;
+                for (TripTimeShort t : stopTimes.times) {
+                    assertEquals(stop.getId(), t.stopId);
+                    assertTrue(t.serviceDay + t.realtimeDeparture >= previous);
+                    previous = t.serviceDay + t.realtimeDeparture;
+                }
+                departures.put(pattern.code, stopTimes.times.stream()
+                        .map(t -> t.serviceDay + t.realtimeDeparture).collect(Collectors.toList()));
+                nDepartures += stopTimes.times.size();
+            }
+            assertEquals(stop.getId().toString(), departuresByScan(stop, startTime, timeRange, 3), departures);
+        }
+        assertTrue(nDepartures > 0);
+    }
+
+    /**
+     * The departure times from a stop for each pattern, found by scanning every trip of every pattern serving the stop
+     * on the service dates around the start time, as stopTimesForStop did before the departure index.
+     */
+    private Map<String, List<Long>> departuresByScan(Stop stop, long startTime, int timeRange,
+            int numberOfDepartures) {
+        Calendar calendar = Calendar.getInstance(graph.getTimeZone());
+        calendar.setTimeInMillis(startTime * 1000);
+        ServiceDate serviceDate = new ServiceDate(calendar);
+        ServiceDate[] serviceDates = {serviceDate.previous(), serviceDate, serviceDate.next()};
+        TimetableSnapshot snapshot = graph.index.currentTimetableSnapshot();
+
+        Map<String, List<Long>> result = new HashMap<>();
+        for (TripPattern pattern : graph.index.patternsForStop.get(stop)) {
+            List<Long> departures = new ArrayList<>();
+            for (ServiceDate date : serviceDates) {
+                ServiceDay sd = graph.getServiceDayCache().get(date, pattern.route.getAgency().getId());
+                Timetable tt = snapshot != null ? snapshot.resolve(pattern, date) : pattern.scheduledTimetable;
+                if (!tt.temporallyViable(sd, startTime, timeRange, true)) continue;
+                int secondsSinceMidnight = sd.secondsSinceMidnight(startTime);
+                for (int sidx = 0; sidx < pattern.stopPattern.stops.length; sidx++) {
+                    if (pattern.stopPattern.stops[sidx] != stop) continue;
+                    for (TripTimes t : tt.tripTimes) {
+                        if (!sd.serviceRunning(t.serviceCode)) continue;
+                        if (t.getDepartureTime(sidx) != -1 && t.getDepartureTime(sidx) >= secondsSinceMidnight) {
+                            departures.add(sd.time(t.getDepartureTime(sidx)));
+                        }
+                    }
+                    for (FrequencyEntry freq : tt.frequencyEntries) {
+                        if (!sd.serviceRunning(freq.tripTimes.serviceCode)) continue;
+                        int departureTime = freq.nextDepartureTime(sidx, secondsSinceMidnight);
+                        if (departureTime == -1) continue;
+                        int lastDeparture = freq.endTime + freq.tripTimes.getArrivalTime(sidx) -
+                                freq.tripTimes.getDepartureTime(0);
+                        for (int i = 0; departureTime <= lastDeparture && i < numberOfDepartures; i++) {
+                            departures.add(sd.time(departureTime));
+                            departureTime += freq.headway;
+                        }
+                    }
+                }
+            }
+            if (!departures.isEmpty()) {
+                Collections.sort(departures);
+                result.put(pattern.code, departures.subList(0, Math.min(numberOfDepartures, departures.size())));
+            }
+        }
+        return result;
+    }
+
     public void testGraphQLIntrospectionQuery() {
         String query = "  query IntrospectionQuery {\n"
             + "    __schema {\n"
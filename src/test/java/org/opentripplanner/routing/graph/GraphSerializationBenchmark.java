@@ -0,0 +1,60 @@
+package org.opentripplanner.routing.graph;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time the serialization of the Columbus test graph with the grid of transit lines of FakeGraph.addPerpendicularRoutes,
+ * and its deserialization, which also indexes the loaded graph. The graph is written to memory rather than to a file so
+ * that disk speed does not come into play.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphSerializationBenchmark {
+
+    private Graph graph;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setup () throws Exception {
+        graph = FakeGraph.buildGraphNoTransit();
+        FakeGraph.addPerpendicularRoutes(graph);
+        FakeGraph.link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+        serialized = save();
+    }
+
+    @Benchmark
+    public byte[] save () throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        graph.save(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Graph load () throws Exception {
+        return Graph.load(new ByteArrayInputStream(serialized), Graph.LoadLevel.FULL);
+    }
+}
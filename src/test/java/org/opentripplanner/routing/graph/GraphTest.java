@@ -15,11 +15,20 @@ package org.opentripplanner.routing.graph;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.opentripplanner.util.ArrayUtils.contains;
 
 import org.junit.Test;
+import org.opentripplanner.graph_builder.module.FakeGraph;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.alertpatch.AlertPatchSnapshot;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
 
 public class GraphTest {
     @Test
@@ -124,4 +133,81 @@ public class GraphTest {
         assertFalse(contains (alertPatches[9], alertPatch2));
         assertFalse(contains (alertPatches[9], alertPatch3));
     }
+
+    @Test
+    public final void testAlertPatchSnapshot() {
+        Graph graph = new Graph();
+        Vertex vertex0 = new SimpleConcreteVertex(graph, "Vertex 0", 0, 0);
+        Vertex vertex1 = new SimpleConcreteVertex(graph, "Vertex 1", 0, 180);
+        Edge edge0 = new SimpleConcreteEdge(vertex0, vertex1);
+        Edge edge1 = new SimpleConcreteEdge(vertex1, vertex0);
+        AlertPatch alertPatch0 = new AlertPatch();
+        AlertPatch alertPatch1 = new AlertPatch();
+        alertPatch0.setId("A");
+        alertPatch1.setId("B");
+
+        AlertPatchSnapshot empty = graph.getAlertPatchSnapshot();
+        assertEquals(0, empty.getVersion());
+        // Changes which have no effect publish no new snapshot
+        graph.removeAlertPatch(edge0, alertPatch0);
+        graph.addAlertPatch(edge0, null);
+        assertSame(empty, graph.getAlertPatchSnapshot());
+
+        graph.addAlertPatch(edge0, alertPatch0);
+        AlertPatchSnapshot first = graph.getAlertPatchSnapshot();
+        assertEquals(1, first.getVersion());
+        assertEquals(0, empty.getAlertPatches(edge0).length);
+        // The arrays are shared rather than copied for each lookup
+        assertSame(graph.getAlertPatches(edge0), graph.getAlertPatches(edge0));
+
+        // All the changes of an update are published as a single snapshot, the previous one does not change
+        graph.updateAlertPatches(() -> {
+            graph.removeAlertPatch(edge0, alertPatch0);
+            graph.addAlertPatch(edge0, alertPatch1);
+            graph.addAlertPatch(edge1, alertPatch0);
+            graph.addAlertPatch(edge1, alertPatch1);
+            assertSame(first, graph.getAlertPatchSnapshot());
+        });
+        AlertPatchSnapshot second = graph.getAlertPatchSnapshot();
+        assertEquals(2, second.getVersion());
+        assertEquals(2, second.size());
+        assertEquals(1, first.size());
+        assertTrue(contains(first.getAlertPatches(edge0), alertPatch0));
+        assertFalse(contains(second.getAlertPatches(edge0), alertPatch0));
+        assertTrue(contains(second.getAlertPatches(edge0), alertPatch1));
+        assertEquals(2, second.getAlertPatches(edge1).length);
+
+        // The patches of a removed edge are dropped, before the edge is detached from its vertices
+        graph.removeEdge(edge1);
+        assertEquals(3, graph.getAlertPatchSnapshot().getVersion());
+        assertEquals(1, graph.getAlertPatchSnapshot().size());
+        assertEquals(2, second.size());
+    }
+
+    @Test
+    public final void testFingerprint() throws Exception {
+        Graph graph = FakeGraph.buildGraphNoTransit();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        graph.save(out);
+        out.close();
+
+        // Loading a graph again gives it new vertex indices, but neither its fingerprint nor the order of its vertices
+        Graph loaded = Graph.load(new ByteArrayInputStream(bytes.toByteArray()), Graph.LoadLevel.FULL);
+        assertEquals(graph.getFingerprint(), loaded.getFingerprint());
+        Vertex[] vertices = graph.getVerticesByLabel();
+        Vertex[] loadedVertices = loaded.getVerticesByLabel();
+        assertEquals(vertices.length, loadedVertices.length);
+        for (int i = 0; i < vertices.length; i++) {
+            assertEquals(vertices[i].getLabel(), loadedVertices[i].getLabel());
+            assertEquals(i, loaded.getVertexOrdinals()[loadedVertices[i].getIndex()]);
+        }
+
+        // A change of the attributes of a street changes the fingerprint
+        Graph modified = Graph.load(new ByteArrayInputStream(bytes.toByteArray()), Graph.LoadLevel.FULL);
+        StreetEdge street = modified.getStreetEdges().iterator().next();
+        street.setPermission(street.getPermission() == StreetTraversalPermission.NONE ?
+                StreetTraversalPermission.ALL : StreetTraversalPermission.NONE);
+        assertFalse(graph.getFingerprint().equals(modified.getFingerprint()));
+    }
 }
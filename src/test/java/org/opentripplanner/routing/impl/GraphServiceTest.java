@@ -20,13 +20,16 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import junit.framework.TestCase;
 import org.junit.Test;
 import org.opentripplanner.graph_builder.module.EmbedConfig;
+import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.edgetype.StreetEdge;
 import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
 import org.opentripplanner.routing.error.GraphNotFoundException;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.services.GraphService;
+import org.opentripplanner.routing.services.GraphSource;
 import org.opentripplanner.routing.vertextype.IntersectionVertex;
 import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.standalone.Router;
 
 import java.io.*;
 
@@ -199,6 +202,38 @@ public class GraphServiceTest extends TestCase {
         assertEquals(0, graphService.getRouterIds().size());
     }
 
+    @Test
+    public final void testGraphServiceReloadWarmUp() throws IOException {
+
+        GraphService graphService = new GraphService();
+        InputStreamGraphSource.FileFactory graphSourceFactory = new InputStreamGraphSource.FileFactory(basePath);
+        assertNull(graphService.getReadiness("A"));
+
+        graphSourceFactory.save("A", new ByteArrayInputStream(smallGraphData));
+        assertTrue(graphService.registerGraph("A", graphSourceFactory.createGraphSource("A")));
+        assertEquals(GraphSource.Readiness.READY, graphService.getReadiness("A"));
+
+        // Use the stop tree cache and record a request on the current router
+        Router router = graphService.getRouter("A");
+        router.graph.index.getStopTreeCache();
+        RoutingRequest request = new RoutingRequest();
+        request.setFromString("0,0");
+        request.setToString("0,0.1");
+        router.recentRequests.add(request);
+
+        // Reload without pre-evicting: the request is replayed on the new router and carried over to it
+        assertTrue(graphService.reloadGraph("A", false, true));
+        Router newRouter = graphService.getRouter("A");
+        assertNotSame(router, newRouter);
+        assertEquals(GraphSource.Readiness.READY, graphService.getReadiness("A"));
+        assertTrue(newRouter.graph.index.hasStopTreeCache());
+        assertEquals(1, newRouter.recentRequests.get().size());
+        assertEquals(request.to.lat, newRouter.recentRequests.get().get(0).to.lat);
+
+        assertTrue(graphService.evictRouter("A"));
+        assertNull(graphService.getReadiness("A"));
+    }
+
     @Test
     public final void testGraphServiceAutoscan() throws IOException {
 
@@ -0,0 +1,41 @@
+package org.opentripplanner.routing.impl;
+
+import junit.framework.TestCase;
+import org.opentripplanner.routing.core.RoutingRequest;
+
+import java.util.List;
+
+public class RecentRequestsTest extends TestCase {
+
+    public void testKeepsMostRecentRequests() {
+        RecentRequests recentRequests = new RecentRequests(3);
+        assertTrue(recentRequests.get().isEmpty());
+        for (int i = 0; i < 5; i++) {
+            RoutingRequest request = new RoutingRequest();
+            request.dateTime = i;
+            recentRequests.add(request);
+        }
+        List<RoutingRequest> requests = recentRequests.get();
+        assertEquals(3, requests.size());
+        assertEquals(2, requests.get(0).dateTime);
+        assertEquals(3, requests.get(1).dateTime);
+        assertEquals(4, requests.get(2).dateTime);
+    }
+
+    public void testReturnsCopies() {
+        RecentRequests recentRequests = new RecentRequests(2);
+        RoutingRequest request = new RoutingRequest();
+        request.dateTime = 1;
+        recentRequests.add(request);
+        request.dateTime = 2;
+        recentRequests.get().get(0).dateTime = 3;
+        assertEquals(1, recentRequests.get().get(0).dateTime);
+        assertNotSame(recentRequests.get().get(0), recentRequests.get().get(0));
+    }
+
+    public void testDisabled() {
+        RecentRequests recentRequests = new RecentRequests(0);
+        recentRequests.add(new RoutingRequest());
+        assertTrue(recentRequests.get().isEmpty());
+    }
+}
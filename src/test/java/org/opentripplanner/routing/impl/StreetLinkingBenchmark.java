@@ -0,0 +1,80 @@
+package org.opentripplanner.routing.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Time the linking of origins to the street network of the Columbus test graph by StreetVertexIndexServiceImpl, as done
+ * for every trip planning request. The origins are random places near the intersections of the graph, so that most of
+ * them split a street edge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StreetLinkingBenchmark {
+
+    /** The number of places linked in each invocation of the benchmark. */
+    private static final int N_PLACES = 1000;
+
+    @Param({ "WALK", "CAR" })
+    public TraverseMode mode;
+
+    private Graph graph;
+
+    private GenericLocation[] places = new GenericLocation[N_PLACES];
+
+    @Setup
+    public void setup () throws Exception {
+        graph = FakeGraph.buildGraphNoTransit();
+        graph.index(new DefaultStreetVertexIndexFactory());
+        List<Vertex> intersections = graph.getVertices().stream()
+                .filter(v -> v instanceof IntersectionVertex)
+                .sorted(Comparator.comparing(Vertex::getLabel))
+                .collect(Collectors.toList());
+        Random random = new Random(42);
+        for (int i = 0; i < N_PLACES; i++) {
+            Vertex v = intersections.get(random.nextInt(intersections.size()));
+            // Up to about 100 meters away from the intersection
+            places[i] = new GenericLocation(v.getLat() + (random.nextDouble() - 0.5) * 0.002,
+                    v.getLon() + (random.nextDouble() - 0.5) * 0.002);
+        }
+    }
+
+    @Benchmark
+    public int link () {
+        int nEdges = 0;
+        for (GenericLocation place : places) {
+            RoutingRequest options = new RoutingRequest(mode);
+            Vertex vertex = graph.streetIndex.getVertexForLocation(place, options, false);
+            nEdges += vertex.getDegreeOut();
+            ((TemporaryVertex) vertex).dispose();
+        }
+        return nEdges;
+    }
+}
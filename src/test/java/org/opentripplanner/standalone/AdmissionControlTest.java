@@ -0,0 +1,108 @@
+package org.opentripplanner.standalone;
+
+import junit.framework.TestCase;
+import org.opentripplanner.routing.error.RequestRejectedException;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class AdmissionControlTest extends TestCase {
+
+    public void testRejectAfterDeadline() {
+        AdmissionControl admissionControl = new AdmissionControl(1, 1);
+        long now = System.currentTimeMillis();
+        AdmissionControl.Permit permit = admissionControl.admit(now, now + 1000);
+        assertEquals(1, admissionControl.getStats().running);
+        try {
+            admissionControl.admit(now, now + 10);
+            fail("The request should not be admitted after its deadline.");
+        } catch (RequestRejectedException e) {
+        }
+        assertEquals(1, admissionControl.getStats().rejectedDeadline);
+        assertEquals(0, admissionControl.getStats().queued);
+
+        permit.close();
+        permit.close(); // closing twice releases only once
+        assertEquals(0, admissionControl.getStats().running);
+        admissionControl.admit(now, now + 1000).close();
+        assertEquals(2, admissionControl.getStats().admitted);
+    }
+
+    /** A request is not admitted so late that its first search would time out right away. */
+    public void testDeadlineBeforeTimeout() {
+        Router router = new Router("default", new Graph());
+        router.timeouts = new double[] { 4, 2 };
+        assertEquals(1000 + 2000, AdmissionControl.deadline(1000, router));
+
+        AdmissionControl admissionControl = new AdmissionControl(1, 1);
+        long now = System.currentTimeMillis();
+        AdmissionControl.Permit permit = admissionControl.admit(now, router);
+        try {
+            // Received 3 seconds ago, with 1 second left before the timeout
+            admissionControl.admit(now - 3000, router);
+            fail("The request should not be admitted without time left to compute it.");
+        } catch (RequestRejectedException e) {
+        }
+        assertEquals(1, admissionControl.getStats().rejectedDeadline);
+        permit.close();
+    }
+
+    public void testRejectWhenQueueFull() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(1, 1);
+        long now = System.currentTimeMillis();
+        AdmissionControl.Permit permit = admissionControl.admit(now, now + 10000);
+
+        // A second request waits in the queue...
+        CompletableFuture<AdmissionControl.Permit> waiting = CompletableFuture.supplyAsync(
+                () -> admissionControl.admit(now, now + 10000));
+        while (admissionControl.getStats().queued == 0) {
+            Thread.sleep(1);
+        }
+        // ...so a third one is rejected right away
+        try {
+            admissionControl.admit(now, now + 10000);
+            fail("The request should not be admitted with a full queue.");
+        } catch (RequestRejectedException e) {
+        }
+        assertEquals(1, admissionControl.getStats().rejectedQueueFull);
+
+        // The waiting request is admitted once the first one is done
+        permit.close();
+        AdmissionControl.Permit second = waiting.get(10, TimeUnit.SECONDS);
+        assertEquals(now, second.arrivalTime);
+        assertEquals(1, admissionControl.getStats().running);
+        assertEquals(0, admissionControl.getStats().queued);
+        second.close();
+    }
+
+    /** A request that just arrived does not take a released permit from a request that was already waiting. */
+    public void testWaitingRequestAdmittedFirst() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(1, 2);
+        long now = System.currentTimeMillis();
+        AdmissionControl.Permit permit = admissionControl.admit(now, now + 10000);
+
+        CompletableFuture<AdmissionControl.Permit> waiting = new CompletableFuture<>();
+        Thread waiter = new Thread(() -> waiting.complete(admissionControl.admit(now, now + 10000)));
+        waiter.start();
+        // wait until the request is blocked on the semaphore, not only counted as queued
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+
+        // A new request arriving right when the permit is released must queue behind the waiting one
+        permit.close();
+        long arrival = System.currentTimeMillis();
+        try {
+            admissionControl.admit(arrival, arrival + 100).close();
+            fail("The new request should not be admitted before the waiting one.");
+        } catch (RequestRejectedException e) {
+        }
+        assertEquals(1, admissionControl.getStats().rejectedDeadline);
+
+        AdmissionControl.Permit second = waiting.get(10, TimeUnit.SECONDS);
+        assertEquals(now, second.arrivalTime);
+        assertEquals(2, admissionControl.getStats().admitted);
+        second.close();
+    }
+}
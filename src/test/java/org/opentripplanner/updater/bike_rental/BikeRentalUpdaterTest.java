@@ -0,0 +1,46 @@
+package org.opentripplanner.updater.bike_rental;
+
+import junit.framework.TestCase;
+import org.opentripplanner.routing.bike_rental.BikeRentalStation;
+import org.opentripplanner.util.NonLocalizedString;
+
+import java.util.Collections;
+
+public class BikeRentalUpdaterTest extends TestCase {
+
+    public void testStructuralChange() {
+        BikeRentalStation previous = station();
+        BikeRentalStation station = station();
+        station.bikesAvailable = 0;
+        station.spacesAvailable = 20;
+        assertFalse(BikeRentalUpdater.structuralChange(previous, station));
+
+        station = station();
+        station.x += 0.001;
+        assertTrue(BikeRentalUpdater.structuralChange(previous, station));
+
+        station = station();
+        station.allowDropoff = false;
+        assertTrue(BikeRentalUpdater.structuralChange(previous, station));
+
+        station = station();
+        station.networks = Collections.singleton("other");
+        assertTrue(BikeRentalUpdater.structuralChange(previous, station));
+
+        station = station();
+        station.name = new NonLocalizedString("Renamed");
+        assertTrue(BikeRentalUpdater.structuralChange(previous, station));
+    }
+
+    private static BikeRentalStation station() {
+        BikeRentalStation station = new BikeRentalStation();
+        station.id = "1";
+        station.name = new NonLocalizedString("Main Street");
+        station.x = -122.6;
+        station.y = 45.5;
+        station.bikesAvailable = 10;
+        station.spacesAvailable = 10;
+        station.networks = Collections.singleton("default");
+        return station;
+    }
+}
@@ -35,4 +35,27 @@ public class TestPolylineEncoder extends TestCase {
         assertEquals(3, eplb.getLength());
         assertNull(eplb.getLevels());
     }
+
+    public void testStreamingEncoder() {
+        double[] lon = { -73.85062, -73.85136, -73.85151, -73.85151, 0, 179.99999 };
+        double[] lat = { 40.903125, 40.902261, 40.902066, 40.902066, 0, -89.99999 };
+        StreamingPolylineEncoder encoder = new StreamingPolylineEncoder();
+        for (int i = 0; i < lon.length; i++) {
+            encoder.accept(lon[i], lat[i]);
+        }
+        EncodedPolylineBean expected = PolylineEncoder.createEncodings(lat, lon);
+        assertEquals(expected.getPoints(), encoder.getEncodedPolyline().getPoints());
+        assertEquals(lon.length, encoder.getEncodedPolyline().getLength());
+        assertNull(encoder.getEncodedPolyline().getLevels());
+
+        // a skipped point is not encoded
+        encoder = new StreamingPolylineEncoder();
+        encoder.accept(lon[0], lat[0]);
+        encoder.skipNextPoint();
+        encoder.accept(lon[0], lat[0]);
+        encoder.accept(lon[1], lat[1]);
+        assertEquals(PolylineEncoder.createEncodings(new double[] { lat[0], lat[1] },
+                new double[] { lon[0], lon[1] }).getPoints(), encoder.getEncodedPolyline().getPoints());
+        assertEquals(2, encoder.getPointCount());
+    }
 }
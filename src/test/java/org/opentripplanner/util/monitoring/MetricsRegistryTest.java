@@ -0,0 +1,49 @@
+package org.opentripplanner.util.monitoring;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+public class MetricsRegistryTest extends TestCase {
+
+    public void testHistogramBuckets() {
+        Histogram histogram = new Histogram(new double[] { 1, 10, 100 });
+        histogram.observe(0.5);
+        histogram.observe(1);
+        histogram.observe(50);
+        histogram.observe(1000);
+        assertTrue(Arrays.equals(new long[] { 2, 2, 3, 4 }, histogram.getCumulativeCounts()));
+        assertEquals(1051.5, histogram.getSum(), 1e-9);
+
+        histogram = new Histogram(Histogram.SECONDS);
+        histogram.observeNanos(3000000); // 3 msec
+        assertEquals(0, histogram.getCumulativeCounts()[2]); // 2.5 msec
+        assertEquals(1, histogram.getCumulativeCounts()[3]); // 5 msec
+    }
+
+    public void testPrometheusFormat() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.histogram("otp_test_seconds", "Test latency.", new double[] { 0.1, 1 }, "router", "a", "mode", "WALK")
+                .observe(0.5);
+        assertSame(registry.histogram("otp_test_seconds", "Test latency.", new double[] { 0.1, 1 },
+                "router", "a", "mode", "WALK"), registry.histogram("otp_test_seconds", "Test latency.",
+                new double[] { 0.1, 1 }, "router", "a", "mode", "WALK"));
+        registry.counter("otp_test_total", "Test counter.", "router", "say \"hi\"").add(3);
+
+        StringWriter writer = new StringWriter();
+        registry.writePrometheus(writer);
+        String expected = "# HELP otp_test_seconds Test latency.\n"
+                + "# TYPE otp_test_seconds histogram\n"
+                + "otp_test_seconds_bucket{router=\"a\",mode=\"WALK\",le=\"0.1\"} 0\n"
+                + "otp_test_seconds_bucket{router=\"a\",mode=\"WALK\",le=\"1\"} 1\n"
+                + "otp_test_seconds_bucket{router=\"a\",mode=\"WALK\",le=\"+Inf\"} 1\n"
+                + "otp_test_seconds_sum{router=\"a\",mode=\"WALK\"} 0.5\n"
+                + "otp_test_seconds_count{router=\"a\",mode=\"WALK\"} 1\n"
+                + "# HELP otp_test_total Test counter.\n"
+                + "# TYPE otp_test_total counter\n"
+                + "otp_test_total{router=\"say \\\"hi\\\"\"} 3\n";
+        assertEquals(expected, writer.toString());
+    }
+}